@@ -0,0 +1,60 @@
+package src.bench;
+
+import src.java.QueryExecutor;
+import src.java.Session;
+import src.java.TableCatalog;
+import src.java.TableSchema;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Helpers shared by the benchmarks: throwaway database directories and a session whose output is discarded.
+ */
+final class BenchmarkSupport {
+    static final String TABLE = "bench";
+    static final String CREATE_TABLE = "CREATE TABLE " + TABLE + " (id int, name varchar(32), age int, city varchar(16))";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * @return A session whose query output is discarded, so that printing does not dominate the measurement
+     */
+    static Session discardingSession() {
+        return new Session(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * @return A new empty directory under the system temporary directory
+     */
+    static File createDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /**
+     * Creates the benchmark table.
+     * @return The schema of the new table
+     */
+    static TableSchema createTable(QueryExecutor executor, Session session, File dbDir, String storage) throws IOException {
+        executor.executeQuery(session, CREATE_TABLE + " STORAGE " + storage);
+        return new TableCatalog(dbDir.getPath(), ":|").getSchema(TABLE);
+    }
+
+    static void deleteDirectory(File dir) throws IOException {
+        if (!dir.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package src.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.java.DataGenerator;
+import src.java.QueryExecutor;
+import src.java.Session;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to {@code COMMIT} a transaction of many inserted rows. The statements are queued before each
+ * invocation, so only the commit itself is measured: logging, validation, appending and the fsync.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class CommitBenchmark {
+    static final int ROWS_PER_STATEMENT = 100;
+
+    @Param({"1000", "100000"})
+    int transactionRows;
+
+    @Param({"true", "false"})
+    boolean syncOnCommit;
+
+    private File dbDir;
+    private QueryExecutor executor;
+    private Session session;
+    private String[] statements;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dbDir = BenchmarkSupport.createDirectory("commit-bench");
+        executor = new QueryExecutor(dbDir.getPath());
+        executor.setSyncOnCommit(syncOnCommit);
+        session = BenchmarkSupport.discardingSession();
+        DataGenerator generator = new DataGenerator(BenchmarkSupport.createTable(executor, session, dbDir, "TEXT"), 42L);
+        statements = new String[(transactionRows + ROWS_PER_STATEMENT - 1) / ROWS_PER_STATEMENT];
+        for (int i = 0; i < statements.length; i++) {
+            StringBuilder insert = new StringBuilder("INSERT INTO " + BenchmarkSupport.TABLE + " VALUES ");
+            int rows = Math.min(ROWS_PER_STATEMENT, transactionRows - i * ROWS_PER_STATEMENT);
+            for (int j = 0; j < rows; j++) {
+                String[] row = generator.row((long) i * ROWS_PER_STATEMENT + j);
+                insert.append(j == 0 ? "(" : ", (").append(row[0]).append(", '").append(row[1]).append("', ")
+                        .append(row[2]).append(", '").append(row[3]).append("')");
+            }
+            statements[i] = insert.toString();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void beginTransaction() throws IOException {
+        executor.executeQuery(session, "BEGIN TRANSACTION");
+        for (String statement : statements) {
+            executor.executeQuery(session, statement);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.close();
+        BenchmarkSupport.deleteDirectory(dbDir);
+    }
+
+    @Benchmark
+    public void commit() throws IOException {
+        executor.executeQuery(session, "COMMIT");
+    }
+}
@@ -0,0 +1,89 @@
+package src.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.java.DataGenerator;
+import src.java.QueryExecutor;
+import src.java.Session;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@code INSERT} outside a transaction, one row per statement and in multi-row batches.
+ * Scores are statements per second; multiply by {@code rowsPerStatement} for rows per second.
+ * <p>
+ * Every statement inserts rows with keys not used before, so its text is new and is parsed without help from
+ * the plan cache whatever its length; the comparison measures batching rather than caching. Building the
+ * statement text is measured too, as a client would have to build it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+    static final int STATEMENTS = 100;
+
+    @Param({"1", "100"})
+    int rowsPerStatement;
+
+    @Param({"TEXT", "BINARY"})
+    String storage;
+
+    private File dbDir;
+    private QueryExecutor executor;
+    private Session session;
+    private DataGenerator generator;
+    private long nextRow;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dbDir = BenchmarkSupport.createDirectory("insert-bench");
+        executor = new QueryExecutor(dbDir.getPath());
+        session = BenchmarkSupport.discardingSession();
+        generator = new DataGenerator(BenchmarkSupport.createTable(executor, session, dbDir, storage), 42L);
+        nextRow = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.close();
+        BenchmarkSupport.deleteDirectory(dbDir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STATEMENTS)
+    public void insert() throws IOException {
+        for (int i = 0; i < STATEMENTS; i++) {
+            executor.executeQuery(session, nextStatement());
+        }
+    }
+
+    /**
+     * @return An INSERT of the next {@code rowsPerStatement} generated rows
+     */
+    private String nextStatement() {
+        StringBuilder insert = new StringBuilder("INSERT INTO " + BenchmarkSupport.TABLE + " VALUES ");
+        for (int j = 0; j < rowsPerStatement; j++) {
+            String[] row = generator.row(nextRow++);
+            insert.append(j == 0 ? "(" : ", (").append(row[0]).append(", '").append(row[1]).append("', ")
+                    .append(row[2]).append(", '").append(row[3]).append("')");
+        }
+        return insert.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package src.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.java.UserAuthentication;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Credential checks against a store of N registered users, and loading that store at startup. The captcha
+ * step of {@link UserAuthentication#login} reads the console and is left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginBenchmark {
+    static final String PASSWORD = "password";
+
+    @Param({"100", "10000", "1000000"})
+    int users;
+
+    private File dir;
+    private File usersFile;
+    private File snapshotFile;
+    private UserAuthentication auth;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        dir = BenchmarkSupport.createDirectory("login-bench");
+        usersFile = new File(dir, "users.txt");
+        snapshotFile = new File(dir, "users_snapshot.txt");
+        String hash = UserAuthentication.hashPassword(PASSWORD);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(snapshotFile))) {
+            for (int i = 0; i < users; i++) {
+                writer.write(UUID.randomUUID() + ":|user" + i + ":|" + hash);
+                writer.newLine();
+            }
+        }
+        auth = new UserAuthentication(usersFile, snapshotFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkSupport.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public boolean checkCredentials() throws NoSuchAlgorithmException {
+        next = next + 1 == users ? 0 : next + 1;
+        return auth.checkCredentials("user" + next, PASSWORD);
+    }
+
+    @Benchmark
+    public boolean checkUnknownUser() throws NoSuchAlgorithmException {
+        return auth.checkCredentials("nobody", PASSWORD);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 10)
+    public UserAuthentication loadStore() throws IOException {
+        return new UserAuthentication(usersFile, snapshotFile);
+    }
+}
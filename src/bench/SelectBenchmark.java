@@ -0,0 +1,93 @@
+package src.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import src.java.DataGenerator;
+import src.java.QueryExecutor;
+import src.java.ResultSet;
+import src.java.Session;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full scans and projections over tables of generated rows, both through the printing path of
+ * {@code SELECT} and through the streaming {@link ResultSet}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SelectBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    long rows;
+
+    @Param({"TEXT", "BINARY"})
+    String storage;
+
+    private File dbDir;
+    private QueryExecutor executor;
+    private Session session;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dbDir = BenchmarkSupport.createDirectory("select-bench");
+        executor = new QueryExecutor(dbDir.getPath());
+        session = BenchmarkSupport.discardingSession();
+        DataGenerator.load(executor, session, BenchmarkSupport.createTable(executor, session, dbDir, storage), rows, 42L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.close();
+        BenchmarkSupport.deleteDirectory(dbDir);
+    }
+
+    @Benchmark
+    public void printFullScan() throws IOException {
+        executor.executeQuery(session, "SELECT * FROM " + BenchmarkSupport.TABLE);
+    }
+
+    @Benchmark
+    public void printProjection() throws IOException {
+        executor.executeQuery(session, "SELECT name, age FROM " + BenchmarkSupport.TABLE);
+    }
+
+    @Benchmark
+    public long streamFullScan(Blackhole blackhole) throws IOException {
+        long count = 0;
+        try (ResultSet result = executor.executeSelect(session, "SELECT * FROM " + BenchmarkSupport.TABLE)) {
+            while (result.next()) {
+                blackhole.consume(result.getString(1));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long streamProjection() throws IOException {
+        long sum = 0;
+        try (ResultSet result = executor.executeSelect(session, "SELECT age FROM " + BenchmarkSupport.TABLE)) {
+            while (result.next()) {
+                sum += result.getInt(0);
+            }
+        }
+        return sum;
+    }
+}
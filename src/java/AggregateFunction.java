@@ -0,0 +1,26 @@
+package src.java;
+
+/**
+ * Aggregate functions available in SELECT lists.
+ */
+public enum AggregateFunction {
+    COUNT,
+    SUM,
+    AVG,
+    MIN,
+    MAX;
+
+    /**
+     * Looks up an aggregate function by name, ignoring case.
+     * @param name The function name
+     * @return The function, or null if the name is not an aggregate function
+     */
+    public static AggregateFunction fromName(String name) {
+        for (AggregateFunction function : values()) {
+            if (function.name().equalsIgnoreCase(name)) {
+                return function;
+            }
+        }
+        return null;
+    }
+}
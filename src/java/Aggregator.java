@@ -0,0 +1,378 @@
+package src.java;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes COUNT, SUM, AVG, MIN and MAX, optionally grouped by columns. A full scan is divided into
+ * ranges with {@link TableRows#split(int)} and the ranges are aggregated in parallel on the common
+ * fork-join pool, each task filling its own hash table of partial results; the partial tables are
+ * merged as the tasks join, so no state is shared between threads while rows are being read. The tasks
+ * add the rows they read to the {@link QueryMetrics} of the statement that started the aggregation.
+ */
+public class Aggregator {
+    /** Ranges per worker thread, so that a slow range does not leave the other workers idle. */
+    static final int RANGES_PER_THREAD = 4;
+
+    private final TableSchema schema;
+    private final List<SelectItem> items;
+    private final int[] groupOrdinals;
+    private final int[] itemOrdinals;
+    private final RowPredicate predicate;
+    private final Condition where;
+
+    /**
+     * Running totals of one select item within one group.
+     */
+    private static final class Accumulator {
+        long count;
+        long sum;
+        Object min;
+        Object max;
+
+        void merge(Accumulator other) {
+            count += other.count;
+            sum += other.sum;
+            min = min == null ? other.min : other.min == null ? min : compare(min, other.min) <= 0 ? min : other.min;
+            max = max == null ? other.max : other.max == null ? max : compare(max, other.max) >= 0 ? max : other.max;
+        }
+    }
+
+    /**
+     * Validates a grouped or aggregated SELECT against a table schema.
+     * @param statement The parsed query
+     * @param schema The schema of the queried table
+     * @param predicate The compiled WHERE condition, or {@link RowPredicate#ALWAYS}
+     * @throws IllegalArgumentException If a column is unknown, an aggregate is applied to a column of the
+     *         wrong type, or a plain column is selected without being grouped
+     */
+    public Aggregator(SelectStatement statement, TableSchema schema, RowPredicate predicate) {
+        this.schema = schema;
+        this.items = statement.getItems();
+        this.predicate = predicate;
+        this.where = statement.getWhere();
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("SELECT * cannot be combined with GROUP BY.");
+        }
+        List<String> groupBy = statement.getGroupBy();
+        groupOrdinals = new int[groupBy.size()];
+        for (int i = 0; i < groupOrdinals.length; i++) {
+            groupOrdinals[i] = ordinalOf(groupBy.get(i));
+        }
+        itemOrdinals = new int[items.size()];
+        for (int i = 0; i < itemOrdinals.length; i++) {
+            SelectItem item = items.get(i);
+            if (item.getColumn() == null) {
+                itemOrdinals[i] = -1;
+                continue;
+            }
+            itemOrdinals[i] = ordinalOf(item.getColumn());
+            if (!item.isAggregate()) {
+                if (!groupBy.contains(item.getColumn())) {
+                    throw new IllegalArgumentException("Column " + item.getColumn()
+                            + " must appear in GROUP BY or be used in an aggregate function.");
+                }
+            } else if ((item.getFunction() == AggregateFunction.SUM || item.getFunction() == AggregateFunction.AVG)
+                    && schema.column(itemOrdinals[i]).getType() != ColumnType.INT) {
+                throw new IllegalArgumentException(item.getFunction() + " requires an int column: " + item.getColumn());
+            }
+        }
+    }
+
+    private int ordinalOf(String column) {
+        int ordinal = schema.ordinalOf(column);
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Column " + column + " does not exist in table "
+                    + schema.getTableName() + ".");
+        }
+        return ordinal;
+    }
+
+    /**
+     * Aggregates every row of a table, scanning ranges of it in parallel.
+     * @param storage The rows of the table
+     * @return The result rows, sorted by the GROUP BY columns
+     * @throws IOException If an input or output exception occurred
+     */
+    public List<String[]> aggregate(TableRows storage) throws IOException {
+        return aggregate(storage, null, Collections.emptyList());
+    }
+
+    /**
+     * Aggregates the rows at the given locations, such as the candidates yielded by an index.
+     * @param storage The rows of the table
+     * @param locations The row locations in ascending order
+     * @return The result rows, sorted by the GROUP BY columns
+     * @throws IOException If an input or output exception occurred
+     */
+    public List<String[]> aggregate(TableRows storage, long[] locations) throws IOException {
+        return aggregate(storage, locations, Collections.emptyList());
+    }
+
+    /**
+     * Aggregates the rows of a table together with rows that are not stored in it yet, such as those an
+     * open transaction has written.
+     * @param storage The rows of the table
+     * @param locations The row locations in ascending order, or null to scan every row in parallel
+     * @param unstoredRows Further rows in column order
+     * @return The result rows, sorted by the GROUP BY columns
+     * @throws IOException If an input or output exception occurred
+     */
+    public List<String[]> aggregate(TableRows storage, long[] locations, List<String[]> unstoredRows) throws IOException {
+        Map<List<String>, Accumulator[]> groups;
+        if (locations == null) {
+            long[] boundaries = storage.split(ForkJoinPool.getCommonPoolParallelism() * RANGES_PER_THREAD);
+            try {
+                groups = ForkJoinPool.commonPool().invoke(
+                        new RangeTask(storage, boundaries, 0, boundaries.length - 1, QueryMetrics.current()));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } else {
+            groups = new HashMap<>();
+            try (RowCursor cursor = storage.fetch(locations)) {
+                QueryMetrics.count(QueryMetrics.Counter.ROWS_SCANNED, accumulate(cursor, groups));
+            }
+        }
+        if (!unstoredRows.isEmpty()) {
+            accumulate(new RowListCursor(unstoredRows), groups);
+        }
+        return results(groups);
+    }
+
+    /**
+     * Aggregates a run of adjacent ranges, forking one half and computing the other until a single range remains.
+     */
+    private final class RangeTask extends RecursiveTask<Map<List<String>, Accumulator[]>> {
+        private final TableRows storage;
+        private final long[] boundaries;
+        private final int from;
+        private final int to;
+        private final QueryMetrics metrics;
+
+        RangeTask(TableRows storage, long[] boundaries, int from, int to, QueryMetrics metrics) {
+            this.storage = storage;
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+            this.metrics = metrics;
+        }
+
+        @Override
+        protected Map<List<String>, Accumulator[]> compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                RangeTask left = new RangeTask(storage, boundaries, from, middle, metrics);
+                left.fork();
+                Map<List<String>, Accumulator[]> right = new RangeTask(storage, boundaries, middle, to, metrics).compute();
+                return merge(left.join(), right);
+            }
+            Map<List<String>, Accumulator[]> groups = new HashMap<>();
+            if (to == from) {
+                return groups;
+            }
+            QueryMetrics previous = QueryMetrics.enter(metrics);
+            try (RowCursor cursor = storage.scanRange(boundaries[from], boundaries[to], where)) {
+                QueryMetrics.count(QueryMetrics.Counter.ROWS_SCANNED, accumulate(cursor, groups));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                QueryMetrics.exit(previous);
+            }
+            return groups;
+        }
+    }
+
+    /**
+     * @return The number of rows read from the cursor
+     */
+    private long accumulate(RowCursor cursor, Map<List<String>, Accumulator[]> groups) throws IOException {
+        List<String> key = groupOrdinals.length == 0 ? Collections.emptyList() : null;
+        long scanned = 0;
+        while (cursor.next()) {
+            scanned++;
+            if (!predicate.test(cursor)) {
+                continue;
+            }
+            if (groupOrdinals.length > 0) {
+                String[] values = new String[groupOrdinals.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = cursor.getString(groupOrdinals[i]);
+                }
+                key = Arrays.asList(values);
+            }
+            Accumulator[] accumulators = groups.computeIfAbsent(key, k -> newAccumulators());
+            for (int i = 0; i < itemOrdinals.length; i++) {
+                SelectItem item = items.get(i);
+                if (!item.isAggregate()) {
+                    continue;
+                }
+                Accumulator accumulator = accumulators[i];
+                if (itemOrdinals[i] < 0) {
+                    accumulator.count++;
+                    continue;
+                }
+                Object value = valueOf(cursor, itemOrdinals[i]);
+                if (value == null) {
+                    continue;
+                }
+                accumulator.count++;
+                switch (item.getFunction()) {
+                    case SUM:
+                    case AVG:
+                        accumulator.sum += (Long) value;
+                        break;
+                    case MIN:
+                        if (accumulator.min == null || compare(value, accumulator.min) < 0) {
+                            accumulator.min = value;
+                        }
+                        break;
+                    case MAX:
+                        if (accumulator.max == null || compare(value, accumulator.max) > 0) {
+                            accumulator.max = value;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return scanned;
+    }
+
+    /**
+     * Reads a column as a Long for int columns or a String for varchar columns.
+     * @return The value, or null if it is missing or not a valid int
+     */
+    private Object valueOf(RowCursor cursor, int ordinal) {
+        if (schema.column(ordinal).getType() == ColumnType.VARCHAR) {
+            return cursor.getString(ordinal);
+        }
+        if (cursor.getString(ordinal) == null) {
+            return null;
+        }
+        try {
+            return (long) cursor.getInt(ordinal);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object a, Object b) {
+        return ((Comparable) a).compareTo(b);
+    }
+
+    private Accumulator[] newAccumulators() {
+        Accumulator[] accumulators = new Accumulator[items.size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = new Accumulator();
+        }
+        return accumulators;
+    }
+
+    private static Map<List<String>, Accumulator[]> merge(Map<List<String>, Accumulator[]> into,
+                                                          Map<List<String>, Accumulator[]> from) {
+        if (into.size() < from.size()) {
+            Map<List<String>, Accumulator[]> swap = into;
+            into = from;
+            from = swap;
+        }
+        for (Map.Entry<List<String>, Accumulator[]> entry : from.entrySet()) {
+            Accumulator[] existing = into.putIfAbsent(entry.getKey(), entry.getValue());
+            if (existing != null) {
+                for (int i = 0; i < existing.length; i++) {
+                    existing[i].merge(entry.getValue()[i]);
+                }
+            }
+        }
+        return into;
+    }
+
+    private List<String[]> results(Map<List<String>, Accumulator[]> groups) {
+        if (groups.isEmpty() && groupOrdinals.length == 0) {
+            groups.put(Collections.emptyList(), newAccumulators());
+        }
+        List<Map.Entry<List<String>, Accumulator[]>> entries = new ArrayList<>(groups.entrySet());
+        entries.sort(Map.Entry.comparingByKey(keyComparator()));
+
+        List<String> groupBy = new ArrayList<>();
+        for (int ordinal : groupOrdinals) {
+            groupBy.add(schema.column(ordinal).getName());
+        }
+        List<String[]> rows = new ArrayList<>(entries.size());
+        for (Map.Entry<List<String>, Accumulator[]> entry : entries) {
+            String[] row = new String[items.size()];
+            for (int i = 0; i < row.length; i++) {
+                SelectItem item = items.get(i);
+                Accumulator accumulator = entry.getValue()[i];
+                if (!item.isAggregate()) {
+                    row[i] = entry.getKey().get(groupBy.indexOf(item.getColumn()));
+                    continue;
+                }
+                switch (item.getFunction()) {
+                    case COUNT:
+                        row[i] = Long.toString(accumulator.count);
+                        break;
+                    case SUM:
+                        row[i] = accumulator.count == 0 ? null : Long.toString(accumulator.sum);
+                        break;
+                    case AVG:
+                        row[i] = accumulator.count == 0 ? null : Double.toString((double) accumulator.sum / accumulator.count);
+                        break;
+                    case MIN:
+                        row[i] = accumulator.min == null ? null : accumulator.min.toString();
+                        break;
+                    case MAX:
+                        row[i] = accumulator.max == null ? null : accumulator.max.toString();
+                        break;
+                    default:
+                        break;
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Orders groups column by column, numerically for int columns, with missing values first.
+     */
+    private Comparator<List<String>> keyComparator() {
+        return (a, b) -> {
+            for (int i = 0; i < groupOrdinals.length; i++) {
+                String x = a.get(i);
+                String y = b.get(i);
+                if (x == null || y == null) {
+                    if (x != y) {
+                        return x == null ? -1 : 1;
+                    }
+                    continue;
+                }
+                int result = 0;
+                if (schema.column(groupOrdinals[i]).getType() == ColumnType.INT) {
+                    try {
+                        result = Long.compare(Long.parseLong(x), Long.parseLong(y));
+                    } catch (NumberFormatException e) {
+                        result = x.compareTo(y);
+                    }
+                } else {
+                    result = x.compareTo(y);
+                }
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        };
+    }
+}
@@ -0,0 +1,199 @@
+package src.java;
+
+/**
+ * In-memory B+tree index structure. Inner nodes hold separator keys only, leaves hold the keys with their
+ * row locations and are linked left to right so range lookups walk the leaves sequentially.
+ */
+public class BPlusTree implements IndexStructure {
+    static final int ORDER = 64; // Maximum number of keys per node
+
+    private Node root = new Leaf();
+    private int keyCount;
+    private Object splitKey; // Separator produced by the most recent node split
+
+    private abstract static class Node {
+        final Object[] keys = new Object[ORDER + 1]; // One spare slot holds the overflow before a split
+        int size;
+    }
+
+    private static final class Leaf extends Node {
+        final LocationList[] values = new LocationList[ORDER + 1];
+        Leaf next;
+    }
+
+    private static final class Inner extends Node {
+        final Node[] children = new Node[ORDER + 2];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    /**
+     * Binary search for a key within a node.
+     * @return The index of the key, or (-(insertion point) - 1) if it is not present
+     */
+    private static int search(Node node, Object key) {
+        int low = 0;
+        int high = node.size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = compare(node.keys[mid], key);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int childIndex(Node node, Object key) {
+        int position = search(node, key);
+        return position >= 0 ? position + 1 : -(position + 1);
+    }
+
+    @Override
+    public void insert(Object key, long location) {
+        Node right = insert(root, key, location);
+        if (right != null) {
+            Inner newRoot = new Inner();
+            newRoot.keys[0] = splitKey;
+            newRoot.children[0] = root;
+            newRoot.children[1] = right;
+            newRoot.size = 1;
+            root = newRoot;
+        }
+    }
+
+    /**
+     * Inserts into a subtree.
+     * @return The new right sibling if the node was split, with its separator in {@link #splitKey}
+     */
+    private Node insert(Node node, Object key, long location) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int position = search(leaf, key);
+            if (position >= 0) {
+                leaf.values[position].add(location);
+                return null;
+            }
+            position = -(position + 1);
+            System.arraycopy(leaf.keys, position, leaf.keys, position + 1, leaf.size - position);
+            System.arraycopy(leaf.values, position, leaf.values, position + 1, leaf.size - position);
+            leaf.keys[position] = key;
+            leaf.values[position] = new LocationList();
+            leaf.values[position].add(location);
+            leaf.size++;
+            keyCount++;
+            return leaf.size > ORDER ? splitLeaf(leaf) : null;
+        }
+
+        Inner inner = (Inner) node;
+        int child = childIndex(inner, key);
+        Node right = insert(inner.children[child], key, location);
+        if (right == null) {
+            return null;
+        }
+        System.arraycopy(inner.keys, child, inner.keys, child + 1, inner.size - child);
+        System.arraycopy(inner.children, child + 1, inner.children, child + 2, inner.size - child);
+        inner.keys[child] = splitKey;
+        inner.children[child + 1] = right;
+        inner.size++;
+        return inner.size > ORDER ? splitInner(inner) : null;
+    }
+
+    private Node splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf();
+        int mid = leaf.size / 2;
+        right.size = leaf.size - mid;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, right.size);
+        System.arraycopy(leaf.values, mid, right.values, 0, right.size);
+        for (int i = mid; i < leaf.size; i++) {
+            leaf.keys[i] = null;
+            leaf.values[i] = null;
+        }
+        leaf.size = mid;
+        right.next = leaf.next;
+        leaf.next = right;
+        splitKey = right.keys[0];
+        return right;
+    }
+
+    private Node splitInner(Inner inner) {
+        Inner right = new Inner();
+        int mid = inner.size / 2;
+        Object separator = inner.keys[mid];
+        right.size = inner.size - mid - 1;
+        System.arraycopy(inner.keys, mid + 1, right.keys, 0, right.size);
+        System.arraycopy(inner.children, mid + 1, right.children, 0, right.size + 1);
+        for (int i = mid; i < inner.size; i++) {
+            inner.keys[i] = null;
+            inner.children[i + 1] = null;
+        }
+        inner.size = mid;
+        splitKey = separator;
+        return right;
+    }
+
+    private Leaf findLeaf(Object key) {
+        Node node = root;
+        while (node instanceof Inner) {
+            node = ((Inner) node).children[childIndex(node, key)];
+        }
+        return (Leaf) node;
+    }
+
+    @Override
+    public void lookup(Object key, LocationList out) {
+        Leaf leaf = findLeaf(key);
+        int position = search(leaf, key);
+        if (position >= 0) {
+            out.addAll(leaf.values[position]);
+        }
+    }
+
+    @Override
+    public boolean supportsRange() {
+        return true;
+    }
+
+    @Override
+    public void range(Object low, boolean lowInclusive, Object high, boolean highInclusive, LocationList out) {
+        Leaf leaf;
+        int index;
+        if (low == null) {
+            Node node = root;
+            while (node instanceof Inner) {
+                node = ((Inner) node).children[0];
+            }
+            leaf = (Leaf) node;
+            index = 0;
+        } else {
+            leaf = findLeaf(low);
+            int position = search(leaf, low);
+            index = position >= 0 ? (lowInclusive ? position : position + 1) : -(position + 1);
+        }
+        while (leaf != null) {
+            for (; index < leaf.size; index++) {
+                if (high != null) {
+                    int comparison = compare(leaf.keys[index], high);
+                    if (comparison > 0 || (comparison == 0 && !highInclusive)) {
+                        return;
+                    }
+                }
+                out.addAll(leaf.values[index]);
+            }
+            leaf = leaf.next;
+            index = 0;
+        }
+    }
+
+    @Override
+    public int keyCount() {
+        return keyCount;
+    }
+}
@@ -0,0 +1,352 @@
+package src.java;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of table file blocks shared by every open table in the process, held off-heap in direct buffers
+ * of {@link #BLOCK_SIZE} bytes up to a fixed memory budget.
+ * <p>
+ * Readers pin a block while they decode it and unpin it when they move on; only unpinned blocks can be
+ * evicted. Eviction uses the CLOCK algorithm: a block's reference bit is set when it is hit, and the clock
+ * hand clears reference bits until it finds an unpinned block without one. Blocks enter the pool with the
+ * bit clear, so a block read once by a scan is evicted before blocks that were read again. Scans of files
+ * larger than a quarter of the pool use the cached blocks they find but do not cache the blocks they miss,
+ * so one large scan cannot wipe out the working set of smaller, repeatedly queried tables.
+ * <p>
+ * Storage engines invalidate the blocks from the first byte they change onwards whenever they write,
+ * truncate or close a file. A block read from disk while an invalidation happens is used once and not cached.
+ */
+public class BufferPool {
+    static final int BLOCK_SIZE = 64 * 1024;
+    static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+    /** System property overriding the capacity of the shared pool, in MiB; 0 disables caching. */
+    static final String CAPACITY_PROPERTY = "dbms.bufferPoolMegabytes";
+
+    private static volatile BufferPool shared;
+    private static final AtomicLong nextFileId = new AtomicLong();
+
+    private final int frameCount;
+    private final ByteBuffer[] frames;
+    private final long[] frameFiles;
+    private final long[] frameBlocks;
+    private final int[] frameLengths;
+    private final int[] pinCounts;
+    private final boolean[] referenced;
+    private final Map<BlockKey, Integer> residentBlocks = new HashMap<>();
+    private int hand;
+    private long invalidationEpoch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private static final class BlockKey {
+        final long file;
+        final long block;
+
+        BlockKey(long file, long block) {
+            this.file = file;
+            this.block = block;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey other = (BlockKey) o;
+            return file == other.file && block == other.block;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(file) * 31 + Long.hashCode(block);
+        }
+    }
+
+    /**
+     * A pinned block. Its data must not be used after {@link #unpin(Block)}.
+     */
+    public static final class Block {
+        private final ByteBuffer data;
+        private final int frame;
+        private final long offset;
+
+        Block(ByteBuffer data, int frame, long offset) {
+            this.data = data;
+            this.frame = frame;
+            this.offset = offset;
+        }
+
+        /**
+         * @return The block's bytes, from position 0 to the limit; shorter than {@link #BLOCK_SIZE} at the end of the file
+         */
+        public ByteBuffer data() {
+            return data;
+        }
+
+        /**
+         * @return The file offset of the block's first byte
+         */
+        public long offset() {
+            return offset;
+        }
+    }
+
+    /**
+     * Creates a pool. Frames are allocated when they are first filled.
+     * @param capacity The memory budget in bytes; the pool caches nothing if it is smaller than one block
+     */
+    public BufferPool(long capacity) {
+        this.frameCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(0, capacity / BLOCK_SIZE));
+        this.frames = new ByteBuffer[frameCount];
+        this.frameFiles = new long[frameCount];
+        this.frameBlocks = new long[frameCount];
+        this.frameLengths = new int[frameCount];
+        this.pinCounts = new int[frameCount];
+        this.referenced = new boolean[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            frameFiles[i] = -1;
+        }
+    }
+
+    /**
+     * @return The pool shared by all tables, sized by the {@value #CAPACITY_PROPERTY} system property
+     */
+    public static BufferPool shared() {
+        BufferPool pool = shared;
+        if (pool == null) {
+            synchronized (BufferPool.class) {
+                pool = shared;
+                if (pool == null) {
+                    long megabytes = Long.getLong(CAPACITY_PROPERTY, DEFAULT_CAPACITY / (1024 * 1024));
+                    pool = new BufferPool(megabytes * 1024 * 1024);
+                    shared = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @return A new identifier for an open file, under which its blocks are cached
+     */
+    public static long registerFile() {
+        return nextFileId.getAndIncrement();
+    }
+
+    /**
+     * @return The memory budget in bytes
+     */
+    public long capacity() {
+        return (long) frameCount * BLOCK_SIZE;
+    }
+
+    /**
+     * @param fileSize The size of a file about to be scanned
+     * @return True if a full scan of the file should cache the blocks it reads
+     */
+    public boolean shouldCacheScan(long fileSize) {
+        return fileSize <= capacity() / 4;
+    }
+
+    /**
+     * Pins the block holding a file offset, reading it from the file if it is not cached.
+     * @param fileId The file's identifier from {@link #registerFile()}
+     * @param channel The open file
+     * @param offset Any offset within the block
+     * @param cacheMiss Whether a block that has to be read should be added to the pool
+     * @return The pinned block, or null if the offset is at or past the end of the file
+     * @throws IOException If the block could not be read
+     */
+    public Block pin(long fileId, FileChannel channel, long offset, boolean cacheMiss) throws IOException {
+        long blockNumber = offset / BLOCK_SIZE;
+        BlockKey key = new BlockKey(fileId, blockNumber);
+        int frame = -1;
+        long epoch;
+        synchronized (this) {
+            Integer resident = residentBlocks.get(key);
+            if (resident != null) {
+                pinCounts[resident]++;
+                referenced[resident] = true;
+                hits.increment();
+                QueryMetrics.count(QueryMetrics.Counter.BUFFER_HITS, 1);
+                return view(resident);
+            }
+            if (cacheMiss) {
+                frame = reserveFrame();
+            }
+            epoch = invalidationEpoch;
+        }
+        misses.increment();
+        QueryMetrics.count(QueryMetrics.Counter.BUFFER_MISSES, 1);
+
+        ByteBuffer buffer;
+        if (frame >= 0) {
+            if (frames[frame] == null) {
+                frames[frame] = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            }
+            buffer = frames[frame];
+        } else {
+            buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        }
+        int length;
+        try {
+            length = read(channel, buffer, blockNumber * BLOCK_SIZE);
+        } catch (IOException | RuntimeException e) {
+            if (frame >= 0) {
+                release(frame);
+            }
+            throw e;
+        }
+        QueryMetrics.count(QueryMetrics.Counter.BYTES_READ, length);
+        if (length == 0) {
+            if (frame >= 0) {
+                release(frame);
+            }
+            return null;
+        }
+        if (frame < 0) {
+            return new Block(buffer.duplicate().position(0).limit(length), -1, blockNumber * BLOCK_SIZE);
+        }
+        synchronized (this) {
+            Integer resident = residentBlocks.get(key);
+            if (epoch != invalidationEpoch || resident != null) {
+                // The file changed while the block was read, or another reader cached it first: use this copy
+                // once without caching it
+                ByteBuffer copy = ByteBuffer.allocate(length).put(buffer.duplicate().position(0).limit(length)).flip();
+                pinCounts[frame] = 0;
+                return new Block(copy, -1, blockNumber * BLOCK_SIZE);
+            }
+            frameFiles[frame] = fileId;
+            frameBlocks[frame] = blockNumber;
+            frameLengths[frame] = length;
+            residentBlocks.put(key, frame);
+            return view(frame);
+        }
+    }
+
+    /**
+     * Releases a block returned by {@link #pin}.
+     * @param block The block, or null
+     */
+    public void unpin(Block block) {
+        if (block != null && block.frame >= 0) {
+            release(block.frame);
+        }
+    }
+
+    private synchronized void release(int frame) {
+        pinCounts[frame]--;
+    }
+
+    /**
+     * Drops the cached blocks of a file from the block holding an offset onwards.
+     * @param fileId The file's identifier
+     * @param fromOffset The first offset whose contents changed; 0 drops the whole file
+     */
+    public synchronized void invalidate(long fileId, long fromOffset) {
+        invalidationEpoch++;
+        long firstBlock = fromOffset / BLOCK_SIZE;
+        for (int i = 0; i < frameCount; i++) {
+            if (frameFiles[i] == fileId && frameBlocks[i] >= firstBlock) {
+                residentBlocks.remove(new BlockKey(fileId, frameBlocks[i]));
+                frameFiles[i] = -1;
+                referenced[i] = false;
+                invalidations.increment();
+                // A pinned frame stays reserved by its readers and is reused once they unpin it
+            }
+        }
+    }
+
+    /**
+     * Finds a frame for a new block with the clock hand and pins it. Must be called with the pool locked.
+     * @return The frame, or -1 if every frame is pinned
+     */
+    private int reserveFrame() {
+        for (int step = 0; step < 2 * frameCount; step++) {
+            int frame = hand;
+            hand = hand + 1 == frameCount ? 0 : hand + 1;
+            if (pinCounts[frame] > 0) {
+                continue;
+            }
+            if (referenced[frame]) {
+                referenced[frame] = false;
+                continue;
+            }
+            if (frameFiles[frame] >= 0) {
+                residentBlocks.remove(new BlockKey(frameFiles[frame], frameBlocks[frame]));
+                frameFiles[frame] = -1;
+                evictions.increment();
+            }
+            pinCounts[frame] = 1;
+            return frame;
+        }
+        return -1;
+    }
+
+    private Block view(int frame) {
+        ByteBuffer data = frames[frame].duplicate();
+        data.position(0).limit(frameLengths[frame]);
+        return new Block(data, frame, frameBlocks[frame] * BLOCK_SIZE);
+    }
+
+    private static int read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    /**
+     * @return The fraction of pins served from memory, or 0 before the first pin
+     */
+    public double hitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of bytes held by cached blocks
+     */
+    public synchronized long residentBytes() {
+        long bytes = 0;
+        for (int i = 0; i < frameCount; i++) {
+            if (frameFiles[i] >= 0) {
+                bytes += frameLengths[i];
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Prints the pool's size and hit rate, for {@code SHOW STATS}.
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+        out.printf("Buffer pool: %d of %d MiB resident, %d hits, %d misses, hit rate %.1f%%, %d evictions, %d invalidations%n",
+                residentBytes() / (1024 * 1024), capacity() / (1024 * 1024), hits.sum(), misses.sum(),
+                hitRate() * 100, evictions.sum(), invalidations.sum());
+    }
+}
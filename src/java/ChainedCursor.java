@@ -0,0 +1,58 @@
+package src.java;
+
+import java.io.IOException;
+
+/**
+ * Cursor returning the rows of one cursor and then those of another, such as the stored rows of a table
+ * followed by the rows a transaction has written but not yet committed.
+ */
+public class ChainedCursor implements RowCursor {
+    private final RowCursor first;
+    private final RowCursor second;
+    private RowCursor current;
+
+    /**
+     * @param first The cursor read first
+     * @param second The cursor read once the first is exhausted
+     */
+    public ChainedCursor(RowCursor first, RowCursor second) {
+        this.first = first;
+        this.second = second;
+        this.current = first;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (current == first) {
+            if (first.next()) {
+                return true;
+            }
+            current = second;
+        }
+        return second.next();
+    }
+
+    @Override
+    public long location() {
+        return current.location();
+    }
+
+    @Override
+    public String getString(int ordinal) {
+        return current.getString(ordinal);
+    }
+
+    @Override
+    public int getInt(int ordinal) {
+        return current.getInt(ordinal);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            first.close();
+        } finally {
+            second.close();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package src.java;
+
+/**
+ * A single parsed column definition of a table, as stored in its metadata file.
+ */
+public class ColumnDefinition {
+    private final String name;
+    private final ColumnType type;
+    private final int length;
+
+    /**
+     * Constructs a column definition.
+     * @param name The column name
+     * @param type The column type
+     * @param length The maximum length for varchar columns, 0 for other types
+     */
+    public ColumnDefinition(String name, ColumnType type, int length) {
+        this.name = name;
+        this.type = type;
+        this.length = length;
+    }
+
+    /**
+     * Parses a column type declaration such as "int" or "varchar(100)".
+     * @param name The column name
+     * @param typeDeclaration The type as written in the CREATE TABLE query or metadata file
+     * @return The parsed column definition
+     * @throws IllegalArgumentException If the type is not supported or malformed
+     */
+    public static ColumnDefinition parse(String name, String typeDeclaration) {
+        String type = typeDeclaration.trim().toLowerCase();
+        if ("int".equals(type)) {
+            return new ColumnDefinition(name, ColumnType.INT, 0);
+        }
+        if (type.startsWith("varchar") && type.indexOf('(') > 0 && type.endsWith(")")) {
+            try {
+                int size = Integer.parseInt(type.substring(type.indexOf('(') + 1, type.length() - 1).trim());
+                if (size > 0) {
+                    return new ColumnDefinition(name, ColumnType.VARCHAR, size);
+                }
+            } catch (NumberFormatException ignored) {
+                // Falls through to the error below
+            }
+        }
+        throw new IllegalArgumentException("Unsupported type \"" + typeDeclaration + "\" for column " + name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ColumnType getType() {
+        return type;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Checks whether a value can be stored in this column.
+     * @param value The unquoted value
+     * @return An error message describing the problem, or null if the value is valid
+     */
+    public String validate(String value) {
+        if (type == ColumnType.VARCHAR) {
+            if (value.length() > length) {
+                return "Value \"" + value + "\" exceeds size limit for column " + name;
+            }
+        } else if (!isInt(value)) {
+            return "Type mismatch for column " + name + "; expected int, got \"" + value + "\"";
+        }
+        return null;
+    }
+
+    /**
+     * Checks that a value is a non-negative decimal number that fits in an int, without using regexes.
+     * @param value The value to check
+     * @return True if the value is a valid int column value
+     */
+    static boolean isInt(String value) {
+        int length = value.length();
+        if (length == 0 || length > 10) {
+            return false;
+        }
+        long result = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the largest number of bytes a value of this column takes in the binary storage format.
+     * @return 4 for int columns, the length prefix plus the UTF-8 worst case for varchar columns
+     */
+    public int maxEncodedSize() {
+        return type == ColumnType.INT ? 4 : 2 + 3 * length;
+    }
+
+    /**
+     * Returns the type declaration in the form written to the metadata file.
+     * @return "int" or "varchar(n)"
+     */
+    public String typeDeclaration() {
+        return type == ColumnType.INT ? "int" : "varchar(" + length + ")";
+    }
+}
@@ -0,0 +1,9 @@
+package src.java;
+
+/**
+ * The column types supported by table metadata.
+ */
+public enum ColumnType {
+    INT,
+    VARCHAR
+}
@@ -0,0 +1,715 @@
+package src.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compressed columnar storage engine that keeps rows in segments of up to {@value #SEGMENT_ROWS} rows.
+ * <p>
+ * Within a segment every column is stored as one block. Int columns store their first value followed by the
+ * differences between neighbouring values, minus the smallest difference and bit-packed at the width of the
+ * largest remainder, so an ascending id column takes no bits per row at all. Varchar columns store a sorted
+ * dictionary of their distinct values followed by the bit-packed dictionary code of every row. The segment
+ * header holds the length of every block and a {@link ZoneMap} of the smallest and largest value of every
+ * column. Scans given a WHERE condition skip the segments whose zone map rules it out, and a column block
+ * is decoded only when a row of its segment is asked for that column.
+ * <p>
+ * The rows of the last, partially filled segment are kept in memory. Flushing rewrites that segment in
+ * place, so cursors read it from the copy published by the last flush rather than from the file; once
+ * it is full it is sealed and never changes again. A row's location is its segment number shifted left
+ * by 16 bits combined with its row number within the segment.
+ */
+public class ColumnarTableStorage implements TableStorage {
+    static final int SEGMENT_ROWS = 8192;
+    /** Segment length, header length, row count and column count. */
+    private static final int FIXED_HEADER_SIZE = 16;
+
+    private final File dataFile;
+    private final TableSchema schema;
+    private final FileChannel channel;
+    private final BufferPool pool = BufferPool.shared();
+    private final long fileId = BufferPool.registerFile();
+    private final List<Segment> segments = new ArrayList<>(); // Sealed segments, written or not
+    private final List<byte[]> unwritten = new ArrayList<>(); // Encoded segments at the end of the list
+    private List<String[]> tailRows = new ArrayList<>();
+    private long tailOffset;
+    private boolean tailDirty;
+    private volatile State state;
+
+    /**
+     * A sealed segment: its place in the file and what its header says about it.
+     */
+    private static final class Segment {
+        final long offset;
+        final int length;
+        final int rowCount;
+        final int[] blockStarts; // Relative to the segment offset
+        final int[] blockLengths;
+        final ZoneMap zoneMap;
+
+        Segment(long offset, int length, int rowCount, int[] blockStarts, int[] blockLengths, ZoneMap zoneMap) {
+            this.offset = offset;
+            this.length = length;
+            this.rowCount = rowCount;
+            this.blockStarts = blockStarts;
+            this.blockLengths = blockLengths;
+            this.zoneMap = zoneMap;
+        }
+    }
+
+    /**
+     * What cursors can read: the sealed segments in the file and the rows of the last segment as flushed.
+     */
+    private static final class State {
+        final Segment[] segments;
+        final String[][] tail;
+
+        State(Segment[] segments, String[][] tail) {
+            this.segments = segments;
+            this.tail = tail;
+        }
+
+        int segmentCount() {
+            return segments.length + (tail.length > 0 ? 1 : 0);
+        }
+    }
+
+    /**
+     * The decoded values of a varchar column block.
+     */
+    private static final class Dictionary {
+        final String[] words;
+        final int[] codes;
+
+        Dictionary(String[] words, int[] codes) {
+            this.words = words;
+            this.codes = codes;
+        }
+    }
+
+    /**
+     * Opens a columnar storage engine, reading the segment headers and loading the rows of a last segment
+     * that is not full so new rows can be added to it.
+     * @param dataFile The {@code <table>.col} data file
+     * @param schema The schema of the table
+     * @throws IOException If the data file could not be opened or read
+     */
+    public ColumnarTableStorage(File dataFile, TableSchema schema) throws IOException {
+        this.dataFile = dataFile;
+        this.schema = schema;
+        this.channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        long offset = 0;
+        while (offset < size) {
+            Segment segment = size - offset < FIXED_HEADER_SIZE ? null : readSegment(offset, size);
+            if (segment == null) {
+                // Only the last segment is ever rewritten; its rows are restored from the write-ahead log
+                channel.truncate(offset);
+                break;
+            }
+            segments.add(segment);
+            offset += segment.length;
+        }
+        tailOffset = offset;
+        if (!segments.isEmpty() && segments.get(segments.size() - 1).rowCount < SEGMENT_ROWS) {
+            Segment last = segments.remove(segments.size() - 1);
+            tailRows.addAll(Arrays.asList(readRows(last)));
+            tailOffset = last.offset;
+        }
+        publish();
+    }
+
+    @Override
+    public File getDataFile() {
+        return dataFile;
+    }
+
+    @Override
+    public long append(String[] values) throws IOException {
+        tailRows.add(values.clone());
+        tailDirty = true;
+        long location = location(segments.size(), tailRows.size() - 1);
+        if (tailRows.size() == SEGMENT_ROWS) {
+            byte[] encoded = encode(tailRows);
+            segments.add(parseSegment(ByteBuffer.wrap(encoded), tailOffset));
+            unwritten.add(encoded);
+            tailOffset += encoded.length;
+            tailRows = new ArrayList<>();
+        }
+        return location;
+    }
+
+    static long location(long segment, int row) {
+        return (segment << 16) | row;
+    }
+
+    @Override
+    public long mark() {
+        return location(segments.size(), tailRows.size());
+    }
+
+    /**
+     * Drops the rows appended after the mark. If the mark lies in a sealed segment, that segment is reopened
+     * as the last one and the segments after it are cut off.
+     * @param mark A mark returned by {@link #mark()}
+     * @throws IOException If an input or output exception occurred
+     */
+    @Override
+    public void truncateTo(long mark) throws IOException {
+        flush(false);
+        int segment = (int) (mark >>> 16);
+        int rows = (int) (mark & 0xFFFF);
+        if (segment < segments.size()) {
+            Segment reopened = segments.get(segment);
+            tailRows = new ArrayList<>(Arrays.asList(readRows(reopened)));
+            tailOffset = reopened.offset;
+            segments.subList(segment, segments.size()).clear();
+        }
+        if (rows < tailRows.size()) {
+            tailRows.subList(rows, tailRows.size()).clear();
+        }
+        tailDirty = true;
+        flush(false);
+    }
+
+    @Override
+    public boolean hasPendingRows() {
+        return tailDirty || !unwritten.isEmpty();
+    }
+
+    /**
+     * Writes the sealed segments that are not in the file yet and rewrites the last segment after them.
+     * @param sync Whether to force the written data to the storage device
+     * @throws IOException If an input or output exception occurred
+     */
+    @Override
+    public void flush(boolean sync) throws IOException {
+        if (!hasPendingRows()) {
+            return;
+        }
+        long position = tailOffset;
+        for (int i = unwritten.size() - 1; i >= 0; i--) {
+            position -= unwritten.get(i).length;
+        }
+        long start = position;
+        for (byte[] encoded : unwritten) {
+            position += write(ByteBuffer.wrap(encoded), position);
+        }
+        if (!tailRows.isEmpty()) {
+            position += write(ByteBuffer.wrap(encode(tailRows)), position);
+        }
+        channel.truncate(position);
+        pool.invalidate(fileId, start);
+        QueryMetrics.count(QueryMetrics.Counter.BYTES_WRITTEN, position - start);
+        unwritten.clear();
+        tailDirty = false;
+        if (sync) {
+            channel.force(false);
+            QueryMetrics.count(QueryMetrics.Counter.FSYNCS, 1);
+        }
+        publish();
+    }
+
+    private void publish() {
+        state = new State(segments.toArray(new Segment[0]), tailRows.toArray(new String[0][]));
+    }
+
+    @Override
+    public RowCursor scanAfter(long location) throws IOException {
+        return new SegmentCursor(state, location, null, Long.MAX_VALUE, null);
+    }
+
+    @Override
+    public RowCursor scan(Condition condition) throws IOException {
+        return new SegmentCursor(state, BEFORE_FIRST, null, Long.MAX_VALUE, condition);
+    }
+
+    /**
+     * Splits the file into segment ranges.
+     */
+    @Override
+    public long[] split(int parts) throws IOException {
+        int segmentCount = state.segmentCount();
+        int count = Math.max(1, Math.min(parts, segmentCount));
+        long[] boundaries = new long[count + 1];
+        for (int i = 0; i <= count; i++) {
+            boundaries[i] = location((long) segmentCount * i / count, 0);
+        }
+        return boundaries;
+    }
+
+    @Override
+    public RowCursor scanRange(long start, long end) throws IOException {
+        return scanRange(start, end, null);
+    }
+
+    @Override
+    public RowCursor scanRange(long start, long end, Condition condition) throws IOException {
+        // For a range starting at row 0, start - 1 carries row 0xFFFF of the previous segment
+        return new SegmentCursor(state, start == 0 ? BEFORE_FIRST : start - 1, null, end, condition);
+    }
+
+    @Override
+    public RowCursor fetch(long[] locations) throws IOException {
+        return new SegmentCursor(state, BEFORE_FIRST, locations, Long.MAX_VALUE, null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush(false);
+        } finally {
+            pool.invalidate(fileId, 0);
+            channel.close();
+        }
+    }
+
+    private int write(ByteBuffer buffer, long position) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        return length;
+    }
+
+    /**
+     * Copies a byte range of the data file through the buffer pool.
+     * @param position The file offset of the first byte
+     * @param length The number of bytes
+     * @param cacheBlocks Whether blocks that have to be read should be added to the pool
+     * @return The bytes, in a buffer positioned at 0
+     * @throws IOException If the range extends past the end of the file
+     */
+    private ByteBuffer read(long position, int length, boolean cacheBlocks) throws IOException {
+        byte[] bytes = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            BufferPool.Block block = pool.pin(fileId, channel, position + copied, cacheBlocks);
+            if (block == null) {
+                throw new IOException("Unexpected end of data file " + dataFile.getName());
+            }
+            try {
+                ByteBuffer data = block.data();
+                int start = (int) (position + copied - block.offset());
+                int count = Math.min(length - copied, data.limit() - start);
+                if (count <= 0) {
+                    throw new IOException("Unexpected end of data file " + dataFile.getName());
+                }
+                data.get(start, bytes, copied, count);
+                copied += count;
+            } finally {
+                pool.unpin(block);
+            }
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Reads the header of the segment at a file offset.
+     * @return The segment, or null if the file ends inside it
+     */
+    private Segment readSegment(long offset, long size) throws IOException {
+        ByteBuffer fixed = read(offset, FIXED_HEADER_SIZE, false);
+        int length = fixed.getInt(0);
+        int headerLength = fixed.getInt(4);
+        if (length < FIXED_HEADER_SIZE || headerLength < FIXED_HEADER_SIZE || headerLength > length
+                || length > size - offset) {
+            return null;
+        }
+        return parseSegment(read(offset, headerLength, false), offset);
+    }
+
+    /**
+     * Parses a segment header.
+     * @param header A buffer starting with the header
+     * @param offset The file offset of the segment
+     * @return The segment
+     */
+    private Segment parseSegment(ByteBuffer header, long offset) {
+        int length = header.getInt();
+        int start = header.getInt();
+        int rowCount = header.getInt();
+        int columnCount = Math.min(header.getInt(), schema.columnCount());
+        int[] blockStarts = new int[columnCount];
+        int[] blockLengths = new int[columnCount];
+        Object[] min = new Object[columnCount];
+        Object[] max = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            blockStarts[i] = start;
+            blockLengths[i] = header.getInt();
+            start += blockLengths[i];
+            if (schema.column(i).getType() == ColumnType.INT) {
+                min[i] = header.getInt();
+                max[i] = header.getInt();
+            } else {
+                min[i] = readString(header);
+                max[i] = readString(header);
+            }
+        }
+        return new Segment(offset, length, rowCount, blockStarts, blockLengths, new ZoneMap(schema, min, max));
+    }
+
+    /**
+     * Reads every row of a sealed segment.
+     */
+    private String[][] readRows(Segment segment) throws IOException {
+        ByteBuffer data = read(segment.offset, segment.length, false);
+        String[][] rows = new String[segment.rowCount][schema.columnCount()];
+        for (int i = 0; i < segment.blockStarts.length; i++) {
+            if (schema.column(i).getType() == ColumnType.INT) {
+                int[] values = decodeInts(data, segment.blockStarts[i], segment.rowCount);
+                for (int row = 0; row < rows.length; row++) {
+                    rows[row][i] = Integer.toString(values[row]);
+                }
+            } else {
+                Dictionary dictionary = decodeStrings(data, segment.blockStarts[i], segment.rowCount);
+                for (int row = 0; row < rows.length; row++) {
+                    rows[row][i] = dictionary.words[dictionary.codes[row]];
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Encodes rows as a segment: the header with the block lengths and zone maps, then one block per column.
+     * @param rows The rows, at most {@value #SEGMENT_ROWS}
+     * @return The encoded segment
+     */
+    private byte[] encode(List<String[]> rows) {
+        int columnCount = schema.columnCount();
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+        try (DataOutputStream header = new DataOutputStream(headerBytes);
+             DataOutputStream blocks = new DataOutputStream(blockBytes)) {
+            for (int i = 0; i < columnCount; i++) {
+                int blockStart = blocks.size();
+                if (schema.column(i).getType() == ColumnType.INT) {
+                    int[] values = new int[rows.size()];
+                    for (int row = 0; row < values.length; row++) {
+                        values[row] = Integer.parseInt(rows.get(row)[i]);
+                    }
+                    encodeInts(values, blocks);
+                    header.writeInt(blocks.size() - blockStart);
+                    header.writeInt(Arrays.stream(values).min().orElse(0));
+                    header.writeInt(Arrays.stream(values).max().orElse(0));
+                } else {
+                    String[] words = encodeStrings(rows, i, blocks);
+                    header.writeInt(blocks.size() - blockStart);
+                    writeString(header, words.length == 0 ? "" : words[0]);
+                    writeString(header, words.length == 0 ? "" : words[words.length - 1]);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Not thrown by in-memory streams
+        }
+        int headerLength = FIXED_HEADER_SIZE + headerBytes.size();
+        ByteBuffer segment = ByteBuffer.allocate(headerLength + blockBytes.size());
+        segment.putInt(segment.capacity()).putInt(headerLength).putInt(rows.size()).putInt(columnCount);
+        segment.put(headerBytes.toByteArray()).put(blockBytes.toByteArray());
+        return segment.array();
+    }
+
+    /**
+     * Writes the first value, the smallest difference between neighbouring values, the bit width and the
+     * bit-packed differences above the smallest one.
+     */
+    private static void encodeInts(int[] values, DataOutputStream out) throws IOException {
+        long[] deltas = new long[Math.max(0, values.length - 1)];
+        long minDelta = Long.MAX_VALUE;
+        long maxDelta = Long.MIN_VALUE;
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] = (long) values[i + 1] - values[i];
+            minDelta = Math.min(minDelta, deltas[i]);
+            maxDelta = Math.max(maxDelta, deltas[i]);
+        }
+        if (deltas.length == 0) {
+            minDelta = maxDelta = 0;
+        }
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] -= minDelta;
+        }
+        int width = 64 - Long.numberOfLeadingZeros(maxDelta - minDelta);
+        out.writeInt(values.length == 0 ? 0 : values[0]);
+        out.writeLong(minDelta);
+        out.writeByte(width);
+        pack(deltas, width, out);
+    }
+
+    private static int[] decodeInts(ByteBuffer data, int start, int rowCount) {
+        int[] values = new int[rowCount];
+        if (rowCount == 0) {
+            return values;
+        }
+        long minDelta = data.getLong(start + 4);
+        int width = data.get(start + 12);
+        long[] deltas = unpack(data, start + 13, rowCount - 1, width);
+        values[0] = data.getInt(start);
+        for (int i = 1; i < rowCount; i++) {
+            values[i] = (int) (values[i - 1] + minDelta + deltas[i - 1]);
+        }
+        return values;
+    }
+
+    /**
+     * Writes the sorted distinct values of a column, the bit width and the bit-packed code of every row.
+     * @return The sorted distinct values
+     */
+    private static String[] encodeStrings(List<String[]> rows, int ordinal, DataOutputStream out) throws IOException {
+        Map<String, Integer> codes = new HashMap<>();
+        for (String[] row : rows) {
+            codes.putIfAbsent(row[ordinal], 0);
+        }
+        String[] words = codes.keySet().toArray(new String[0]);
+        Arrays.sort(words);
+        for (int i = 0; i < words.length; i++) {
+            codes.put(words[i], i);
+        }
+        long[] rowCodes = new long[rows.size()];
+        for (int i = 0; i < rowCodes.length; i++) {
+            rowCodes[i] = codes.get(rows.get(i)[ordinal]);
+        }
+        int width = words.length <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(words.length - 1);
+        out.writeInt(words.length);
+        for (String word : words) {
+            writeString(out, word);
+        }
+        out.writeByte(width);
+        pack(rowCodes, width, out);
+        return words;
+    }
+
+    private static Dictionary decodeStrings(ByteBuffer data, int start, int rowCount) {
+        ByteBuffer block = data.duplicate().position(start);
+        String[] words = new String[block.getInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = readString(block);
+        }
+        int width = block.get();
+        long[] packed = unpack(block, block.position(), rowCount, width);
+        int[] codes = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            codes[i] = (int) packed[i];
+        }
+        return new Dictionary(words, codes);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes values of at most 33 bits each using the given number of bits per value, lowest bits first.
+     */
+    private static void pack(long[] values, int width, DataOutputStream out) throws IOException {
+        long buffer = 0;
+        int bits = 0;
+        for (long value : values) {
+            buffer |= value << bits;
+            bits += width;
+            while (bits >= 8) {
+                out.writeByte((int) buffer);
+                buffer >>>= 8;
+                bits -= 8;
+            }
+        }
+        if (bits > 0) {
+            out.writeByte((int) buffer);
+        }
+    }
+
+    private static long[] unpack(ByteBuffer data, int start, int count, int width) {
+        long[] values = new long[count];
+        long mask = (1L << width) - 1;
+        long buffer = 0;
+        int bits = 0;
+        int position = start;
+        for (int i = 0; i < count; i++) {
+            while (bits < width) {
+                buffer |= (data.get(position++) & 0xFFL) << bits;
+                bits += 8;
+            }
+            values[i] = buffer & mask;
+            buffer >>>= width;
+            bits -= width;
+        }
+        return values;
+    }
+
+    /**
+     * Cursor over the segments of a published state, either sequentially or over given locations. Entering
+     * a sealed segment reads its bytes; each column block is decoded the first time a row asks for it.
+     * A sequential scan given a condition skips the sealed segments whose zone map rules it out.
+     */
+    private final class SegmentCursor implements RowCursor {
+        private final State state;
+        private final long[] locations;
+        private final long limit;
+        private final Condition condition;
+        private final boolean cacheBlocks;
+        private final Object[] columns = new Object[schema.columnCount()];
+        private int nextLocation;
+        private int segmentNumber;
+        private int row;
+        private int rowCount = -1;
+        private Segment segment;
+        private ByteBuffer data;
+
+        /**
+         * @param state The state to read
+         * @param after The location of the row to skip before the first row, or BEFORE_FIRST
+         * @param locations The locations to visit instead of reading sequentially, or null
+         * @param limit The location at which a sequential scan stops
+         * @param condition The WHERE condition used to skip segments, or null
+         */
+        SegmentCursor(State state, long after, long[] locations, long limit, Condition condition) {
+            this.state = state;
+            this.locations = locations;
+            this.limit = limit;
+            this.condition = locations == null ? condition : null;
+            long size = state.segments.length == 0 ? 0 : state.segments[state.segments.length - 1].offset
+                    + state.segments[state.segments.length - 1].length;
+            this.cacheBlocks = locations != null || pool.shouldCacheScan(size);
+            if (after == BEFORE_FIRST) {
+                row = -1;
+            } else {
+                segmentNumber = (int) (after >>> 16);
+                row = (int) (after & 0xFFFF);
+                if (row == 0xFFFF) {
+                    segmentNumber++; // Positioned before the first row of the next segment
+                    row = -1;
+                }
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (locations != null) {
+                while (nextLocation < locations.length) {
+                    long location = locations[nextLocation++];
+                    if (position((int) (location >>> 16), (int) (location & 0xFFFF))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            int segmentCount = state.segmentCount();
+            while (segmentNumber < segmentCount && ColumnarTableStorage.location(segmentNumber, row + 1) < limit) {
+                if (position(segmentNumber, row + 1)) {
+                    return true;
+                }
+                segmentNumber++;
+                row = -1;
+                rowCount = -1;
+            }
+            return false;
+        }
+
+        @Override
+        public long location() {
+            return ColumnarTableStorage.location(segmentNumber, row);
+        }
+
+        /**
+         * Moves the cursor to a row.
+         * @return True if the segment holds the row and was not skipped
+         */
+        private boolean position(int number, int rowNumber) throws IOException {
+            if (number >= state.segmentCount()) {
+                return false;
+            }
+            if (number != segmentNumber || rowCount < 0) {
+                segmentNumber = number;
+                openSegment();
+            }
+            row = rowNumber;
+            return row < rowCount;
+        }
+
+        private void openSegment() throws IOException {
+            Arrays.fill(columns, null);
+            data = null;
+            if (segmentNumber == state.segments.length) {
+                segment = null;
+                rowCount = state.tail.length;
+                return;
+            }
+            segment = state.segments[segmentNumber];
+            if (condition != null && !segment.zoneMap.mayMatch(condition)) {
+                QueryMetrics.count(QueryMetrics.Counter.SEGMENTS_SKIPPED, 1);
+                rowCount = 0;
+                return;
+            }
+            rowCount = segment.rowCount;
+            data = read(segment.offset, segment.length, cacheBlocks);
+        }
+
+        /**
+         * Decodes the block of a column in the current segment unless it already has been.
+         * @return The int values or the dictionary, or null if the segment does not hold the column
+         */
+        private Object column(int ordinal) {
+            if (ordinal >= segment.blockStarts.length) {
+                return null;
+            }
+            if (columns[ordinal] == null) {
+                columns[ordinal] = schema.column(ordinal).getType() == ColumnType.INT
+                        ? decodeInts(data, segment.blockStarts[ordinal], rowCount)
+                        : decodeStrings(data, segment.blockStarts[ordinal], rowCount);
+            }
+            return columns[ordinal];
+        }
+
+        @Override
+        public String getString(int ordinal) {
+            if (segment == null) {
+                String[] values = state.tail[row];
+                return ordinal < values.length ? values[ordinal] : null;
+            }
+            Object values = column(ordinal);
+            if (values instanceof int[]) {
+                return Integer.toString(((int[]) values)[row]);
+            }
+            Dictionary dictionary = (Dictionary) values;
+            return dictionary == null ? null : dictionary.words[dictionary.codes[row]];
+        }
+
+        @Override
+        public int getInt(int ordinal) {
+            Object values = segment == null ? null : column(ordinal);
+            if (values instanceof int[]) {
+                return ((int[]) values)[row];
+            }
+            String value = getString(ordinal);
+            if (value == null) {
+                throw new NumberFormatException("Missing value for column " + ordinal);
+            }
+            return Integer.parseInt(value);
+        }
+
+        @Override
+        public void close() {
+            data = null;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package src.java;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.TreeMap;
+
+/**
+ * Orders the commits of a database and tracks the snapshots that read it. Every commit gets the next
+ * timestamp and publishes a new {@link TableVersion} for each table it changed; a snapshot is the timestamp
+ * of the last commit that was fully published when the snapshot was taken, so it sees every table as of
+ * that commit or none of its changes.
+ * <p>
+ * The oldest open snapshot bounds garbage collection: table versions, and the deleted rows that only
+ * older versions can still see, are kept for as long as a snapshot may read them.
+ */
+public class CommitClock {
+    private long lastCommit; // Guarded by this
+    private volatile long visible;
+    private final TreeMap<Long, Integer> openSnapshots = new TreeMap<>(); // Guarded by this
+
+    /**
+     * Takes a snapshot of the committed state. It must be released with {@link #release(long)}.
+     * @return The snapshot timestamp
+     */
+    public synchronized long snapshot() {
+        long timestamp = visible;
+        openSnapshots.merge(timestamp, 1, Integer::sum);
+        return timestamp;
+    }
+
+    /**
+     * @param snapshot A timestamp returned by {@link #snapshot()}
+     */
+    public synchronized void release(long snapshot) {
+        openSnapshots.computeIfPresent(snapshot, (timestamp, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * @return The timestamp of the oldest open snapshot, or of the last commit if none is open
+     */
+    public synchronized long oldestSnapshot() {
+        return openSnapshots.isEmpty() ? visible : openSnapshots.firstKey();
+    }
+
+    /**
+     * Commits the changes applied to a set of tables: each table publishes its current state under a new
+     * timestamp, which becomes visible to new snapshots once every table has done so. The caller holds the
+     * tables' write mutexes and has written their rows to the data files.
+     * @param tables The tables changed by the commit
+     * @return The commit timestamp
+     * @throws IOException If the state of a table could not be read
+     */
+    public synchronized long commit(Collection<OpenTable> tables) throws IOException {
+        long timestamp = ++lastCommit;
+        long oldest = openSnapshots.isEmpty() ? visible : openSnapshots.firstKey();
+        for (OpenTable table : tables) {
+            table.publish(timestamp, oldest);
+        }
+        visible = timestamp;
+        return timestamp;
+    }
+}
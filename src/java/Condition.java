@@ -0,0 +1,395 @@
+package src.java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parsed form of a WHERE clause. A condition refers to columns by name and is compiled once per query
+ * into a {@link RowPredicate} that reads values by ordinal.
+ */
+public abstract class Condition {
+
+    /**
+     * Comparison operators supported in WHERE clauses.
+     */
+    public enum Operator {
+        EQ("="), NE("<>"), LT("<"), LE("<="), GT(">"), GE(">=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Looks up an operator by its symbol; {@code !=} is accepted as an alias of {@code <>}.
+         * @param symbol The operator symbol
+         * @return The operator, or null if the symbol is not a comparison operator
+         */
+        static Operator fromSymbol(String symbol) {
+            if ("!=".equals(symbol)) {
+                return NE;
+            }
+            for (Operator operator : values()) {
+                if (operator.symbol.equals(symbol)) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+
+        boolean matches(int comparison) {
+            switch (this) {
+                case EQ:
+                    return comparison == 0;
+                case NE:
+                    return comparison != 0;
+                case LT:
+                    return comparison < 0;
+                case LE:
+                    return comparison <= 0;
+                case GT:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return symbol;
+        }
+    }
+
+    /**
+     * A literal value in a condition, kept as written until the column type is known.
+     * A {@code ?} placeholder of a prepared statement is a literal without text until it is bound.
+     */
+    public static final class Literal {
+        final String text;
+        final boolean numeric;
+        final int parameter;
+
+        Literal(String text, boolean numeric) {
+            this.text = text;
+            this.numeric = numeric;
+            this.parameter = -1;
+        }
+
+        private Literal(int parameter) {
+            this.text = null;
+            this.numeric = false;
+            this.parameter = parameter;
+        }
+
+        /**
+         * Creates the placeholder for a parameter of a prepared statement.
+         * @param index The zero-based position of the parameter
+         * @return The placeholder
+         */
+        static Literal parameter(int index) {
+            return new Literal(index);
+        }
+
+        boolean isParameter() {
+            return parameter >= 0;
+        }
+
+        /**
+         * Replaces a placeholder with its parameter value.
+         * @param parameters The values of the statement's parameters
+         * @return The parameter value, or this literal if it is not a placeholder
+         */
+        Literal bind(List<Literal> parameters) {
+            return parameter < 0 ? this : parameters.get(parameter);
+        }
+
+        /**
+         * Converts the literal for comparison with an int column.
+         * @param column The column the literal is compared with
+         * @return The literal as a long
+         * @throws IllegalArgumentException If the literal is not a number
+         */
+        long asLong(ColumnDefinition column) {
+            if (parameter >= 0) {
+                throw new IllegalArgumentException("Parameter " + (parameter + 1) + " is not bound");
+            }
+            try {
+                return Long.parseLong(text.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Type mismatch for column " + column.getName()
+                        + "; expected int, got \"" + text + "\"");
+            }
+        }
+
+        @Override
+        public String toString() {
+            if (parameter >= 0) {
+                return "?";
+            }
+            return numeric ? text : "'" + text.replace("'", "''") + "'";
+        }
+    }
+
+    /**
+     * Compiles the condition against a schema, resolving column names to ordinals once.
+     * @param schema The schema of the table the condition is evaluated on
+     * @return The compiled predicate
+     * @throws IllegalArgumentException If the condition names an unknown column or mismatches a column type
+     */
+    public abstract RowPredicate compile(TableSchema schema);
+
+    /**
+     * Substitutes the parameters of a prepared statement for its {@code ?} placeholders.
+     * @param parameters The parameter values in order
+     * @return The condition with every placeholder replaced
+     */
+    public abstract Condition bind(List<Literal> parameters);
+
+    static int resolve(TableSchema schema, String column) {
+        int ordinal = schema.ordinalOf(column);
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Unknown column " + column + " in table " + schema.getTableName());
+        }
+        return ordinal;
+    }
+
+    /**
+     * {@code column <op> literal}.
+     */
+    public static final class Comparison extends Condition {
+        final String column;
+        final Operator operator;
+        final Literal literal;
+
+        Comparison(String column, Operator operator, Literal literal) {
+            this.column = column;
+            this.operator = operator;
+            this.literal = literal;
+        }
+
+        @Override
+        public RowPredicate compile(TableSchema schema) {
+            int ordinal = resolve(schema, column);
+            ColumnDefinition definition = schema.column(ordinal);
+            Operator op = operator;
+            if (definition.getType() == ColumnType.INT) {
+                long value = literal.asLong(definition);
+                return row -> {
+                    try {
+                        return op.matches(Long.compare(row.getInt(ordinal), value));
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                };
+            }
+            String value = literal.text;
+            if (literal.isParameter()) {
+                literal.asLong(definition); // Reports the unbound parameter
+            }
+            return row -> {
+                String actual = row.getString(ordinal);
+                return actual != null && op.matches(actual.compareTo(value));
+            };
+        }
+
+        @Override
+        public Condition bind(List<Literal> parameters) {
+            return literal.isParameter() ? new Comparison(column, operator, literal.bind(parameters)) : this;
+        }
+
+        @Override
+        public String toString() {
+            return column + " " + operator + " " + literal;
+        }
+    }
+
+    /**
+     * {@code column [NOT] IN (literal, ...)}.
+     */
+    public static final class In extends Condition {
+        final String column;
+        final List<Literal> values;
+        final boolean negated;
+
+        In(String column, List<Literal> values, boolean negated) {
+            this.column = column;
+            this.values = Collections.unmodifiableList(new ArrayList<>(values));
+            this.negated = negated;
+        }
+
+        @Override
+        public RowPredicate compile(TableSchema schema) {
+            int ordinal = resolve(schema, column);
+            ColumnDefinition definition = schema.column(ordinal);
+            boolean expected = !negated;
+            if (definition.getType() == ColumnType.INT) {
+                Set<Integer> set = new HashSet<>();
+                for (Literal literal : values) {
+                    long value = literal.asLong(definition);
+                    if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                        set.add((int) value);
+                    }
+                }
+                return row -> {
+                    try {
+                        return set.contains(row.getInt(ordinal)) == expected;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                };
+            }
+            Set<String> set = new HashSet<>();
+            for (Literal literal : values) {
+                if (literal.isParameter()) {
+                    literal.asLong(definition); // Reports the unbound parameter
+                }
+                set.add(literal.text);
+            }
+            return row -> {
+                String actual = row.getString(ordinal);
+                return actual != null && set.contains(actual) == expected;
+            };
+        }
+
+        @Override
+        public Condition bind(List<Literal> parameters) {
+            List<Literal> bound = new ArrayList<>(values.size());
+            for (Literal literal : values) {
+                bound.add(literal.bind(parameters));
+            }
+            return new In(column, bound, negated);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(column).append(negated ? " NOT IN (" : " IN (");
+            for (int i = 0; i < values.size(); i++) {
+                text.append(i == 0 ? "" : ", ").append(values.get(i));
+            }
+            return text.append(')').toString();
+        }
+    }
+
+    /**
+     * Conjunction of two or more conditions, evaluated left to right with short-circuiting.
+     */
+    public static final class And extends Condition {
+        final List<Condition> operands;
+
+        And(List<Condition> operands) {
+            this.operands = Collections.unmodifiableList(new ArrayList<>(operands));
+        }
+
+        @Override
+        public RowPredicate compile(TableSchema schema) {
+            RowPredicate[] predicates = compileAll(operands, schema);
+            return row -> {
+                for (RowPredicate predicate : predicates) {
+                    if (!predicate.test(row)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        }
+
+        @Override
+        public Condition bind(List<Literal> parameters) {
+            return new And(bindAll(operands, parameters));
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, " AND ");
+        }
+    }
+
+    /**
+     * Disjunction of two or more conditions, evaluated left to right with short-circuiting.
+     */
+    public static final class Or extends Condition {
+        final List<Condition> operands;
+
+        Or(List<Condition> operands) {
+            this.operands = Collections.unmodifiableList(new ArrayList<>(operands));
+        }
+
+        @Override
+        public RowPredicate compile(TableSchema schema) {
+            RowPredicate[] predicates = compileAll(operands, schema);
+            return row -> {
+                for (RowPredicate predicate : predicates) {
+                    if (predicate.test(row)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+
+        @Override
+        public Condition bind(List<Literal> parameters) {
+            return new Or(bindAll(operands, parameters));
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, " OR ");
+        }
+    }
+
+    /**
+     * Negation of a condition.
+     */
+    public static final class Not extends Condition {
+        final Condition operand;
+
+        Not(Condition operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public RowPredicate compile(TableSchema schema) {
+            RowPredicate predicate = operand.compile(schema);
+            return row -> !predicate.test(row);
+        }
+
+        @Override
+        public Condition bind(List<Literal> parameters) {
+            return new Not(operand.bind(parameters));
+        }
+
+        @Override
+        public String toString() {
+            return "NOT (" + operand + ")";
+        }
+    }
+
+    private static RowPredicate[] compileAll(List<Condition> operands, TableSchema schema) {
+        RowPredicate[] predicates = new RowPredicate[operands.size()];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = operands.get(i).compile(schema);
+        }
+        return predicates;
+    }
+
+    private static List<Condition> bindAll(List<Condition> operands, List<Literal> parameters) {
+        List<Condition> bound = new ArrayList<>(operands.size());
+        for (Condition operand : operands) {
+            bound.add(operand.bind(parameters));
+        }
+        return bound;
+    }
+
+    private static String join(List<Condition> operands, String separator) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < operands.size(); i++) {
+            text.append(i == 0 ? "(" : separator).append(operands.get(i));
+        }
+        return text.append(')').toString();
+    }
+}
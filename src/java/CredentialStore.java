@@ -0,0 +1,199 @@
+package src.java;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registered users indexed by username. Registrations are appended to a log file; when the log holds
+ * more than {@link #COMPACT_THRESHOLD} records it is folded into a snapshot file holding one record
+ * per user, so loading stays proportional to the number of users.
+ * <p>
+ * Both files are UTF-8 text in the record format {@code UUID:|Username:|Password}, with an optional header line.
+ */
+public class CredentialStore {
+    static final int COMPACT_THRESHOLD = 1024;
+    private static final String DELIMITER = ":|";
+    private static final String HEADER = "UUID" + DELIMITER + "Username" + DELIMITER + "Password";
+
+    private final File logFile;
+    private final File snapshotFile;
+    private final Map<String, Credential> credentials = new ConcurrentHashMap<>();
+    private int logRecords;
+
+    /**
+     * The stored credential of one user.
+     */
+    public static final class Credential {
+        final String userId;
+        final String username;
+        final String passwordHash;
+
+        Credential(String userId, String username, String passwordHash) {
+            this.userId = userId;
+            this.username = username;
+            this.passwordHash = passwordHash;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getPasswordHash() {
+            return passwordHash;
+        }
+    }
+
+    /**
+     * Loads the snapshot and then the log, so later registrations of a username replace earlier ones.
+     * @param logFile The append-only log of registrations
+     * @param snapshotFile The compacted snapshot
+     * @throws IOException If a file could not be read or compacted
+     */
+    public CredentialStore(File logFile, File snapshotFile) throws IOException {
+        this.logFile = logFile;
+        this.snapshotFile = snapshotFile;
+        load(snapshotFile);
+        logRecords = load(logFile);
+        if (logRecords > COMPACT_THRESHOLD) {
+            writeSnapshot();
+        }
+    }
+
+    private int load(File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        int records = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Credential credential = parse(line);
+                if (credential != null) {
+                    credentials.put(credential.username, credential);
+                    records++;
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return The credential of a record line, or null for the header and malformed lines
+     */
+    private static Credential parse(String line) {
+        if (line.equals(HEADER)) {
+            return null;
+        }
+        int first = line.indexOf(DELIMITER);
+        int second = first < 0 ? -1 : line.indexOf(DELIMITER, first + DELIMITER.length());
+        if (second < 0 || line.indexOf(DELIMITER, second + DELIMITER.length()) >= 0) {
+            return null;
+        }
+        return new Credential(line.substring(0, first), line.substring(first + DELIMITER.length(), second),
+                line.substring(second + DELIMITER.length()));
+    }
+
+    private static String format(Credential credential) {
+        return credential.userId + DELIMITER + credential.username + DELIMITER + credential.passwordHash;
+    }
+
+    /**
+     * Looks up a user.
+     * @param username The username
+     * @return The credential, or null if no such user is registered
+     */
+    public Credential get(String username) {
+        return credentials.get(username);
+    }
+
+    /**
+     * Registers a user and appends the record to the log.
+     * @param userId The generated user identifier
+     * @param username The username
+     * @param passwordHash The hashed password
+     * @return True if the user was added, false if the username is already taken
+     * @throws IOException If the log could not be written
+     */
+    public synchronized boolean add(String userId, String username, String passwordHash) throws IOException {
+        if (credentials.containsKey(username)) {
+            return false;
+        }
+        Credential credential = new Credential(userId, username, passwordHash);
+        boolean addHeader = !logFile.exists() || logFile.length() == 0;
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(logFile, true), StandardCharsets.UTF_8))) {
+            if (addHeader) {
+                writer.write(HEADER + System.lineSeparator());
+            }
+            writer.write(format(credential) + System.lineSeparator());
+        }
+        credentials.put(username, credential);
+        if (++logRecords > COMPACT_THRESHOLD) {
+            writeSnapshot();
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of registered users
+     */
+    public int size() {
+        return credentials.size();
+    }
+
+    /**
+     * Writes every user to a new snapshot, replaces the old snapshot atomically and then empties the log.
+     * The new snapshot and the directory entry naming it are forced to disk before the log is emptied, so a
+     * crash at any point leaves either the old snapshot and the full log, or the new snapshot and records in
+     * the log that it already holds.
+     * @throws IOException If the snapshot could not be written
+     */
+    private void writeSnapshot() throws IOException {
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writer.write(HEADER + System.lineSeparator());
+            for (Credential credential : credentials.values()) {
+                writer.write(format(credential) + System.lineSeparator());
+            }
+            writer.flush();
+            out.getChannel().force(true);
+        }
+        Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(snapshotFile.getAbsoluteFile().getParentFile());
+        Files.write(logFile.toPath(), new byte[0]);
+        logRecords = 0;
+    }
+
+    /**
+     * Forces a directory to disk, so that a file renamed into it stays renamed after a crash.
+     * @param directory The directory
+     * @throws IOException If the directory could not be forced to disk
+     */
+    private static void syncDirectory(File directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            return; // Some platforms cannot open a directory; there the rename is as durable as they make it
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+}
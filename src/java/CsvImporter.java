@@ -0,0 +1,236 @@
+package src.java;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads rows from a CSV file into a table. The file is read sequentially in blocks of lines; each block is
+ * split and validated on the common fork-join pool, and the validated blocks are appended to the table, or
+ * to the partitions their rows belong in, in file order by the calling thread, flushing after every block. Rows that cannot be loaded are
+ * written with their line number and the reason to a side file.
+ * <p>
+ * Fields are separated by commas and may be enclosed in double quotes, with two quotes standing for one.
+ * Unquoted fields are trimmed. A record must fit on one line, as rows are stored one per line.
+ */
+public class CsvImporter {
+    static final int BLOCK_ROWS = 8192;
+    static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private final TableSchema schema;
+    private final ColumnDefinition[] columns;
+    private final String delimiter;
+
+    /**
+     * Totals of one import.
+     */
+    public static final class Result {
+        public final long loaded;
+        public final long rejected;
+
+        Result(long loaded, long rejected) {
+            this.loaded = loaded;
+            this.rejected = rejected;
+        }
+    }
+
+    /**
+     * The outcome of parsing one block of lines.
+     */
+    private static final class Block {
+        final List<String[]> rows = new ArrayList<>();
+        final StringBuilder rejects = new StringBuilder();
+        long rejected;
+    }
+
+    /**
+     * Constructs an importer for a table.
+     * @param schema The schema of the table, whose column definitions validate every value
+     * @param delimiter The field delimiter of text tables, which values may not contain
+     */
+    public CsvImporter(TableSchema schema, String delimiter) {
+        this.schema = schema;
+        this.columns = schema.getColumns().toArray(new ColumnDefinition[0]);
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Imports a CSV file.
+     * @param input The CSV file
+     * @param header Whether the first line holds column names and is skipped
+     * @param partitions The open tables receiving the rows: the table itself, or each of its partitions, to
+     *        which every row is routed by the table's partitioning
+     * @param rejectFile The file listing rejected rows; it is only created if a row is rejected
+     * @return The number of loaded and rejected rows
+     * @throws IOException If a file could not be read or written
+     */
+    public Result load(File input, boolean header, List<OpenTable> partitions, File rejectFile) throws IOException {
+        PartitionSpec partitioning = schema.getPartitioning();
+        int maxInFlight = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 2);
+        Deque<ForkJoinTask<Block>> inFlight = new ArrayDeque<>();
+        long loaded = 0;
+        long rejected = 0;
+        Writer rejects = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+            long lineNumber = 0;
+            if (header && reader.readLine() != null) {
+                lineNumber++;
+            }
+            boolean more = true;
+            while (more || !inFlight.isEmpty()) {
+                if (more && inFlight.size() < maxInFlight) {
+                    List<String> lines = new ArrayList<>(BLOCK_ROWS);
+                    String line;
+                    while (lines.size() < BLOCK_ROWS && (line = reader.readLine()) != null) {
+                        lines.add(line);
+                    }
+                    more = lines.size() == BLOCK_ROWS;
+                    if (!lines.isEmpty()) {
+                        long firstLine = lineNumber + 1;
+                        lineNumber += lines.size();
+                        inFlight.addLast(ForkJoinPool.commonPool().submit(() -> parse(lines, firstLine)));
+                    }
+                    continue;
+                }
+                Block block = inFlight.removeFirst().join();
+                for (String[] row : block.rows) {
+                    partitions.get(partitioning == null ? 0 : partitioning.partitionOf(row, schema)).append(row);
+                }
+                for (OpenTable partition : partitions) {
+                    partition.flush(false);
+                }
+                loaded += block.rows.size();
+                if (block.rejected > 0) {
+                    if (rejects == null) {
+                        rejects = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(rejectFile), StandardCharsets.UTF_8));
+                    }
+                    rejects.write(block.rejects.toString());
+                    rejected += block.rejected;
+                }
+            }
+        } finally {
+            for (ForkJoinTask<Block> task : inFlight) {
+                task.cancel(false);
+            }
+            if (rejects != null) {
+                rejects.close();
+            }
+        }
+        return new Result(loaded, rejected);
+    }
+
+    private Block parse(List<String> lines, long firstLine) {
+        Block block = new Block();
+        String[] fields = new String[columns.length];
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank()) {
+                continue;
+            }
+            String error = split(line, fields, field);
+            if (error == null) {
+                error = validate(fields);
+            }
+            if (error == null) {
+                block.rows.add(fields.clone());
+            } else {
+                block.rejected++;
+                block.rejects.append("line ").append(firstLine + i).append(": ").append(error)
+                        .append(": ").append(line).append(System.lineSeparator());
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Splits a CSV line into exactly one field per column.
+     * @return An error message, or null if the line was split
+     */
+    private String split(String line, String[] fields, StringBuilder field) {
+        int count = 0;
+        int length = line.length();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            boolean quoted = false;
+            while (i < length && line.charAt(i) == ' ') {
+                i++;
+            }
+            if (i < length && line.charAt(i) == '"') {
+                quoted = true;
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        return "Unterminated quoted value";
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < length && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                while (i < length && line.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i < length && line.charAt(i) != ',') {
+                    return "Unexpected character after quoted value";
+                }
+            } else {
+                int start = i;
+                while (i < length && line.charAt(i) != ',') {
+                    i++;
+                }
+                field.append(line, start, i);
+            }
+            if (count == fields.length) {
+                return "Too many values; expected " + fields.length;
+            }
+            fields[count++] = quoted ? field.toString() : field.toString().trim();
+            if (i >= length) {
+                break;
+            }
+            i++; // Skip the comma
+        }
+        if (count != fields.length) {
+            return "Expected " + fields.length + " values but found " + count;
+        }
+        return null;
+    }
+
+    /**
+     * @return An error message, or null if every value fits its column
+     */
+    private String validate(String[] fields) {
+        for (int i = 0; i < columns.length; i++) {
+            if (fields[i].contains(delimiter)) {
+                return "Value \"" + fields[i] + "\" contains the reserved delimiter " + delimiter;
+            }
+            String error = columns[i].validate(fields[i]);
+            if (error != null) {
+                return error;
+            }
+        }
+        return null;
+    }
+}
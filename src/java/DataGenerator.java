@@ -0,0 +1,126 @@
+package src.java;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic rows for a table, for benchmarks and for trying out queries on large tables.
+ * The first int column numbers the rows from 0, further int columns are uniform in
+ * [0, {@link #INT_RANGE}) so that they group well, and varchar columns hold lowercase words of random
+ * length that fit the column. The same seed always yields the same rows.
+ * <p>
+ * Usage: {@code DataGenerator <database directory> <table> <rows> [seed]} appends rows to an existing table.
+ */
+public class DataGenerator {
+    static final int INT_RANGE = 1000;
+    static final int MAX_WORD_LENGTH = 12;
+
+    private final TableSchema schema;
+    private final SplittableRandom random;
+    private final int idOrdinal;
+
+    /**
+     * Constructs a generator for a table.
+     * @param schema The schema of the table
+     * @param seed The seed of the random values
+     */
+    public DataGenerator(TableSchema schema, long seed) {
+        this.schema = schema;
+        this.random = new SplittableRandom(seed);
+        int id = -1;
+        for (int i = 0; i < schema.columnCount() && id < 0; i++) {
+            if (schema.column(i).getType() == ColumnType.INT) {
+                id = i;
+            }
+        }
+        this.idOrdinal = id;
+    }
+
+    /**
+     * Generates one row.
+     * @param number The number of the row, stored in the first int column
+     * @return The column values
+     */
+    public String[] row(long number) {
+        String[] values = new String[schema.columnCount()];
+        StringBuilder word = new StringBuilder(MAX_WORD_LENGTH);
+        for (int i = 0; i < values.length; i++) {
+            ColumnDefinition column = schema.column(i);
+            if (column.getType() == ColumnType.INT) {
+                values[i] = Long.toString(i == idOrdinal ? number : random.nextInt(INT_RANGE));
+            } else {
+                int length = 1 + random.nextInt(Math.max(1, Math.min(column.getLength(), MAX_WORD_LENGTH)));
+                word.setLength(0);
+                for (int j = 0; j < length; j++) {
+                    word.append((char) ('a' + random.nextInt(26)));
+                }
+                values[i] = word.toString();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Writes rows as a CSV file that {@code COPY} can load. Values never need quoting.
+     * @param file The file to write
+     * @param rows The number of rows
+     * @throws IOException If the file could not be written
+     */
+    public void writeCsv(File file, long rows) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8),
+                CsvImporter.READ_BUFFER_SIZE)) {
+            for (long number = 0; number < rows; number++) {
+                out.write(String.join(",", row(number)));
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Appends generated rows to a table through a temporary CSV file and {@code COPY}.
+     * @param executor The executor of the table's database
+     * @param session The session that runs the {@code COPY} and receives its output
+     * @param schema The schema of the table, which must already exist
+     * @param rows The number of rows
+     * @param seed The seed of the random values
+     * @throws IOException If the file could not be written or the rows could not be loaded
+     */
+    public static void load(QueryExecutor executor, Session session, TableSchema schema, long rows, long seed) throws IOException {
+        File csv = File.createTempFile(schema.getTableName() + "-rows-", ".csv");
+        try {
+            new DataGenerator(schema, seed).writeCsv(csv, rows);
+            executor.executeQuery(session, "COPY " + schema.getTableName() + " FROM '" + csv.getAbsolutePath() + "'");
+        } finally {
+            Files.deleteIfExists(csv.toPath());
+        }
+    }
+
+    /**
+     * Fills a table with generated rows: {@code DataGenerator <database directory> <table> <rows> [seed]}.
+     * @param args The command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: DataGenerator <database directory> <table> <rows> [seed]");
+            return;
+        }
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42L;
+        try (QueryExecutor executor = new QueryExecutor(args[0])) {
+            TableSchema schema = new TableCatalog(args[0], ":|").getSchema(args[1]);
+            if (schema == null) {
+                System.err.println("Table " + args[1] + " does not exist.");
+                return;
+            }
+            load(executor, new Session(System.out), schema, Long.parseLong(args[2]), seed);
+        } catch (IOException e) {
+            System.err.println("An error occurred: " + e.getMessage());
+        }
+    }
+}
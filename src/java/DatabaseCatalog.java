@@ -0,0 +1,286 @@
+package src.java;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Manifest of the users, databases and tables under the base directory, kept in one file so that startup
+ * reads a single file instead of listing every user directory. Each line of the manifest describes one
+ * database as {@code user:|database:|table,table,...}.
+ * <p>
+ * The manifest is rewritten to a temporary file and moved over the old one whenever a database or table is
+ * created or a database deleted, so it is never seen half written. The partitions of a partitioned table
+ * are not listed, as they have no metadata file of their own. A user missing from the manifest, for example because
+ * their directory was copied in by hand, is looked up in their own directory on first use, and
+ * {@link #rebuild()} replaces the manifest with a full walk of the base directory.
+ */
+public class DatabaseCatalog {
+    static final String MANIFEST_FILE = "catalog.txt";
+    private static final String DELIMITER = ":|";
+    private static final String TABLE_SEPARATOR = ",";
+
+    private final File baseDir;
+    private final File manifestFile;
+    /** Tables of every database, by user and then by database name. */
+    private final Map<String, Map<String, List<String>>> users = new HashMap<>();
+
+    /**
+     * Loads the manifest of a base directory. A missing manifest is not an error; users are then looked up
+     * lazily and the manifest is written on the first change.
+     * @param baseDir The directory holding one directory per user
+     * @throws IOException If the manifest could not be read
+     */
+    public DatabaseCatalog(File baseDir) throws IOException {
+        this.baseDir = baseDir;
+        this.manifestFile = new File(baseDir, MANIFEST_FILE);
+        if (manifestFile.exists()) {
+            load(new String(Files.readAllBytes(manifestFile.toPath()), StandardCharsets.UTF_8));
+        }
+    }
+
+    private void load(String manifest) {
+        int start = 0;
+        while (start < manifest.length()) {
+            int end = manifest.indexOf('\n', start);
+            if (end < 0) {
+                end = manifest.length();
+            }
+            String line = manifest.substring(start, end).trim();
+            start = end + 1;
+            int first = line.indexOf(DELIMITER);
+            int second = first < 0 ? -1 : line.indexOf(DELIMITER, first + DELIMITER.length());
+            if (second < 0) {
+                continue; // Blank or malformed line
+            }
+            String tables = line.substring(second + DELIMITER.length());
+            users.computeIfAbsent(line.substring(0, first), k -> new TreeMap<>())
+                    .put(line.substring(first + DELIMITER.length(), second), splitTables(tables));
+        }
+    }
+
+    private static List<String> splitTables(String tables) {
+        List<String> names = new ArrayList<>();
+        for (String name : tables.split(TABLE_SEPARATOR)) {
+            if (!name.isEmpty()) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @param name A user or database name
+     * @return True if the name can be used as a directory name and a manifest field
+     */
+    public static boolean isValidName(String name) {
+        return !name.isEmpty() && !name.contains(DELIMITER) && !name.contains(File.separator)
+                && !name.contains("/") && !name.equals(".") && !name.equals("..") && !name.contains("\n");
+    }
+
+    /**
+     * @param userID The user
+     * @return The directory holding the user's databases
+     */
+    public File userDirectory(String userID) {
+        return new File(baseDir, userID);
+    }
+
+    /**
+     * @param userID The user
+     * @param databaseName The database
+     * @return The directory of the database
+     */
+    public File databaseDirectory(String userID, String databaseName) {
+        return new File(userDirectory(userID), databaseName);
+    }
+
+    /**
+     * Lists the databases of a user. A user the manifest does not know is looked up in their directory, and
+     * the result is added to the manifest; databases of a known user whose directory has disappeared are
+     * dropped from it.
+     * @param userID The user
+     * @return The database names in alphabetical order
+     * @throws IOException If the manifest could not be updated
+     */
+    public synchronized List<String> databases(String userID) throws IOException {
+        Map<String, List<String>> databases = users.get(userID);
+        if (databases == null) {
+            databases = scanUser(userDirectory(userID));
+            if (databases.isEmpty()) {
+                return Collections.emptyList();
+            }
+            users.put(userID, databases);
+            save();
+        } else if (databases.keySet().removeIf(name -> !databaseDirectory(userID, name).isDirectory())) {
+            if (databases.isEmpty()) {
+                users.remove(userID);
+            }
+            save();
+        }
+        return new ArrayList<>(databases.keySet());
+    }
+
+    /**
+     * Records a new table of a known database, as soon as it is created.
+     * @param userID The owner
+     * @param databaseName The database
+     * @param tableName The table
+     * @throws IOException If the manifest could not be written
+     */
+    public synchronized void addTable(String userID, String databaseName, String tableName) throws IOException {
+        Map<String, List<String>> databases = users.get(userID);
+        List<String> tables = databases == null ? null : databases.get(databaseName);
+        if (tables == null || tables.contains(tableName)) {
+            return;
+        }
+        tables.add(tableName);
+        Collections.sort(tables);
+        save();
+    }
+
+    /**
+     * Records a new database.
+     * @param userID The owner
+     * @param databaseName The database
+     * @throws IOException If the manifest could not be written
+     */
+    public synchronized void addDatabase(String userID, String databaseName) throws IOException {
+        databases(userID);
+        users.computeIfAbsent(userID, k -> new TreeMap<>()).put(databaseName, new ArrayList<>());
+        save();
+    }
+
+    /**
+     * Forgets a database.
+     * @param userID The owner
+     * @param databaseName The database
+     * @throws IOException If the manifest could not be written
+     */
+    public synchronized void removeDatabase(String userID, String databaseName) throws IOException {
+        Map<String, List<String>> databases = users.get(userID);
+        if (databases != null && databases.remove(databaseName) != null) {
+            if (databases.isEmpty()) {
+                users.remove(userID);
+            }
+            save();
+        }
+    }
+
+    /**
+     * Reads the table list of one database from its directory when a session or server using it ends, which
+     * also picks up tables created or removed by other means. The manifest is only rewritten if the list changed.
+     * @param userID The owner
+     * @param databaseName The database
+     * @throws IOException If the manifest could not be written
+     */
+    public synchronized void refreshTables(String userID, String databaseName) throws IOException {
+        Map<String, List<String>> databases = users.get(userID);
+        if (databases == null || !databases.containsKey(databaseName)) {
+            return;
+        }
+        List<String> tables = scanTables(databaseDirectory(userID, databaseName));
+        if (!tables.equals(databases.get(databaseName))) {
+            databases.put(databaseName, tables);
+            save();
+        }
+    }
+
+    /**
+     * Replaces the manifest with the result of walking every user and database directory, repairing any
+     * drift between the manifest and the files on disk.
+     * @return The number of databases found
+     * @throws IOException If the manifest could not be written
+     */
+    public synchronized int rebuild() throws IOException {
+        users.clear();
+        int count = 0;
+        File[] userDirs = baseDir.listFiles(File::isDirectory);
+        if (userDirs != null) {
+            for (File userDir : userDirs) {
+                Map<String, List<String>> databases = scanUser(userDir);
+                if (!databases.isEmpty()) {
+                    users.put(userDir.getName(), databases);
+                    count += databases.size();
+                }
+            }
+        }
+        save();
+        return count;
+    }
+
+    private static Map<String, List<String>> scanUser(File userDir) {
+        Map<String, List<String>> databases = new TreeMap<>();
+        File[] dbDirs = userDir.listFiles(File::isDirectory);
+        if (dbDirs != null) {
+            for (File dbDir : dbDirs) {
+                databases.put(dbDir.getName(), scanTables(dbDir));
+            }
+        }
+        return databases;
+    }
+
+    private static List<String> scanTables(File dbDir) {
+        List<String> tables = new ArrayList<>();
+        String[] names = dbDir.list((dir, name) -> name.endsWith(TableCatalog.METADATA_SUFFIX));
+        if (names != null) {
+            for (String name : names) {
+                tables.add(name.substring(0, name.length() - TableCatalog.METADATA_SUFFIX.length()));
+            }
+            Collections.sort(tables);
+        }
+        return tables;
+    }
+
+    /**
+     * Writes the manifest to a temporary file and moves it over the old manifest in one step.
+     */
+    private void save() throws IOException {
+        if (!baseDir.exists()) {
+            baseDir.mkdirs();
+        }
+        File tempFile = new File(baseDir, MANIFEST_FILE + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tempFile);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Map<String, List<String>>> user : new TreeMap<>(users).entrySet()) {
+                for (Map.Entry<String, List<String>> database : user.getValue().entrySet()) {
+                    writer.write(user.getKey() + DELIMITER + database.getKey() + DELIMITER
+                            + String.join(TABLE_SEPARATOR, database.getValue()));
+                    writer.newLine();
+                }
+            }
+            writer.flush();
+            stream.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Rebuilds the manifest: {@code DatabaseCatalog rebuild [base directory]}.
+     * @param args The command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || !args[0].equalsIgnoreCase("rebuild")) {
+            System.err.println("Usage: DatabaseCatalog rebuild [base directory]");
+            return;
+        }
+        File baseDir = new File(args.length > 1 ? args[1] : DatabaseManagement.BASE_DIR);
+        try {
+            int count = new DatabaseCatalog(baseDir).rebuild();
+            System.out.println("Catalog rebuilt with " + count + " databases.");
+        } catch (IOException e) {
+            System.err.println("An error occurred: " + e.getMessage());
+        }
+    }
+}
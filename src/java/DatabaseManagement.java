@@ -2,72 +2,64 @@ package src.java;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 /**
- * Manages databases for each user, including creation, deletion, and loading from directories.
+ * Manages databases for each user, including creation, deletion, and looking them up in the {@link DatabaseCatalog}.
+ * A user may own several databases.
  */
 public class DatabaseManagement {
-    private static final String BASE_DIR = "users_databases";
+    static final String BASE_DIR = "users_databases";
     private final Scanner scanner = new Scanner(System.in);
-    private final Map<String, String> userDatabases = new HashMap<>();
+    private final DatabaseCatalog catalog;
 
     /**
-     * Initializes the java.DatabaseManagement class by loading existing databases from directories.
+     * Initializes the java.DatabaseManagement class by loading the database catalog manifest.
      *
      * @throws IOException If an input or output exception occurred
      */
     public DatabaseManagement() throws IOException {
-        loadDatabasesFromDirectories();
+        this.catalog = new DatabaseCatalog(new File(BASE_DIR));
     }
 
     /**
-     * Loads existing databases from directories into the userDatabases map.
-     */
-    private void loadDatabasesFromDirectories() {
-        File baseDir = new File(BASE_DIR);
-        if (baseDir.exists()) {
-            File[] userDirs = baseDir.listFiles();
-            if (userDirs != null) {
-                for (File userDir : userDirs) {
-                    if (userDir.isDirectory()) {
-                        File[] dbs = userDir.listFiles();
-                        if (dbs != null && dbs.length > 0) {
-                            userDatabases.put(userDir.getName(), dbs[0].getName());
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    /**
-     * Handles the process of database creation for a user, including checking for existing databases and optionally deleting them.
+     * Lets a user open one of their databases, create a new one or delete one.
      *
      * @param userID The unique identifier for the user
      * @return The path to the database, whether newly created or existing
      * @throws IOException If an input or output exception occurred
      */
     public String handleDatabaseCreation(String userID) throws IOException {
-        String dbPath;
-        if (userDatabases.containsKey(userID)) {
-            String existingDbName = userDatabases.get(userID);
-            System.out.println("A database already exists for user ID: " + userID + " with name \"" + existingDbName + "\".");
-            System.out.println("Do you want to still want to DELETE it and create a new one? (Y/N)");
-            String response = scanner.nextLine().trim().toUpperCase();
-            if ("Y".equals(response)) {
-                deleteDatabaseForUser(userID);
-                dbPath = askAndCreateNewDatabase(userID);
+        while (true) {
+            List<String> databases = catalog.databases(userID);
+            if (databases.isEmpty()) {
+                return askAndCreateNewDatabase(userID);
+            }
+            System.out.println("Databases for user ID " + userID + ": " + String.join(", ", databases));
+            System.out.println("Type a database name to open it, N to create a new one or D to delete one:");
+            String response = scanner.nextLine().trim();
+            if (response.equalsIgnoreCase("N")) {
+                return askAndCreateNewDatabase(userID);
+            } else if (response.equalsIgnoreCase("D")) {
+                System.out.println("Please enter the name of the database to delete:");
+                String dbName = scanner.nextLine().trim();
+                if (databases.contains(dbName)) {
+                    deleteDatabaseForUser(userID, dbName);
+                } else {
+                    System.out.println("No database named \"" + dbName + "\".");
+                }
+            } else if (databases.contains(response)) {
+                System.out.println("Continuing with the existing database \"" + response + "\".");
+                return catalog.databaseDirectory(userID, response).getPath();
             } else {
-                System.out.println("Continuing with the existing database \"" + existingDbName + "\".");
-                dbPath = BASE_DIR + File.separator + userID + File.separator + existingDbName;
+                System.out.println("No database named \"" + response + "\".");
             }
-        } else {
-            dbPath = askAndCreateNewDatabase(userID);
         }
-        return dbPath;
     }
 
     /**
@@ -78,13 +70,18 @@ public class DatabaseManagement {
      * @throws IOException If an input or output exception occurred
      */
     private String askAndCreateNewDatabase(String userID) throws IOException {
-        System.out.println("Please enter the new database name:");
-        String dbName = scanner.nextLine();
-        return createDatabaseForUser(userID, dbName);
+        while (true) {
+            System.out.println("Please enter the new database name:");
+            String dbName = scanner.nextLine().trim();
+            if (DatabaseCatalog.isValidName(dbName)) {
+                return createDatabaseForUser(userID, dbName);
+            }
+            System.out.println("Invalid database name.");
+        }
     }
 
     /**
-     * Creates a database for the specified user.
+     * Creates a database for the specified user and records it in the catalog.
      *
      * @param userID       The unique identifier for the user
      * @param databaseName The name of the database to create
@@ -92,37 +89,37 @@ public class DatabaseManagement {
      * @throws IOException If an input or output exception occurred
      */
     public String createDatabaseForUser(String userID, String databaseName) throws IOException {
-        File userDir = new File(BASE_DIR + File.separator + userID);
-        if (!userDir.exists()) {
-            userDir.mkdirs();
-        }
-        File dbDir = new File(userDir, databaseName);
+        File dbDir = catalog.databaseDirectory(userID, databaseName);
         if (!dbDir.exists()) {
-            dbDir.mkdir();
-            userDatabases.put(userID, dbDir.getName());
+            if (!dbDir.mkdirs()) {
+                throw new IOException("Could not create the directory " + dbDir);
+            }
+            catalog.addDatabase(userID, databaseName);
             System.out.println("Database \"" + databaseName + "\" created successfully for user ID: " + userID);
-            return dbDir.getAbsolutePath();
         } else {
             System.out.println("A database with this name already exists. No new database created.");
-            return dbDir.getAbsolutePath();
         }
+        return dbDir.getAbsolutePath();
     }
 
     /**
-     * Deletes the database for a given user.
+     * Deletes one database of a user together with all its files.
      *
-     * @param userID The unique identifier for the user whose database should be deleted
+     * @param userID       The unique identifier for the user
+     * @param databaseName The name of the database to delete
+     * @throws IOException If the database could not be deleted
      */
-    private void deleteDatabaseForUser(String userID) {
-        File userDir = new File(BASE_DIR + File.separator + userID);
-        if (userDir.exists()) {
-            for (File file : userDir.listFiles()) {
-                file.delete();
+    private void deleteDatabaseForUser(String userID, String databaseName) throws IOException {
+        File dbDir = catalog.databaseDirectory(userID, databaseName);
+        if (dbDir.exists()) {
+            try (Stream<Path> paths = Files.walk(dbDir.toPath())) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(path);
+                }
             }
-            userDir.delete();
-            userDatabases.remove(userID);
-            System.out.println("Existing database deleted successfully.");
         }
+        catalog.removeDatabase(userID, databaseName);
+        System.out.println("Database \"" + databaseName + "\" deleted successfully.");
     }
 
     public static void manageDatabase(String userId) throws IOException {
@@ -130,15 +127,20 @@ public class DatabaseManagement {
         String userID = String.valueOf(userId);
         String dbPath = dm.handleDatabaseCreation(userID);
         System.out.println("Database path: " + dbPath);
-        QueryExecutor qb = new QueryExecutor(dbPath);
-        String query;
-        do {
-            System.out.println("Please enter the query you want to execute or type X to exit:");
-            query = dm.scanner.nextLine();
-            if (query.trim().toUpperCase().equals("X")) {
-                break;
-            }
-            qb.executeQuery(query);
-        } while (true);
+        String databaseName = new File(dbPath).getName();
+        try (QueryExecutor qb = new QueryExecutor(dbPath)) {
+            qb.setTableListener(tableName -> dm.catalog.addTable(userID, databaseName, tableName));
+            String query;
+            do {
+                System.out.println("Please enter the query you want to execute or type X to exit:");
+                query = dm.scanner.nextLine();
+                if (query.trim().toUpperCase().equals("X")) {
+                    break;
+                }
+                qb.executeQuery(query);
+            } while (true);
+        } finally {
+            dm.catalog.refreshTables(userID, databaseName);
+        }
     }
 }
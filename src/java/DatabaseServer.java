@@ -0,0 +1,187 @@
+package src.java;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serves one database to local clients over TCP. Every connection is a {@link Session} running on its
+ * own virtual thread, and all sessions share one {@link QueryExecutor}.
+ * <p>
+ * The protocol is line based: the client sends one query per line, and the server answers with the
+ * query's output followed by a line holding only {@link #END_OF_RESPONSE}. Query output never consists of
+ * that line alone, because result rows end with a space.
+ */
+public class DatabaseServer implements Closeable {
+    public static final int DEFAULT_PORT = 5433;
+    public static final String END_OF_RESPONSE = ".";
+
+    private final QueryExecutor executor;
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private DatabaseCatalog catalog;
+    private String userID;
+    private String databaseName;
+
+    /**
+     * Opens a database and starts listening on the loopback interface.
+     * @param dbDirectory The directory of the database to serve
+     * @param port The TCP port, or 0 to pick a free one
+     * @throws IOException If the database could not be opened or the port could not be bound
+     */
+    public DatabaseServer(String dbDirectory, int port) throws IOException {
+        this.executor = new QueryExecutor(dbDirectory);
+        try {
+            this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            executor.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Keeps the served database's entry in a catalog manifest up to date: tables are recorded as they are
+     * created, and the table list is read again from the directory when the server is closed.
+     * @param catalog The catalog of the base directory holding the database
+     * @param userID The owner of the database
+     * @param databaseName The database
+     */
+    public void recordTablesIn(DatabaseCatalog catalog, String userID, String databaseName) {
+        this.catalog = catalog;
+        this.userID = userID;
+        this.databaseName = databaseName;
+        executor.setTableListener(tableName -> catalog.addTable(userID, databaseName, tableName));
+    }
+
+    /**
+     * @return The port the server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     * @throws IOException If accepting a connection failed for a reason other than the server closing
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    break;
+                }
+                throw e;
+            }
+            sessions.submit(() -> handle(socket));
+        }
+    }
+
+    /**
+     * Runs one client session: reads queries line by line and writes each query's output back.
+     * @param socket The client connection
+     */
+    private void handle(Socket socket) {
+        try (Socket client = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(new BufferedOutputStream(client.getOutputStream()), false, StandardCharsets.UTF_8)) {
+            Session session = new Session(out);
+            try {
+                String query;
+                while ((query = in.readLine()) != null) {
+                    if (query.trim().equalsIgnoreCase("X")) {
+                        break;
+                    }
+                    if (!query.isBlank()) {
+                        try {
+                            executor.executeQuery(session, query);
+                        } catch (IOException e) {
+                            out.println("Error: " + e.getMessage());
+                        }
+                    }
+                    out.println(END_OF_RESPONSE);
+                    out.flush();
+                }
+            } finally {
+                executor.endSession(session); // Rolls back a transaction left open
+            }
+        } catch (IOException e) {
+            System.err.println("Session ended: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops accepting connections, waits for the open sessions to end and closes the database.
+     * @throws IOException If the database could not be closed cleanly
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        serverSocket.close();
+        sessions.shutdown();
+        try {
+            sessions.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            executor.close();
+        } finally {
+            if (catalog != null) {
+                catalog.refreshTables(userID, databaseName);
+            }
+        }
+    }
+
+    /**
+     * Starts a server: {@code DatabaseServer <database directory> [port]}.
+     * @param args The command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: DatabaseServer <database directory> [port]");
+            return;
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        try {
+            DatabaseServer server = new DatabaseServer(args[0], port);
+            // Closing on shutdown checkpoints the database when the server is stopped with Ctrl+C
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                } catch (IOException e) {
+                    System.err.println("An error occurred: " + e.getMessage());
+                }
+            }));
+            // A database of a user under the base directory keeps its entry in the catalog manifest current
+            File dbDirectory = new File(args[0]).toPath().toAbsolutePath().normalize().toFile();
+            File userDirectory = dbDirectory.getParentFile();
+            File baseDir = new File(DatabaseManagement.BASE_DIR).toPath().toAbsolutePath().normalize().toFile();
+            if (userDirectory != null && baseDir.equals(userDirectory.getParentFile())) {
+                server.recordTablesIn(new DatabaseCatalog(baseDir), userDirectory.getName(), dbDirectory.getName());
+            }
+            System.out.println("Serving " + args[0] + " on port " + server.getPort() + ".");
+            server.serve();
+        } catch (IOException e) {
+            System.err.println("An error occurred: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package src.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Equi-join of two inputs through a hash table. The rows of the build side, normally the smaller table,
+ * are loaded into a hash table keyed by their join column; the rows of the probe side are then streamed
+ * past it, each producing one joined row per build row with an equal key.
+ * <p>
+ * If the build rows outgrow the memory budget, the join becomes a grace hash join: both sides are split
+ * by a hash of the key into {@value #PARTITIONS} partitions written to {@link SpillFile}s, so rows with
+ * equal keys land in partitions with the same number, and the pairs of partitions are joined one after the
+ * other. A build partition that is still too large is split again with other bits of the hash, up to
+ * {@value #MAX_DEPTH} times; beyond that it holds so many equal keys that splitting cannot help, and it is
+ * loaded whatever its size. Probe rows whose build partition is empty are dropped while partitioning.
+ */
+public class HashJoinCursor extends JoinCursor {
+    static final int PARTITIONS = 16;
+    static final int MAX_DEPTH = 4;
+    /** Estimated heap taken by a hash table entry besides its row. */
+    private static final long ENTRY_BYTES = 80;
+
+    /**
+     * A pair of partitions spilled to disk, joined by themselves later.
+     */
+    private static final class Partition {
+        final SpillFile build;
+        final SpillFile probe;
+        final int depth;
+
+        Partition(SpillFile build, SpillFile probe, int depth) {
+            this.build = build;
+            this.probe = probe;
+            this.depth = depth;
+        }
+
+        void close() throws IOException {
+            try {
+                build.close();
+            } finally {
+                probe.close();
+            }
+        }
+    }
+
+    private final Input build;
+    private final Input probe;
+    private final boolean buildIsLeft;
+    private final boolean numericKeys;
+    private final long memoryBudget;
+    private final File spillDirectory;
+    private final Deque<Partition> partitions = new ArrayDeque<>();
+    private Map<Object, List<String[]>> table;
+    private Partition current;
+    private SpillFile.Reader probeReader;
+    private RowSource probeRows;
+    private String[] probeRow;
+    private List<String[]> matches;
+    private int matchIndex;
+    private boolean started;
+
+    /**
+     * @param build The side loaded into the hash table
+     * @param probe The side streamed past it
+     * @param buildIsLeft Whether the build side is the first table of the join
+     * @param leftColumnCount The number of columns of the first table
+     * @param numericKeys Whether the join columns are int columns
+     * @param memoryBudget The number of bytes the hash table may take before the join spills
+     * @param spillDirectory The directory receiving the spill files
+     */
+    public HashJoinCursor(Input build, Input probe, boolean buildIsLeft, int leftColumnCount, boolean numericKeys,
+                          long memoryBudget, File spillDirectory) {
+        super(leftColumnCount);
+        this.build = build;
+        this.probe = probe;
+        this.buildIsLeft = buildIsLeft;
+        this.numericKeys = numericKeys;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (!started) {
+            started = true;
+            if (load(build, probe, 0)) {
+                probeRows = probe;
+            } else if (!nextPartition()) {
+                return false;
+            }
+        }
+        while (true) {
+            if (matches != null && matchIndex < matches.size()) {
+                String[] buildRow = matches.get(matchIndex++);
+                if (buildIsLeft) {
+                    setRow(buildRow, probeRow);
+                } else {
+                    setRow(probeRow, buildRow);
+                }
+                return true;
+            }
+            String[] row = probeRows.next();
+            if (row == null) {
+                if (!nextPartition()) {
+                    return false;
+                }
+                continue;
+            }
+            Object key = key(row[probe.keyOrdinal], numericKeys);
+            probeRow = row;
+            matches = key == null ? null : table.get(key);
+            matchIndex = 0;
+        }
+    }
+
+    /**
+     * Loads build rows into the hash table. If they exceed the memory budget, they are partitioned together
+     * with the probe rows instead.
+     * @param buildRows The build rows
+     * @param probeRows The probe rows matching them
+     * @param depth The number of times the rows have been partitioned already
+     * @return True if the hash table holds the build rows, false if they were partitioned
+     * @throws IOException If rows could not be read or spilled
+     */
+    private boolean load(RowSource buildRows, RowSource probeRows, int depth) throws IOException {
+        table = new HashMap<>();
+        long bytes = 0;
+        String[] row;
+        while ((row = buildRows.next()) != null) {
+            Object key = key(row[build.keyOrdinal], numericKeys);
+            if (key == null) {
+                continue;
+            }
+            table.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+            bytes += SpillFile.rowBytes(row) + ENTRY_BYTES;
+            if (bytes > memoryBudget && depth < MAX_DEPTH) {
+                partition(buildRows, probeRows, depth);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spills the build rows loaded so far, the remaining build rows and then the probe rows into partitions.
+     */
+    private void partition(RowSource buildRows, RowSource probeRows, int depth) throws IOException {
+        Map<Object, List<String[]>> loaded = table;
+        table = null;
+        SpillFile[] buildFiles = new SpillFile[PARTITIONS];
+        SpillFile[] probeFiles = new SpillFile[PARTITIONS];
+        try {
+            for (List<String[]> rows : loaded.values()) {
+                for (String[] row : rows) {
+                    spill(buildFiles, row, key(row[build.keyOrdinal], numericKeys), depth);
+                }
+            }
+            loaded = null;
+            String[] row;
+            while ((row = buildRows.next()) != null) {
+                Object key = key(row[build.keyOrdinal], numericKeys);
+                if (key != null) {
+                    spill(buildFiles, row, key, depth);
+                }
+            }
+            while ((row = probeRows.next()) != null) {
+                Object key = key(row[probe.keyOrdinal], numericKeys);
+                if (key != null && buildFiles[partitionOf(key, depth)] != null) {
+                    spill(probeFiles, row, key, depth);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            closeAll(buildFiles);
+            closeAll(probeFiles);
+            throw e;
+        }
+        for (int i = 0; i < PARTITIONS; i++) {
+            if (probeFiles[i] != null) {
+                buildFiles[i].finishWriting();
+                probeFiles[i].finishWriting();
+                partitions.push(new Partition(buildFiles[i], probeFiles[i], depth + 1));
+            } else if (buildFiles[i] != null) {
+                buildFiles[i].close();
+            }
+        }
+    }
+
+    private void spill(SpillFile[] files, String[] row, Object key, int depth) throws IOException {
+        int partition = partitionOf(key, depth);
+        if (files[partition] == null) {
+            files[partition] = new SpillFile(spillDirectory, "join-");
+        }
+        files[partition].write(row);
+    }
+
+    /**
+     * Picks the partition of a key from a different slice of its hash at each depth, so that a partition
+     * split again spreads over new partitions.
+     */
+    private static int partitionOf(Object key, int depth) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return Integer.rotateRight(hash, depth * 4) & (PARTITIONS - 1);
+    }
+
+    /**
+     * Moves on to the next spilled pair of partitions that fits in memory.
+     * @return False if no partitions are left
+     */
+    private boolean nextPartition() throws IOException {
+        closeCurrent();
+        while (!partitions.isEmpty()) {
+            current = partitions.pop();
+            try (SpillFile.Reader buildReader = current.build.read()) {
+                probeReader = current.probe.read();
+                if (load(buildReader, probeReader, current.depth)) {
+                    probeRows = probeReader;
+                    matches = null;
+                    return true;
+                }
+            }
+            closeCurrent();
+        }
+        table = null;
+        matches = null;
+        probeRows = () -> null;
+        return false;
+    }
+
+    private void closeCurrent() throws IOException {
+        try {
+            if (probeReader != null) {
+                probeReader.close();
+                probeReader = null;
+            }
+        } finally {
+            if (current != null) {
+                Partition partition = current;
+                current = null;
+                partition.close();
+            }
+        }
+    }
+
+    private static void closeAll(SpillFile[] files) throws IOException {
+        for (SpillFile file : files) {
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        table = null;
+        try {
+            closeCurrent();
+            while (!partitions.isEmpty()) {
+                partitions.pop().close();
+            }
+        } finally {
+            try {
+                build.cursor.close();
+            } finally {
+                probe.cursor.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package src.java;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hash-based index structure answering equality lookups in constant time.
+ */
+public class HashKeyIndex implements IndexStructure {
+    private final Map<Object, LocationList> entries = new HashMap<>();
+
+    @Override
+    public void insert(Object key, long location) {
+        entries.computeIfAbsent(key, k -> new LocationList()).add(location);
+    }
+
+    @Override
+    public void lookup(Object key, LocationList out) {
+        LocationList locations = entries.get(key);
+        if (locations != null) {
+            out.addAll(locations);
+        }
+    }
+
+    @Override
+    public boolean supportsRange() {
+        return false;
+    }
+
+    @Override
+    public void range(Object low, boolean lowInclusive, Object high, boolean highInclusive, LocationList out) {
+        throw new UnsupportedOperationException("Hash indexes do not support range lookups");
+    }
+
+    @Override
+    public int keyCount() {
+        return entries.size();
+    }
+}
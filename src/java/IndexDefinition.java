@@ -0,0 +1,34 @@
+package src.java;
+
+/**
+ * A secondary index declared on a table column, as recorded in the table's metadata file.
+ */
+public class IndexDefinition {
+    private final String name;
+    private final String column;
+    private final IndexType type;
+
+    /**
+     * Constructs an index definition.
+     * @param name The index name
+     * @param column The indexed column
+     * @param type The index structure
+     */
+    public IndexDefinition(String name, String column, IndexType type) {
+        this.name = name;
+        this.column = column;
+        this.type = type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public IndexType getType() {
+        return type;
+    }
+}
@@ -0,0 +1,106 @@
+package src.java;
+
+import java.io.IOException;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Index nested-loop join: streams the rows of the outer side and looks each one's join key up in an index
+ * on the inner table's join column, fetching only the inner rows it points to. No hash table is built, so
+ * the join needs no memory beyond one row of each side, and it pays off when the outer side is small or
+ * filtered down by the WHERE condition.
+ * <p>
+ * Index entries are not removed when rows are deleted and may point past the snapshot being read; the
+ * inner rows are fetched through a snapshot view, which skips those, and their key is compared again.
+ */
+public class IndexJoinCursor extends JoinCursor {
+    private final Input outer;
+    private final boolean outerIsLeft;
+    private final TableRows inner;
+    private final RowPredicate innerFilter;
+    private final int innerKeyOrdinal;
+    private final int innerColumnCount;
+    private final TableIndex index;
+    private final Lock indexLock;
+    private final LocationList locations = new LocationList();
+    private String[] outerRow;
+    private Object outerKey;
+    private RowCursor matches;
+
+    /**
+     * @param outer The side that is streamed
+     * @param outerIsLeft Whether the outer side is the first table of the join
+     * @param leftColumnCount The number of columns of the first table
+     * @param inner The rows of the inner table as the query's snapshot sees them
+     * @param innerFilter The part of the WHERE condition that only reads the inner table
+     * @param innerKeyOrdinal The ordinal of the inner join column
+     * @param innerColumnCount The number of columns of the inner table
+     * @param index The index on the inner join column
+     * @param indexLock Held while the index is read, keeping the table's writer from changing it
+     */
+    public IndexJoinCursor(Input outer, boolean outerIsLeft, int leftColumnCount, TableRows inner,
+                           RowPredicate innerFilter, int innerKeyOrdinal, int innerColumnCount, TableIndex index,
+                           Lock indexLock) {
+        super(leftColumnCount);
+        this.outer = outer;
+        this.outerIsLeft = outerIsLeft;
+        this.inner = inner;
+        this.innerFilter = innerFilter;
+        this.innerKeyOrdinal = innerKeyOrdinal;
+        this.innerColumnCount = innerColumnCount;
+        this.index = index;
+        this.indexLock = indexLock;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (true) {
+            if (matches != null) {
+                while (matches.next()) {
+                    String innerValue = matches.getString(innerKeyOrdinal);
+                    if (innerValue != null && outerKey.equals(index.keyOf(innerValue)) && innerFilter.test(matches)) {
+                        String[] innerRow = readRow(matches, innerColumnCount);
+                        if (outerIsLeft) {
+                            setRow(outerRow, innerRow);
+                        } else {
+                            setRow(innerRow, outerRow);
+                        }
+                        return true;
+                    }
+                }
+                matches.close();
+                matches = null;
+            }
+            outerRow = outer.next();
+            if (outerRow == null) {
+                return false;
+            }
+            String value = outerRow[outer.keyOrdinal];
+            outerKey = value == null ? null : index.keyOf(value);
+            if (outerKey == null) {
+                continue;
+            }
+            locations.clear();
+            indexLock.lock();
+            try {
+                index.getStructure().lookup(outerKey, locations);
+            } finally {
+                indexLock.unlock();
+            }
+            if (locations.size() > 0) {
+                matches = inner.fetch(locations.toSortedArray());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (matches != null) {
+                matches.close();
+                matches = null;
+            }
+        } finally {
+            outer.cursor.close();
+        }
+    }
+}
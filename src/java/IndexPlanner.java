@@ -0,0 +1,192 @@
+package src.java;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses secondary index lookups for a WHERE condition.
+ * The locations it returns are a superset of the matching rows; the compiled predicate is still applied
+ * to every fetched row, so plans only need to be sound, not exact.
+ */
+public final class IndexPlanner {
+
+    private IndexPlanner() {
+    }
+
+    /**
+     * Bounds collected for one column from the comparisons of a conjunction.
+     */
+    private static final class Bounds {
+        Object equal;
+        Object low;
+        boolean lowInclusive;
+        Object high;
+        boolean highInclusive;
+        boolean empty;
+    }
+
+    /**
+     * Finds the row locations an index lookup yields for a condition.
+     * @param condition The WHERE condition, already validated by compiling it against the schema
+     * @param table The open table with its indexes
+     * @return The candidate locations, or null if no index can narrow the scan
+     */
+    public static LocationList plan(Condition condition, OpenTable table) {
+        if (table.indexes.isEmpty()) {
+            return null;
+        }
+        if (condition instanceof Condition.Or) {
+            LocationList union = new LocationList();
+            for (Condition operand : ((Condition.Or) condition).operands) {
+                LocationList locations = plan(operand, table);
+                if (locations == null) {
+                    return null; // One branch needs a full scan anyway
+                }
+                union.addAll(locations);
+            }
+            return union;
+        }
+        if (condition instanceof Condition.In && !((Condition.In) condition).negated) {
+            Condition.In in = (Condition.In) condition;
+            TableIndex index = table.indexOn(in.column, false);
+            if (index == null) {
+                return null;
+            }
+            ColumnDefinition column = table.schema.column(table.schema.ordinalOf(in.column));
+            LocationList locations = new LocationList();
+            for (Condition.Literal literal : in.values) {
+                Object key = key(column, literal, 0);
+                if (key != null) {
+                    index.getStructure().lookup(key, locations);
+                }
+            }
+            return locations;
+        }
+        List<Condition> conjuncts = new ArrayList<>();
+        if (condition instanceof Condition.And) {
+            conjuncts.addAll(((Condition.And) condition).operands);
+        } else {
+            conjuncts.add(condition);
+        }
+        return planConjunction(conjuncts, table);
+    }
+
+    /**
+     * Narrows each indexed column to its tightest bounds and picks the lookup yielding the fewest rows.
+     */
+    private static LocationList planConjunction(List<Condition> conjuncts, OpenTable table) {
+        Map<String, Bounds> boundsByColumn = new LinkedHashMap<>();
+        LocationList best = null;
+        for (Condition conjunct : conjuncts) {
+            if (conjunct instanceof Condition.Comparison) {
+                Condition.Comparison comparison = (Condition.Comparison) conjunct;
+                if (comparison.operator != Condition.Operator.NE) {
+                    ColumnDefinition column = table.schema.column(table.schema.ordinalOf(comparison.column));
+                    narrow(boundsByColumn.computeIfAbsent(comparison.column, c -> new Bounds()), column, comparison);
+                }
+            } else if (!(conjunct instanceof Condition.Not)) {
+                best = smaller(best, plan(conjunct, table));
+            }
+        }
+        for (Map.Entry<String, Bounds> entry : boundsByColumn.entrySet()) {
+            Bounds bounds = entry.getValue();
+            if (bounds.empty) {
+                return new LocationList(1);
+            }
+            TableIndex index = table.indexOn(entry.getKey(), bounds.equal == null);
+            if (index == null) {
+                continue;
+            }
+            LocationList locations = new LocationList();
+            if (bounds.equal != null) {
+                index.getStructure().lookup(bounds.equal, locations);
+            } else {
+                index.getStructure().range(bounds.low, bounds.lowInclusive, bounds.high, bounds.highInclusive, locations);
+            }
+            best = smaller(best, locations);
+        }
+        return best;
+    }
+
+    private static LocationList smaller(LocationList current, LocationList candidate) {
+        if (candidate == null) {
+            return current;
+        }
+        return current == null || candidate.size() < current.size() ? candidate : current;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    private static void narrow(Bounds bounds, ColumnDefinition column, Condition.Comparison comparison) {
+        switch (comparison.operator) {
+            case EQ: {
+                Object key = key(column, comparison.literal, 0);
+                if (key == null || (bounds.equal != null && compare(bounds.equal, key) != 0)) {
+                    bounds.empty = true;
+                } else {
+                    bounds.equal = key;
+                }
+                break;
+            }
+            case GT:
+            case GE: {
+                Object key = key(column, comparison.literal, -1);
+                boolean inclusive = comparison.operator == Condition.Operator.GE || isClamped(column, comparison.literal);
+                if (key == null) {
+                    bounds.empty = true;
+                } else if (bounds.low == null || compare(key, bounds.low) > 0
+                        || (compare(key, bounds.low) == 0 && !inclusive)) {
+                    bounds.low = key;
+                    bounds.lowInclusive = inclusive;
+                }
+                break;
+            }
+            default: {
+                Object key = key(column, comparison.literal, 1);
+                boolean inclusive = comparison.operator == Condition.Operator.LE || isClamped(column, comparison.literal);
+                if (key == null) {
+                    bounds.empty = true;
+                } else if (bounds.high == null || compare(key, bounds.high) < 0
+                        || (compare(key, bounds.high) == 0 && !inclusive)) {
+                    bounds.high = key;
+                    bounds.highInclusive = inclusive;
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Converts a literal to an index key of the column's type.
+     * @param column The indexed column
+     * @param literal The literal from the condition
+     * @param side 0 for an equality key, -1 for a lower bound, 1 for an upper bound
+     * @return The key, or null if no int value can satisfy the bound
+     */
+    private static Object key(ColumnDefinition column, Condition.Literal literal, int side) {
+        if (column.getType() == ColumnType.VARCHAR) {
+            return literal.text;
+        }
+        long value = literal.asLong(column);
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        if (side == 0 || (side < 0 && value > Integer.MAX_VALUE) || (side > 0 && value < Integer.MIN_VALUE)) {
+            return null;
+        }
+        return value > Integer.MAX_VALUE ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+    }
+
+    private static boolean isClamped(ColumnDefinition column, Condition.Literal literal) {
+        if (column.getType() != ColumnType.INT) {
+            return false;
+        }
+        long value = literal.asLong(column);
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,44 @@
+package src.java;
+
+/**
+ * In-memory map from column keys to the locations of the rows holding them.
+ * Keys are Integer for int columns and String for varchar columns.
+ */
+public interface IndexStructure {
+
+    /**
+     * Adds a row location under a key; a key may map to many rows.
+     * @param key The column value
+     * @param location The row location
+     */
+    void insert(Object key, long location);
+
+    /**
+     * Collects the locations of the rows whose key equals the given key.
+     * @param key The key to look up
+     * @param out The list receiving the locations
+     */
+    void lookup(Object key, LocationList out);
+
+    /**
+     * @return True if the structure can answer {@link #range} lookups
+     */
+    boolean supportsRange();
+
+    /**
+     * Collects the locations of the rows whose key lies in a range.
+     * @param low The lower bound, or null for no lower bound
+     * @param lowInclusive Whether the lower bound itself matches
+     * @param high The upper bound, or null for no upper bound
+     * @param highInclusive Whether the upper bound itself matches
+     * @param out The list receiving the locations
+     * @throws UnsupportedOperationException If the structure is not ordered
+     */
+    void range(Object low, boolean lowInclusive, Object high, boolean highInclusive,
+               LocationList out);
+
+    /**
+     * @return The number of distinct keys
+     */
+    int keyCount();
+}
@@ -0,0 +1,26 @@
+package src.java;
+
+/**
+ * The kinds of secondary index that can be created on a column.
+ */
+public enum IndexType {
+    /** Ordered index answering equality and range lookups in O(log n). */
+    BTREE,
+    /** Unordered index answering equality lookups in O(1). */
+    HASH;
+
+    /**
+     * Parses an index type name case-insensitively.
+     * @param name The type name, e.g. "hash"
+     * @return The index type
+     * @throws IllegalArgumentException If the name is not a known index type
+     */
+    public static IndexType parse(String name) {
+        for (IndexType type : values()) {
+            if (type.name().equalsIgnoreCase(name.trim())) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown index type \"" + name.trim() + "\"");
+    }
+}
@@ -0,0 +1,121 @@
+package src.java;
+
+import java.io.IOException;
+
+/**
+ * Cursor over the rows of a join. Each row is a row of the first table followed by a row of the second,
+ * read by the ordinals of {@link TableSchema#joined(TableSchema, TableSchema)}; a row's location is its
+ * position in the result. Subclasses find the pairs of matching rows.
+ */
+public abstract class JoinCursor implements RowCursor {
+    private final int leftColumnCount;
+    private String[] left;
+    private String[] right;
+    private long position = -1;
+
+    /**
+     * One side of a join read from a cursor: the rows, the filter applied to them before they are joined
+     * and the column compared with the other side.
+     */
+    public static final class Input implements RowSource {
+        final RowCursor cursor;
+        final RowPredicate filter;
+        final int keyOrdinal;
+        final int columnCount;
+
+        /**
+         * @param cursor The rows, closed with the join
+         * @param filter The part of the WHERE condition that only reads this side
+         * @param keyOrdinal The ordinal of the join column
+         * @param columnCount The number of columns of the table
+         */
+        public Input(RowCursor cursor, RowPredicate filter, int keyOrdinal, int columnCount) {
+            this.cursor = cursor;
+            this.filter = filter;
+            this.keyOrdinal = keyOrdinal;
+            this.columnCount = columnCount;
+        }
+
+        /**
+         * @return The next row that passes the filter, or null after the last one
+         * @throws IOException If the table could not be read
+         */
+        @Override
+        public String[] next() throws IOException {
+            while (cursor.next()) {
+                if (filter.test(cursor)) {
+                    return readRow(cursor, columnCount);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @param leftColumnCount The number of columns of the first table
+     */
+    protected JoinCursor(int leftColumnCount) {
+        this.leftColumnCount = leftColumnCount;
+    }
+
+    /**
+     * Makes a pair of rows the current row.
+     * @param left The row of the first table
+     * @param right The row of the second table
+     */
+    protected void setRow(String[] left, String[] right) {
+        this.left = left;
+        this.right = right;
+        position++;
+    }
+
+    /**
+     * Copies the current row of a cursor.
+     * @param cursor The cursor positioned on a row
+     * @param columnCount The number of columns to copy
+     * @return The values, null for columns the stored row lacks
+     */
+    static String[] readRow(RowCursor cursor, int columnCount) {
+        String[] row = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            row[i] = cursor.getString(i);
+        }
+        return row;
+    }
+
+    /**
+     * Converts a join column value to the key it is matched by, as {@link TableIndex#keyOf(String)} does.
+     * @param value The value, or null
+     * @param numeric Whether the join columns are int columns
+     * @return An Integer for int columns or the String itself, or null if the value cannot match any row
+     */
+    static Object key(String value, boolean numeric) {
+        if (value == null || !numeric) {
+            return value;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public long location() {
+        return position;
+    }
+
+    @Override
+    public String getString(int ordinal) {
+        return ordinal < leftColumnCount ? left[ordinal] : right[ordinal - leftColumnCount];
+    }
+
+    @Override
+    public int getInt(int ordinal) {
+        String value = getString(ordinal);
+        if (value == null) {
+            throw new NumberFormatException("Missing value for column " + ordinal);
+        }
+        return Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,84 @@
+package src.java;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with one bucket per power of two microseconds. Recording is a bit count and two
+ * {@link LongAdder} increments, so concurrent sessions can record without contending on a shared counter.
+ * Percentiles are reported as the upper bound of the bucket they fall into, which is within a factor of
+ * two of the true value.
+ */
+public class LatencyHistogram {
+    static final int BUCKETS = 40; // The last bucket holds everything from about 6 days on
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one latency.
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos) / 1000;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return The mean latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMeanNanos() {
+        long n = getCount();
+        return n == 0 ? 0 : getTotalNanos() / n;
+    }
+
+    /**
+     * Returns an upper bound for a percentile.
+     * @param fraction The percentile as a fraction, e.g. 0.99
+     * @return The upper bound of the bucket holding the percentile in nanoseconds, capped by the maximum
+     */
+    public long getPercentileNanos(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            n += counts[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min((1L << i) * 1000, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+}
@@ -0,0 +1,127 @@
+package src.java;
+
+import java.io.IOException;
+
+/**
+ * The rows of a storage engine that have not been deleted. Every cursor it opens skips the rows in the
+ * table's {@link Tombstones}.
+ * <p>
+ * Rows bound to a {@link TableVersion} show the table as a snapshot saw it: rows appended after the
+ * version are cut off and rows deleted after it are still there. Such a view only reads, so it can be used
+ * while a writer appends to the engine. A view may also hide further rows, those deleted by the open
+ * transaction that reads it.
+ */
+public class LiveRows implements TableRows {
+    private final TableRows engine;
+    private final Tombstones tombstones;
+    private final TableVersion version;
+    private final LocationSet hidden;
+
+    /**
+     * @param engine The storage engine holding every row ever appended
+     * @param tombstones The deleted rows of the table
+     * @param version The version to show, or null for every row written so far
+     * @param hidden Further rows to skip, or null
+     */
+    public LiveRows(TableRows engine, Tombstones tombstones, TableVersion version, LocationSet hidden) {
+        this.engine = engine;
+        this.tombstones = tombstones;
+        this.version = version;
+        this.hidden = hidden == null || hidden.isEmpty() ? null : hidden;
+    }
+
+    @Override
+    public RowCursor scanAfter(long location) throws IOException {
+        return live(engine.scanAfter(location));
+    }
+
+    @Override
+    public RowCursor scan(Condition condition) throws IOException {
+        return live(engine.scan(condition));
+    }
+
+    @Override
+    public long[] split(int parts) throws IOException {
+        return engine.split(parts);
+    }
+
+    @Override
+    public RowCursor scanRange(long start, long end) throws IOException {
+        return live(engine.scanRange(start, end));
+    }
+
+    @Override
+    public RowCursor scanRange(long start, long end, Condition condition) throws IOException {
+        return live(engine.scanRange(start, end, condition));
+    }
+
+    @Override
+    public RowCursor fetch(long[] locations) throws IOException {
+        return live(engine.fetch(locations));
+    }
+
+    /**
+     * Does nothing; the engine and the tombstones are closed by the table that owns them.
+     */
+    @Override
+    public void close() {
+    }
+
+    private RowCursor live(RowCursor cursor) {
+        if (version == null) {
+            return tombstones.isEmpty() && hidden == null ? cursor : new LiveCursor(cursor, Long.MAX_VALUE, Long.MAX_VALUE);
+        }
+        return new LiveCursor(cursor, version.rowLimit, version.tombstoneCount);
+    }
+
+    /**
+     * Cursor passing on the rows of an engine cursor whose location has no tombstone. Engine cursors return
+     * rows in location order, so it stops at the first row beyond the row limit.
+     */
+    private final class LiveCursor implements RowCursor {
+        private final RowCursor cursor;
+        private final long rowLimit;
+        private final long tombstoneCount;
+
+        LiveCursor(RowCursor cursor, long rowLimit, long tombstoneCount) {
+            this.cursor = cursor;
+            this.rowLimit = rowLimit;
+            this.tombstoneCount = tombstoneCount;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (cursor.next()) {
+                long location = cursor.location();
+                if (location >= rowLimit) {
+                    return false;
+                }
+                if ((tombstoneCount == 0 || !tombstones.deletedBefore(location, tombstoneCount))
+                        && (hidden == null || !hidden.contains(location))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public long location() {
+            return cursor.location();
+        }
+
+        @Override
+        public String getString(int ordinal) {
+            return cursor.getString(ordinal);
+        }
+
+        @Override
+        public int getInt(int ordinal) {
+            return cursor.getInt(ordinal);
+        }
+
+        @Override
+        public void close() throws IOException {
+            cursor.close();
+        }
+    }
+}
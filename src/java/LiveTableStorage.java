@@ -0,0 +1,90 @@
+package src.java;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A storage engine whose cursors skip the rows in the table's {@link Tombstones}, as {@link LiveRows}
+ * does; appends and flushes go straight to the engine. It is used by the table's writer.
+ */
+public class LiveTableStorage implements TableStorage {
+    private final TableStorage engine;
+    private final LiveRows rows;
+
+    /**
+     * @param engine The storage engine holding every row ever appended
+     * @param tombstones The deleted rows of the table
+     */
+    public LiveTableStorage(TableStorage engine, Tombstones tombstones) {
+        this.engine = engine;
+        this.rows = new LiveRows(engine, tombstones, null, null);
+    }
+
+    @Override
+    public File getDataFile() {
+        return engine.getDataFile();
+    }
+
+    @Override
+    public long append(String[] values) throws IOException {
+        return engine.append(values);
+    }
+
+    @Override
+    public boolean hasPendingRows() {
+        return engine.hasPendingRows();
+    }
+
+    @Override
+    public long mark() throws IOException {
+        return engine.mark();
+    }
+
+    @Override
+    public void truncateTo(long mark) throws IOException {
+        engine.truncateTo(mark);
+    }
+
+    @Override
+    public void flush(boolean sync) throws IOException {
+        engine.flush(sync);
+    }
+
+    @Override
+    public RowCursor scanAfter(long location) throws IOException {
+        return rows.scanAfter(location);
+    }
+
+    @Override
+    public RowCursor scan(Condition condition) throws IOException {
+        return rows.scan(condition);
+    }
+
+    @Override
+    public long[] split(int parts) throws IOException {
+        return rows.split(parts);
+    }
+
+    @Override
+    public RowCursor scanRange(long start, long end) throws IOException {
+        return rows.scanRange(start, end);
+    }
+
+    @Override
+    public RowCursor scanRange(long start, long end, Condition condition) throws IOException {
+        return rows.scanRange(start, end, condition);
+    }
+
+    @Override
+    public RowCursor fetch(long[] locations) throws IOException {
+        return rows.fetch(locations);
+    }
+
+    /**
+     * Closes the engine; the tombstones are closed by their owner.
+     */
+    @Override
+    public void close() throws IOException {
+        engine.close();
+    }
+}
@@ -0,0 +1,122 @@
+package src.java;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Local load generator for {@link DatabaseServer}. It opens a number of concurrent sessions, each on a
+ * virtual thread, that insert rows through a prepared statement and mix in aggregate queries, then
+ * reports throughput and latency percentiles.
+ * <p>
+ * Usage: {@code LoadGenerator [port] [sessions] [statements per session] [percent reads]}
+ */
+public class LoadGenerator {
+    private static final String TABLE = "load_test";
+
+    /**
+     * One client connection speaking the server's line protocol.
+     */
+    static final class Client implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        Client(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(socket.getOutputStream(), false, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Sends a query and waits for its complete response.
+         * @param query The query
+         * @return The response lines
+         * @throws IOException If the connection failed
+         */
+        List<String> execute(String query) throws IOException {
+            out.println(query);
+            out.flush();
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null && !line.equals(DatabaseServer.END_OF_RESPONSE)) {
+                lines.add(line);
+            }
+            if (line == null) {
+                throw new IOException("Connection closed by the server");
+            }
+            return lines;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DatabaseServer.DEFAULT_PORT;
+        int sessionCount = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int statements = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int readPercent = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        try (Client setup = new Client(port)) {
+            setup.execute("CREATE TABLE " + TABLE + " (id int, session int, payload varchar(32))");
+        }
+
+        long[][] latencies = new long[sessionCount][];
+        long start = System.nanoTime();
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int s = 0; s < sessionCount; s++) {
+                int session = s;
+                results.add(threads.submit(() -> runSession(port, session, statements, readPercent)));
+            }
+            for (int s = 0; s < sessionCount; s++) {
+                latencies[s] = results.get(s).get();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%d sessions, %d statements in %.2f s: %.0f statements/s%n", sessionCount, all.length,
+                elapsed / 1e9, all.length / (elapsed / 1e9));
+        System.out.printf("latency p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", percentile(all, 0.50) / 1e6,
+                percentile(all, 0.99) / 1e6, all.length == 0 ? 0.0 : all[all.length - 1] / 1e6);
+    }
+
+    private static long[] runSession(int port, int session, int statements, int readPercent) throws IOException {
+        long[] latencies = new long[statements];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (Client client = new Client(port)) {
+            client.execute("PREPARE ins AS INSERT INTO " + TABLE + " VALUES (?, ?, ?)");
+            for (int i = 0; i < statements; i++) {
+                String query = random.nextInt(100) < readPercent
+                        ? "SELECT COUNT(*), MAX(id) FROM " + TABLE + " WHERE session = " + session
+                        : "EXECUTE ins(" + i + ", " + session + ", 'row " + i + " of session " + session + "')";
+                long begin = System.nanoTime();
+                client.execute(query);
+                latencies[i] = System.nanoTime() - begin;
+            }
+        }
+        return latencies;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(sorted.length * fraction))];
+    }
+}
@@ -0,0 +1,65 @@
+package src.java;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of row locations without boxing.
+ */
+public class LocationList {
+    private long[] items;
+    private int size;
+
+    public LocationList() {
+        this(2);
+    }
+
+    public LocationList(int capacity) {
+        items = new long[Math.max(capacity, 1)];
+    }
+
+    public void add(long location) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+        }
+        items[size++] = location;
+    }
+
+    /**
+     * Appends all locations of another list.
+     * @param other The list to copy from
+     */
+    public void addAll(LocationList other) {
+        if (size + other.size > items.length) {
+            items = Arrays.copyOf(items, Math.max(size + other.size, size * 2));
+        }
+        System.arraycopy(other.items, 0, items, size, other.size);
+        size += other.size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long get(int index) {
+        return items[index];
+    }
+
+    /**
+     * @return The locations sorted ascending with duplicates removed, ready for a fetch
+     */
+    public long[] toSortedArray() {
+        long[] sorted = Arrays.copyOf(items, size);
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+    }
+}
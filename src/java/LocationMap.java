@@ -0,0 +1,99 @@
+package src.java;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from row locations to non-negative numbers without boxing, using open addressing with linear
+ * probing. Keys and values share one array, so a lookup always sees a matching pair even if the map grows.
+ * Lookups may run concurrently with each other but not with {@link #putIfAbsent(long, long)}.
+ */
+public class LocationMap {
+    private static final long EMPTY = -1L; // Locations are never negative
+
+    private long[] entries; // Key at 2i, value at 2i + 1
+    private int size;
+
+    public LocationMap() {
+        this(16);
+    }
+
+    /**
+     * @param expected The number of locations the map should hold without growing
+     */
+    public LocationMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+        entries = new long[capacity * 2];
+        Arrays.fill(entries, EMPTY);
+    }
+
+    /**
+     * @param location A row location
+     * @param value The value to store with it, never negative
+     * @return True if the location was not in the map yet; otherwise its value is left unchanged
+     */
+    public boolean putIfAbsent(long location, long value) {
+        if ((size + 1) * 4 > entries.length) {
+            grow();
+        }
+        int slot = slotOf(location, entries.length);
+        while (entries[slot] != EMPTY) {
+            if (entries[slot] == location) {
+                return false;
+            }
+            slot = (slot + 2) & (entries.length - 1);
+        }
+        entries[slot + 1] = value;
+        entries[slot] = location;
+        size++;
+        return true;
+    }
+
+    /**
+     * @param location A row location
+     * @return The value stored with the location, or -1 if it is not in the map
+     */
+    public long get(long location) {
+        long[] table = entries;
+        int slot = slotOf(location, table.length);
+        while (table[slot] != EMPTY) {
+            if (table[slot] == location) {
+                return table[slot + 1];
+            }
+            slot = (slot + 2) & (table.length - 1);
+        }
+        return EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void grow() {
+        long[] grown = new long[entries.length * 2];
+        Arrays.fill(grown, EMPTY);
+        for (int i = 0; i < entries.length; i += 2) {
+            long location = entries[i];
+            if (location != EMPTY) {
+                int slot = slotOf(location, grown.length);
+                while (grown[slot] != EMPTY) {
+                    slot = (slot + 2) & (grown.length - 1);
+                }
+                grown[slot] = location;
+                grown[slot + 1] = entries[i + 1];
+            }
+        }
+        entries = grown;
+    }
+
+    /**
+     * @return The even index of the entry where probing for a location starts
+     */
+    private static int slotOf(long location, int length) {
+        long hash = location * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (length - 2);
+    }
+}
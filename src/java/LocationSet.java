@@ -0,0 +1,87 @@
+package src.java;
+
+import java.util.Arrays;
+
+/**
+ * Hash set of row locations without boxing, using open addressing with linear probing.
+ * Lookups may run concurrently with each other but not with {@link #add(long)}.
+ */
+public class LocationSet {
+    private static final long EMPTY = -1L; // Locations are never negative
+
+    private long[] slots;
+    private int size;
+
+    public LocationSet() {
+        this(16);
+    }
+
+    /**
+     * @param expected The number of locations the set should hold without growing
+     */
+    public LocationSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+        slots = new long[capacity];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    /**
+     * @param location A row location
+     * @return True if the location was not in the set yet
+     */
+    public boolean add(long location) {
+        if ((size + 1) * 2 > slots.length) {
+            grow();
+        }
+        int slot = slotOf(location, slots.length);
+        while (slots[slot] != EMPTY) {
+            if (slots[slot] == location) {
+                return false;
+            }
+            slot = (slot + 1) & (slots.length - 1);
+        }
+        slots[slot] = location;
+        size++;
+        return true;
+    }
+
+    public boolean contains(long location) {
+        long[] table = slots;
+        int slot = slotOf(location, table.length);
+        while (table[slot] != EMPTY) {
+            if (table[slot] == location) {
+                return true;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void grow() {
+        long[] grown = new long[slots.length * 2];
+        Arrays.fill(grown, EMPTY);
+        for (long location : slots) {
+            if (location != EMPTY) {
+                int slot = slotOf(location, grown.length);
+                while (grown[slot] != EMPTY) {
+                    slot = (slot + 1) & (grown.length - 1);
+                }
+                grown[slot] = location;
+            }
+        }
+        slots = grown;
+    }
+
+    private static int slotOf(long location, int capacity) {
+        long hash = location * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (capacity - 1);
+    }
+}
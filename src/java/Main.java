@@ -8,6 +8,9 @@ public class Main {
     public static void main(String[] args) {
         try {
             String userId = UserAuthentication.authenticateUser();
+            if (userId.isEmpty()) {
+                return;
+            }
             DatabaseManagement.manageDatabase(userId);
 
         } catch (IOException | NoSuchAlgorithmException e) {
@@ -0,0 +1,243 @@
+package src.java;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A table's storage engine, tombstones and secondary indexes, opened for the schema they were built from.
+ * {@link #storage} shows the rows that have not been deleted, including those of a commit still being
+ * applied; it is used by the table's writer. Readers go through {@link #snapshot(long, LocationSet)}, which
+ * shows a committed {@link TableVersion}.
+ * <p>
+ * The versions still visible to some snapshot are kept in commit order. The first is the state the table
+ * was opened in, stamped with the last commit that changed the table before it was opened. Snapshots older
+ * than that commit cannot be served, since the versions they would read were not kept.
+ */
+public class OpenTable implements Closeable {
+    static final int INDEX_FLUSH_THRESHOLD = 256 * 1024;
+
+    final TableSchema schema;
+    final TableStorage storage;
+    final Tombstones tombstones;
+    final List<TableIndex> indexes;
+    private final TableStorage engine;
+    private final int[] indexOrdinals;
+    private long storedRows = -1; // Rows in the data file including deleted ones, -1 until counted
+    private final List<TableVersion> versions = new ArrayList<>(); // Guarded by this
+
+    /**
+     * Opens a table's tombstones and indexes. Indexes that do not yet cover every row,
+     * such as a newly created one, are brought up to date by scanning the rows after their last entry.
+     * @param dbDirectory The database directory
+     * @param schema The schema of the table
+     * @param engine The opened storage engine
+     * @param openedAt The timestamp of the last commit that changed the table, 0 if none has since the
+     *        database was opened
+     * @throws IOException If the tombstones or an index could not be opened
+     */
+    OpenTable(String dbDirectory, TableSchema schema, TableStorage engine, long openedAt) throws IOException {
+        this.schema = schema;
+        this.engine = engine;
+        this.tombstones = new Tombstones(Tombstones.file(engine.getDataFile()));
+        this.storage = new LiveTableStorage(engine, tombstones);
+        List<TableIndex> opened = new ArrayList<>();
+        indexOrdinals = new int[schema.getIndexes().size()];
+        try {
+            for (IndexDefinition definition : schema.getIndexes()) {
+                int ordinal = schema.ordinalOf(definition.getColumn());
+                if (ordinal < 0) {
+                    throw new IOException("Index " + definition.getName() + " refers to unknown column "
+                            + definition.getColumn());
+                }
+                TableIndex index = TableIndex.open(TableIndex.indexFile(dbDirectory, schema.getTableName(),
+                        definition.getName()), definition, schema.column(ordinal));
+                indexOrdinals[opened.size()] = ordinal;
+                opened.add(index);
+                catchUp(index, ordinal);
+            }
+        } catch (IOException e) {
+            for (TableIndex index : opened) {
+                index.close();
+            }
+            tombstones.close();
+            throw e;
+        }
+        this.indexes = Collections.unmodifiableList(opened);
+        versions.add(new TableVersion(openedAt, engine.mark(), tombstones.mark()));
+    }
+
+    private void catchUp(TableIndex index, int ordinal) throws IOException {
+        try (RowCursor cursor = storage.scanAfter(index.getMaxLocation())) {
+            while (cursor.next()) {
+                String value = cursor.getString(ordinal);
+                if (value != null) {
+                    index.add(value, cursor.location());
+                }
+            }
+        }
+        index.flush(false);
+    }
+
+    /**
+     * Appends a validated row and records it in every index.
+     * @param values The row values in column order
+     * @return The location of the new row
+     * @throws IOException If an input or output exception occurred
+     */
+    long append(String[] values) throws IOException {
+        long location = storage.append(values);
+        for (int i = 0; i < indexOrdinals.length; i++) {
+            TableIndex index = indexes.get(i);
+            index.add(values[indexOrdinals[i]], location);
+            if (index.pendingSize() >= INDEX_FLUSH_THRESHOLD) {
+                flush(false);
+            }
+        }
+        if (storedRows >= 0) {
+            storedRows++;
+        }
+        return location;
+    }
+
+    /**
+     * Deletes a row by adding a tombstone for it. Index entries of the row stay until the table is compacted;
+     * lookups skip them because the fetched row is gone.
+     * @param location The location of the row
+     */
+    void delete(long location) {
+        tombstones.add(location);
+    }
+
+    /**
+     * Removes the rows and tombstones added after two marks were taken, used to undo a partially applied change.
+     * @param mark A mark of the storage engine
+     * @param tombstoneMark A mark of the tombstones
+     * @throws IOException If an input or output exception occurred
+     */
+    void truncateTo(long mark, long tombstoneMark) throws IOException {
+        storage.truncateTo(mark);
+        tombstones.truncateTo(tombstoneMark);
+        storedRows = -1;
+    }
+
+    /**
+     * Returns the number of rows in the data file, deleted ones included. The rows are counted by a scan
+     * the first time and tracked as rows are appended afterwards.
+     * @return The row count
+     * @throws IOException If the rows could not be counted
+     */
+    long storedRows() throws IOException {
+        if (storedRows < 0) {
+            engine.flush(false);
+            long count = 0;
+            try (RowCursor cursor = engine.scan()) {
+                while (cursor.next()) {
+                    count++;
+                }
+            }
+            storedRows = count;
+        }
+        return storedRows;
+    }
+
+    /**
+     * Records the current state of the table as the version committed at a timestamp, and forgets the
+     * versions no open snapshot can see any more. The rows must have been written to the data file.
+     * @param commitTimestamp The commit timestamp
+     * @param oldestSnapshot The timestamp of the oldest open snapshot
+     * @throws IOException If the storage mark could not be taken
+     */
+    synchronized void publish(long commitTimestamp, long oldestSnapshot) throws IOException {
+        versions.add(new TableVersion(commitTimestamp, storage.mark(), tombstones.mark()));
+        while (versions.size() > 1 && versions.get(1).commitTimestamp <= oldestSnapshot) {
+            versions.remove(0);
+        }
+    }
+
+    /**
+     * @param snapshot A snapshot timestamp
+     * @return The last version committed at or before the snapshot
+     * @throws IllegalStateException If the snapshot is older than the state the table was opened in
+     */
+    synchronized TableVersion versionAt(long snapshot) {
+        if (snapshot < versions.get(0).commitTimestamp) {
+            throw new IllegalStateException("Table " + schema.getTableName()
+                    + " was rebuilt after the transaction began; the transaction must be rolled back.");
+        }
+        for (int i = versions.size() - 1; i > 0; i--) {
+            if (versions.get(i).commitTimestamp <= snapshot) {
+                return versions.get(i);
+            }
+        }
+        return versions.get(0);
+    }
+
+    /**
+     * @return The last committed version
+     */
+    synchronized TableVersion latestVersion() {
+        return versions.get(versions.size() - 1);
+    }
+
+    /**
+     * Returns the rows of the table as a snapshot sees them. The view can be read while the table is written.
+     * @param snapshot A snapshot timestamp
+     * @param hidden Further rows to skip, such as those deleted by the reading transaction, or null
+     * @return A read-only view of the table
+     * @throws IllegalStateException If the snapshot is older than the state the table was opened in
+     */
+    TableRows snapshot(long snapshot, LocationSet hidden) {
+        return new LiveRows(engine, tombstones, versionAt(snapshot), hidden);
+    }
+
+    /**
+     * Returns the open index on a column that can serve a lookup.
+     * @param column The column name
+     * @param needsRange Whether the lookup is a range lookup
+     * @return The most suitable index, or null if no index on the column can serve the lookup
+     */
+    TableIndex indexOn(String column, boolean needsRange) {
+        TableIndex best = null;
+        for (TableIndex index : indexes) {
+            if (!index.getDefinition().getColumn().equals(column)) {
+                continue;
+            }
+            boolean ordered = index.getStructure().supportsRange();
+            if (needsRange && !ordered) {
+                continue;
+            }
+            if (best == null || (!needsRange && !ordered)) {
+                best = index; // Prefer hash indexes for equality lookups
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Writes buffered rows and then the matching index entries, so an index never refers to unwritten rows.
+     * @param sync Whether to force the written data to the storage device
+     * @throws IOException If an input or output exception occurred
+     */
+    void flush(boolean sync) throws IOException {
+        storage.flush(sync);
+        tombstones.flush(sync);
+        for (TableIndex index : indexes) {
+            index.flush(sync);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            storage.close();
+        } finally {
+            tombstones.close();
+            for (TableIndex index : indexes) {
+                index.close();
+            }
+        }
+    }
+}
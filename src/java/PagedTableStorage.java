@@ -0,0 +1,464 @@
+package src.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary storage engine that keeps rows in fixed-size pages.
+ * <p>
+ * Each page starts with a header holding the slot count and the offset where the record area begins.
+ * The slot directory follows the header and grows towards the end of the page, while records are
+ * written backwards from the end of the page. Every slot holds the offset and length of one record.
+ * Records encode int columns as 4 bytes and varchar columns as a 2-byte length followed by UTF-8 bytes.
+ * Scans read the pages through the shared {@link BufferPool} and decode only the columns that are accessed.
+ * A row's location is its page number shifted left by 16 bits combined with its slot number.
+ */
+public class PagedTableStorage implements TableStorage {
+    static final int PAGE_SIZE = 8192;
+    static final int HEADER_SIZE = 4;
+    static final int SLOT_SIZE = 4;
+    private static final int PAGES_PER_BLOCK = BufferPool.BLOCK_SIZE / PAGE_SIZE;
+
+    private final File dataFile;
+    private final TableSchema schema;
+    private final FileChannel channel;
+    private final BufferPool pool = BufferPool.shared();
+    private final long fileId = BufferPool.registerFile();
+    private final List<ByteBuffer> fullPages = new ArrayList<>();
+    private ByteBuffer tailPage;
+    private long tailPageNumber;
+    private boolean tailDirty;
+    private byte[] recordBuffer = new byte[256];
+
+    /**
+     * Opens a paged storage engine, loading the last page so new rows can be added to it.
+     * @param dataFile The {@code <table>.dat} data file
+     * @param schema The schema of the table
+     * @throws IOException If the data file could not be opened or is not a whole number of pages
+     */
+    public PagedTableStorage(File dataFile, TableSchema schema) throws IOException {
+        this.dataFile = dataFile;
+        this.schema = schema;
+        this.channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size % PAGE_SIZE != 0) {
+            // Only a newly appended page can be partially written; its rows are restored from the write-ahead log
+            size -= size % PAGE_SIZE;
+            channel.truncate(size);
+        }
+        tailPage = ByteBuffer.allocate(PAGE_SIZE);
+        if (size == 0) {
+            tailPageNumber = 0;
+            initPage(tailPage);
+        } else {
+            tailPageNumber = size / PAGE_SIZE - 1;
+            readFully(tailPage, tailPageNumber * PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Returns the largest record a schema can produce, used to reject schemas whose rows may not fit a page.
+     * @param schema The table schema
+     * @return The worst-case encoded record size in bytes
+     */
+    public static int maxRecordSize(TableSchema schema) {
+        int size = 0;
+        for (ColumnDefinition column : schema.getColumns()) {
+            size += column.maxEncodedSize();
+        }
+        return size;
+    }
+
+    /**
+     * @return The largest record that fits on an empty page
+     */
+    public static int pageCapacity() {
+        return PAGE_SIZE - HEADER_SIZE - SLOT_SIZE;
+    }
+
+    @Override
+    public File getDataFile() {
+        return dataFile;
+    }
+
+    @Override
+    public long append(String[] values) throws IOException {
+        int length = encode(values);
+        if (length > pageCapacity()) {
+            throw new IOException("Row of " + length + " bytes does not fit in a page.");
+        }
+        if (freeSpace(tailPage) < length + SLOT_SIZE) {
+            fullPages.add(tailPage);
+            tailPage = ByteBuffer.allocate(PAGE_SIZE);
+            initPage(tailPage);
+            tailPageNumber++;
+        }
+        int slotCount = slotCount(tailPage);
+        int recordStart = recordStart(tailPage) - length;
+        tailPage.put(recordStart, recordBuffer, 0, length);
+        int slot = HEADER_SIZE + slotCount * SLOT_SIZE;
+        tailPage.putShort(slot, (short) recordStart);
+        tailPage.putShort(slot + 2, (short) length);
+        tailPage.putShort(0, (short) (slotCount + 1));
+        tailPage.putShort(2, (short) recordStart);
+        tailDirty = true;
+        return location(tailPageNumber, slotCount);
+    }
+
+    static long location(long pageNumber, int slot) {
+        return (pageNumber << 16) | slot;
+    }
+
+    @Override
+    public long mark() {
+        return location(tailPageNumber, slotCount(tailPage));
+    }
+
+    /**
+     * Cuts the file after the page holding the mark and drops the slots appended to that page after it.
+     * Records are written backwards in slot order, so the last kept slot marks the start of the record area.
+     * @param mark A mark returned by {@link #mark()}
+     * @throws IOException If an input or output exception occurred
+     */
+    @Override
+    public void truncateTo(long mark) throws IOException {
+        flush(false);
+        long page = mark >>> 16;
+        int slots = (int) (mark & 0xFFFF);
+        if (page >= channel.size() / PAGE_SIZE) {
+            return; // Nothing after the mark has reached the file
+        }
+        channel.truncate((page + 1) * PAGE_SIZE);
+        pool.invalidate(fileId, page * PAGE_SIZE);
+        tailPageNumber = page;
+        readFully(tailPage, page * PAGE_SIZE);
+        if (slots < slotCount(tailPage)) {
+            int recordStart = slots == 0 ? PAGE_SIZE
+                    : Short.toUnsignedInt(tailPage.getShort(HEADER_SIZE + (slots - 1) * SLOT_SIZE));
+            tailPage.putShort(0, (short) slots);
+            tailPage.putShort(2, (short) recordStart);
+            tailDirty = true;
+            flush(false);
+        }
+    }
+
+    @Override
+    public boolean hasPendingRows() {
+        return tailDirty || !fullPages.isEmpty();
+    }
+
+    /**
+     * Writes the completed pages and the tail page with one gathering write.
+     * @param sync Whether to force the written data to the storage device
+     * @throws IOException If an input or output exception occurred
+     */
+    @Override
+    public void flush(boolean sync) throws IOException {
+        if (!hasPendingRows()) {
+            return;
+        }
+        ByteBuffer[] pages = new ByteBuffer[fullPages.size() + 1];
+        for (int i = 0; i < fullPages.size(); i++) {
+            pages[i] = fullPages.get(i).duplicate().clear();
+        }
+        pages[fullPages.size()] = tailPage.duplicate().clear();
+        long position = (tailPageNumber - fullPages.size()) * PAGE_SIZE;
+        channel.position(position);
+        long remaining = (long) pages.length * PAGE_SIZE;
+        while (remaining > 0) {
+            remaining -= channel.write(pages);
+        }
+        pool.invalidate(fileId, position);
+        QueryMetrics.count(QueryMetrics.Counter.BYTES_WRITTEN, (long) pages.length * PAGE_SIZE);
+        fullPages.clear();
+        tailDirty = false;
+        if (sync) {
+            channel.force(false);
+            QueryMetrics.count(QueryMetrics.Counter.FSYNCS, 1);
+        }
+    }
+
+    @Override
+    public RowCursor scanAfter(long location) throws IOException {
+        return new PageCursor(channel.size(), location, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * Splits the file into page ranges.
+     */
+    @Override
+    public long[] split(int parts) throws IOException {
+        long pageCount = channel.size() / PAGE_SIZE;
+        int count = (int) Math.max(1, Math.min(parts, pageCount));
+        long[] boundaries = new long[count + 1];
+        for (int i = 0; i <= count; i++) {
+            boundaries[i] = location(pageCount * i / count, 0);
+        }
+        return boundaries;
+    }
+
+    @Override
+    public RowCursor scanRange(long start, long end) throws IOException {
+        // For a range starting at slot 0, start - 1 carries slot 0xFFFF of the previous page
+        return new PageCursor(channel.size(), start == 0 ? BEFORE_FIRST : start - 1, null, end);
+    }
+
+    @Override
+    public RowCursor fetch(long[] locations) throws IOException {
+        return new PageCursor(channel.size(), BEFORE_FIRST, locations, Long.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush(false);
+        } finally {
+            pool.invalidate(fileId, 0);
+            channel.close();
+        }
+    }
+
+    /**
+     * Encodes a row into the record buffer.
+     * @param values The validated row values
+     * @return The encoded length
+     */
+    private int encode(String[] values) {
+        int position = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (schema.column(i).getType() == ColumnType.INT) {
+                ensureRecordCapacity(position + 4);
+                int value = Integer.parseInt(values[i]);
+                recordBuffer[position] = (byte) (value >>> 24);
+                recordBuffer[position + 1] = (byte) (value >>> 16);
+                recordBuffer[position + 2] = (byte) (value >>> 8);
+                recordBuffer[position + 3] = (byte) value;
+                position += 4;
+            } else {
+                byte[] bytes = values[i].getBytes(StandardCharsets.UTF_8);
+                ensureRecordCapacity(position + 2 + bytes.length);
+                recordBuffer[position] = (byte) (bytes.length >>> 8);
+                recordBuffer[position + 1] = (byte) bytes.length;
+                System.arraycopy(bytes, 0, recordBuffer, position + 2, bytes.length);
+                position += 2 + bytes.length;
+            }
+        }
+        return position;
+    }
+
+    private void ensureRecordCapacity(int required) {
+        if (required > recordBuffer.length) {
+            byte[] grown = new byte[Math.max(required, recordBuffer.length * 2)];
+            System.arraycopy(recordBuffer, 0, grown, 0, recordBuffer.length);
+            recordBuffer = grown;
+        }
+    }
+
+    private void readFully(ByteBuffer page, long position) throws IOException {
+        page.clear();
+        while (page.hasRemaining()) {
+            if (channel.read(page, position + page.position()) < 0) {
+                throw new IOException("Unexpected end of data file " + dataFile.getName());
+            }
+        }
+        page.clear();
+    }
+
+    private static void initPage(ByteBuffer page) {
+        page.putShort(0, (short) 0);
+        page.putShort(2, (short) PAGE_SIZE);
+    }
+
+    private static int slotCount(ByteBuffer page) {
+        return Short.toUnsignedInt(page.getShort(0));
+    }
+
+    private static int recordStart(ByteBuffer page) {
+        return Short.toUnsignedInt(page.getShort(2));
+    }
+
+    private static int freeSpace(ByteBuffer page) {
+        return recordStart(page) - HEADER_SIZE - slotCount(page) * SLOT_SIZE;
+    }
+
+    /**
+     * Cursor walking the slot directories of pages, either sequentially or over given locations.
+     * The block holding the current page stays pinned in the buffer pool until the cursor moves past it.
+     * Column offsets within a record are computed on demand and remembered for the current row.
+     */
+    private final class PageCursor implements RowCursor {
+        private final long pageCount;
+        private final long[] locations;
+        private final long limit;
+        private final boolean cacheBlocks;
+        private final int[] columnOffsets = new int[schema.columnCount() + 1];
+        private int nextLocation;
+        private BufferPool.Block block;
+        private ByteBuffer window;
+        private long windowFirstPage = -1;
+        private long pageNumber;
+        private int pageBase;
+        private int slotCount;
+        private int slot;
+        private int recordEnd;
+        private int decodedColumns;
+        private byte[] stringBuffer = new byte[256];
+
+        /**
+         * @param size The size of the data file when the scan started
+         * @param after The location of the row to skip before the first row, or BEFORE_FIRST
+         * @param locations The locations to visit instead of reading sequentially, or null
+         * @param limit The location at which a sequential scan stops
+         */
+        PageCursor(long size, long after, long[] locations, long limit) {
+            this.pageCount = size / PAGE_SIZE;
+            this.locations = locations;
+            this.limit = limit;
+            // Lookups of a few locations are always cached; full scans only if the file is small next to the pool
+            this.cacheBlocks = locations != null || pool.shouldCacheScan(size);
+            if (after == BEFORE_FIRST) {
+                slot = -1;
+            } else {
+                pageNumber = after >>> 16;
+                slot = (int) (after & 0xFFFF);
+                if (slot == 0xFFFF) {
+                    pageNumber++; // Positioned before the first slot of the next page
+                    slot = -1;
+                }
+            }
+            slotCount = -1;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (locations != null) {
+                while (nextLocation < locations.length) {
+                    long location = locations[nextLocation++];
+                    if (position(location >>> 16, (int) (location & 0xFFFF))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            while (pageNumber < pageCount && PagedTableStorage.location(pageNumber, slot + 1) < limit) {
+                if (position(pageNumber, slot + 1)) {
+                    return true;
+                }
+                pageNumber++;
+                slot = -1;
+                slotCount = -1;
+            }
+            return false;
+        }
+
+        @Override
+        public long location() {
+            return PagedTableStorage.location(pageNumber, slot);
+        }
+
+        /**
+         * Moves the cursor to a record.
+         * @param page The page number
+         * @param slotNumber The slot number within the page
+         * @return True if the slot holds a record
+         */
+        private boolean position(long page, int slotNumber) throws IOException {
+            if (page >= pageCount) {
+                return false;
+            }
+            if (page != pageNumber || slotCount < 0) {
+                pageNumber = page;
+                openPage();
+            }
+            slot = slotNumber;
+            if (slot >= slotCount) {
+                return false;
+            }
+            int slotPosition = pageBase + HEADER_SIZE + slot * SLOT_SIZE;
+            int offset = Short.toUnsignedInt(window.getShort(slotPosition));
+            int length = Short.toUnsignedInt(window.getShort(slotPosition + 2));
+            columnOffsets[0] = pageBase + offset;
+            recordEnd = pageBase + offset + length;
+            decodedColumns = 0;
+            return true;
+        }
+
+        private void openPage() throws IOException {
+            if (window == null || pageNumber < windowFirstPage || pageNumber >= windowFirstPage + PAGES_PER_BLOCK) {
+                pool.unpin(block);
+                window = null;
+                block = pool.pin(fileId, channel, pageNumber * PAGE_SIZE, cacheBlocks);
+                if (block == null) {
+                    throw new IOException("Unexpected end of data file " + dataFile.getName());
+                }
+                window = block.data();
+                windowFirstPage = block.offset() / PAGE_SIZE;
+            }
+            pageBase = (int) ((pageNumber - windowFirstPage) * PAGE_SIZE);
+            if (pageBase + PAGE_SIZE > window.limit()) {
+                throw new IOException("Unexpected end of data file " + dataFile.getName());
+            }
+            slotCount = Short.toUnsignedInt(window.getShort(pageBase));
+        }
+
+        /**
+         * Computes the start offsets of the columns up to and including the given ordinal.
+         * @param ordinal The column ordinal
+         * @return True if the record holds the column
+         */
+        private boolean locate(int ordinal) {
+            if (ordinal >= schema.columnCount()) {
+                return false;
+            }
+            while (decodedColumns <= ordinal) {
+                int start = columnOffsets[decodedColumns];
+                int width = schema.column(decodedColumns).getType() == ColumnType.INT
+                        ? 4 : 2 + Short.toUnsignedInt(window.getShort(start));
+                columnOffsets[++decodedColumns] = start + width;
+            }
+            return columnOffsets[ordinal + 1] <= recordEnd;
+        }
+
+        @Override
+        public String getString(int ordinal) {
+            if (!locate(ordinal)) {
+                return null;
+            }
+            int start = columnOffsets[ordinal];
+            if (schema.column(ordinal).getType() == ColumnType.INT) {
+                return Integer.toString(window.getInt(start));
+            }
+            int length = Short.toUnsignedInt(window.getShort(start));
+            if (length > stringBuffer.length) {
+                stringBuffer = new byte[Math.max(length, stringBuffer.length * 2)];
+            }
+            window.get(start + 2, stringBuffer, 0, length);
+            return new String(stringBuffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int getInt(int ordinal) {
+            if (!locate(ordinal)) {
+                throw new NumberFormatException("Missing value for column " + ordinal);
+            }
+            if (schema.column(ordinal).getType() == ColumnType.INT) {
+                return window.getInt(columnOffsets[ordinal]);
+            }
+            return Integer.parseInt(getString(ordinal));
+        }
+
+        @Override
+        public void close() {
+            window = null;
+            pool.unpin(block);
+            block = null;
+        }
+    }
+}
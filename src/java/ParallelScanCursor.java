@@ -0,0 +1,181 @@
+package src.java;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Cursor reading several cursors at once, such as those of the partitions of a table, each on a virtual
+ * thread of its own. The threads apply the WHERE predicate and hand the matching rows over in batches
+ * through a bounded queue, so a slow consumer holds them back instead of letting rows pile up in memory.
+ * Rows arrive in no particular order, and their location is their position in the result.
+ * <p>
+ * Rows the predicate rejects are added to the scanned rows of the {@link QueryMetrics} of the statement that
+ * opened the cursor; the consumer counts the rows it receives.
+ */
+public class ParallelScanCursor implements RowCursor {
+    static final int BATCH_ROWS = 1024;
+    private static final List<String[]> END = new ArrayList<>(); // Put by each thread when it is done
+
+    private final BlockingQueue<List<String[]>> batches;
+    private final List<Thread> threads = new ArrayList<>();
+    private final QueryMetrics metrics = QueryMetrics.current();
+    private volatile boolean closed;
+    private volatile Throwable failure;
+    private int running;
+    private List<String[]> batch;
+    private int index;
+    private long position = -1;
+
+    /**
+     * Starts reading the cursors.
+     * @param cursors The cursors to read; each is closed by its thread when it is done
+     * @param predicate The filter applied to each row
+     * @param columnCount The number of columns to copy from each matching row
+     */
+    public ParallelScanCursor(List<RowCursor> cursors, RowPredicate predicate, int columnCount) {
+        batches = new ArrayBlockingQueue<>(Math.max(2, cursors.size() * 2));
+        running = cursors.size();
+        for (RowCursor cursor : cursors) {
+            threads.add(Thread.ofVirtual().name("parallel-scan").start(() -> read(cursor, predicate, columnCount)));
+        }
+    }
+
+    private void read(RowCursor cursor, RowPredicate predicate, int columnCount) {
+        QueryMetrics previous = QueryMetrics.enter(metrics);
+        long rejected = 0;
+        try (cursor) {
+            List<String[]> rows = new ArrayList<>(BATCH_ROWS);
+            while (!closed && cursor.next()) {
+                if (!predicate.test(cursor)) {
+                    rejected++;
+                    continue;
+                }
+                String[] row = new String[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = cursor.getString(i);
+                }
+                rows.add(row);
+                if (rows.size() == BATCH_ROWS) {
+                    batches.put(rows);
+                    rows = new ArrayList<>(BATCH_ROWS);
+                }
+            }
+            if (!rows.isEmpty() && !closed) {
+                batches.put(rows);
+            }
+        } catch (IOException | RuntimeException | InterruptedException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        } finally {
+            QueryMetrics.count(QueryMetrics.Counter.ROWS_SCANNED, rejected);
+            QueryMetrics.exit(previous);
+            putEnd();
+        }
+    }
+
+    private void putEnd() {
+        while (true) {
+            try {
+                batches.put(END);
+                return;
+            } catch (InterruptedException e) {
+                // The consumer is waiting for this marker, so it must be delivered
+            }
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (batch == null || ++index >= batch.size()) {
+            if (running == 0) {
+                rethrow();
+                return false;
+            }
+            try {
+                batch = batches.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for rows.");
+            }
+            index = -1;
+            if (batch == END) {
+                running--;
+                batch = null;
+            }
+        }
+        position++;
+        return true;
+    }
+
+    private void rethrow() throws IOException {
+        Throwable thrown = failure;
+        if (thrown instanceof IOException) {
+            throw (IOException) thrown;
+        }
+        if (thrown instanceof RuntimeException) {
+            throw (RuntimeException) thrown;
+        }
+        if (thrown != null) {
+            throw new InterruptedIOException("Interrupted while reading rows.");
+        }
+    }
+
+    @Override
+    public long location() {
+        return position;
+    }
+
+    @Override
+    public String getString(int ordinal) {
+        String[] row = batch.get(index);
+        return ordinal < row.length ? row[ordinal] : null;
+    }
+
+    @Override
+    public int getInt(int ordinal) {
+        String value = getString(ordinal);
+        if (value == null) {
+            throw new NumberFormatException("Missing value for column " + ordinal);
+        }
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * Stops the threads and waits for them, so that no cursor is still being read once this returns.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean interrupted = false;
+        while (running > 0) {
+            try {
+                if (batches.take() == END) {
+                    running--;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        batch = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package src.java;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How a partitioned table divides its rows among its partitions, as recorded in the table's metadata file.
+ * <p>
+ * HASH partitioning into n partitions puts a row into the partition numbered by its partition column value
+ * modulo n; varchar values are hashed with {@link String#hashCode()} first. RANGE partitioning with the
+ * ascending bounds b1 ... bk has k + 1 partitions: partition 0 holds the values below b1, partition i the
+ * values from bi up to b(i + 1), and partition k the values from bk on.
+ */
+public final class PartitionSpec {
+    static final int MAX_PARTITIONS = 1024;
+
+    /**
+     * The ways rows can be assigned to partitions.
+     */
+    public enum Method {
+        HASH, RANGE
+    }
+
+    private final Method method;
+    private final String column;
+    private final int partitionCount;
+    private final List<String> bounds;
+
+    private PartitionSpec(Method method, String column, int partitionCount, List<String> bounds) {
+        this.method = method;
+        this.column = column;
+        this.partitionCount = partitionCount;
+        this.bounds = Collections.unmodifiableList(new ArrayList<>(bounds));
+    }
+
+    /**
+     * @param column The partition column
+     * @param partitionCount The number of partitions
+     * @return A HASH partitioning
+     */
+    public static PartitionSpec hash(String column, int partitionCount) {
+        return new PartitionSpec(Method.HASH, column, partitionCount, Collections.emptyList());
+    }
+
+    /**
+     * @param column The partition column
+     * @param bounds The lower bounds of the partitions after the first, in ascending order
+     * @return A RANGE partitioning
+     */
+    public static PartitionSpec range(String column, List<String> bounds) {
+        return new PartitionSpec(Method.RANGE, column, bounds.size() + 1, bounds);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    public List<String> getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Checks the partitioning against the columns of its table.
+     * @param schema The schema of the table, without the partitioning
+     * @return Why the partitioning is invalid, or null if it is valid
+     */
+    public String validate(TableSchema schema) {
+        int ordinal = schema.ordinalOf(column);
+        if (ordinal < 0) {
+            return "Unknown partition column " + column + " in table " + schema.getTableName();
+        }
+        if (partitionCount < 1 || partitionCount > MAX_PARTITIONS) {
+            return "A table must have between 1 and " + MAX_PARTITIONS + " partitions.";
+        }
+        ColumnDefinition definition = schema.column(ordinal);
+        for (int i = 0; i < bounds.size(); i++) {
+            String error = definition.validate(bounds.get(i));
+            if (error != null) {
+                return error;
+            }
+            if (i > 0 && compare(definition, bounds.get(i - 1), key(definition, bounds.get(i))) >= 0) {
+                return "Partition bounds must be in ascending order.";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the partition a row belongs in.
+     * @param row The validated row values in column order
+     * @param schema The schema of the table
+     * @return The partition number
+     */
+    public int partitionOf(String[] row, TableSchema schema) {
+        int ordinal = schema.ordinalOf(column);
+        ColumnDefinition definition = schema.column(ordinal);
+        return partitionOf(definition, key(definition, row[ordinal]));
+    }
+
+    /**
+     * Finds the partitions that may hold rows satisfying a condition: an equality or IN on the partition
+     * column selects single partitions, and with RANGE partitioning a comparison selects those on its side
+     * of the value. Like {@link IndexPlanner}, it only needs to be sound.
+     * @param condition The WHERE condition, already validated by compiling it against the schema, or null
+     * @param schema The schema of the table
+     * @return The numbers of the partitions to read
+     */
+    public BitSet partitionsFor(Condition condition, TableSchema schema) {
+        if (condition instanceof Condition.And) {
+            BitSet partitions = all();
+            for (Condition operand : ((Condition.And) condition).operands) {
+                partitions.and(partitionsFor(operand, schema));
+            }
+            return partitions;
+        }
+        if (condition instanceof Condition.Or) {
+            BitSet partitions = new BitSet();
+            for (Condition operand : ((Condition.Or) condition).operands) {
+                partitions.or(partitionsFor(operand, schema));
+            }
+            return partitions;
+        }
+        int ordinal = schema.ordinalOf(column);
+        if (condition instanceof Condition.Comparison) {
+            Condition.Comparison comparison = (Condition.Comparison) condition;
+            if (schema.ordinalOf(comparison.column) == ordinal && !comparison.literal.isParameter()) {
+                return partitionsFor(schema.column(ordinal), comparison.operator, comparison.literal);
+            }
+        } else if (condition instanceof Condition.In && !((Condition.In) condition).negated) {
+            Condition.In in = (Condition.In) condition;
+            if (schema.ordinalOf(in.column) == ordinal) {
+                BitSet partitions = new BitSet();
+                for (Condition.Literal literal : in.values) {
+                    if (literal.isParameter()) {
+                        return all();
+                    }
+                    partitions.or(partitionsFor(schema.column(ordinal), Condition.Operator.EQ, literal));
+                }
+                return partitions;
+            }
+        }
+        return all(); // No condition, another column, NOT or NOT IN
+    }
+
+    private BitSet all() {
+        BitSet partitions = new BitSet(partitionCount);
+        partitions.set(0, partitionCount);
+        return partitions;
+    }
+
+    private BitSet partitionsFor(ColumnDefinition definition, Condition.Operator operator, Condition.Literal literal) {
+        BitSet partitions = new BitSet(partitionCount);
+        Object value = definition.getType() == ColumnType.INT ? (Object) literal.asLong(definition) : literal.text;
+        if (method == Method.HASH) {
+            if (operator != Condition.Operator.EQ) {
+                return all();
+            }
+            if (!(value instanceof Long) || ((Long) value >= Integer.MIN_VALUE && (Long) value <= Integer.MAX_VALUE)) {
+                partitions.set(partitionOf(definition, value));
+            }
+            return partitions;
+        }
+        int partition = partitionOf(definition, value);
+        switch (operator) {
+            case EQ:
+                partitions.set(partition);
+                break;
+            case LT:
+                // Partition p holds no value below its own lower bound
+                boolean atBound = partition > 0 && compare(definition, bounds.get(partition - 1), value) == 0;
+                partitions.set(0, atBound ? partition : partition + 1);
+                break;
+            case LE:
+                partitions.set(0, partition + 1);
+                break;
+            case GT:
+            case GE:
+                partitions.set(partition, partitionCount);
+                break;
+            default:
+                return all();
+        }
+        return partitions;
+    }
+
+    /**
+     * @param value A Long for an int column, a String for a varchar column
+     */
+    private int partitionOf(ColumnDefinition definition, Object value) {
+        if (method == Method.HASH) {
+            return value instanceof Long ? (int) Math.floorMod((Long) value, (long) partitionCount)
+                    : Math.floorMod(value.hashCode(), partitionCount);
+        }
+        int low = 0;
+        int high = bounds.size();
+        while (low < high) { // Counts the bounds at or below the value
+            int middle = (low + high) >>> 1;
+            if (compare(definition, bounds.get(middle), value) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static Object key(ColumnDefinition definition, String value) {
+        return definition.getType() == ColumnType.INT ? (Object) Long.parseLong(value.trim()) : value;
+    }
+
+    private static int compare(ColumnDefinition definition, String bound, Object value) {
+        if (definition.getType() == ColumnType.INT) {
+            return Long.compare(Long.parseLong(bound.trim()), (Long) value);
+        }
+        return bound.compareTo((String) value);
+    }
+
+    /**
+     * @return The clause declaring the partitioning, e.g. {@code HASH(id) 4} or {@code RANGE(id) (100, 200)}
+     */
+    @Override
+    public String toString() {
+        if (method == Method.HASH) {
+            return "HASH(" + column + ") " + partitionCount;
+        }
+        return "RANGE(" + column + ") (" + String.join(", ", bounds) + ")";
+    }
+}
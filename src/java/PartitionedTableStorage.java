@@ -0,0 +1,223 @@
+package src.java;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only view of the rows of several partitions as one table, used by queries that read a partitioned
+ * table as a whole. A row's location is its partition number shifted left by 48 bits combined with its
+ * location within the partition, so locations still increase in the order the view returns the rows.
+ * Rows are written to the partitions themselves, never through the view.
+ */
+public class PartitionedTableStorage implements TableRows {
+    private static final int PARTITION_SHIFT = 48;
+    private static final long LOCATION_MASK = (1L << PARTITION_SHIFT) - 1;
+
+    private final List<TableRows> partitions;
+    private final int[] numbers;
+
+    /**
+     * @param partitions The rows of the partitions to read, such as snapshots of them
+     * @param numbers The number of each partition, in ascending order
+     */
+    public PartitionedTableStorage(List<TableRows> partitions, int[] numbers) {
+        this.partitions = new ArrayList<>(partitions);
+        this.numbers = numbers.clone();
+    }
+
+    /**
+     * @param partition A partition number
+     * @param location A location within the partition
+     * @return The location within the view
+     */
+    public static long location(int partition, long location) {
+        return ((long) partition << PARTITION_SHIFT) | location;
+    }
+
+    @Override
+    public RowCursor scanAfter(long location) throws IOException {
+        int partition = (int) (location >>> PARTITION_SHIFT);
+        List<RowCursor> cursors = new ArrayList<>();
+        for (int i = 0; i < numbers.length; i++) {
+            if (numbers[i] == partition && location != BEFORE_FIRST) {
+                cursors.add(partitions.get(i).scanAfter(location & LOCATION_MASK));
+            } else if (numbers[i] > partition || location == BEFORE_FIRST) {
+                cursors.add(partitions.get(i).scan());
+            }
+        }
+        return new PartitionCursor(cursors, numbersFrom(numbers.length - cursors.size()));
+    }
+
+    @Override
+    public RowCursor scan(Condition condition) throws IOException {
+        List<RowCursor> cursors = new ArrayList<>();
+        for (TableRows partition : partitions) {
+            cursors.add(partition.scan(condition));
+        }
+        return new PartitionCursor(cursors, numbers);
+    }
+
+    /**
+     * Opens a cursor over each partition, so that they can be read side by side, e.g. by a
+     * {@link ParallelScanCursor}. The cursors return locations within their partitions.
+     * @param condition The WHERE condition, which lets a partition skip rows that cannot match, or null
+     * @return One cursor per partition, in partition order
+     * @throws IOException If an input or output exception occurred
+     */
+    public List<RowCursor> scanPartitions(Condition condition) throws IOException {
+        List<RowCursor> cursors = new ArrayList<>();
+        try {
+            for (TableRows partition : partitions) {
+                cursors.add(partition.scan(condition));
+            }
+        } catch (IOException | RuntimeException e) {
+            new PartitionCursor(cursors, numbers).close();
+            throw e;
+        }
+        return cursors;
+    }
+
+    /**
+     * Splits every partition into about the same share of the ranges. The last range of a partition
+     * ends where the next partition begins.
+     */
+    @Override
+    public long[] split(int parts) throws IOException {
+        int share = Math.max(1, parts / Math.max(1, numbers.length));
+        List<Long> boundaries = new ArrayList<>();
+        for (int i = 0; i < numbers.length; i++) {
+            long[] ranges = partitions.get(i).split(share);
+            for (int j = 0; j < ranges.length - 1; j++) {
+                boundaries.add(location(numbers[i], ranges[j]));
+            }
+        }
+        boundaries.add(location(numbers.length == 0 ? 0 : numbers[numbers.length - 1] + 1, 0));
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    @Override
+    public RowCursor scanRange(long start, long end) throws IOException {
+        return scanRange(start, end, null);
+    }
+
+    /**
+     * Opens a cursor over a range returned by {@link #split(int)}, which never spans two partitions.
+     */
+    @Override
+    public RowCursor scanRange(long start, long end, Condition condition) throws IOException {
+        int partition = (int) (start >>> PARTITION_SHIFT);
+        int index = Arrays.binarySearch(numbers, partition);
+        if (index < 0) {
+            return new PartitionCursor(new ArrayList<>(), new int[0]);
+        }
+        long partitionEnd = end >>> PARTITION_SHIFT == partition ? end & LOCATION_MASK : Long.MAX_VALUE;
+        List<RowCursor> cursors = new ArrayList<>();
+        cursors.add(partitions.get(index).scanRange(start & LOCATION_MASK, partitionEnd, condition));
+        return new PartitionCursor(cursors, new int[] {partition});
+    }
+
+    @Override
+    public RowCursor fetch(long[] locations) throws IOException {
+        List<RowCursor> cursors = new ArrayList<>();
+        List<Integer> fetched = new ArrayList<>();
+        int from = 0;
+        while (from < locations.length) {
+            int partition = (int) (locations[from] >>> PARTITION_SHIFT);
+            int to = from;
+            while (to < locations.length && locations[to] >>> PARTITION_SHIFT == partition) {
+                to++;
+            }
+            int index = Arrays.binarySearch(numbers, partition);
+            if (index >= 0) {
+                long[] local = new long[to - from];
+                for (int i = 0; i < local.length; i++) {
+                    local[i] = locations[from + i] & LOCATION_MASK;
+                }
+                cursors.add(partitions.get(index).fetch(local));
+                fetched.add(partition);
+            }
+            from = to;
+        }
+        return new PartitionCursor(cursors, fetched.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Closes the rows of every partition.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (TableRows partition : partitions) {
+            try {
+                partition.close();
+            } catch (IOException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private int[] numbersFrom(int index) {
+        return Arrays.copyOfRange(numbers, index, numbers.length);
+    }
+
+    /**
+     * Cursor returning the rows of one partition cursor after another, with the partition number added to
+     * their locations.
+     */
+    private static final class PartitionCursor implements RowCursor {
+        private final List<RowCursor> cursors;
+        private final int[] numbers;
+        private int current;
+
+        PartitionCursor(List<RowCursor> cursors, int[] numbers) {
+            this.cursors = cursors;
+            this.numbers = numbers;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (current < cursors.size()) {
+                if (cursors.get(current).next()) {
+                    return true;
+                }
+                current++;
+            }
+            return false;
+        }
+
+        @Override
+        public long location() {
+            return PartitionedTableStorage.location(numbers[current], cursors.get(current).location());
+        }
+
+        @Override
+        public String getString(int ordinal) {
+            return cursors.get(current).getString(ordinal);
+        }
+
+        @Override
+        public int getInt(int ordinal) {
+            return cursors.get(current).getInt(ordinal);
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (RowCursor cursor : cursors) {
+                try {
+                    cursor.close();
+                } catch (IOException e) {
+                    failure = failure == null ? e : failure;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
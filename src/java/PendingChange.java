@@ -0,0 +1,25 @@
+package src.java;
+
+import java.util.List;
+
+/**
+ * The rows one INSERT, UPDATE or DELETE statement appends to and deletes from a table, or from one partition
+ * of a partitioned table, ready to be logged and applied. Only the first change of a statement carries its
+ * message and its count of affected rows. Rows appended by an earlier statement of the same transaction are changed in that
+ * statement's list rather than deleted, since they have no location yet.
+ */
+final class PendingChange {
+    final OpenTable table;
+    final List<String[]> rows;
+    final LocationList deleted;
+    final int affected;
+    final String message;
+
+    PendingChange(OpenTable table, List<String[]> rows, LocationList deleted, int affected, String message) {
+        this.table = table;
+        this.rows = rows;
+        this.deleted = deleted;
+        this.affected = affected;
+        this.message = message;
+    }
+}
@@ -0,0 +1,69 @@
+package src.java;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of query plans keyed by statement text, evicting the least recently used plan.
+ * Statements that are executed repeatedly are tokenized and parsed only once.
+ */
+public class PlanCache {
+    static final int DEFAULT_CAPACITY = 256;
+    /** Longer statements, such as bulk inserts, are rarely repeated verbatim and are parsed without caching. */
+    static final int MAX_CACHED_LENGTH = 4096;
+
+    private final Map<String, QueryPlan> plans;
+
+    /**
+     * Constructs a cache holding up to {@link #DEFAULT_CAPACITY} plans.
+     */
+    public PlanCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a cache.
+     * @param capacity The maximum number of plans kept
+     */
+    public PlanCache(int capacity) {
+        this.plans = new LinkedHashMap<String, QueryPlan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QueryPlan> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the plan for a statement, parsing and caching it on a miss.
+     * @param text The statement text
+     * @return The plan
+     * @throws IllegalArgumentException If the text is not a valid statement; invalid statements are not cached
+     */
+    public QueryPlan get(String text) {
+        String key = text.trim();
+        if (key.length() > MAX_CACHED_LENGTH) {
+            return QueryPlan.parse(key);
+        }
+        synchronized (plans) {
+            QueryPlan plan = plans.get(key);
+            if (plan != null) {
+                return plan;
+            }
+        }
+        QueryPlan plan = QueryPlan.parse(key);
+        synchronized (plans) {
+            plans.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * @return The number of cached plans
+     */
+    public int size() {
+        synchronized (plans) {
+            return plans.size();
+        }
+    }
+}
@@ -1,243 +1,2328 @@
 package src.java;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 /**
  * Executes SQL-like queries on the database, including transactions, table creation, data insertion, and data selection.
+ * One executor is shared by every {@link Session} connected to a database. UPDATE and DELETE add tombstones
+ * instead of rewriting rows; a background thread compacts tables whose tombstones cover a large part of their rows.
+ * <p>
+ * Rows are versioned by commit: every commit publishes a {@link TableVersion} of each table it changed under a
+ * timestamp from the {@link CommitClock}, and every query reads a snapshot, so it sees each commit entirely
+ * or not at all. Each table has a write mutex, held by the one statement or commit writing the table, and a
+ * read/write lock whose write side is only taken by statements that rebuild the table (CREATE INDEX, CONVERT,
+ * COPY and compaction). Readers therefore never wait for writers, and writers never wait for readers.
  */
-public class QueryExecutor {
+public class QueryExecutor implements Closeable {
     private final String delimiter = ":|"; // Delimiter for separating values in files
     private final String dbDirectory;
-    private boolean inTransaction = false;
-    private List<String> transactionCommands = new ArrayList<>();
+    private final TableCatalog catalog;
+    private final Map<String, OpenTable> openTables = new ConcurrentHashMap<>();
+    private final ReentrantLock openLock = new ReentrantLock();
+    private final Map<String, ReentrantReadWriteLock> tableLocks = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> writeMutexes = new ConcurrentHashMap<>();
+    private final CommitClock clock = new CommitClock();
+    // Held shared while changes are logged and applied, exclusively while the log is emptied
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final WriteAheadLog wal;
+    private volatile boolean syncOnCommit = true;
+    private volatile TableListener tableListener;
+    private final PlanCache planCache = new PlanCache();
+    private final QueryStatistics statistics = new QueryStatistics();
+    private final Session consoleSession = new Session(System.out);
+    private final ScheduledThreadPoolExecutor compactor = new ScheduledThreadPoolExecutor(1, task -> {
+        Thread thread = new Thread(task, "table-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<String> compactionsQueued = ConcurrentHashMap.newKeySet();
+    private final Map<String, TableVersion> compactedVersions = new HashMap<>(); // Used by the compaction thread only
+    // Timestamp of the last commit to each table that has been closed, which its next opening is stamped with
+    private final Map<String, Long> lastCommits = new ConcurrentHashMap<>();
+
+    static final long CHECKPOINT_LOG_SIZE = 16L * 1024 * 1024;
+    static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    /** Share of a table's stored rows that must be deleted before it is compacted. */
+    static final double COMPACTION_DEAD_RATIO = 0.3;
+    /** Tables with fewer deleted rows are not worth compacting whatever their size. */
+    static final int COMPACTION_MIN_DEAD_ROWS = 1024;
+    /** Delay before retrying a compaction that open snapshots or queries kept from swapping its copy in. */
+    static final long COMPACTION_RETRY_MILLIS = 1000;
+    /** System property setting the megabytes a join or sort may hold in memory before it spills to disk. */
+    static final String QUERY_MEMORY_PROPERTY = "dbms.queryMemoryMegabytes";
+    static final long DEFAULT_QUERY_MEMORY = 64L * 1024 * 1024;
+    private static final String COMPACTED_SUFFIX = ".compact";
+    private static final String RETIRED_SUFFIX = ".retired";
+
+    /**
+     * An UPDATE or DELETE statement validated against a table schema: the compiled WHERE predicate and the
+     * ordinals and checked values of the columns an UPDATE assigns.
+     */
+    private static final class CompiledModify {
+        final RowPredicate predicate;
+        final int[] ordinals;
+        final String[] values;
+
+        CompiledModify(RowPredicate predicate, int[] ordinals, String[] values) {
+            this.predicate = predicate;
+            this.ordinals = ordinals;
+            this.values = values;
+        }
+    }
+
+    /**
+     * A SELECT statement validated against a table schema: the compiled WHERE predicate, either the
+     * projected columns or the aggregator computing the result, and the ORDER BY if there is one.
+     */
+    private static final class CompiledSelect {
+        final RowPredicate predicate;
+        final Aggregator aggregator;
+        final List<String> columns;
+        final int[] ordinals;
+        final CompiledOrder order;
+
+        CompiledSelect(RowPredicate predicate, Aggregator aggregator, List<String> columns, int[] ordinals,
+                       CompiledOrder order) {
+            this.predicate = predicate;
+            this.aggregator = aggregator;
+            this.columns = columns;
+            this.ordinals = ordinals;
+            this.order = order;
+        }
+    }
+
+    /**
+     * An ORDER BY clause resolved against the rows it sorts. Rows read from a table are sorted as copies of
+     * only the columns the query returns or sorts by: {@link #carried} lists their table ordinals, and
+     * {@link #resultOrdinals} the position of each result column among them. Aggregate results are sorted
+     * as they are, so both are null.
+     */
+    private static final class CompiledOrder {
+        final int[] carried;
+        final int[] resultOrdinals;
+        final RowComparator comparator;
+
+        CompiledOrder(int[] carried, int[] resultOrdinals, RowComparator comparator) {
+            this.carried = carried;
+            this.resultOrdinals = resultOrdinals;
+            this.comparator = comparator;
+        }
+    }
+
+    /**
+     * A SELECT statement joining two tables, validated against both schemas: the ordinals of the join
+     * columns in their tables, the WHERE predicate over the joined rows, the parts of it that read only one
+     * table, the projected columns and the ORDER BY. The plan keeps it for the schema of the first table, so the second
+     * schema is kept here to be checked.
+     */
+    private static final class CompiledJoin {
+        final TableSchema rightSchema;
+        final int leftKey;
+        final int rightKey;
+        final boolean numericKeys;
+        final RowPredicate predicate;
+        final RowPredicate leftFilter;
+        final RowPredicate rightFilter;
+        final List<String> columns;
+        final int[] ordinals;
+        final CompiledOrder order;
+
+        CompiledJoin(TableSchema rightSchema, int leftKey, int rightKey, boolean numericKeys, RowPredicate predicate,
+                     RowPredicate leftFilter, RowPredicate rightFilter, List<String> columns, int[] ordinals,
+                     CompiledOrder order) {
+            this.rightSchema = rightSchema;
+            this.leftKey = leftKey;
+            this.rightKey = rightKey;
+            this.numericKeys = numericKeys;
+            this.predicate = predicate;
+            this.leftFilter = leftFilter;
+            this.rightFilter = rightFilter;
+            this.columns = columns;
+            this.ordinals = ordinals;
+            this.order = order;
+        }
+    }
 
     /**
-     * Constructs a java.QueryExecutor for a specific database directory.
+     * Constructs a java.QueryExecutor for a specific database directory and replays the changes
+     * left in its write-ahead log by a previous run that did not shut down cleanly.
      * @param dbDirectory The directory of the database to execute queries on
+     * @throws IOException If the write-ahead log could not be opened or replayed
      */
-    public QueryExecutor(String dbDirectory) {
+    public QueryExecutor(String dbDirectory) throws IOException {
         this.dbDirectory = dbDirectory;
+        this.catalog = new TableCatalog(dbDirectory, delimiter);
         File dbDir = new File(dbDirectory);
         if (!dbDir.exists()) {
             dbDir.mkdirs(); // Ensure the database directory exists
         }
+        this.wal = new WriteAheadLog(dbDirectory);
+        SpillFile.deleteLeftovers(dbDir);
+        compactor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        recover();
+    }
+
+    /**
+     * Told about every table created through this executor, for example to record it in a catalog manifest.
+     */
+    public interface TableListener {
+        /**
+         * @param tableName The name of the new table
+         * @throws IOException If the table could not be recorded
+         */
+        void tableCreated(String tableName) throws IOException;
+    }
+
+    /**
+     * @param tableListener Told about every table created from now on, or null
+     */
+    public void setTableListener(TableListener tableListener) {
+        this.tableListener = tableListener;
+    }
+
+    /**
+     * Sets whether COMMIT, and each statement outside a transaction, forces its write-ahead log record to
+     * the storage device before applying it. Without the fsync a change may reach the data files while its
+     * record is lost in a crash, so turning it off trades crash safety for speed.
+     * @param syncOnCommit True to fsync the log once per commit
+     */
+    public void setSyncOnCommit(boolean syncOnCommit) {
+        this.syncOnCommit = syncOnCommit;
+    }
+
+    /**
+     * @return The cumulative statistics of the statements run so far, as printed by {@code SHOW STATS}
+     */
+    public QueryStatistics getStatistics() {
+        return statistics;
     }
 
     /**
-     * Executes a given query. Supports transactions, table creation, data insertion, and data selection.
+     * Executes a given query in the console session, whose output goes to standard output.
      * @param query The SQL-like query to execute
      * @throws IOException If an input or output exception occurred
      */
     public void executeQuery(String query) throws IOException {
-        switch (query.trim().toUpperCase()) {
+        executeQuery(consoleSession, query);
+    }
+
+    /**
+     * Executes a given query. Supports transactions, table creation, data insertion, data selection and
+     * prepared statements. Statements are parsed through a cache keyed by their text, so a statement that is
+     * executed again is not tokenized or parsed a second time. Every statement is measured with
+     * {@link QueryMetrics} and added to the executor's {@link QueryStatistics}.
+     * @param session The session issuing the query, which holds its transaction and prepared statements
+     * @param query The SQL-like query to execute
+     * @throws IOException If an input or output exception occurred
+     */
+    public void executeQuery(Session session, String query) throws IOException {
+        QueryMetrics metrics = new QueryMetrics();
+        QueryMetrics previous = QueryMetrics.enter(metrics);
+        try {
+            dispatch(session, query, metrics);
+        } finally {
+            QueryMetrics.exit(previous);
+            statistics.record(metrics.complete());
+        }
+    }
+
+    private void dispatch(Session session, String query, QueryMetrics metrics) throws IOException {
+        String command = query.trim().toUpperCase();
+        switch (command) {
             case "BEGIN TRANSACTION":
-                beginTransaction();
+                metrics.setStatementType("BEGIN");
+                beginTransaction(session);
                 break;
             case "COMMIT":
-                commitTransaction();
+                metrics.setStatementType(command);
+                commitTransaction(session);
                 break;
             case "ROLLBACK":
-                rollbackTransaction();
+                metrics.setStatementType(command);
+                rollbackTransaction(session);
                 break;
             default:
-                if (inTransaction) {
-                    transactionCommands.add(query);
+                QueryPlan plan;
+                try {
+                    plan = parse(session, query, metrics);
+                } catch (IllegalArgumentException e) {
+                    session.out().println(e.getMessage());
+                    return;
+                }
+                if (plan == null) {
+                    break;
+                }
+                Statement statement = plan.getStatement();
+                if (statement instanceof Statement.ShowStats) {
+                    statistics.print(session.out());
+                    session.out().println();
+                    BufferPool.shared().print(session.out());
+                } else if (statement instanceof Statement.ExplainAnalyze) {
+                    explainAnalyze(session, (Statement.ExplainAnalyze) statement, metrics);
+                } else if (session.inTransaction && statement instanceof Statement.Copy) {
+                    session.out().println("COPY cannot be used inside a transaction.");
+                } else if (session.inTransaction && (statement instanceof Statement.Insert
+                        || statement instanceof Statement.Update || statement instanceof Statement.Delete)) {
+                    stageChange(session, plan);
                 } else {
-                    processQuery(query);
+                    processQuery(session, plan);
                 }
                 break;
         }
     }
 
     /**
-     * Begins a transaction, accumulating commands without executing them immediately.
+     * Looks a statement up in the plan cache, parsing it on a miss, and resolves prepared statements.
+     * @param session The session issuing the query
+     * @param query The query text
+     * @param metrics Receives the parse time and the statement type; a prepared statement counts as the
+     *        type of its body
+     * @return The plan to execute, or null if there is nothing left to execute
+     * @throws IllegalArgumentException If the query is invalid
      */
-    private void beginTransaction() {
-        inTransaction = true;
-        transactionCommands.clear();
+    private QueryPlan parse(Session session, String query, QueryMetrics metrics) {
+        long start = System.nanoTime();
+        QueryPlan parsed = planCache.get(query);
+        metrics.add(QueryMetrics.Counter.PARSE_NANOS, System.nanoTime() - start);
+        metrics.setStatementType(parsed.getStatement().getStatementType());
+        QueryPlan plan = resolve(session, parsed);
+        if (plan != null) {
+            metrics.setStatementType(plan.getStatement().getStatementType());
+        }
+        return plan;
     }
 
     /**
-     * Commits a transaction, executing all accumulated commands.
+     * Handles {@code EXPLAIN ANALYZE <statement>}: executes the statement and prints the time spent parsing,
+     * loading metadata and executing it, together with the rows and bytes it read and wrote. The rows of a
+     * SELECT are read but not printed. Other statements take effect as usual.
+     * @param session The session issuing the statement
+     * @param explain The parsed statement
+     * @param metrics The metrics of the running statement
      * @throws IOException If an input or output exception occurred
      */
-    private void commitTransaction() throws IOException {
-        for (String command : transactionCommands) {
-            processQuery(command);
+    private void explainAnalyze(Session session, Statement.ExplainAnalyze explain, QueryMetrics metrics) throws IOException {
+        if (session.inTransaction) {
+            metrics.setStatementType(null);
+            session.out().println("EXPLAIN ANALYZE cannot be used inside a transaction.");
+            return;
+        }
+        QueryPlan plan;
+        try {
+            plan = resolve(session, new QueryPlan(explain.body, 0)); // Binds EXECUTE to its prepared statement
+        } catch (IllegalArgumentException e) {
+            metrics.setStatementType(null);
+            session.out().println(e.getMessage());
+            return;
+        }
+        Statement body = plan.getStatement();
+        metrics.setStatementType(body.getStatementType());
+        if (body instanceof SelectStatement) {
+            try (ResultSet result = openResultSet(session, plan, null)) {
+                while (result.next()) {
+                    // Only the rows are counted
+                }
+            } catch (IllegalArgumentException e) {
+                session.out().println(e.getMessage());
+                return;
+            }
+        } else {
+            processQuery(session, plan);
+        }
+        metrics.print(session.out());
+    }
+
+    /**
+     * Handles PREPARE, EXECUTE and DEALLOCATE, which act on the session's prepared statements immediately,
+     * even inside a transaction.
+     * @param plan The plan of the statement as written
+     * @return The plan to execute: the statement itself, or the bound body of a prepared statement; null if
+     *         there is nothing left to execute
+     * @throws IllegalArgumentException If a prepared statement is unknown or given the wrong number of parameters
+     */
+    private QueryPlan resolve(Session session, QueryPlan plan) {
+        Statement statement = plan.getStatement();
+        if (statement instanceof Statement.Prepare) {
+            Statement.Prepare prepare = (Statement.Prepare) statement;
+            session.preparedStatements.put(prepare.name, prepare);
+            session.out().println("Statement " + prepare.name + " prepared with " + prepare.parameterCount + " parameters.");
+            return null;
+        }
+        if (statement instanceof Statement.Deallocate) {
+            String name = ((Statement.Deallocate) statement).name;
+            if (session.preparedStatements.remove(name) == null) {
+                throw new IllegalArgumentException("Prepared statement " + name + " does not exist.");
+            }
+            session.out().println("Statement " + name + " deallocated.");
+            return null;
+        }
+        if (statement instanceof Statement.Execute) {
+            Statement.Execute execute = (Statement.Execute) statement;
+            Statement.Prepare prepare = session.preparedStatements.get(execute.name);
+            if (prepare == null) {
+                throw new IllegalArgumentException("Prepared statement " + execute.name + " does not exist.");
+            }
+            if (execute.parameters.size() != prepare.parameterCount) {
+                throw new IllegalArgumentException("Prepared statement " + execute.name + " expects "
+                        + prepare.parameterCount + " parameters but " + execute.parameters.size() + " were given.");
+            }
+            return new QueryPlan(prepare.body.bind(execute.parameters), 0);
         }
-        inTransaction = false;
-        transactionCommands.clear();
+        if (plan.getParameterCount() > 0) {
+            throw new IllegalArgumentException("Parameters (?) are only allowed in PREPARE statements.");
+        }
+        return plan;
     }
 
     /**
-     * Rolls back a transaction, discarding all accumulated commands.
+     * Begins a transaction: takes the snapshot its queries read, and starts collecting its changes.
      */
-    private void rollbackTransaction() {
-        inTransaction = false;
-        transactionCommands.clear();
+    private void beginTransaction(Session session) {
+        endTransaction(session);
+        session.snapshot = clock.snapshot();
+        session.inTransaction = true;
     }
 
     /**
-     * Processes an individual query outside of a transaction.
-     * @param query The SQL-like query to process
+     * Handles an INSERT, UPDATE or DELETE inside a transaction. Its rows are validated and found in the
+     * transaction's snapshot right away, with the changes of the transaction's earlier statements applied,
+     * but nothing is written before COMMIT. If the statement is invalid, the transaction can only be rolled back.
+     * @param session The session with the open transaction
+     * @param plan The plan of the statement
      * @throws IOException If an input or output exception occurred
      */
-    private void processQuery(String query) throws IOException {
-        String[] tokens = query.split("\\s+", 4);
-        if (tokens.length < 4) {
-            System.out.println("Unsupported or incomplete query.");
+    private void stageChange(Session session, QueryPlan plan) throws IOException {
+        if (session.transactionFailed) {
+            session.out().println("Statement ignored; the transaction will be rolled back.");
             return;
         }
-
-        switch (tokens[0].toUpperCase()) {
-            case "CREATE":
-                createTable(tokens[2], tokens[3]);
-                break;
-            case "INSERT":
-                insertInto(tokens[2], tokens[3]);
-                break;
-            case "SELECT":
-                selectFrom(tokens[1], tokens[3]);
-                break;
-            default:
-                System.out.println("Unsupported query type.");
-                break;
+        Statement statement = plan.getStatement();
+        ReentrantReadWriteLock lock = tableLock(statement.getTableName());
+        lock.readLock().lock();
+        try {
+            List<PendingChange> changes = statement instanceof Statement.Insert ? prepareInsert(session, plan)
+                    : prepareModify(session, plan, session.transactionChanges);
+            if (changes == null) {
+                session.transactionFailed = true;
+            } else {
+                session.transactionChanges.addAll(changes);
+            }
+        } catch (IllegalStateException e) {
+            session.out().println(e.getMessage()); // The snapshot can no longer be read
+            session.transactionFailed = true;
+        } finally {
+            lock.readLock().unlock();
         }
     }
+
     /**
-     * Used to handle the Create table queries..
-     * @param tableName The tablename to be created.
-     * @param columnData The column and its meta Data
+     * Commits a transaction atomically. Its changes were validated as its statements were issued; if any
+     * statement failed, nothing is written. Every table the transaction changes is locked for writing, in name
+     * order, and checked for conflicts: if another transaction has committed a change to a row this one
+     * updates or deletes since this one began, or the table has been rebuilt, the transaction is rolled back.
+     * Otherwise all changes are described by a single write-ahead log record that is forced to disk once, then
+     * applied to the tables and published under one commit timestamp.
+     * @param session The committing session
      * @throws IOException If an input or output exception occurred
      */
-    private void createTable(String tableName, String columnData) throws IOException {
-        File tableFile = new File(dbDirectory, tableName + ".txt");
-        File metaDataFile = new File(dbDirectory, tableName + ".metadata.txt");
-
-        if (!tableFile.exists() && metaDataFile.createNewFile()) {
-            try (PrintWriter out = new PrintWriter(new FileOutputStream(metaDataFile))) {
-                String processedDefinitions = columnData
-                        .replaceAll("^.*?\\(", "")
-                        .replaceAll("\\);?$", "")
-                        .trim();
+    private void commitTransaction(Session session) throws IOException {
+        if (!session.inTransaction) {
+            return;
+        }
+        List<PendingChange> changes = new ArrayList<>(session.transactionChanges);
+        boolean failed = session.transactionFailed;
+        try {
+            if (failed) {
+                session.out().println("Transaction rolled back; no rows were written.");
+                return;
+            }
+            Map<String, OpenTable> tables = tablesOf(changes);
+            List<ReentrantReadWriteLock> locks = new ArrayList<>();
+            List<ReentrantLock> mutexes = new ArrayList<>();
+            checkpointLock.readLock().lock();
+            try {
+                for (String tableName : tables.keySet()) {
+                    ReentrantReadWriteLock lock = tableLock(tableName);
+                    lock.readLock().lock();
+                    locks.add(lock);
+                    ReentrantLock mutex = writeMutex(tableName);
+                    mutex.lock();
+                    mutexes.add(mutex);
+                }
+                String conflict = findConflict(changes);
+                if (conflict != null) {
+                    session.out().println("Transaction rolled back; " + conflict);
+                    return;
+                }
+                logDurably(changes);
+                for (PendingChange change : changes) {
+                    apply(session, change);
+                }
+                publish(tables.values());
+                for (OpenTable table : tables.values()) {
+                    scheduleCompaction(table);
+                }
+            } finally {
+                for (ReentrantLock mutex : mutexes) {
+                    mutex.unlock();
+                }
+                for (ReentrantReadWriteLock lock : locks) {
+                    lock.readLock().unlock();
+                }
+                checkpointLock.readLock().unlock();
+            }
+        } finally {
+            endTransaction(session);
+        }
+        checkpointIfNeeded();
+    }
 
-                String[] columns = processedDefinitions.split(",");
-                for (String column : columns) {
-                    String cleanedColumn = column.trim().replaceAll("\\s+", " ");
-                    out.println(cleanedColumn.replace(" ", delimiter));
+    /**
+     * Checks that the changes of a transaction still apply to the current state of their tables.
+     * Must be called with the tables' write mutexes held.
+     * @param changes The changes of the transaction
+     * @return Why the transaction cannot commit, or null if it can
+     * @throws IOException If an input or output exception occurred
+     */
+    private String findConflict(List<PendingChange> changes) throws IOException {
+        for (PendingChange change : changes) {
+            String tableName = change.table.schema.getTableName();
+            if (openTables.get(tableName) != change.table) {
+                return "table " + tableName + " was rebuilt while it was open.";
+            }
+            for (int i = 0; i < change.deleted.size(); i++) {
+                if (change.table.tombstones.contains(change.deleted.get(i))) {
+                    return "a row it changes in table " + tableName + " was changed by a concurrent transaction.";
                 }
             }
-            System.out.println("Table and metadata for " + tableName + " created successfully.");
-            tableFile.createNewFile();
-        } else {
-            System.out.println("Table " + tableName + " already exists or could not create metadata.");
         }
+        return null;
     }
+
     /**
-     * Used to handle the Create table queries..
-     * @param tableName The tablename to be created.
-     * @param columnData The column and its meta Data
+     * Writes the rows of a commit to the data files and makes the new state of the tables visible to new
+     * snapshots. Must be called with the tables' write mutexes held.
+     * @param tables The tables changed by the commit
      * @throws IOException If an input or output exception occurred
      */
-    private void insertInto(String tableName, String values) throws IOException {
-        File tableFile = new File(dbDirectory, tableName + ".txt");
-        File metaDataFile = new File(dbDirectory, tableName + ".metadata.txt");
+    private void publish(Collection<OpenTable> tables) throws IOException {
+        for (OpenTable table : tables) {
+            table.storage.flush(false);
+        }
+        clock.commit(tables);
+    }
+
+    /**
+     * Rolls back a transaction, discarding all accumulated changes.
+     */
+    private void rollbackTransaction(Session session) {
+        endTransaction(session);
+    }
+
+    private void endTransaction(Session session) {
+        if (session.inTransaction) {
+            clock.release(session.snapshot);
+        }
+        session.inTransaction = false;
+        session.transactionFailed = false;
+        session.transactionChanges.clear();
+    }
+
+    /**
+     * Ends a session, rolling back its open transaction so that its snapshot no longer holds back compaction.
+     * @param session The session whose client has disconnected
+     */
+    public void endSession(Session session) {
+        endTransaction(session);
+    }
 
-        if (!tableFile.exists() || !metaDataFile.exists()) {
-            System.out.println("Table " + tableName + " does not exist.");
+    /**
+     * Processes an individual query outside of a transaction. INSERT, UPDATE and DELETE hold the write mutex
+     * of their table, or of the partitions they change, so they run alongside its readers; statements that
+     * rebuild or define a table hold the table's write lock, excluding its readers as well.
+     * @param session The session issuing the query
+     * @param plan The plan of the SQL-like query to process
+     * @throws IOException If an input or output exception occurred
+     */
+    private void processQuery(Session session, QueryPlan plan) throws IOException {
+        Statement statement = plan.getStatement();
+        String tableName = statement.getTableName();
+        if (tableName == null) {
+            session.out().println("Unsupported query type.");
             return;
         }
+        if (statement instanceof SelectStatement) {
+            selectFrom(session, plan);
+            return;
+        }
+        if (statement instanceof Statement.Insert || statement instanceof Statement.Update
+                || statement instanceof Statement.Delete) {
+            writeRows(session, plan);
+            checkpointIfNeeded();
+            return;
+        }
+        ReentrantReadWriteLock lock = tableLock(tableName);
+        // CONVERT rewrites row locations that logged changes refer to, and COPY empties the log when it
+        // is done, so both also exclude all logging
+        Lock logLock = statement instanceof Statement.ConvertTable || statement instanceof Statement.Copy
+                ? checkpointLock.writeLock() : checkpointLock.readLock();
+        logLock.lock();
+        try {
+            lockForWriting(lock);
+        } catch (IllegalStateException e) {
+            logLock.unlock();
+            session.out().println(e.getMessage());
+            return;
+        }
+        try {
+            if (statement instanceof Statement.CreateTable) {
+                createTable(session, (Statement.CreateTable) statement);
+            } else if (statement instanceof Statement.CreateIndex) {
+                createIndex(session, (Statement.CreateIndex) statement);
+            } else if (statement instanceof Statement.ConvertTable) {
+                convertTable(session, (Statement.ConvertTable) statement);
+            } else if (statement instanceof Statement.Copy) {
+                copyFrom(session, (Statement.Copy) statement);
+            }
+        } finally {
+            lock.writeLock().unlock();
+            logLock.unlock();
+        }
+        checkpointIfNeeded();
+    }
 
-        List<String[]> columnDefinitions = new ArrayList<>();
-        try (Scanner metaScanner = new Scanner(metaDataFile)) {
-            while (metaScanner.hasNextLine()) {
-                String[] definitionParts = metaScanner.nextLine().split(Pattern.quote(delimiter));
-                columnDefinitions.add(definitionParts);
+    /**
+     * Runs an INSERT, UPDATE or DELETE as a transaction of its own, holding the table's read lock and the
+     * write mutexes of the partitions it changes.
+     * @param plan The plan of the statement
+     * @throws IOException If an input or output exception occurred
+     */
+    private void writeRows(Session session, QueryPlan plan) throws IOException {
+        Statement statement = plan.getStatement();
+        ReentrantReadWriteLock lock = tableLock(statement.getTableName());
+        checkpointLock.readLock().lock();
+        lock.readLock().lock();
+        try {
+            if (statement instanceof Statement.Insert) {
+                insertInto(session, plan);
+            } else {
+                modify(session, plan);
             }
+        } finally {
+            lock.readLock().unlock();
+            checkpointLock.readLock().unlock();
         }
+    }
 
-        String[] vals = values.substring(values.indexOf('(') + 1, values.lastIndexOf(')')).split(",");
-        if (vals.length != columnDefinitions.size()) {
-            System.out.println("Invalid number of values provided for insertion.");
-            return;
+    /**
+     * Returns the lock of a table, which the partitions of a partitioned table share.
+     * @param tableName The name of a table or of a partition
+     * @return The lock
+     */
+    private ReentrantReadWriteLock tableLock(String tableName) {
+        return tableLocks.computeIfAbsent(TableSchema.parentName(tableName), name -> new ReentrantReadWriteLock());
+    }
+
+    /**
+     * Returns the mutex held by whoever changes a table's rows, tombstones or indexes. Each partition of a
+     * partitioned table has its own, so writers of different partitions do not wait for each other.
+     * @param tableName The name of a table or of a partition
+     * @return The mutex
+     */
+    private ReentrantLock writeMutex(String tableName) {
+        return writeMutexes.computeIfAbsent(tableName, name -> new ReentrantLock());
+    }
+
+    /**
+     * Locks the write mutexes of several tables in name order, the order {@link #commitTransaction} takes them in.
+     * @param tableNames The names of the tables or partitions
+     * @return The locked mutexes, to be passed to {@link #unlockAll(List)}
+     */
+    private List<ReentrantLock> lockWriteMutexes(Collection<String> tableNames) {
+        List<ReentrantLock> mutexes = new ArrayList<>();
+        for (String tableName : new TreeSet<>(tableNames)) {
+            ReentrantLock mutex = writeMutex(tableName);
+            mutex.lock();
+            mutexes.add(mutex);
         }
+        return mutexes;
+    }
 
-        for (int i = 0; i < vals.length; i++) {
-            String val = vals[i].trim().replaceAll("^'|'$", "");
-            String[] definition = columnDefinitions.get(i);
-            String type = definition[1];
+    private static void unlockAll(List<ReentrantLock> mutexes) {
+        for (int i = mutexes.size() - 1; i >= 0; i--) {
+            mutexes.get(i).unlock();
+        }
+    }
 
-            if (type.startsWith("varchar")) {
-                int size = Integer.parseInt(type.substring(type.indexOf('(') + 1, type.indexOf(')')));
-                if (val.length() > size) {
-                    System.out.println("Value \"" + val + "\" exceeds size limit for column " + definition[0]);
-                    return;
+    /**
+     * @param changes Validated changes
+     * @return The tables the changes apply to, by name
+     */
+    private static Map<String, OpenTable> tablesOf(List<PendingChange> changes) {
+        Map<String, OpenTable> tables = new TreeMap<>();
+        for (PendingChange change : changes) {
+            tables.put(change.table.schema.getTableName(), change.table);
+        }
+        return tables;
+    }
+
+    /**
+     * Opens the tables holding the rows of a table: each of its partitions, or the table itself if it is
+     * not partitioned.
+     * @param tableName The table name
+     * @return The open tables in partition order, or null if the table or one of its partitions does not exist
+     * @throws IOException If an input or output exception occurred
+     */
+    private List<OpenTable> openPartitions(String tableName) throws IOException {
+        TableSchema schema = catalog.getSchema(tableName);
+        if (schema == null) {
+            return null;
+        }
+        if (schema.getPartitioning() == null) {
+            OpenTable table = openTable(tableName);
+            return table == null ? null : Collections.singletonList(table);
+        }
+        List<OpenTable> partitions = new ArrayList<>(schema.getPartitions().size());
+        for (TableSchema partition : schema.getPartitions()) {
+            OpenTable table = openTable(partition.getTableName());
+            if (table == null) {
+                return null;
+            }
+            partitions.add(table);
+        }
+        return partitions;
+    }
+
+    /**
+     * Acquires the write lock of a table.
+     * @param lock The table's lock
+     * @throws IllegalStateException If the current thread still holds the read lock through an open result
+     *         set, which would otherwise wait for itself forever
+     */
+    private void lockForWriting(ReentrantReadWriteLock lock) {
+        if (lock.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Close the open result set of the table before changing it.");
+        }
+        lock.writeLock().lock();
+    }
+
+    /**
+     * Finds the candidate rows of a condition through the table's indexes, which are only read while the
+     * table's write mutex keeps writers from changing them.
+     * @param condition The WHERE condition, or null
+     * @param table The open table
+     * @return The candidate locations, or null if the table must be scanned
+     */
+    private LocationList indexCandidates(Condition condition, OpenTable table) {
+        if (condition == null || table.indexes.isEmpty()) {
+            return null;
+        }
+        ReentrantLock mutex = writeMutex(table.schema.getTableName());
+        mutex.lock();
+        try {
+            return IndexPlanner.plan(condition, table);
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Used to handle the Create table queries..
+     * An optional {@code STORAGE TEXT|BINARY|COLUMNAR} clause after the column list selects the storage format,
+     * and an optional {@code PARTITION BY} clause divides the rows among partitions, each with a data file of
+     * its own.
+     * @param create The parsed CREATE TABLE statement
+     * @throws IOException If an input or output exception occurred
+     */
+    private void createTable(Session session, Statement.CreateTable create) throws IOException {
+        String tableName = create.tableName;
+        File metaDataFile = catalog.metadataFile(tableName);
+        StorageFormat format = create.storageFormat;
+        PartitionSpec partitioning = create.partitioning;
+        if (partitioning != null) {
+            String error = partitioning.validate(new TableSchema(tableName, create.columns, format));
+            for (String bound : partitioning.getBounds()) {
+                if (error == null && bound.contains(delimiter)) {
+                    error = "Value \"" + bound + "\" contains the reserved delimiter " + delimiter;
                 }
-            } else if ("int".equals(type) && !val.matches("\\d+")) {
-                System.out.println("Type mismatch for column " + definition[0] + "; expected int, got \"" + val + "\"");
+            }
+            if (error != null) {
+                session.out().println(error);
+                return;
+            }
+        }
+        TableSchema schema = new TableSchema(tableName, create.columns, format, Collections.emptyList(), partitioning);
+        boolean dataExists = false;
+        for (TableSchema partition : schema.getPartitions()) {
+            for (StorageFormat stored : StorageFormat.values()) {
+                dataExists |= new File(dbDirectory, partition.getTableName() + stored.getFileSuffix()).exists();
+            }
+        }
+
+        if (!dataExists && !metaDataFile.exists()) {
+            if (format == StorageFormat.BINARY && PagedTableStorage.maxRecordSize(schema) > PagedTableStorage.pageCapacity()) {
+                session.out().println("Rows of table " + tableName + " may not fit in a " + PagedTableStorage.PAGE_SIZE + " byte page.");
                 return;
             }
+            catalog.writeMetadata(schema);
+            session.out().println("Table and metadata for " + tableName + " created successfully"
+                    + (partitioning == null ? "." : " with " + partitioning.getPartitionCount() + " partitions."));
+            for (TableSchema partition : schema.getPartitions()) {
+                catalog.dataFile(partition).createNewFile();
+            }
+            TableListener listener = tableListener;
+            if (listener != null) {
+                listener.tableCreated(tableName);
+            }
+        } else {
+            session.out().println("Table " + tableName + " already exists or could not create metadata.");
         }
+    }
+
+    /**
+     * Handles {@code CREATE INDEX idx ON t(col) [USING BTREE|HASH]}. The index is recorded in the table
+     * metadata and built from the existing rows; afterwards every insert keeps it up to date. Each partition of
+     * a partitioned table has an index of its own rows.
+     * @param create The parsed CREATE INDEX statement
+     * @throws IOException If an input or output exception occurred
+     */
+    private void createIndex(Session session, Statement.CreateIndex create) throws IOException {
+        String indexName = create.indexName;
+        String tableName = create.tableName;
+        String columnName = create.column;
+        IndexType type = create.type;
 
-        try (PrintWriter out = new PrintWriter(new FileOutputStream(tableFile, true))) {
-            out.println(String.join(delimiter, vals));
+        List<OpenTable> partitions = openPartitions(tableName);
+        if (partitions == null) {
+            session.out().println("Table " + tableName + " does not exist.");
+            return;
+        }
+        TableSchema schema = catalog.getSchema(tableName);
+        if (schema.ordinalOf(columnName) < 0) {
+            session.out().println("Unknown column " + columnName + " in table " + tableName);
+            return;
+        }
+        if (schema.index(indexName) != null) {
+            session.out().println("Index " + indexName + " already exists on table " + tableName + ".");
+            return;
+        }
+        for (OpenTable partition : partitions) {
+            partition.flush(false);
+            Files.deleteIfExists(TableIndex.indexFile(dbDirectory, partition.schema.getTableName(), indexName).toPath());
         }
-        System.out.println("Data inserted into table " + tableName + ".");
+        catalog.writeMetadata(schema.withIndex(new IndexDefinition(indexName, columnName, type)));
+        openPartitions(tableName); // Reopening builds the new index from the existing rows
+        session.out().println("Index " + indexName + " created on " + tableName + "(" + columnName + ") using " + type + ".");
     }
 
-    private void selectFrom(String columns, String tableName) throws FileNotFoundException {
-        File metaDataFile = new File(dbDirectory, tableName + ".metadata.txt");
-        if (!metaDataFile.exists()) {
-            System.out.println("Metadata for table " + tableName + " does not exist.");
+    /**
+     * Handles {@code CONVERT TABLE t TO TEXT|BINARY|COLUMNAR}, rewriting the table's rows in another storage format.
+     * The new data file is written completely before the metadata is switched over and the old file removed.
+     * Deleted rows are left out, so the converted table starts without tombstones. Every partition of a
+     * partitioned table is converted before any of them is switched over.
+     * @param convert The parsed CONVERT TABLE statement
+     * @throws IOException If an input or output exception occurred
+     */
+    private void convertTable(Session session, Statement.ConvertTable convert) throws IOException {
+        String tableName = convert.tableName;
+        StorageFormat format = convert.storageFormat;
+
+        checkpoint(); // Row marks in the log refer to the current format
+        List<OpenTable> sources = openPartitions(tableName);
+        if (sources == null) {
+            session.out().println("Table " + tableName + " does not exist.");
+            return;
+        }
+        TableSchema schema = catalog.getSchema(tableName);
+        if (schema.getStorageFormat() == format) {
+            session.out().println("Table " + tableName + " is already stored as " + format + ".");
+            return;
+        }
+        TableSchema converted = schema.withStorageFormat(format);
+        if (format == StorageFormat.BINARY && PagedTableStorage.maxRecordSize(converted) > PagedTableStorage.pageCapacity()) {
+            session.out().println("Rows of table " + tableName + " may not fit in a " + PagedTableStorage.PAGE_SIZE + " byte page.");
             return;
         }
 
-        List<String> columnNames = new ArrayList<>();
-        try (Scanner metaScanner = new Scanner(metaDataFile)) {
-            while (metaScanner.hasNextLine()) {
-                String line = metaScanner.nextLine();
-                String[] parts = line.split(Pattern.quote(delimiter));
-                if (parts.length > 0) {
-                    columnNames.add(parts[0]);
+        List<File> tempFiles = new ArrayList<>();
+        long rows = 0;
+        int columnCount = converted.columnCount();
+        for (int p = 0; p < sources.size(); p++) {
+            TableSchema target = converted.getPartitions().get(p);
+            File tempFile = new File(dbDirectory, catalog.dataFile(target).getName() + ".tmp");
+            tempFiles.add(tempFile);
+            Files.deleteIfExists(tempFile.toPath());
+            try (TableStorage output = TableStorage.open(tempFile, target, delimiter);
+                 RowCursor cursor = sources.get(p).storage.scan()) {
+                String[] values = new String[columnCount];
+                while (cursor.next()) {
+                    for (int i = 0; i < columnCount; i++) {
+                        String value = cursor.getString(i);
+                        String error = value == null ? "Missing value for column " + converted.column(i).getName()
+                                : converted.column(i).validate(value);
+                        if (error != null) {
+                            throw new IOException("Cannot convert row " + (rows + 1) + " of table " + tableName + ": " + error);
+                        }
+                        values[i] = value;
+                    }
+                    output.append(values);
+                    rows++;
+                }
+                output.flush(true);
+            } catch (IOException e) {
+                for (File written : tempFiles) {
+                    Files.deleteIfExists(written.toPath());
                 }
+                session.out().println(e.getMessage());
+                return;
             }
         }
 
-        List<String> selectedColumns = columns.trim().equals("*") ? columnNames : Arrays.asList(columns.split(","));
-        selectedColumns.retainAll(columnNames);
-        if (!columns.trim().equals("*")) {
-            selectedColumns = columnNames.stream().filter(selectedColumns::contains).collect(Collectors.toList());
+        for (int p = 0; p < sources.size(); p++) {
+            TableSchema target = converted.getPartitions().get(p);
+            File targetFile = catalog.dataFile(target);
+            closeTable(target.getTableName());
+            Files.deleteIfExists(Tombstones.file(targetFile).toPath()); // Left by an earlier period in this format
+            Files.move(tempFiles.get(p).toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            // Row locations differ between formats, so indexes are rebuilt when the table is next opened
+            deleteIndexFiles(target);
+        }
+        catalog.writeMetadata(converted);
+        for (OpenTable source : sources) {
+            File sourceFile = catalog.dataFile(source.schema);
+            Files.deleteIfExists(sourceFile.toPath());
+            Files.deleteIfExists(Tombstones.file(sourceFile).toPath()); // Deleted rows were not copied
+        }
+        session.out().println("Table " + tableName + " converted to " + format + " (" + rows + " rows).");
+    }
+
+    private void deleteIndexFiles(TableSchema schema) throws IOException {
+        for (IndexDefinition index : schema.getIndexes()) {
+            Files.deleteIfExists(TableIndex.indexFile(dbDirectory, schema.getTableName(), index.getName()).toPath());
         }
+    }
 
-        System.out.println(String.join(" ", selectedColumns));
+    /**
+     * Queues a table for compaction once enough of its stored rows are deleted. Must be called
+     * with the table's write mutex held.
+     * @param table The table a change was applied to
+     * @throws IOException If the stored rows could not be counted
+     */
+    private void scheduleCompaction(OpenTable table) throws IOException {
+        int dead = table.tombstones.size();
+        if (dead < COMPACTION_MIN_DEAD_ROWS || dead < COMPACTION_DEAD_RATIO * table.storedRows()
+                || compactor.isShutdown()) {
+            return;
+        }
+        String tableName = table.schema.getTableName();
+        if (!compactionsQueued.add(tableName)) {
+            return;
+        }
+        try {
+            compactor.execute(() -> runCompaction(tableName));
+        } catch (RejectedExecutionException e) {
+            compactionsQueued.remove(tableName); // Closed meanwhile
+        }
+    }
 
-        File tableFile = new File(dbDirectory, tableName + ".txt");
-        if (!tableFile.exists()) {
-            System.out.println("Table " + tableName + " does not exist.");
+    /**
+     * Compacts a table on the compaction thread, trying again later for as long as open snapshots or
+     * queries keep the compacted copy from being swapped in.
+     * @param tableName The table name
+     */
+    private void runCompaction(String tableName) {
+        boolean done = true;
+        try {
+            done = compact(tableName);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Compaction of table " + tableName + " failed: " + e.getMessage());
+        }
+        if (done) {
+            compactionsQueued.remove(tableName);
             return;
         }
+        try {
+            compactor.schedule(() -> runCompaction(tableName), COMPACTION_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            compactionsQueued.remove(tableName); // Closed meanwhile; the copy is removed when the table is opened
+        }
+    }
 
-        try (Scanner scanner = new Scanner(tableFile)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                List<String> rowData = Arrays.asList(line.split(Pattern.quote(delimiter), -1));
+    /**
+     * Copies the rows of a table's last committed version into {@code <data file>.compact} and swaps the copy
+     * in for the data file, which garbage-collects the deleted rows. The copy is read from a snapshot under
+     * the table's read lock, so queries and writers keep running while it is made.
+     * <p>
+     * Deleted rows can only be dropped once no snapshot may still see them, so the swap waits until every
+     * open snapshot is at least as new as the copied version, and until no query holds the table's read lock.
+     * If the table was written meanwhile, the next attempt copies it again.
+     * <p>
+     * The swap first retires the tombstone file to {@code <tombstones>.retired}, then atomically moves the
+     * copy over the data file. {@link #finishCompaction(TableSchema, File)} removes the retired tombstones and
+     * the indexes, whose locations refer to the old file, and completes or undoes a swap a crash interrupted.
+     * @param tableName The table name
+     * @return True if the table is compacted or no longer needs to be; false to try again later
+     * @throws IOException If an input or output exception occurred
+     */
+    private boolean compact(String tableName) throws IOException {
+        ReentrantReadWriteLock lock = tableLock(tableName);
+        OpenTable table;
+        TableVersion version;
+        File compacted;
+        lock.readLock().lock();
+        try {
+            table = openTables.get(tableName);
+            if (table == null || table.tombstones.size() < COMPACTION_MIN_DEAD_ROWS) {
+                if (compactedVersions.remove(tableName) != null && table != null) {
+                    Files.deleteIfExists(compactedFile(table.storage.getDataFile()).toPath());
+                }
+                return true;
+            }
+            version = table.latestVersion();
+            if (clock.oldestSnapshot() < version.commitTimestamp) {
+                return false; // An open snapshot still sees rows the copy would drop
+            }
+            compacted = compactedFile(table.storage.getDataFile());
+            if (compactedVersions.get(tableName) != version || !compacted.exists()) {
+                compactedVersions.remove(tableName);
+                copyRows(table.snapshot(version.commitTimestamp, null), compacted, table.schema);
+                compactedVersions.put(tableName, version);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
 
-                for (String col : selectedColumns) {
-                    int index = columnNames.indexOf(col);
-                    if (index != -1 && index < rowData.size()) {
-                        System.out.print(rowData.get(index).trim() + " ");
-                    } else {
-                        System.out.print("-");
-                    }
+        checkpointLock.writeLock().lock();
+        try {
+            if (!lock.writeLock().tryLock()) {
+                return false; // Queries are reading the old file
+            }
+            try {
+                if (openTables.get(tableName) != table || table.latestVersion() != version
+                        || clock.oldestSnapshot() < version.commitTimestamp) {
+                    return false;
+                }
+                if (!compacted.exists()) {
+                    compactedVersions.remove(tableName); // Removed meanwhile, so the next attempt copies again
+                    return false;
+                }
+                checkpoint(); // Logged changes refer to row locations in the old file
+                File dataFile = table.storage.getDataFile();
+                File retired = retiredTombstoneFile(dataFile);
+                closeTable(tableName);
+                compactedVersions.remove(tableName);
+                Files.move(Tombstones.file(dataFile).toPath(), retired.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                try {
+                    Files.move(compacted.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException | RuntimeException e) {
+                    // Retired tombstones without a compacted file would read as a finished swap
+                    Files.move(retired.toPath(), Tombstones.file(dataFile).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    throw e;
                 }
-                System.out.println();
+                finishCompaction(table.schema, dataFile);
+                return true;
+            } finally {
+                lock.writeLock().unlock();
             }
+        } finally {
+            checkpointLock.writeLock().unlock();
         }
     }
+
+    /**
+     * Writes the rows of a table version to a new data file, forced to disk.
+     * @param rows The rows to copy
+     * @param target The file to create
+     * @param schema The schema of the table
+     * @throws IOException If an input or output exception occurred; the target is then removed
+     */
+    private void copyRows(TableRows rows, File target, TableSchema schema) throws IOException {
+        Files.deleteIfExists(target.toPath());
+        int columnCount = schema.columnCount();
+        try (TableStorage output = TableStorage.open(target, schema, delimiter);
+             RowCursor cursor = rows.scan()) {
+            String[] values = new String[columnCount];
+            while (cursor.next()) {
+                for (int i = 0; i < columnCount; i++) {
+                    String value = cursor.getString(i);
+                    values[i] = value == null ? "" : value;
+                }
+                output.append(values);
+            }
+            output.flush(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(target.toPath());
+            throw e;
+        }
+    }
+
+    /**
+     * Completes a compaction of a data file, or undoes one that a crash interrupted before the compacted file
+     * was moved in. Called by the compaction itself and before a table is opened.
+     * @param schema The schema of the table
+     * @param dataFile The data file
+     * @throws IOException If an input or output exception occurred
+     */
+    private void finishCompaction(TableSchema schema, File dataFile) throws IOException {
+        File retired = retiredTombstoneFile(dataFile);
+        File compacted = compactedFile(dataFile);
+        if (retired.exists()) {
+            if (compacted.exists()) {
+                // The old rows are still in place, and so must their tombstones be
+                Files.move(retired.toPath(), Tombstones.file(dataFile).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                deleteIndexFiles(schema); // Rebuilt when the table is opened
+                Files.delete(retired.toPath());
+            }
+        }
+        Files.deleteIfExists(compacted.toPath());
+    }
+
+    private static File compactedFile(File dataFile) {
+        return new File(dataFile.getPath() + COMPACTED_SUFFIX);
+    }
+
+    private static File retiredTombstoneFile(File dataFile) {
+        return new File(Tombstones.file(dataFile).getPath() + RETIRED_SUFFIX);
+    }
+
+    /**
+     * Handles {@code COPY t FROM 'file.csv' [WITH HEADER]}, bulk loading a CSV file through a
+     * {@link CsvImporter}. Instead of logging every row, a single log record holding only the current marks
+     * of the table, or of each of its partitions, is synced before loading, so a crash part way through cuts
+     * the table back to where it was; a checkpoint after the load makes the rows durable and empties the log.
+     * Rejected rows are listed in {@code <file>.rejected}.
+     * @param session The session issuing the statement
+     * @param copy The parsed COPY statement
+     * @throws IOException If an input or output exception occurred
+     */
+    private void copyFrom(Session session, Statement.Copy copy) throws IOException {
+        File input = new File(copy.path);
+        if (!input.isFile()) {
+            session.out().println("File " + copy.path + " does not exist.");
+            return;
+        }
+        checkpoint();
+        List<OpenTable> partitions = openPartitions(copy.tableName);
+        if (partitions == null) {
+            session.out().println("Table " + copy.tableName + " does not exist.");
+            return;
+        }
+        long[] marks = new long[partitions.size()];
+        long[] tombstoneMarks = new long[partitions.size()];
+        List<WriteAheadLog.TableChange> changes = new ArrayList<>();
+        for (int i = 0; i < marks.length; i++) {
+            OpenTable table = partitions.get(i);
+            marks[i] = table.storage.mark();
+            tombstoneMarks[i] = table.tombstones.mark();
+            changes.add(new WriteAheadLog.TableChange(table.schema.getTableName(), marks[i], tombstoneMarks[i],
+                    new long[0], Collections.emptyList()));
+        }
+        wal.sync(wal.append(changes));
+
+        File rejectFile = new File(copy.path + ".rejected");
+        Files.deleteIfExists(rejectFile.toPath());
+        CsvImporter.Result result;
+        try {
+            result = new CsvImporter(catalog.getSchema(copy.tableName), delimiter).load(input, copy.header, partitions,
+                    rejectFile);
+        } catch (IOException e) {
+            for (int i = 0; i < marks.length; i++) {
+                partitions.get(i).truncateTo(marks[i], tombstoneMarks[i]);
+            }
+            checkpoint();
+            session.out().println("COPY failed, no rows were loaded: " + e.getMessage());
+            return;
+        }
+        publish(partitions);
+        checkpoint();
+        QueryMetrics.count(QueryMetrics.Counter.ROWS_WRITTEN, result.loaded);
+        session.out().println(result.loaded + " rows copied into table " + copy.tableName + "."
+                + (result.rejected == 0 ? "" : " " + result.rejected + " rows rejected, see " + rejectFile.getPath() + "."));
+    }
+
+    /**
+     * Handles INSERT queries with one or more value tuples, e.g. {@code VALUES (1, 'a'), (2, 'b')}.
+     * All tuples are validated before anything is written; the statement is then logged as one
+     * write-ahead log record, forced to disk as a COMMIT's is, and its rows are written to the table's data
+     * file and published as a new version.
+     * The rows of a partitioned table are written to their partitions, whose write mutexes are taken only
+     * once the rows are validated and routed, so inserts into different partitions run side by side.
+     * @param plan The plan of the INSERT statement
+     * @throws IOException If an input or output exception occurred
+     */
+    private void insertInto(Session session, QueryPlan plan) throws IOException {
+        List<PendingChange> changes = prepareInsert(session, plan);
+        if (changes == null) {
+            return;
+        }
+        Map<String, OpenTable> tables = tablesOf(changes);
+        List<ReentrantLock> mutexes = lockWriteMutexes(tables.keySet());
+        try {
+            logDurably(changes);
+            for (PendingChange change : changes) {
+                apply(session, change);
+            }
+            publish(tables.values());
+        } finally {
+            unlockAll(mutexes);
+        }
+    }
+
+    /**
+     * Validates the rows of an INSERT statement without writing anything. The validated rows are kept
+     * in the plan, so a cached statement is checked only once per table definition.
+     * @param plan The plan of the INSERT statement
+     * @return The validated rows, one change per partition receiving any, or null after printing why the
+     *         statement is invalid
+     * @throws IOException If an input or output exception occurred
+     */
+    private List<PendingChange> prepareInsert(Session session, QueryPlan plan) throws IOException {
+        Statement.Insert statement = (Statement.Insert) plan.getStatement();
+        String tableName = statement.tableName;
+        List<OpenTable> partitions = openPartitions(tableName);
+        if (partitions == null) {
+            session.out().println("Table " + tableName + " does not exist.");
+            return null;
+        }
+        TableSchema schema = catalog.getSchema(tableName);
+        String[][] rows = (String[][]) plan.validation(schema);
+        if (rows == null) {
+            rows = validateRows(session, statement, schema);
+            if (rows == null) {
+                return null;
+            }
+            plan.validated(schema, rows);
+        }
+        PartitionSpec partitioning = schema.getPartitioning();
+        List<List<String[]>> routed = new ArrayList<>(partitions.size());
+        for (int i = 0; i < partitions.size(); i++) {
+            routed.add(new ArrayList<>());
+        }
+        for (String[] row : rows) {
+            routed.get(partitioning == null ? 0 : partitioning.partitionOf(row, schema)).add(row);
+        }
+        String message = rows.length == 1 ? "Data inserted into table " + tableName + "."
+                : rows.length + " rows inserted into table " + tableName + ".";
+        List<PendingChange> changes = new ArrayList<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            if (!routed.get(i).isEmpty()) {
+                // The first change reports the whole statement
+                changes.add(new PendingChange(partitions.get(i), routed.get(i), new LocationList(1),
+                        changes.isEmpty() ? rows.length : 0, changes.isEmpty() ? message : null));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Handles {@code UPDATE t SET col = value, ... [WHERE condition]} and {@code DELETE FROM t [WHERE condition]}.
+     * Neither rewrites the data file: the matching rows get tombstones, and an UPDATE appends their new
+     * versions, so the cost is proportional to the rows changed. Like an INSERT, the change is logged as one
+     * write-ahead log record before it is applied. Once enough rows are deleted the table is compacted in
+     * the background. Since an UPDATE may move rows between partitions, the write mutexes of every partition
+     * of a partitioned table are held.
+     * @param plan The plan of the UPDATE or DELETE statement
+     * @throws IOException If an input or output exception occurred
+     */
+    private void modify(Session session, QueryPlan plan) throws IOException {
+        TableSchema schema = catalog.getSchema(plan.getStatement().getTableName());
+        List<ReentrantLock> mutexes = lockWriteMutexes(schema == null ? Collections.emptyList()
+                : schema.getPartitions().stream().map(TableSchema::getTableName).collect(Collectors.toList()));
+        try {
+            List<PendingChange> changes = prepareModify(session, plan, Collections.emptyList());
+            if (changes == null) {
+                return;
+            }
+            Map<String, OpenTable> tables = tablesOf(changes);
+            logDurably(changes);
+            for (PendingChange change : changes) {
+                apply(session, change);
+            }
+            publish(tables.values());
+            for (OpenTable table : tables.values()) {
+                scheduleCompaction(table);
+            }
+        } finally {
+            unlockAll(mutexes);
+        }
+    }
+
+    /**
+     * Finds the rows an UPDATE or DELETE changes without writing anything. Rows are found through an index
+     * when the WHERE condition allows it, and only in the partitions the condition can match. Inside a
+     * transaction the statement reads the transaction's snapshot and also sees the changes of the
+     * transaction's earlier statements: rows they deleted are skipped, and rows they appended are matched and
+     * removed from their lists. Updated rows are appended to the partitions their new values belong in.
+     * @param plan The plan of the UPDATE or DELETE statement
+     * @param earlier The changes of the earlier statements of the transaction
+     * @return The changes, one per partition changed and at least one, or null after printing why the
+     *         statement is invalid
+     * @throws IOException If an input or output exception occurred
+     */
+    private List<PendingChange> prepareModify(Session session, QueryPlan plan, List<PendingChange> earlier) throws IOException {
+        Statement statement = plan.getStatement();
+        String tableName = statement.getTableName();
+        List<OpenTable> partitions = openPartitions(tableName);
+        if (partitions == null) {
+            session.out().println("Table " + tableName + " does not exist.");
+            return null;
+        }
+        TableSchema schema = catalog.getSchema(tableName);
+        boolean update = statement instanceof Statement.Update;
+        Condition where = update ? ((Statement.Update) statement).where : ((Statement.Delete) statement).where;
+        CompiledModify compiled = (CompiledModify) plan.validation(schema);
+        if (compiled == null) {
+            try {
+                compiled = compileModify(statement, where, schema);
+            } catch (IllegalArgumentException e) {
+                session.out().println(e.getMessage());
+                return null;
+            }
+            plan.validated(schema, compiled);
+        }
+
+        PartitionSpec partitioning = schema.getPartitioning();
+        BitSet selected = partitioning == null ? BitSet.valueOf(new long[] {1}) : partitioning.partitionsFor(where, schema);
+        List<LocationList> deleted = new ArrayList<>(partitions.size());
+        List<List<String[]>> rows = new ArrayList<>(partitions.size());
+        for (int i = 0; i < partitions.size(); i++) {
+            deleted.add(new LocationList());
+            rows.add(new ArrayList<>());
+        }
+        int columnCount = schema.columnCount();
+        long scanned = 0;
+        int affected = 0;
+        for (int p = selected.nextSetBit(0); p >= 0; p = selected.nextSetBit(p + 1)) {
+            OpenTable table = partitions.get(p);
+            LocationSet deletedEarlier = new LocationSet();
+            for (PendingChange change : earlier) {
+                if (change.table == table) {
+                    for (int i = 0; i < change.deleted.size(); i++) {
+                        deletedEarlier.add(change.deleted.get(i));
+                    }
+                }
+            }
+            TableRows rowSource = session.inTransaction ? table.snapshot(session.snapshot, null) : table.storage;
+            LocationList candidates = indexCandidates(where, table);
+            try (RowCursor cursor = candidates == null ? rowSource.scan(where) : rowSource.fetch(candidates.toSortedArray())) {
+                while (cursor.next()) {
+                    scanned++;
+                    if (!deletedEarlier.contains(cursor.location()) && compiled.predicate.test(cursor)) {
+                        deleted.get(p).add(cursor.location());
+                        affected++;
+                        if (update) {
+                            String[] row = updatedRow(cursor, columnCount, compiled);
+                            rows.get(partitioning == null ? 0 : partitioning.partitionOf(row, schema)).add(row);
+                        }
+                    }
+                }
+            }
+        }
+        QueryMetrics.count(QueryMetrics.Counter.ROWS_SCANNED, scanned);
+        for (PendingChange change : earlier) {
+            if (!partitions.contains(change.table)) {
+                continue;
+            }
+            RowListCursor cursor = new RowListCursor(change.rows);
+            List<String[]> kept = new ArrayList<>(change.rows.size());
+            while (cursor.next()) {
+                if (compiled.predicate.test(cursor)) {
+                    affected++;
+                    if (update) {
+                        String[] row = updatedRow(cursor, columnCount, compiled);
+                        rows.get(partitioning == null ? 0 : partitioning.partitionOf(row, schema)).add(row);
+                    }
+                } else {
+                    kept.add(change.rows.get((int) cursor.location()));
+                }
+            }
+            change.rows.clear();
+            change.rows.addAll(kept);
+        }
+        String message;
+        if (affected == 1) {
+            message = update ? "Data updated in table " + tableName + "." : "Data deleted from table " + tableName + ".";
+        } else {
+            message = update ? affected + " rows updated in table " + tableName + "."
+                    : affected + " rows deleted from table " + tableName + ".";
+        }
+        List<PendingChange> changes = new ArrayList<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            boolean last = i == partitions.size() - 1;
+            if (deleted.get(i).size() > 0 || !rows.get(i).isEmpty() || last && changes.isEmpty()) {
+                // The first change reports the whole statement
+                changes.add(new PendingChange(partitions.get(i), rows.get(i), deleted.get(i),
+                        changes.isEmpty() ? affected : 0, changes.isEmpty() ? message : null));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Checks an UPDATE or DELETE against a table schema: the WHERE condition must compile, and every assigned
+     * column must exist and accept its value.
+     * @throws IllegalArgumentException If the statement does not match the table
+     */
+    private CompiledModify compileModify(Statement statement, Condition where, TableSchema schema) {
+        RowPredicate predicate = where == null ? RowPredicate.ALWAYS : where.compile(schema);
+        if (!(statement instanceof Statement.Update)) {
+            return new CompiledModify(predicate, new int[0], new String[0]);
+        }
+        List<Statement.Assignment> assignments = ((Statement.Update) statement).assignments;
+        int[] ordinals = new int[assignments.size()];
+        String[] values = new String[assignments.size()];
+        for (int i = 0; i < ordinals.length; i++) {
+            Statement.Assignment assignment = assignments.get(i);
+            ordinals[i] = schema.ordinalOf(assignment.column);
+            if (ordinals[i] < 0) {
+                throw new IllegalArgumentException("Unknown column " + assignment.column + " in table " + schema.getTableName());
+            }
+            String value = assignment.value.text;
+            if (value.contains(delimiter)) {
+                throw new IllegalArgumentException("Value \"" + value + "\" contains the reserved delimiter " + delimiter);
+            }
+            String error = schema.column(ordinals[i]).validate(value);
+            if (error != null) {
+                throw new IllegalArgumentException(error);
+            }
+            values[i] = value;
+        }
+        return new CompiledModify(predicate, ordinals, values);
+    }
+
+    private static String[] updatedRow(RowCursor cursor, int columnCount, CompiledModify compiled) {
+        String[] row = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            String value = cursor.getString(i);
+            row[i] = value == null ? "" : value;
+        }
+        for (int i = 0; i < compiled.ordinals.length; i++) {
+            row[compiled.ordinals[i]] = compiled.values[i];
+        }
+        return row;
+    }
+
+    /**
+     * Checks the values of an INSERT statement against the column definitions.
+     * @param statement The INSERT statement
+     * @param schema The schema of the table
+     * @return The rows as text, or null after printing why the statement is invalid
+     */
+    private String[][] validateRows(Session session, Statement.Insert statement, TableSchema schema) {
+        String[][] rows = new String[statement.rows.size()][];
+        for (int r = 0; r < rows.length; r++) {
+            List<Condition.Literal> literals = statement.rows.get(r);
+            if (literals.size() != schema.columnCount()) {
+                session.out().println("Invalid number of values provided for insertion.");
+                return null;
+            }
+            String[] vals = new String[literals.size()];
+            for (int i = 0; i < vals.length; i++) {
+                String val = literals.get(i).text;
+                ColumnDefinition definition = schema.column(i);
+
+                if (val.contains(delimiter)) {
+                    session.out().println("Value \"" + val + "\" contains the reserved delimiter " + delimiter);
+                    return null;
+                }
+                String error = definition.validate(val);
+                if (error != null) {
+                    session.out().println(error);
+                    return null;
+                }
+                vals[i] = val;
+            }
+            rows[r] = vals;
+        }
+        return rows;
+    }
+
+    /**
+     * Logs a set of changes and, if syncing on commit, waits until the record is on the storage device, so
+     * that no change reaches the data files before its record. Concurrent commits share one fsync.
+     * @param pending The validated changes
+     * @throws IOException If an input or output exception occurred
+     */
+    private void logDurably(List<PendingChange> pending) throws IOException {
+        long lsn = log(pending);
+        if (lsn > 0 && syncOnCommit) {
+            wal.sync(lsn);
+        }
+    }
+
+    /**
+     * Writes one write-ahead log record covering a set of changes, grouping the deleted and appended rows
+     * per table under the table's marks taken before any of them is applied.
+     * @param pending The validated changes
+     * @return The log sequence number just past the record, or 0 if no change deletes or appends a row
+     * @throws IOException If an input or output exception occurred
+     */
+    private long log(List<PendingChange> pending) throws IOException {
+        Map<OpenTable, LocationList> deletedByTable = new LinkedHashMap<>();
+        Map<OpenTable, List<String[]>> rowsByTable = new LinkedHashMap<>();
+        for (PendingChange change : pending) {
+            if (change.deleted.size() > 0 || !change.rows.isEmpty()) {
+                deletedByTable.computeIfAbsent(change.table, t -> new LocationList()).addAll(change.deleted);
+                rowsByTable.computeIfAbsent(change.table, t -> new ArrayList<>()).addAll(change.rows);
+            }
+        }
+        if (rowsByTable.isEmpty()) {
+            return 0;
+        }
+        List<WriteAheadLog.TableChange> changes = new ArrayList<>();
+        for (Map.Entry<OpenTable, List<String[]>> entry : rowsByTable.entrySet()) {
+            OpenTable table = entry.getKey();
+            changes.add(new WriteAheadLog.TableChange(table.schema.getTableName(), table.storage.mark(),
+                    table.tombstones.mark(), deletedByTable.get(table).toSortedArray(), entry.getValue()));
+        }
+        return wal.append(changes);
+    }
+
+    /**
+     * Deletes and appends the rows of a logged change.
+     * @param change The validated change
+     * @throws IOException If an input or output exception occurred
+     */
+    private void apply(Session session, PendingChange change) throws IOException {
+        for (int i = 0; i < change.deleted.size(); i++) {
+            change.table.delete(change.deleted.get(i));
+        }
+        for (String[] vals : change.rows) {
+            change.table.append(vals);
+        }
+        QueryMetrics.count(QueryMetrics.Counter.ROWS_WRITTEN, change.affected);
+        if (change.message != null) {
+            session.out().println(change.message);
+        }
+    }
+
+    /**
+     * Replays the write-ahead log: every table a record touches is cut back to the marks stored in the
+     * record, and the record's rows are deleted and appended again, then a checkpoint empties the log.
+     * @throws IOException If an input or output exception occurred
+     */
+    private void recover() throws IOException {
+        List<List<WriteAheadLog.TableChange>> records = wal.readAll();
+        if (records.isEmpty()) {
+            return;
+        }
+        long rows = 0;
+        for (List<WriteAheadLog.TableChange> record : records) {
+            for (WriteAheadLog.TableChange change : record) {
+                OpenTable table = openTable(change.tableName);
+                if (table == null) {
+                    continue; // The table was removed after the change was logged
+                }
+                table.truncateTo(change.mark, change.tombstoneMark);
+                for (long location : change.deleted) {
+                    table.delete(location);
+                }
+                for (String[] row : change.rows) {
+                    table.append(row);
+                    rows++;
+                }
+            }
+        }
+        publish(openTables.values());
+        checkpoint();
+        System.out.println("Recovered " + records.size() + " logged changes (" + rows + " rows) from the write-ahead log.");
+    }
+
+    /**
+     * Forces every table file to disk and empties the write-ahead log. No change can be logged meanwhile.
+     * @throws IOException If an input or output exception occurred
+     */
+    private void checkpoint() throws IOException {
+        checkpointLock.writeLock().lock();
+        try {
+            flushTables(true);
+            wal.reset();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    private void checkpointIfNeeded() throws IOException {
+        if (wal.size() >= CHECKPOINT_LOG_SIZE) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Returns the open storage engine of a table, opening it on first use and reopening it
+     * when the table's schema has changed since it was opened. The time taken counts as metadata loading.
+     * @param tableName The table name
+     * @return The open table, or null if the table does not exist
+     * @throws IOException If an input or output exception occurred
+     */
+    private OpenTable openTable(String tableName) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return lookUpTable(tableName);
+        } finally {
+            QueryMetrics.count(QueryMetrics.Counter.METADATA_NANOS, System.nanoTime() - start);
+        }
+    }
+
+    private OpenTable lookUpTable(String tableName) throws IOException {
+        TableSchema schema = catalog.getSchema(tableName);
+        OpenTable table = openTables.get(tableName);
+        if (table != null && table.schema == schema) {
+            return table;
+        }
+        openLock.lock();
+        try {
+            table = openTables.get(tableName);
+            if (table != null && table.schema == schema) {
+                return table; // Opened by another session meanwhile
+            }
+            closeTable(tableName);
+            if (schema == null) {
+                return null;
+            }
+            File dataFile = catalog.dataFile(schema);
+            if (!dataFile.exists()) {
+                return null;
+            }
+            finishCompaction(schema, dataFile);
+            TableStorage storage = TableStorage.open(dataFile, schema, delimiter);
+            try {
+                table = new OpenTable(dbDirectory, schema, storage, lastCommits.getOrDefault(tableName, 0L));
+            } catch (IOException e) {
+                storage.close();
+                throw e;
+            }
+            openTables.put(tableName, table);
+            return table;
+        } finally {
+            openLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes and closes the storage engine of a table if it is open.
+     * @param tableName The table name
+     * @throws IOException If an input or output exception occurred
+     */
+    private void closeTable(String tableName) throws IOException {
+        openLock.lock();
+        try {
+            OpenTable table = openTables.remove(tableName);
+            if (table != null) {
+                lastCommits.put(tableName, table.latestVersion().commitTimestamp);
+                table.close();
+            }
+        } finally {
+            openLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the buffered rows, tombstones and index entries of every table to disk. Only each table's
+     * write mutex is taken, so queries reading the tables keep running.
+     * @param sync Whether to force the table files to the storage device
+     * @throws IOException If an input or output exception occurred
+     */
+    private void flushTables(boolean sync) throws IOException {
+        for (Map.Entry<String, OpenTable> entry : openTables.entrySet()) {
+            ReentrantLock mutex = writeMutex(entry.getKey());
+            mutex.lock();
+            try {
+                entry.getValue().flush(sync);
+            } finally {
+                mutex.unlock();
+            }
+        }
+    }
+
+    /**
+     * Waits for queued compactions, checkpoints, then closes the open table files and the write-ahead log.
+     * Compactions that would have to be retried are dropped, and the copies they made are removed.
+     * @throws IOException If an input or output exception occurred
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            failure = e;
+        }
+        for (OpenTable table : openTables.values()) {
+            try {
+                // A copy made for a compaction that was still waiting to be swapped in
+                Files.deleteIfExists(compactedFile(table.storage.getDataFile()).toPath());
+                table.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        openTables.clear();
+        compactedVersions.clear();
+        try {
+            wal.close();
+        } catch (IOException e) {
+            failure = e;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Runs a SELECT query and returns its rows as a cursor, for applications that consume results
+     * programmatically. The query runs in the console session, inside its open transaction if there is one.
+     * @param query The SELECT query, or EXECUTE of a prepared SELECT
+     * @return The result set, which must be closed by the caller
+     * @throws IllegalArgumentException If the query is invalid, is not a SELECT or names an unknown table
+     * @throws IOException If an input or output exception occurred
+     */
+    public ResultSet executeSelect(String query) throws IOException {
+        return executeSelect(consoleSession, query);
+    }
+
+    /**
+     * Runs a SELECT query and returns its rows as a cursor that reads the table as it advances.
+     * The rows are those of a snapshot taken when the query starts, or of the session's open transaction;
+     * the snapshot and the table's read lock are held until the result set is closed.
+     * @param session The session issuing the query, which holds its prepared statements
+     * @param query The SELECT query, or EXECUTE of a prepared SELECT
+     * @return The result set, which must be closed by the caller
+     * @throws IllegalArgumentException If the query is invalid, is not a SELECT or names an unknown table
+     * @throws IllegalStateException If the session's transaction began before a table it reads was rebuilt
+     * @throws IOException If an input or output exception occurred
+     */
+    public ResultSet executeSelect(Session session, String query) throws IOException {
+        QueryMetrics metrics = new QueryMetrics();
+        QueryMetrics previous = QueryMetrics.enter(metrics);
+        try {
+            QueryPlan plan = parse(session, query, metrics);
+            if (plan == null || !(plan.getStatement() instanceof SelectStatement)) {
+                throw new IllegalArgumentException("Not a SELECT query: " + query.trim());
+            }
+            // The statement is complete, and its rows are counted, when the caller closes the result set
+            return openResultSet(session, plan, () -> statistics.record(metrics.complete()));
+        } finally {
+            QueryMetrics.exit(previous);
+        }
+    }
+
+    /**
+     * Handles SELECT queries with an optional WHERE clause by writing the rows of their result set to the
+     * session's output through a large buffer, one line per row.
+     * @param session The session issuing the query
+     * @param plan The plan of the SELECT query
+     * @throws IOException If an input or output exception occurred
+     */
+    private void selectFrom(Session session, QueryPlan plan) throws IOException {
+        PrintStream out = session.out();
+        try (ResultSet result = openResultSet(session, plan, null)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, out.charset()), OUTPUT_BUFFER_SIZE);
+            writer.write(String.join(" ", result.getColumnNames()));
+            writer.write(System.lineSeparator());
+            int columnCount = result.getColumnNames().size();
+            while (result.next()) {
+                for (int i = 0; i < columnCount; i++) {
+                    String value = result.getString(i);
+                    if (value != null) {
+                        writer.write(value);
+                        writer.write(' ');
+                    } else {
+                        writer.write('-');
+                    }
+                }
+                writer.write(System.lineSeparator());
+            }
+            writer.flush();
+        } catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+        } catch (IllegalStateException e) {
+            out.println(e.getMessage()); // The transaction's snapshot can no longer be read
+            session.transactionFailed = true;
+        }
+    }
+
+    /**
+     * Opens the result set of a SELECT query. The WHERE condition is compiled once into a predicate over
+     * column ordinals and evaluated while the table is streamed, so rows that do not match are never decoded
+     * beyond the columns the condition reads. When a secondary index can narrow the condition, only the rows
+     * at the locations it yields are fetched. Queries with aggregate functions or GROUP BY are computed by an
+     * {@link Aggregator} before the result set is returned. An ORDER BY sorts the matching rows, keeping only
+     * the best ones in a heap if there is a LIMIT; a LIMIT alone stops reading the table once enough rows
+     * have been returned. The compiled query is kept in the plan for as long as the table definition does
+     * not change.
+     * <p>
+     * Of a partitioned table, only the partitions the WHERE condition can match are read. A query reading more
+     * than one of them without an index scans them in parallel, one thread per partition.
+     * <p>
+     * The query reads a snapshot: a new one, or inside a transaction the transaction's snapshot together
+     * with the rows the transaction has deleted and written so far. Commits made while the result set is
+     * open do not change it.
+     * @param session The session issuing the query
+     * @param plan The plan of the SELECT query
+     * @param onClose Run after the result set is closed and the lock released, or null
+     * @return The result set, holding the table's read lock and its snapshot until it is closed
+     * @throws IllegalArgumentException If the query does not match the table
+     * @throws IOException If an input or output exception occurred
+     */
+    private ResultSet openResultSet(Session session, QueryPlan plan, Runnable onClose) throws IOException {
+        SelectStatement statement = (SelectStatement) plan.getStatement();
+        if (statement.getJoin() != null) {
+            return openJoinResultSet(session, plan, onClose);
+        }
+        String tableName = statement.getTableName();
+        long start = System.nanoTime();
+        TableSchema schema = catalog.getSchema(tableName);
+        QueryMetrics.count(QueryMetrics.Counter.METADATA_NANOS, System.nanoTime() - start);
+        if (schema == null) {
+            throw new IllegalArgumentException("Metadata for table " + tableName + " does not exist.");
+        }
+        CompiledSelect compiled = (CompiledSelect) plan.validation(schema);
+        if (compiled == null) {
+            compiled = compileSelect(statement, schema);
+            plan.validated(schema, compiled);
+        }
+
+        ReentrantReadWriteLock lock = tableLock(tableName);
+        lock.readLock().lock();
+        boolean ownSnapshot = !session.inTransaction;
+        long snapshot = ownSnapshot ? clock.snapshot() : session.snapshot;
+        Runnable release = () -> {
+            lock.readLock().unlock();
+            if (ownSnapshot) {
+                clock.release(snapshot);
+            }
+        };
+        RowCursor cursor = null;
+        try {
+            List<OpenTable> partitions = openPartitions(tableName);
+            if (partitions == null) {
+                throw new IllegalArgumentException("Table " + tableName + " does not exist.");
+            }
+            PartitionSpec partitioning = schema.getPartitioning();
+            BitSet selected = partitioning == null ? BitSet.valueOf(new long[] {1})
+                    : partitioning.partitionsFor(statement.getWhere(), schema);
+            List<String[]> written = new ArrayList<>();
+            TableRows rows = snapshotOf(session, schema, partitions, selected, snapshot, written);
+            LocationList candidates = indexCandidates(statement.getWhere(), schema, partitions, selected);
+            boolean parallel = partitioning != null && candidates == null && selected.cardinality() > 1;
+            QueryMetrics metrics = QueryMetrics.current();
+            if (metrics != null) {
+                metrics.setAccessPath((candidates != null ? "index lookup of " + candidates.size() + " candidate rows"
+                        : compiled.aggregator != null || parallel ? "parallel scan" : "full scan")
+                        + (partitioning == null ? "" : " in " + selected.cardinality() + " of "
+                                + partitioning.getPartitionCount() + " partitions") + orderPath(statement));
+            }
+            if (compiled.aggregator != null) {
+                List<String[]> result = compiled.aggregator.aggregate(rows,
+                        candidates == null ? null : candidates.toSortedArray(), written);
+                release.run();
+                if (compiled.order != null) {
+                    result.sort(compiled.order.comparator);
+                }
+                if (statement.getLimit() >= 0 && result.size() > statement.getLimit()) {
+                    result = result.subList(0, (int) statement.getLimit());
+                }
+                QueryMetrics.count(QueryMetrics.Counter.ROWS_EMITTED, result.size());
+                List<String> labels = statement.getItems().stream().map(SelectItem::label).collect(Collectors.toList());
+                return new RowListResultSet(labels, result, onClose);
+            }
+            RowPredicate predicate = compiled.predicate;
+            if (parallel) {
+                // The partitions are filtered on the threads reading them
+                List<RowCursor> cursors = ((PartitionedTableStorage) rows).scanPartitions(statement.getWhere());
+                if (!written.isEmpty()) {
+                    cursors.add(new RowListCursor(written));
+                }
+                cursor = new ParallelScanCursor(cursors, predicate, schema.columnCount());
+                predicate = RowPredicate.ALWAYS;
+            } else {
+                cursor = withWritten(candidates == null ? rows.scan(statement.getWhere())
+                        : rows.fetch(candidates.toSortedArray()), written);
+            }
+            return scanResult(compiled.columns, compiled.ordinals, cursor, predicate, compiled.order,
+                    statement.getLimit(), onClose == null ? release : () -> {
+                        release.run();
+                        onClose.run();
+                    });
+        } catch (IOException | RuntimeException e) {
+            if (cursor != null) {
+                cursor.close();
+            }
+            release.run();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the result set of a SELECT query joining two tables. Both tables are read in the same snapshot.
+     * If either table has an index on its join column, the other table is streamed and every row looks up
+     * its matches in the index (an index nested-loop join); with indexes on both sides the larger table is
+     * the one probed. Otherwise the smaller table is loaded into a hash table and the larger one streamed
+     * past it, spilling both to disk in partitions if the hash table outgrows the memory set by the
+     * {@value #QUERY_MEMORY_PROPERTY} system property. Parts of the WHERE condition that read only one table
+     * filter its rows before they are joined. A partitioned table is read whole and never probed through its
+     * indexes, which cover one partition each.
+     * @param session The session issuing the query
+     * @param plan The plan of the SELECT query
+     * @param onClose Run after the result set is closed and the locks released, or null
+     * @return The result set, holding the read locks of both tables and the snapshot until it is closed
+     * @throws IllegalArgumentException If the query does not match the tables
+     * @throws IOException If an input or output exception occurred
+     */
+    private ResultSet openJoinResultSet(Session session, QueryPlan plan, Runnable onClose) throws IOException {
+        SelectStatement statement = (SelectStatement) plan.getStatement();
+        String leftName = statement.getTableName();
+        String rightName = statement.getJoin().getTableName();
+        long start = System.nanoTime();
+        TableSchema leftSchema = catalog.getSchema(leftName);
+        TableSchema rightSchema = catalog.getSchema(rightName);
+        QueryMetrics.count(QueryMetrics.Counter.METADATA_NANOS, System.nanoTime() - start);
+        if (leftSchema == null || rightSchema == null) {
+            throw new IllegalArgumentException("Metadata for table " + (leftSchema == null ? leftName : rightName)
+                    + " does not exist.");
+        }
+        CompiledJoin compiled = (CompiledJoin) plan.validation(leftSchema);
+        if (compiled == null || compiled.rightSchema != rightSchema) {
+            compiled = compileJoin(statement, leftSchema, rightSchema);
+            plan.validated(leftSchema, compiled);
+        }
+
+        // Taken in name order: with writers queued on both tables, two joins taking them in opposite orders
+        // could each wait for the other
+        ReentrantReadWriteLock firstLock = tableLock(leftName.compareTo(rightName) < 0 ? leftName : rightName);
+        ReentrantReadWriteLock secondLock = tableLock(leftName.compareTo(rightName) < 0 ? rightName : leftName);
+        firstLock.readLock().lock();
+        secondLock.readLock().lock();
+        boolean ownSnapshot = !session.inTransaction;
+        long snapshot = ownSnapshot ? clock.snapshot() : session.snapshot;
+        Runnable release = () -> {
+            secondLock.readLock().unlock();
+            firstLock.readLock().unlock();
+            if (ownSnapshot) {
+                clock.release(snapshot);
+            }
+        };
+        RowCursor leftCursor = null;
+        RowCursor rightCursor = null;
+        try {
+            List<OpenTable> left = openPartitions(leftName);
+            List<OpenTable> right = openPartitions(rightName);
+            if (left == null || right == null) {
+                throw new IllegalArgumentException("Table " + (left == null ? leftName : rightName) + " does not exist.");
+            }
+            List<String[]> leftWritten = new ArrayList<>();
+            TableRows leftRows = snapshotOf(session, leftSchema, left, allPartitions(left), snapshot, leftWritten);
+            List<String[]> rightWritten = new ArrayList<>();
+            TableRows rightRows = snapshotOf(session, rightSchema, right, allPartitions(right), snapshot, rightWritten);
+            int leftColumns = leftSchema.columnCount();
+            int rightColumns = rightSchema.columnCount();
+            // Rows written by the open transaction are in no index yet, and a partitioned table has an index per
+            // partition rather than one to probe
+            TableIndex leftIndex = leftWritten.isEmpty() && leftSchema.getPartitioning() == null
+                    ? left.get(0).indexOn(leftSchema.column(compiled.leftKey).getName(), false) : null;
+            TableIndex rightIndex = rightWritten.isEmpty() && rightSchema.getPartitioning() == null
+                    ? right.get(0).indexOn(rightSchema.column(compiled.rightKey).getName(), false) : null;
+            long leftSize = dataSize(left);
+            long rightSize = dataSize(right);
+            String accessPath;
+            RowCursor cursor;
+            if (rightIndex != null && (leftIndex == null || rightSize >= leftSize)) {
+                leftCursor = withWritten(leftRows.scan(), leftWritten);
+                cursor = new IndexJoinCursor(new JoinCursor.Input(leftCursor, compiled.leftFilter, compiled.leftKey,
+                        leftColumns), true, leftColumns, rightRows, compiled.rightFilter, compiled.rightKey, rightColumns,
+                        rightIndex, writeMutex(rightName));
+                accessPath = "index nested-loop join of " + leftName + " with index "
+                        + rightIndex.getDefinition().getName() + " of " + rightName;
+            } else if (leftIndex != null) {
+                rightCursor = withWritten(rightRows.scan(), rightWritten);
+                cursor = new IndexJoinCursor(new JoinCursor.Input(rightCursor, compiled.rightFilter, compiled.rightKey,
+                        rightColumns), false, leftColumns, leftRows, compiled.leftFilter, compiled.leftKey, leftColumns,
+                        leftIndex, writeMutex(leftName));
+                accessPath = "index nested-loop join of " + rightName + " with index "
+                        + leftIndex.getDefinition().getName() + " of " + leftName;
+            } else {
+                leftCursor = withWritten(leftRows.scan(), leftWritten);
+                rightCursor = withWritten(rightRows.scan(), rightWritten);
+                JoinCursor.Input leftInput = new JoinCursor.Input(leftCursor, compiled.leftFilter, compiled.leftKey, leftColumns);
+                JoinCursor.Input rightInput = new JoinCursor.Input(rightCursor, compiled.rightFilter, compiled.rightKey,
+                        rightColumns);
+                boolean buildLeft = leftSize <= rightSize;
+                cursor = new HashJoinCursor(buildLeft ? leftInput : rightInput, buildLeft ? rightInput : leftInput,
+                        buildLeft, leftColumns, compiled.numericKeys, queryMemory(), new File(dbDirectory));
+                accessPath = "hash join building on " + (buildLeft ? leftName : rightName);
+            }
+            QueryMetrics metrics = QueryMetrics.current();
+            if (metrics != null) {
+                metrics.setAccessPath(accessPath + orderPath(statement));
+            }
+            return scanResult(compiled.columns, compiled.ordinals, cursor, compiled.predicate, compiled.order,
+                    statement.getLimit(), onClose == null ? release : () -> {
+                        release.run();
+                        onClose.run();
+                    });
+        } catch (IOException | RuntimeException e) {
+            try {
+                if (leftCursor != null) {
+                    leftCursor.close();
+                }
+                if (rightCursor != null) {
+                    rightCursor.close();
+                }
+            } finally {
+                release.run();
+            }
+            throw e;
+        }
+    }
+
+    private CompiledJoin compileJoin(SelectStatement statement, TableSchema leftSchema, TableSchema rightSchema) {
+        SelectStatement.Join join = statement.getJoin();
+        if (leftSchema.getTableName().equals(rightSchema.getTableName())) {
+            throw new IllegalArgumentException("A table cannot be joined with itself.");
+        }
+        if (statement.isAggregate()) {
+            throw new IllegalArgumentException("Aggregates and GROUP BY are not supported with JOIN.");
+        }
+        TableSchema joined = TableSchema.joined(leftSchema, rightSchema);
+        int leftColumns = leftSchema.columnCount();
+        int first = resolveJoined(joined, join.leftColumn);
+        int second = resolveJoined(joined, join.rightColumn);
+        if ((first < leftColumns) == (second < leftColumns)) {
+            throw new IllegalArgumentException("The JOIN condition must compare a column of " + leftSchema.getTableName()
+                    + " with a column of " + rightSchema.getTableName() + ".");
+        }
+        int leftKey = Math.min(first, second);
+        int rightKey = Math.max(first, second) - leftColumns;
+        ColumnDefinition leftColumn = leftSchema.column(leftKey);
+        ColumnDefinition rightColumn = rightSchema.column(rightKey);
+        if (leftColumn.getType() != rightColumn.getType()) {
+            throw new IllegalArgumentException("Cannot join " + leftColumn.getType().toString().toLowerCase() + " column "
+                    + leftColumn.getName() + " with " + rightColumn.getType().toString().toLowerCase() + " column "
+                    + rightColumn.getName() + ".");
+        }
+        Condition where = statement.getWhere();
+        RowPredicate predicate = where == null ? RowPredicate.ALWAYS : where.compile(joined);
+        List<String> columns;
+        int[] ordinals;
+        if (statement.getItems().isEmpty()) {
+            columns = joined.getColumnNames();
+            ordinals = new int[columns.size()];
+            Arrays.setAll(ordinals, i -> i);
+        } else {
+            columns = statement.getItems().stream().map(SelectItem::getColumn).collect(Collectors.toList());
+            ordinals = columns.stream().mapToInt(column -> resolveJoined(joined, column)).toArray();
+        }
+        return new CompiledJoin(rightSchema, leftKey, rightKey, leftColumn.getType() == ColumnType.INT, predicate,
+                filterFor(where, leftSchema), filterFor(where, rightSchema), columns, ordinals,
+                compileOrder(statement, joined, ordinals));
+    }
+
+    private static int resolveJoined(TableSchema joined, String column) {
+        int ordinal = joined.ordinalOf(column);
+        if (ordinal < 0) {
+            throw new IllegalArgumentException(column.indexOf('.') < 0 && joined.getColumnNames().stream()
+                    .filter(name -> name.endsWith("." + column)).count() > 1
+                    ? "Column " + column + " is ambiguous; qualify it with its table name."
+                    : "Unknown column " + column + " in " + joined.getTableName());
+        }
+        return ordinal;
+    }
+
+    /**
+     * Compiles the conjuncts of a join's WHERE condition that read only one of the tables, so that its rows
+     * can be filtered before they are joined. The whole condition has already been compiled against the
+     * joined rows, so a conjunct that does not compile against the table reads the other one.
+     * @param where The WHERE condition, or null
+     * @param schema The schema of one of the tables
+     * @return The predicate over the table's rows, {@link RowPredicate#ALWAYS} if no conjunct applies
+     */
+    private static RowPredicate filterFor(Condition where, TableSchema schema) {
+        if (where == null) {
+            return RowPredicate.ALWAYS;
+        }
+        List<Condition> conjuncts = where instanceof Condition.And ? ((Condition.And) where).operands : List.of(where);
+        List<RowPredicate> filters = new ArrayList<>();
+        for (Condition conjunct : conjuncts) {
+            try {
+                filters.add(conjunct.compile(schema));
+            } catch (IllegalArgumentException e) {
+                // Reads a column of the other table
+            }
+        }
+        if (filters.isEmpty()) {
+            return RowPredicate.ALWAYS;
+        }
+        return filters.size() == 1 ? filters.get(0) : row -> {
+            for (RowPredicate filter : filters) {
+                if (!filter.test(row)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    /**
+     * Collects what a session's open transaction has changed in a table so far.
+     * @param session The session reading the table
+     * @param table The open table
+     * @param deleted Receives the locations of the rows the transaction deleted
+     * @return The rows the transaction wrote, empty outside a transaction
+     */
+    private static List<String[]> transactionRows(Session session, OpenTable table, LocationSet deleted) {
+        List<String[]> written = new ArrayList<>();
+        if (session.inTransaction) {
+            for (PendingChange change : session.transactionChanges) {
+                if (change.table == table) {
+                    for (int i = 0; i < change.deleted.size(); i++) {
+                        deleted.add(change.deleted.get(i));
+                    }
+                    written.addAll(change.rows);
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Opens the rows of a table a query reads: the snapshot of the table, or of the given partitions of a
+     * partitioned table as one {@link PartitionedTableStorage}, without the rows the session's open
+     * transaction deleted.
+     * @param session The session reading the table
+     * @param schema The schema of the table
+     * @param partitions The open partitions of the table, or the open table itself
+     * @param selected The numbers of the partitions to read
+     * @param snapshot The snapshot to read
+     * @param written Receives the rows the transaction wrote to the partitions read
+     * @return The rows of the snapshot
+     */
+    private static TableRows snapshotOf(Session session, TableSchema schema, List<OpenTable> partitions,
+                                           BitSet selected, long snapshot, List<String[]> written) {
+        if (schema.getPartitioning() == null) {
+            LocationSet deleted = new LocationSet();
+            written.addAll(transactionRows(session, partitions.get(0), deleted));
+            return partitions.get(0).snapshot(snapshot, deleted);
+        }
+        List<TableRows> snapshots = new ArrayList<>();
+        for (int p = selected.nextSetBit(0); p >= 0; p = selected.nextSetBit(p + 1)) {
+            LocationSet deleted = new LocationSet();
+            written.addAll(transactionRows(session, partitions.get(p), deleted));
+            snapshots.add(partitions.get(p).snapshot(snapshot, deleted));
+        }
+        return new PartitionedTableStorage(snapshots, selected.stream().toArray());
+    }
+
+    /**
+     * Finds the candidate rows of a condition through the indexes of a table, or of the given partitions of
+     * a partitioned table as locations within the {@link PartitionedTableStorage} over them.
+     * @return The candidate locations, or null if the table or one of the partitions must be scanned
+     */
+    private LocationList indexCandidates(Condition condition, TableSchema schema, List<OpenTable> partitions,
+                                         BitSet selected) {
+        if (schema.getPartitioning() == null) {
+            return indexCandidates(condition, partitions.get(0));
+        }
+        LocationList candidates = new LocationList();
+        for (int p = selected.nextSetBit(0); p >= 0; p = selected.nextSetBit(p + 1)) {
+            LocationList found = indexCandidates(condition, partitions.get(p));
+            if (found == null) {
+                return null;
+            }
+            for (int i = 0; i < found.size(); i++) {
+                candidates.add(PartitionedTableStorage.location(p, found.get(i)));
+            }
+        }
+        return candidates;
+    }
+
+    private static BitSet allPartitions(List<OpenTable> partitions) {
+        BitSet all = new BitSet(partitions.size());
+        all.set(0, partitions.size());
+        return all;
+    }
+
+    /**
+     * @return The size of the data files of a table's partitions, by which a join picks its smaller side
+     */
+    private static long dataSize(List<OpenTable> partitions) {
+        long size = 0;
+        for (OpenTable partition : partitions) {
+            size += partition.storage.getDataFile().length();
+        }
+        return size;
+    }
+
+    /**
+     * @return A cursor over the stored rows followed by the rows a transaction wrote
+     */
+    private static RowCursor withWritten(RowCursor stored, List<String[]> written) {
+        return written.isEmpty() ? stored : new ChainedCursor(stored, new RowListCursor(written));
+    }
+
+    private CompiledSelect compileSelect(SelectStatement statement, TableSchema schema) {
+        Condition condition = statement.getWhere();
+        RowPredicate predicate = condition == null ? RowPredicate.ALWAYS : condition.compile(schema);
+        if (statement.isAggregate()) {
+            return new CompiledSelect(predicate, new Aggregator(statement, schema, predicate), null, null,
+                    compileAggregateOrder(statement, schema));
+        }
+        List<String> columnNames = schema.getColumnNames();
+        List<String> selectedColumns;
+        if (statement.getItems().isEmpty()) {
+            selectedColumns = columnNames;
+        } else {
+            List<String> requested = statement.getItems().stream().map(SelectItem::getColumn).collect(Collectors.toList());
+            selectedColumns = columnNames.stream().filter(requested::contains).collect(Collectors.toList());
+        }
+        int[] ordinals = selectedColumns.stream().mapToInt(schema::ordinalOf).toArray();
+        return new CompiledSelect(predicate, null, selectedColumns, ordinals, compileOrder(statement, schema, ordinals));
+    }
+
+    /**
+     * Resolves the ORDER BY of a query that returns table rows. The keys may be any columns of the table,
+     * whether the query returns them or not.
+     * @param statement The SELECT statement
+     * @param schema The schema of the rows, those of a single table or of a join
+     * @param ordinals The ordinals of the columns the query returns
+     * @return The compiled order, or null if the query has no ORDER BY
+     * @throws IllegalArgumentException If a key is an aggregate or an unknown column
+     */
+    private static CompiledOrder compileOrder(SelectStatement statement, TableSchema schema, int[] ordinals) {
+        List<SelectStatement.Order> orderBy = statement.getOrderBy();
+        if (orderBy.isEmpty()) {
+            return null;
+        }
+        List<Integer> carried = new ArrayList<>();
+        int[] resultOrdinals = new int[ordinals.length];
+        for (int i = 0; i < ordinals.length; i++) {
+            resultOrdinals[i] = carry(carried, ordinals[i]);
+        }
+        int[] positions = new int[orderBy.size()];
+        boolean[] numeric = new boolean[orderBy.size()];
+        boolean[] descending = new boolean[orderBy.size()];
+        for (int i = 0; i < positions.length; i++) {
+            SelectItem item = orderBy.get(i).item;
+            if (item.isAggregate()) {
+                throw new IllegalArgumentException("Cannot order by " + item.label() + " in a query without aggregates.");
+            }
+            int ordinal = schema.ordinalOf(item.getColumn());
+            if (ordinal < 0) {
+                throw new IllegalArgumentException("Unknown column " + item.getColumn() + " in ORDER BY");
+            }
+            positions[i] = carry(carried, ordinal);
+            numeric[i] = schema.column(ordinal).getType() == ColumnType.INT;
+            descending[i] = orderBy.get(i).descending;
+        }
+        return new CompiledOrder(carried.stream().mapToInt(Integer::intValue).toArray(), resultOrdinals,
+                new RowComparator(positions, numeric, descending));
+    }
+
+    private static int carry(List<Integer> carried, int ordinal) {
+        int position = carried.indexOf(ordinal);
+        if (position < 0) {
+            position = carried.size();
+            carried.add(ordinal);
+        }
+        return position;
+    }
+
+    /**
+     * Resolves the ORDER BY of an aggregate query, whose keys must be items of its select list.
+     * @param statement The SELECT statement
+     * @param schema The schema of the table
+     * @return The compiled order, or null if the query has no ORDER BY
+     * @throws IllegalArgumentException If a key is not in the select list
+     */
+    private static CompiledOrder compileAggregateOrder(SelectStatement statement, TableSchema schema) {
+        List<SelectStatement.Order> orderBy = statement.getOrderBy();
+        if (orderBy.isEmpty()) {
+            return null;
+        }
+        List<String> labels = statement.getItems().stream().map(SelectItem::label).collect(Collectors.toList());
+        int[] positions = new int[orderBy.size()];
+        boolean[] numeric = new boolean[orderBy.size()];
+        boolean[] descending = new boolean[orderBy.size()];
+        for (int i = 0; i < positions.length; i++) {
+            SelectItem item = orderBy.get(i).item;
+            positions[i] = labels.indexOf(item.label());
+            if (positions[i] < 0) {
+                throw new IllegalArgumentException("ORDER BY " + item.label() + " must be in the select list of an aggregate query.");
+            }
+            AggregateFunction function = item.getFunction();
+            int ordinal = item.getColumn() == null ? -1 : schema.ordinalOf(item.getColumn());
+            numeric[i] = (function != null && function != AggregateFunction.MIN && function != AggregateFunction.MAX)
+                    || (ordinal >= 0 && schema.column(ordinal).getType() == ColumnType.INT);
+            descending[i] = orderBy.get(i).descending;
+        }
+        return new CompiledOrder(null, null, new RowComparator(positions, numeric, descending));
+    }
+
+    /**
+     * Opens the result set over a cursor of table or joined rows. Without an ORDER BY, the rows are returned
+     * as they are read and reading stops at the LIMIT; with one, they are sorted by a {@link SortCursor} first.
+     */
+    private ResultSet scanResult(List<String> columns, int[] ordinals, RowCursor cursor, RowPredicate predicate,
+                                 CompiledOrder order, long limit, Runnable onClose) {
+        if (order == null) {
+            return new ScanResultSet(columns, ordinals, cursor, predicate, limit, onClose);
+        }
+        RowCursor sorted = new SortCursor(cursor, predicate, order.carried, order.comparator, limit, queryMemory(),
+                new File(dbDirectory));
+        return new ScanResultSet(columns, order.resultOrdinals, sorted, RowPredicate.ALWAYS, limit, onClose);
+    }
+
+    /**
+     * @return How the query's ORDER BY and LIMIT are carried out, as shown by {@code EXPLAIN ANALYZE}
+     */
+    private static String orderPath(SelectStatement statement) {
+        if (statement.getOrderBy().isEmpty()) {
+            return statement.getLimit() < 0 ? "" : ", stopping after " + statement.getLimit() + " rows";
+        }
+        if (statement.isAggregate()) {
+            return ", sorted in memory";
+        }
+        return statement.getLimit() < 0 ? ", sorted" : ", top " + statement.getLimit() + " rows kept in a heap";
+    }
+
+    /**
+     * @return The bytes of rows a join or sort may hold in memory, set by {@value #QUERY_MEMORY_PROPERTY}
+     */
+    private static long queryMemory() {
+        return Long.getLong(QUERY_MEMORY_PROPERTY, DEFAULT_QUERY_MEMORY / (1024 * 1024)) * 1024 * 1024;
+    }
+
 }
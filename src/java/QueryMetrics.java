@@ -0,0 +1,189 @@
+package src.java;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements of one statement: the time spent in each stage and the work it caused in the storage layer.
+ * <p>
+ * The executor installs the metrics of the running statement on its thread with {@link #enter(QueryMetrics)};
+ * storage engines, cursors and the write-ahead log add to whatever metrics are installed, so they need no
+ * extra parameters. Work handed to other threads, such as the ranges of a parallel aggregate, installs the
+ * same metrics there. Counters are {@link LongAdder}s, so those threads can add to them concurrently.
+ * Cursors count locally and add their totals when they are closed, which keeps the per-row cost at a
+ * field increment.
+ */
+public class QueryMetrics {
+    private static final ThreadLocal<QueryMetrics> CURRENT = new ThreadLocal<>();
+
+    /**
+     * What is counted for each statement.
+     */
+    public enum Counter {
+        PARSE_NANOS("Parse time"),
+        METADATA_NANOS("Metadata load time"),
+        ROWS_SCANNED("Rows scanned"),
+        SEGMENTS_SKIPPED("Segments skipped"),
+        ROWS_EMITTED("Rows emitted"),
+        ROWS_WRITTEN("Rows written"),
+        BUFFER_HITS("Buffer hits"),
+        BUFFER_MISSES("Buffer misses"),
+        BYTES_READ("Bytes read"),
+        BYTES_WRITTEN("Bytes written"),
+        BYTES_SPILLED("Bytes spilled"),
+        FSYNCS("Fsyncs");
+
+        private final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @return True if the counter holds nanoseconds rather than a count
+         */
+        public boolean isTime() {
+            return name().endsWith("_NANOS");
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private volatile String statementType;
+    private volatile String accessPath;
+    private volatile long elapsedNanos = -1;
+
+    /**
+     * Starts measuring a statement.
+     */
+    public QueryMetrics() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Installs metrics on the current thread.
+     * @param metrics The metrics that storage work on this thread should be added to, or null for none
+     * @return The previously installed metrics, to pass to {@link #exit(QueryMetrics)}
+     */
+    public static QueryMetrics enter(QueryMetrics metrics) {
+        QueryMetrics previous = CURRENT.get();
+        CURRENT.set(metrics);
+        return previous;
+    }
+
+    /**
+     * Restores the metrics that were installed before {@link #enter(QueryMetrics)}.
+     * @param previous The value returned by {@code enter}
+     */
+    public static void exit(QueryMetrics previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * @return The metrics installed on the current thread, or null if no statement is being measured
+     */
+    public static QueryMetrics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Adds to a counter of the metrics installed on the current thread, if any.
+     * @param counter The counter
+     * @param amount The amount to add
+     */
+    public static void count(Counter counter, long amount) {
+        QueryMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.add(counter, amount);
+        }
+    }
+
+    /**
+     * Adds to a counter.
+     * @param counter The counter
+     * @param amount The amount to add
+     */
+    public void add(Counter counter, long amount) {
+        if (amount != 0) {
+            counters[counter.ordinal()].add(amount);
+        }
+    }
+
+    /**
+     * @param counter The counter
+     * @return The counter's current value
+     */
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * @return The kind of statement, such as {@code SELECT}, or null if nothing was executed
+     */
+    public String getStatementType() {
+        return statementType;
+    }
+
+    public void setStatementType(String statementType) {
+        this.statementType = statementType;
+    }
+
+    /**
+     * Describes how a query read its table, e.g. a full scan or an index lookup.
+     * @param accessPath The description
+     */
+    public void setAccessPath(String accessPath) {
+        this.accessPath = accessPath;
+    }
+
+    /**
+     * Stops the clock. Later calls keep the first measurement.
+     * @return These metrics
+     */
+    public QueryMetrics complete() {
+        if (elapsedNanos < 0) {
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+        return this;
+    }
+
+    /**
+     * @return The time from the start of the statement until {@link #complete()}, or until now if it is still running
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos < 0 ? System.nanoTime() - startNanos : elapsedNanos;
+    }
+
+    /**
+     * Prints the per-stage breakdown shown by {@code EXPLAIN ANALYZE}.
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+        long total = getElapsedNanos();
+        long parse = get(Counter.PARSE_NANOS);
+        long metadata = get(Counter.METADATA_NANOS);
+        out.println("EXPLAIN ANALYZE " + (statementType == null ? "" : statementType));
+        if (accessPath != null) {
+            out.println("  Access path: " + accessPath);
+        }
+        out.printf("  %-20s %12.3f ms%n", "Parse:", parse / 1e6);
+        out.printf("  %-20s %12.3f ms%n", "Metadata load:", metadata / 1e6);
+        out.printf("  %-20s %12.3f ms%n", "Execution:", Math.max(0, total - parse - metadata) / 1e6);
+        out.printf("  %-20s %12.3f ms%n", "Total:", total / 1e6);
+        for (Counter counter : Counter.values()) {
+            if (!counter.isTime()) {
+                out.printf("  %-20s %12d%n", counter.getLabel() + ":", get(counter));
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package src.java;
+
+/**
+ * A parsed statement together with what was learned by validating it against a table definition.
+ * The validation is reused for as long as the catalog hands out the same schema object, which it does
+ * until the table's metadata changes.
+ */
+public class QueryPlan {
+    private final Statement statement;
+    private final int parameterCount;
+    private TableSchema validatedSchema;
+    private Object validation;
+
+    /**
+     * Constructs a plan for a parsed statement.
+     * @param statement The statement
+     * @param parameterCount The number of {@code ?} placeholders in the statement
+     */
+    public QueryPlan(Statement statement, int parameterCount) {
+        this.statement = statement;
+        this.parameterCount = parameterCount;
+    }
+
+    /**
+     * Parses a statement.
+     * @param text The statement text; a trailing semicolon is allowed
+     * @return The plan
+     * @throws IllegalArgumentException If the text is not a valid statement
+     */
+    public static QueryPlan parse(String text) {
+        SqlParser parser = new SqlParser(text);
+        Statement statement = parser.parseStatement();
+        parser.expectEnd();
+        return new QueryPlan(statement, parser.parameterCount());
+    }
+
+    public Statement getStatement() {
+        return statement;
+    }
+
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * Returns the result of an earlier validation against a schema.
+     * @param schema The current schema of the table the statement refers to
+     * @return The validation result, or null if the statement has not been validated against this schema
+     */
+    synchronized Object validation(TableSchema schema) {
+        return schema == validatedSchema ? validation : null;
+    }
+
+    /**
+     * Records the result of validating the statement against a schema.
+     * @param schema The schema the statement was validated against
+     * @param result The validation result, e.g. a compiled predicate or the checked rows of an insert
+     */
+    synchronized void validated(TableSchema schema, Object result) {
+        validatedSchema = schema;
+        validation = result;
+    }
+}
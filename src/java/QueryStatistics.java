@@ -0,0 +1,97 @@
+package src.java;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cumulative statistics of every statement an executor has run, per statement type: a latency histogram
+ * and the totals of the {@link QueryMetrics} counters. All counters are {@link LongAdder}s, so sessions
+ * recording concurrently only touch their own cells; {@code SHOW STATS} sums them when printing.
+ */
+public class QueryStatistics {
+    private final Map<String, TypeStatistics> types = new ConcurrentHashMap<>();
+
+    /**
+     * Totals of one statement type.
+     */
+    private static final class TypeStatistics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder[] counters = new LongAdder[QueryMetrics.Counter.values().length];
+
+        TypeStatistics() {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * Adds a finished statement to the totals. Metrics without a statement type, such as those of a
+     * statement queued in a transaction or rejected by the parser, are ignored.
+     * @param metrics The completed metrics
+     */
+    public void record(QueryMetrics metrics) {
+        String type = metrics.getStatementType();
+        if (type == null) {
+            return;
+        }
+        TypeStatistics statistics = types.computeIfAbsent(type, t -> new TypeStatistics());
+        statistics.latency.record(metrics.getElapsedNanos());
+        for (QueryMetrics.Counter counter : QueryMetrics.Counter.values()) {
+            long value = metrics.get(counter);
+            if (value != 0) {
+                statistics.counters[counter.ordinal()].add(value);
+            }
+        }
+    }
+
+    /**
+     * @param type A statement type
+     * @return The latency histogram of the type, or null if no statement of that type has run
+     */
+    public LatencyHistogram latency(String type) {
+        TypeStatistics statistics = types.get(type);
+        return statistics == null ? null : statistics.latency;
+    }
+
+    /**
+     * Prints the latency percentiles and the counter totals of every statement type, for {@code SHOW STATS}.
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+        Map<String, TypeStatistics> sorted = new TreeMap<>(types);
+        if (sorted.isEmpty()) {
+            out.println("No statements executed yet.");
+            return;
+        }
+        out.printf("%-14s %10s %10s %10s %10s %10s %10s%n", "Statement", "Count", "Mean ms", "p50 ms", "p95 ms", "p99 ms", "Max ms");
+        for (Map.Entry<String, TypeStatistics> entry : sorted.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            out.printf("%-14s %10d %10.3f %10.3f %10.3f %10.3f %10.3f%n", entry.getKey(), latency.getCount(),
+                    latency.getMeanNanos() / 1e6, latency.getPercentileNanos(0.50) / 1e6,
+                    latency.getPercentileNanos(0.95) / 1e6, latency.getPercentileNanos(0.99) / 1e6,
+                    latency.getMaxNanos() / 1e6);
+        }
+        out.println();
+        out.printf("%-14s", "Statement");
+        for (QueryMetrics.Counter counter : QueryMetrics.Counter.values()) {
+            out.printf(" %18s", counter.getLabel() + (counter.isTime() ? " ms" : ""));
+        }
+        out.println();
+        for (Map.Entry<String, TypeStatistics> entry : sorted.entrySet()) {
+            out.printf("%-14s", entry.getKey());
+            for (QueryMetrics.Counter counter : QueryMetrics.Counter.values()) {
+                long value = entry.getValue().counters[counter.ordinal()].sum();
+                if (counter.isTime()) {
+                    out.printf(" %18.3f", value / 1e6);
+                } else {
+                    out.printf(" %18d", value);
+                }
+            }
+            out.println();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package src.java;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Forward-only cursor over the rows produced by a SELECT query. Rows are read from the table as the
+ * cursor advances, so a result of any size is consumed with bounded memory. While a result set is open
+ * it holds the read lock of its table; it must be closed, on the thread that opened it, before that
+ * thread writes to the same table.
+ */
+public interface ResultSet extends Closeable {
+
+    /**
+     * @return The names of the result columns, e.g. "id" or "COUNT(*)"
+     */
+    List<String> getColumnNames();
+
+    /**
+     * Advances to the next row.
+     * @return True if there is a current row, false when the result is exhausted
+     * @throws IOException If an input or output exception occurred
+     */
+    boolean next() throws IOException;
+
+    /**
+     * Returns a column of the current row as text.
+     * @param column The zero-based column index
+     * @return The value, or null if the row has no value for the column
+     */
+    String getString(int column);
+
+    /**
+     * Returns an int column of the current row.
+     * @param column The zero-based column index
+     * @return The value
+     * @throws NumberFormatException If the value is missing or not an int
+     */
+    int getInt(int column);
+
+    /**
+     * Returns an integral column of the current row, such as an int column or a COUNT or SUM.
+     * @param column The zero-based column index
+     * @return The value
+     * @throws NumberFormatException If the value is missing or not an integer
+     */
+    long getLong(int column);
+
+    /**
+     * Releases the table's read lock and any open files. Closing twice has no effect.
+     * @throws IOException If an input or output exception occurred
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,68 @@
+package src.java;
+
+import java.util.Comparator;
+
+/**
+ * Orders rows copied out of a table by the keys of an ORDER BY clause. Values of int columns and
+ * aggregates are compared as numbers, others as text; missing values sort before all others.
+ */
+public class RowComparator implements Comparator<String[]> {
+    private final int[] positions;
+    private final boolean[] numeric;
+    private final boolean[] descending;
+
+    /**
+     * @param positions The position of each key in the rows, most significant first
+     * @param numeric Whether each key is compared as a number
+     * @param descending Whether each key sorts in descending order
+     */
+    public RowComparator(int[] positions, boolean[] numeric, boolean[] descending) {
+        this.positions = positions;
+        this.numeric = numeric;
+        this.descending = descending;
+    }
+
+    @Override
+    public int compare(String[] a, String[] b) {
+        for (int i = 0; i < positions.length; i++) {
+            int comparison = compareValues(a[positions[i]], b[positions[i]], numeric[i]);
+            if (comparison != 0) {
+                return descending[i] ? -comparison : comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares two values of a column. Numbers that are not integers, such as averages, are compared as
+     * decimals, and values that are not numbers at all after the numbers, as text.
+     */
+    static int compareValues(String a, String b, boolean numeric) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (numeric) {
+            try {
+                return Long.compare(Long.parseLong(a), Long.parseLong(b));
+            } catch (NumberFormatException e) {
+                Double x = parseDecimal(a);
+                Double y = parseDecimal(b);
+                if (x != null && y != null) {
+                    return Double.compare(x, y);
+                }
+                if (x != null || y != null) {
+                    return x != null ? -1 : 1;
+                }
+            }
+        }
+        return a.compareTo(b);
+    }
+
+    private static Double parseDecimal(String value) {
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
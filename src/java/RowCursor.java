@@ -0,0 +1,38 @@
+package src.java;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Forward-only cursor over the rows of a table. Column values are decoded lazily,
+ * so only the columns that are actually read cost any work.
+ */
+public interface RowCursor extends Closeable {
+
+    /**
+     * Advances to the next row.
+     * @return True if there is a current row, false when the cursor is exhausted
+     * @throws IOException If an input or output exception occurred
+     */
+    boolean next() throws IOException;
+
+    /**
+     * @return The storage location of the current row
+     */
+    long location();
+
+    /**
+     * Returns a column of the current row as text.
+     * @param ordinal The zero-based column ordinal
+     * @return The value, or null if the stored row has no such column
+     */
+    String getString(int ordinal);
+
+    /**
+     * Returns an int column of the current row.
+     * @param ordinal The zero-based column ordinal
+     * @return The value
+     * @throws NumberFormatException If the stored value is not an int
+     */
+    int getInt(int ordinal);
+}
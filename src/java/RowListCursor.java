@@ -0,0 +1,51 @@
+package src.java;
+
+import java.util.List;
+
+/**
+ * Cursor over rows held in memory, such as the rows a transaction has written but not yet applied.
+ * A row's location is its index in the list. Values are trimmed like those read from a table file.
+ */
+public class RowListCursor implements RowCursor {
+    private final List<String[]> rows;
+    private int position = -1;
+
+    /**
+     * @param rows The rows in column order; the list must not change while the cursor is used
+     */
+    public RowListCursor(List<String[]> rows) {
+        this.rows = rows;
+    }
+
+    @Override
+    public boolean next() {
+        if (position < rows.size()) {
+            position++;
+        }
+        return position < rows.size();
+    }
+
+    @Override
+    public long location() {
+        return position;
+    }
+
+    @Override
+    public String getString(int ordinal) {
+        String[] row = rows.get(position);
+        return ordinal < row.length ? row[ordinal].trim() : null;
+    }
+
+    @Override
+    public int getInt(int ordinal) {
+        String value = getString(ordinal);
+        if (value == null) {
+            throw new NumberFormatException("Missing value for column " + ordinal);
+        }
+        return Integer.parseInt(value);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,74 @@
+package src.java;
+
+import java.util.List;
+
+/**
+ * Result set over rows that have already been computed, such as the groups of an aggregate query.
+ */
+public class RowListResultSet implements ResultSet {
+    private final List<String> columnNames;
+    private final List<String[]> rows;
+    private final Runnable onClose;
+    private int position = -1;
+    private boolean closed;
+
+    /**
+     * Constructs a result set over a list of rows.
+     * @param columnNames The names of the result columns
+     * @param rows The rows, with null for missing values
+     */
+    public RowListResultSet(List<String> columnNames, List<String[]> rows) {
+        this(columnNames, rows, null);
+    }
+
+    /**
+     * Constructs a result set over a list of rows.
+     * @param columnNames The names of the result columns
+     * @param rows The rows, with null for missing values
+     * @param onClose Run once when the result set is closed, or null
+     */
+    public RowListResultSet(List<String> columnNames, List<String[]> rows, Runnable onClose) {
+        this.columnNames = columnNames;
+        this.rows = rows;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public boolean next() {
+        if (position + 1 >= rows.size()) {
+            position = rows.size();
+            return false;
+        }
+        position++;
+        return true;
+    }
+
+    @Override
+    public String getString(int column) {
+        return rows.get(position)[column];
+    }
+
+    @Override
+    public int getInt(int column) {
+        return Integer.parseInt(getString(column));
+    }
+
+    @Override
+    public long getLong(int column) {
+        return Long.parseLong(getString(column));
+    }
+
+    @Override
+    public void close() {
+        position = rows.size();
+        if (!closed && onClose != null) {
+            onClose.run();
+        }
+        closed = true;
+    }
+}
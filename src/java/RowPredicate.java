@@ -0,0 +1,17 @@
+package src.java;
+
+/**
+ * A WHERE condition compiled against a table schema, evaluated on the current row of a cursor.
+ */
+public interface RowPredicate {
+
+    /** A predicate that accepts every row, used when a query has no WHERE clause. */
+    RowPredicate ALWAYS = row -> true;
+
+    /**
+     * Evaluates the condition on the current row.
+     * @param row The cursor positioned on the row
+     * @return True if the row matches
+     */
+    boolean test(RowCursor row);
+}
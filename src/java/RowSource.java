@@ -0,0 +1,16 @@
+package src.java;
+
+import java.io.IOException;
+
+/**
+ * Source of rows already copied out of a table, such as the rows read back from a {@link SpillFile}
+ * or the sorted rows of a query.
+ */
+interface RowSource {
+
+    /**
+     * @return The next row, or null after the last one
+     * @throws IOException If the rows could not be read
+     */
+    String[] next() throws IOException;
+}
@@ -0,0 +1,106 @@
+package src.java;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Result set that filters and projects the rows of a table cursor as it is advanced. The rows read and
+ * returned are added to the {@link QueryMetrics} of the statement that opened it when it is closed.
+ */
+public class ScanResultSet implements ResultSet {
+    private final List<String> columnNames;
+    private final int[] ordinals;
+    private final RowCursor cursor;
+    private final RowPredicate predicate;
+    private final Runnable onClose;
+    private final long limit;
+    private final QueryMetrics metrics = QueryMetrics.current();
+    private long rowsScanned;
+    private long rowsEmitted;
+    private boolean closed;
+
+    /**
+     * Constructs a result set over a cursor.
+     * @param columnNames The names of the result columns
+     * @param ordinals The table column ordinal of each result column
+     * @param cursor The table cursor, closed with the result set
+     * @param predicate The filter applied to each row
+     * @param onClose Run once when the result set is closed, e.g. to release the table's lock
+     */
+    public ScanResultSet(List<String> columnNames, int[] ordinals, RowCursor cursor, RowPredicate predicate,
+                         Runnable onClose) {
+        this(columnNames, ordinals, cursor, predicate, -1, onClose);
+    }
+
+    /**
+     * Constructs a result set over a cursor that returns at most a number of rows. The cursor is not read
+     * any further once they have been returned.
+     * @param columnNames The names of the result columns
+     * @param ordinals The table column ordinal of each result column
+     * @param cursor The table cursor, closed with the result set
+     * @param predicate The filter applied to each row
+     * @param limit The maximum number of rows, or -1 for all
+     * @param onClose Run once when the result set is closed, e.g. to release the table's lock
+     */
+    public ScanResultSet(List<String> columnNames, int[] ordinals, RowCursor cursor, RowPredicate predicate, long limit,
+                         Runnable onClose) {
+        this.columnNames = columnNames;
+        this.ordinals = ordinals;
+        this.cursor = cursor;
+        this.predicate = predicate;
+        this.limit = limit < 0 ? Long.MAX_VALUE : limit;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (rowsEmitted >= limit) {
+            return false;
+        }
+        while (cursor.next()) {
+            rowsScanned++;
+            if (predicate.test(cursor)) {
+                rowsEmitted++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String getString(int column) {
+        return cursor.getString(ordinals[column]);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return cursor.getInt(ordinals[column]);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return cursor.getInt(ordinals[column]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            cursor.close();
+        } finally {
+            if (metrics != null) {
+                metrics.add(QueryMetrics.Counter.ROWS_SCANNED, rowsScanned);
+                metrics.add(QueryMetrics.Counter.ROWS_EMITTED, rowsEmitted);
+            }
+            onClose.run();
+        }
+    }
+}
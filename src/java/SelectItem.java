@@ -0,0 +1,41 @@
+package src.java;
+
+/**
+ * One entry of a SELECT list: a plain column or an aggregate function over a column or {@code *}.
+ */
+public class SelectItem {
+    private final String column;
+    private final AggregateFunction function;
+
+    /**
+     * Constructs a select item.
+     * @param column The column name, or null for {@code COUNT(*)}
+     * @param function The aggregate function, or null for a plain column
+     */
+    public SelectItem(String column, AggregateFunction function) {
+        this.column = column;
+        this.function = function;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public AggregateFunction getFunction() {
+        return function;
+    }
+
+    public boolean isAggregate() {
+        return function != null;
+    }
+
+    /**
+     * @return The heading printed for this item, e.g. "marks" or "SUM(marks)"
+     */
+    public String label() {
+        if (function == null) {
+            return column;
+        }
+        return function + "(" + (column == null ? "*" : column) + ")";
+    }
+}
@@ -0,0 +1,172 @@
+package src.java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed form of a SELECT query.
+ */
+public class SelectStatement extends Statement {
+    private final List<SelectItem> items;
+    private final String tableName;
+    private final Condition where;
+    private final List<String> groupBy;
+    private final Join join;
+    private final List<Order> orderBy;
+    private final long limit;
+
+    /**
+     * {@code JOIN t ON a = b}: the second table of a query and the columns whose values must be equal.
+     * A column may be qualified with its table name, as in {@code a.id}.
+     */
+    public static final class Join {
+        final String tableName;
+        final String leftColumn;
+        final String rightColumn;
+
+        Join(String tableName, String leftColumn, String rightColumn) {
+            this.tableName = tableName;
+            this.leftColumn = leftColumn;
+            this.rightColumn = rightColumn;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        @Override
+        public String toString() {
+            return "JOIN " + tableName + " ON " + leftColumn + " = " + rightColumn;
+        }
+    }
+
+    /**
+     * One key of an ORDER BY clause: a column, or an aggregate of the select list, and its direction.
+     */
+    public static final class Order {
+        final SelectItem item;
+        final boolean descending;
+
+        Order(SelectItem item, boolean descending) {
+            this.item = item;
+            this.descending = descending;
+        }
+
+        @Override
+        public String toString() {
+            return item.label() + (descending ? " DESC" : " ASC");
+        }
+    }
+
+    /**
+     * Constructs a SELECT statement reading a single table.
+     * @param items The select list, empty for {@code *}
+     * @param tableName The table to read
+     * @param where The WHERE condition, or null
+     * @param groupBy The GROUP BY columns, empty if the query does not group
+     */
+    public SelectStatement(List<SelectItem> items, String tableName, Condition where, List<String> groupBy) {
+        this(items, tableName, null, where, groupBy);
+    }
+
+    /**
+     * Constructs a SELECT statement.
+     * @param items The select list, empty for {@code *}
+     * @param tableName The table to read, or the first table of a join
+     * @param join The table joined with the first one, or null
+     * @param where The WHERE condition, or null
+     * @param groupBy The GROUP BY columns, empty if the query does not group
+     */
+    public SelectStatement(List<SelectItem> items, String tableName, Join join, Condition where, List<String> groupBy) {
+        this(items, tableName, join, where, groupBy, Collections.emptyList(), -1);
+    }
+
+    /**
+     * Constructs a SELECT statement.
+     * @param items The select list, empty for {@code *}
+     * @param tableName The table to read, or the first table of a join
+     * @param join The table joined with the first one, or null
+     * @param where The WHERE condition, or null
+     * @param groupBy The GROUP BY columns, empty if the query does not group
+     * @param orderBy The ORDER BY keys, empty if the rows are returned in table order
+     * @param limit The maximum number of rows to return, or -1 for all
+     */
+    public SelectStatement(List<SelectItem> items, String tableName, Join join, Condition where, List<String> groupBy,
+                           List<Order> orderBy, long limit) {
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
+        this.tableName = tableName;
+        this.join = join;
+        this.where = where;
+        this.groupBy = Collections.unmodifiableList(new ArrayList<>(groupBy));
+        this.orderBy = Collections.unmodifiableList(new ArrayList<>(orderBy));
+        this.limit = limit;
+    }
+
+    /**
+     * @return The select list; an empty list stands for {@code *}
+     */
+    public List<SelectItem> getItems() {
+        return items;
+    }
+
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public String getStatementType() {
+        return "SELECT";
+    }
+
+    public Condition getWhere() {
+        return where;
+    }
+
+    public List<String> getGroupBy() {
+        return groupBy;
+    }
+
+    /**
+     * @return The table joined with the first one, or null if the query reads a single table
+     */
+    public Join getJoin() {
+        return join;
+    }
+
+    /**
+     * @return The ORDER BY keys, most significant first; empty if the rows are returned in table order
+     */
+    public List<Order> getOrderBy() {
+        return orderBy;
+    }
+
+    /**
+     * @return The maximum number of rows to return, or -1 if the query has no LIMIT
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    @Override
+    public Statement bind(List<Condition.Literal> parameters) {
+        return where == null ? this
+                : new SelectStatement(items, tableName, join, where.bind(parameters), groupBy, orderBy, limit);
+    }
+
+    /**
+     * @return True if the query computes aggregates or groups rows
+     */
+    public boolean isAggregate() {
+        if (!groupBy.isEmpty()) {
+            return true;
+        }
+        for (SelectItem item : items) {
+            if (item.isAggregate()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
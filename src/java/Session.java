@@ -0,0 +1,46 @@
+package src.java;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of one client connected to a {@link QueryExecutor}: where its output goes, its open
+ * transaction and its prepared statements. A session is used by one thread at a time, while the
+ * executor it talks to is shared by all sessions of a database.
+ * <p>
+ * An open transaction reads the snapshot taken when it began and collects its changes here until
+ * COMMIT; its own queries see those changes on top of the snapshot.
+ */
+public class Session {
+    private final PrintStream out;
+    boolean inTransaction = false;
+    long snapshot; // Snapshot timestamp of the open transaction
+    boolean transactionFailed = false;
+    final List<PendingChange> transactionChanges = new ArrayList<>();
+    final Map<String, Statement.Prepare> preparedStatements = new HashMap<>();
+
+    /**
+     * Constructs a session.
+     * @param out The stream that receives query results and messages
+     */
+    public Session(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @return The stream that receives query results and messages
+     */
+    public PrintStream out() {
+        return out;
+    }
+
+    /**
+     * @return True while a transaction is open
+     */
+    public boolean isInTransaction() {
+        return inTransaction;
+    }
+}
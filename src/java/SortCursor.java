@@ -0,0 +1,278 @@
+package src.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Cursor returning the matching rows of another cursor in the order of an ORDER BY clause. Only the
+ * columns the query needs are copied out of the source rows; column {@code i} of this cursor is source
+ * column {@code carried[i]}. The sort is stable, so rows with equal keys keep the order they were read in.
+ * <p>
+ * With a LIMIT of n, the rows go through a bounded priority queue holding the n best rows seen so far,
+ * so memory stays proportional to n however large the table is. Without one, rows are collected until
+ * they exceed the memory budget; each batch is then sorted and written to a {@link SpillFile} as a sorted
+ * run. The runs are merged at the end, after passes that merge groups of {@value #MERGE_FAN_IN} runs while
+ * there are more. A LIMIT whose rows do not fit in memory is sorted the same way.
+ */
+public class SortCursor implements RowCursor {
+    static final int MERGE_FAN_IN = 64;
+    /** Estimated heap taken by a buffered row besides its values. */
+    private static final long ENTRY_BYTES = 32;
+
+    /**
+     * A row of a top-N queue, numbered in reading order so that ties are broken like a stable sort.
+     */
+    private static final class Ranked {
+        final String[] row;
+        final long sequence;
+
+        Ranked(String[] row, long sequence) {
+            this.row = row;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * The current row of one run during a merge.
+     */
+    private static final class Head {
+        String[] row;
+        final int run;
+        final RowSource source;
+
+        Head(String[] row, int run, RowSource source) {
+            this.row = row;
+            this.run = run;
+            this.source = source;
+        }
+    }
+
+    private final RowCursor source;
+    private final RowPredicate filter;
+    private final int[] carried;
+    private final Comparator<String[]> comparator;
+    private final long limit;
+    private final long memoryBudget;
+    private final File spillDirectory;
+    private final List<SpillFile> runs = new ArrayList<>();
+    private final List<SpillFile.Reader> readers = new ArrayList<>();
+    private RowSource sorted;
+    private String[] current;
+    private long position = -1;
+
+    /**
+     * @param source The rows to sort, closed with this cursor
+     * @param filter The rows of the source to keep
+     * @param carried The source columns to copy into the sorted rows
+     * @param comparator The order, over the copied rows
+     * @param limit The number of rows the query returns, or -1 for all
+     * @param memoryBudget The number of bytes of rows held in memory before they are spilled
+     * @param spillDirectory The directory receiving the sorted runs
+     */
+    public SortCursor(RowCursor source, RowPredicate filter, int[] carried, Comparator<String[]> comparator, long limit,
+                      long memoryBudget, File spillDirectory) {
+        this.source = source;
+        this.filter = filter;
+        this.carried = carried;
+        this.comparator = comparator;
+        this.limit = limit;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (sorted == null) {
+            sorted = limit >= 0 ? topRows() : sortAll(new ArrayList<>(), 0);
+        }
+        current = sorted.next();
+        if (current == null) {
+            return false;
+        }
+        position++;
+        return true;
+    }
+
+    /**
+     * Keeps the best {@link #limit} rows in a priority queue whose head is the worst of them, so a row that
+     * does not beat it is dropped at the cost of one comparison.
+     */
+    private RowSource topRows() throws IOException {
+        Comparator<Ranked> order = (a, b) -> {
+            int comparison = comparator.compare(a.row, b.row);
+            return comparison != 0 ? comparison : Long.compare(a.sequence, b.sequence);
+        };
+        PriorityQueue<Ranked> queue = new PriorityQueue<>(order.reversed());
+        long bytes = 0;
+        long sequence = 0;
+        String[] row;
+        while (limit > 0 && (row = nextRow()) != null) {
+            if (queue.size() < limit) {
+                queue.add(new Ranked(row, sequence++));
+                bytes += SpillFile.rowBytes(row) + ENTRY_BYTES;
+                if (bytes > memoryBudget) {
+                    // The limit is too large to keep in memory; sort everything instead
+                    List<Ranked> ranked = new ArrayList<>(queue);
+                    ranked.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+                    List<String[]> buffer = new ArrayList<>(ranked.size());
+                    for (Ranked entry : ranked) {
+                        buffer.add(entry.row);
+                    }
+                    return sortAll(buffer, bytes);
+                }
+            } else if (comparator.compare(row, queue.peek().row) < 0) {
+                queue.poll();
+                queue.add(new Ranked(row, sequence++));
+            }
+        }
+        List<Ranked> ranked = new ArrayList<>(queue);
+        ranked.sort(order);
+        Iterator<Ranked> iterator = ranked.iterator();
+        return () -> iterator.hasNext() ? iterator.next().row : null;
+    }
+
+    /**
+     * Sorts the rows in memory, or in sorted runs merged at the end if they exceed the memory budget.
+     * @param buffer The rows read so far, in reading order
+     * @param bytes Their estimated size
+     */
+    private RowSource sortAll(List<String[]> buffer, long bytes) throws IOException {
+        String[] row;
+        while ((row = nextRow()) != null) {
+            buffer.add(row);
+            bytes += SpillFile.rowBytes(row) + ENTRY_BYTES;
+            if (bytes > memoryBudget) {
+                buffer.sort(comparator);
+                writeRun(buffer);
+                buffer = new ArrayList<>();
+                bytes = 0;
+            }
+        }
+        buffer.sort(comparator);
+        if (runs.isEmpty()) {
+            Iterator<String[]> iterator = buffer.iterator();
+            return () -> iterator.hasNext() ? iterator.next() : null;
+        }
+        if (!buffer.isEmpty()) {
+            writeRun(buffer);
+        }
+        buffer = null;
+        while (runs.size() > MERGE_FAN_IN) {
+            // One pass merges each group of runs into a run that takes the group's place, keeping the sort stable
+            for (int start = 0; start < runs.size() - 1; start++) {
+                int end = Math.min(start + MERGE_FAN_IN, runs.size());
+                List<SpillFile> group = new ArrayList<>(runs.subList(start, end));
+                SpillFile run = new SpillFile(spillDirectory, "sort-");
+                runs.add(end, run);
+                RowSource rows = merge(group);
+                while ((row = rows.next()) != null) {
+                    run.write(row);
+                }
+                run.finishWriting();
+                for (SpillFile.Reader reader : readers) {
+                    reader.close();
+                }
+                readers.clear();
+                for (SpillFile file : group) {
+                    file.close();
+                }
+                runs.subList(start, end).clear();
+            }
+        }
+        return merge(runs);
+    }
+
+    private String[] nextRow() throws IOException {
+        while (source.next()) {
+            if (filter.test(source)) {
+                String[] row = new String[carried.length];
+                for (int i = 0; i < carried.length; i++) {
+                    row[i] = source.getString(carried[i]);
+                }
+                return row;
+            }
+        }
+        return null;
+    }
+
+    private void writeRun(List<String[]> rows) throws IOException {
+        SpillFile run = new SpillFile(spillDirectory, "sort-");
+        runs.add(run);
+        for (String[] row : rows) {
+            run.write(row);
+        }
+        run.finishWriting();
+    }
+
+    /**
+     * Merges sorted runs through a priority queue of their current rows. Equal rows are taken from the
+     * earlier run first, which keeps the sort stable.
+     */
+    private RowSource merge(List<SpillFile> sources) throws IOException {
+        PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> {
+            int comparison = comparator.compare(a.row, b.row);
+            return comparison != 0 ? comparison : Integer.compare(a.run, b.run);
+        });
+        for (int i = 0; i < sources.size(); i++) {
+            SpillFile.Reader reader = sources.get(i).read();
+            readers.add(reader);
+            String[] row = reader.next();
+            if (row != null) {
+                heads.add(new Head(row, i, reader));
+            }
+        }
+        return () -> {
+            Head head = heads.poll();
+            if (head == null) {
+                return null;
+            }
+            String[] row = head.row;
+            head.row = head.source.next();
+            if (head.row != null) {
+                heads.add(head);
+            }
+            return row;
+        };
+    }
+
+    @Override
+    public long location() {
+        return position;
+    }
+
+    @Override
+    public String getString(int ordinal) {
+        return current[ordinal];
+    }
+
+    @Override
+    public int getInt(int ordinal) {
+        String value = current[ordinal];
+        if (value == null) {
+            throw new NumberFormatException("Missing value for column " + ordinal);
+        }
+        return Integer.parseInt(value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        sorted = null;
+        try {
+            for (SpillFile.Reader reader : readers) {
+                reader.close();
+            }
+            for (SpillFile run : runs) {
+                run.close();
+            }
+        } finally {
+            readers.clear();
+            runs.clear();
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package src.java;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Temporary file holding rows that a query could not keep in memory, such as a partition of a join.
+ * Rows are appended, then read back once in the same order; the file is deleted when it is closed.
+ * Spill files live in the database directory with the suffix {@value #SUFFIX}, and the ones left behind
+ * by a crash are deleted when the database is opened again.
+ */
+public class SpillFile implements Closeable {
+    static final String SUFFIX = ".spill";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private DataOutputStream out;
+    private long rowCount;
+    private long byteCount;
+
+    /**
+     * Creates an empty spill file.
+     * @param directory The database directory
+     * @param prefix The start of the file name, naming the operation that spills
+     * @throws IOException If the file could not be created
+     */
+    public SpillFile(File directory, String prefix) throws IOException {
+        this.file = File.createTempFile(prefix, SUFFIX, directory);
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+    }
+
+    /**
+     * Deletes the spill files left in a database directory by queries that were running when the process
+     * stopped.
+     * @param directory The database directory
+     */
+    public static void deleteLeftovers(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Estimates the heap taken by a row held in memory, used to decide when to spill.
+     * @param row The row values
+     * @return The approximate size in bytes
+     */
+    public static long rowBytes(String[] row) {
+        long bytes = 16 + 4L * row.length;
+        for (String value : row) {
+            if (value != null) {
+                bytes += 40 + value.length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Appends a row.
+     * @param row The row values; a value may be null
+     * @throws IOException If the row could not be written
+     */
+    public void write(String[] row) throws IOException {
+        if (out == null) {
+            throw new IllegalStateException("Spill file " + file.getName() + " is no longer written");
+        }
+        out.writeShort(row.length);
+        for (String value : row) {
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        rowCount++;
+    }
+
+    /**
+     * @return The number of rows written
+     */
+    public long rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return The size of the file once every row is written
+     */
+    public long byteCount() {
+        return out == null ? byteCount : out.size();
+    }
+
+    /**
+     * Finishes writing and closes the file until it is read, so that a query spilling many files does not
+     * keep them all open.
+     * @throws IOException If the file could not be written
+     */
+    public void finishWriting() throws IOException {
+        if (out != null) {
+            byteCount = out.size();
+            out.close();
+            out = null;
+            QueryMetrics.count(QueryMetrics.Counter.BYTES_SPILLED, byteCount);
+        }
+    }
+
+    /**
+     * Finishes writing and opens the rows for reading. Only one reader can be opened.
+     * @return The reader, which the caller closes
+     * @throws IOException If the file could not be written or opened
+     */
+    public Reader read() throws IOException {
+        finishWriting();
+        return new Reader(new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)));
+    }
+
+    /**
+     * Reads the rows of a spill file in the order they were written.
+     */
+    public static final class Reader implements RowSource, Closeable {
+        private final DataInputStream in;
+
+        private Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            int columnCount;
+            try {
+                columnCount = in.readUnsignedShort();
+            } catch (EOFException e) {
+                return null;
+            }
+            String[] row = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                int length = in.readInt();
+                if (length >= 0) {
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    row[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+            }
+            return row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Deletes the file.
+     * @throws IOException If the file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
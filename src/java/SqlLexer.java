@@ -0,0 +1,122 @@
+package src.java;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits query text into tokens: identifiers and keywords, numbers, quoted strings and symbols.
+ */
+public class SqlLexer {
+
+    /**
+     * The kinds of tokens produced by the lexer.
+     */
+    public enum TokenType {
+        IDENTIFIER,
+        NUMBER,
+        STRING,
+        SYMBOL,
+        END
+    }
+
+    /**
+     * A token with its type, text and position in the query.
+     */
+    public static final class Token {
+        final TokenType type;
+        final String text;
+        final int position;
+
+        Token(TokenType type, String text, int position) {
+            this.type = type;
+            this.text = text;
+            this.position = position;
+        }
+
+        /**
+         * Checks whether the token is the given keyword, ignoring case.
+         * @param keyword The keyword in upper case
+         * @return True if the token is an identifier spelling the keyword
+         */
+        boolean isKeyword(String keyword) {
+            return type == TokenType.IDENTIFIER && text.equalsIgnoreCase(keyword);
+        }
+
+        boolean isSymbol(String symbol) {
+            return type == TokenType.SYMBOL && text.equals(symbol);
+        }
+
+        @Override
+        public String toString() {
+            return type == TokenType.END ? "end of query" : "\"" + text + "\"";
+        }
+    }
+
+    private SqlLexer() {
+    }
+
+    /**
+     * Tokenizes a query. Strings are enclosed in single quotes, with two quotes standing for one.
+     * @param query The query text
+     * @return The tokens, always terminated by an END token
+     * @throws IllegalArgumentException If the query contains an unterminated string or an unknown character
+     */
+    public static List<Token> tokenize(String query) {
+        List<Token> tokens = new ArrayList<>();
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            char c = query.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                while (i < length && (Character.isLetterOrDigit(query.charAt(i)) || query.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.IDENTIFIER, query.substring(start, i), start));
+            } else if (isDigit(c) || (c == '-' && i + 1 < length && isDigit(query.charAt(i + 1)))) {
+                i++;
+                while (i < length && isDigit(query.charAt(i))) {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.NUMBER, query.substring(start, i), start));
+            } else if (c == '\'') {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        throw new IllegalArgumentException("Unterminated string starting at position " + start);
+                    }
+                    char next = query.charAt(i++);
+                    if (next == '\'') {
+                        if (i < length && query.charAt(i) == '\'') {
+                            value.append('\'');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        value.append(next);
+                    }
+                }
+                tokens.add(new Token(TokenType.STRING, value.toString(), start));
+            } else if ((c == '<' || c == '>' || c == '!') && i + 1 < length
+                    && (query.charAt(i + 1) == '=' || (c == '<' && query.charAt(i + 1) == '>'))) {
+                i += 2;
+                tokens.add(new Token(TokenType.SYMBOL, query.substring(start, i), start));
+            } else if ("=<>(),*;.?".indexOf(c) >= 0) {
+                i++;
+                tokens.add(new Token(TokenType.SYMBOL, String.valueOf(c), start));
+            } else {
+                throw new IllegalArgumentException("Unexpected character '" + c + "' at position " + start);
+            }
+        }
+        tokens.add(new Token(TokenType.END, "", length));
+        return tokens;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,472 @@
+package src.java;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recursive-descent parser over the tokens produced by {@link SqlLexer}.
+ */
+public class SqlParser {
+    private final List<SqlLexer.Token> tokens;
+    private int position;
+    private int parameterCount;
+
+    /**
+     * Constructs a parser for a piece of query text.
+     * @param text The text to parse
+     * @throws IllegalArgumentException If the text cannot be tokenized
+     */
+    public SqlParser(String text) {
+        this.tokens = SqlLexer.tokenize(text);
+    }
+
+    /**
+     * Parses a complete WHERE condition, e.g. {@code id >= 10 AND (name = 'heli' OR marks IN (30, 40))}.
+     * A trailing semicolon is allowed.
+     * @param text The condition text without the WHERE keyword
+     * @return The parsed condition
+     * @throws IllegalArgumentException If the text is not a valid condition
+     */
+    public static Condition parseWhere(String text) {
+        SqlParser parser = new SqlParser(text);
+        Condition condition = parser.parseCondition();
+        parser.expectEnd();
+        return condition;
+    }
+
+    /**
+     * Parses one statement. The caller checks {@link #expectEnd()} afterwards.
+     * @return The parsed statement
+     * @throws IllegalArgumentException If the text is not a supported statement
+     */
+    Statement parseStatement() {
+        SqlLexer.Token first = peek();
+        if (first.isKeyword("SELECT")) {
+            return parseSelectStatement();
+        }
+        if (acceptKeyword("INSERT")) {
+            expectKeyword("INTO");
+            String tableName = expectIdentifier();
+            expectKeyword("VALUES");
+            List<List<Condition.Literal>> rows = new ArrayList<>();
+            do {
+                rows.add(parseValueList());
+            } while (acceptSymbol(","));
+            return new Statement.Insert(tableName, rows);
+        }
+        if (acceptKeyword("UPDATE")) {
+            String tableName = expectIdentifier();
+            expectKeyword("SET");
+            List<Statement.Assignment> assignments = new ArrayList<>();
+            do {
+                String column = expectIdentifier();
+                expectSymbol("=");
+                assignments.add(new Statement.Assignment(column, parseLiteral()));
+            } while (acceptSymbol(","));
+            Condition where = acceptKeyword("WHERE") ? parseCondition() : null;
+            return new Statement.Update(tableName, assignments, where);
+        }
+        if (acceptKeyword("DELETE")) {
+            expectKeyword("FROM");
+            String tableName = expectIdentifier();
+            Condition where = acceptKeyword("WHERE") ? parseCondition() : null;
+            return new Statement.Delete(tableName, where);
+        }
+        if (acceptKeyword("CREATE")) {
+            if (acceptKeyword("INDEX")) {
+                String indexName = expectIdentifier();
+                expectKeyword("ON");
+                String tableName = expectIdentifier();
+                expectSymbol("(");
+                String column = expectIdentifier();
+                expectSymbol(")");
+                IndexType type = IndexType.BTREE;
+                if (acceptKeyword("USING")) {
+                    type = IndexType.parse(expectIdentifier());
+                }
+                return new Statement.CreateIndex(indexName, tableName, column, type);
+            }
+            expectKeyword("TABLE");
+            String tableName = expectIdentifier();
+            expectSymbol("(");
+            List<ColumnDefinition> columns = new ArrayList<>();
+            Set<String> columnNames = new HashSet<>();
+            do {
+                ColumnDefinition column = parseColumnDefinition();
+                if (!columnNames.add(column.getName())) {
+                    throw new IllegalArgumentException("Duplicate column name " + column.getName() + ".");
+                }
+                columns.add(column);
+            } while (acceptSymbol(","));
+            expectSymbol(")");
+            StorageFormat format = StorageFormat.TEXT;
+            if (acceptKeyword("STORAGE")) {
+                acceptSymbol("=");
+                format = StorageFormat.parse(expectIdentifier());
+            }
+            PartitionSpec partitioning = null;
+            if (acceptKeyword("PARTITION")) {
+                expectKeyword("BY");
+                partitioning = parsePartitioning();
+            }
+            return new Statement.CreateTable(tableName, columns, format, partitioning);
+        }
+        if (acceptKeyword("COPY")) {
+            String tableName = expectIdentifier();
+            expectKeyword("FROM");
+            SqlLexer.Token path = next();
+            if (path.type != SqlLexer.TokenType.STRING) {
+                throw error("quoted file name", path);
+            }
+            boolean header = false;
+            if (acceptKeyword("WITH")) {
+                expectKeyword("HEADER");
+                header = true;
+            }
+            return new Statement.Copy(tableName, path.text, header);
+        }
+        if (acceptKeyword("CONVERT")) {
+            expectKeyword("TABLE");
+            String tableName = expectIdentifier();
+            expectKeyword("TO");
+            return new Statement.ConvertTable(tableName, StorageFormat.parse(expectIdentifier()));
+        }
+        if (acceptKeyword("PREPARE")) {
+            String name = expectIdentifier();
+            expectKeyword("AS");
+            if (peek().isKeyword("PREPARE") || peek().isKeyword("EXECUTE") || peek().isKeyword("DEALLOCATE")) {
+                throw error("statement to prepare", peek());
+            }
+            Statement body = parseStatement();
+            return new Statement.Prepare(name, body, parameterCount);
+        }
+        if (acceptKeyword("EXECUTE")) {
+            String name = expectIdentifier();
+            List<Condition.Literal> parameters = new ArrayList<>();
+            if (peek().isSymbol("(")) {
+                parameters = parseValueList();
+            }
+            return new Statement.Execute(name, parameters);
+        }
+        if (acceptKeyword("EXPLAIN")) {
+            expectKeyword("ANALYZE");
+            if (peek().isKeyword("EXPLAIN") || peek().isKeyword("PREPARE") || peek().isKeyword("DEALLOCATE")) {
+                throw error("statement to analyze", peek());
+            }
+            return new Statement.ExplainAnalyze(parseStatement());
+        }
+        if (acceptKeyword("SHOW")) {
+            expectKeyword("STATS");
+            return new Statement.ShowStats();
+        }
+        if (acceptKeyword("DEALLOCATE")) {
+            acceptKeyword("PREPARE");
+            return new Statement.Deallocate(expectIdentifier());
+        }
+        throw new IllegalArgumentException("Unsupported query type.");
+    }
+
+    /**
+     * @return The number of {@code ?} placeholders read so far
+     */
+    int parameterCount() {
+        return parameterCount;
+    }
+
+    private ColumnDefinition parseColumnDefinition() {
+        String name = expectIdentifier();
+        SqlLexer.Token type = next();
+        if (type.type != SqlLexer.TokenType.IDENTIFIER) {
+            throw error("type of column " + name, type);
+        }
+        String declaration = type.text;
+        if (acceptSymbol("(")) {
+            SqlLexer.Token length = next();
+            if (length.type != SqlLexer.TokenType.NUMBER) {
+                throw error("length of column " + name, length);
+            }
+            expectSymbol(")");
+            declaration += "(" + length.text + ")";
+        }
+        return ColumnDefinition.parse(name, declaration);
+    }
+
+    /**
+     * Parses a parenthesized list of values. Besides literals and placeholders, a bare word is taken as
+     * an unquoted string, as earlier versions accepted {@code VALUES (1, heli)}.
+     */
+    private List<Condition.Literal> parseValueList() {
+        expectSymbol("(");
+        List<Condition.Literal> values = new ArrayList<>();
+        do {
+            SqlLexer.Token token = peek();
+            if (token.type == SqlLexer.TokenType.IDENTIFIER) {
+                next();
+                values.add(new Condition.Literal(token.text, false));
+            } else {
+                values.add(parseLiteral());
+            }
+        } while (acceptSymbol(","));
+        expectSymbol(")");
+        return values;
+    }
+
+    /**
+     * Parses a SELECT query:
+     * {@code SELECT <* | item, ...> FROM t [[INNER] JOIN u ON col = col] [WHERE <condition>] [GROUP BY col, ...]
+     * [ORDER BY item [ASC|DESC], ...] [LIMIT n]}, where an item is a column or one of COUNT, SUM, AVG, MIN, MAX
+     * applied to a column ({@code COUNT(*)} counts rows). A column may be qualified with its table name, as in
+     * {@code t.id}.
+     */
+    SelectStatement parseSelectStatement() {
+        expectKeyword("SELECT");
+        List<SelectItem> items = new ArrayList<>();
+        if (!acceptSymbol("*")) {
+            do {
+                items.add(parseSelectItem());
+            } while (acceptSymbol(","));
+        }
+        expectKeyword("FROM");
+        String tableName = expectIdentifier();
+        SelectStatement.Join join = null;
+        if (acceptKeyword("INNER") || peek().isKeyword("JOIN")) {
+            expectKeyword("JOIN");
+            String joinedTable = expectIdentifier();
+            expectKeyword("ON");
+            String leftColumn = expectColumn();
+            expectSymbol("=");
+            join = new SelectStatement.Join(joinedTable, leftColumn, expectColumn());
+        }
+        Condition where = null;
+        if (acceptKeyword("WHERE")) {
+            where = parseCondition();
+        }
+        List<String> groupBy = new ArrayList<>();
+        if (acceptKeyword("GROUP")) {
+            expectKeyword("BY");
+            do {
+                groupBy.add(expectColumn());
+            } while (acceptSymbol(","));
+        }
+        List<SelectStatement.Order> orderBy = new ArrayList<>();
+        if (acceptKeyword("ORDER")) {
+            expectKeyword("BY");
+            do {
+                SelectItem item = parseSelectItem();
+                boolean descending = acceptKeyword("DESC");
+                if (!descending) {
+                    acceptKeyword("ASC");
+                }
+                orderBy.add(new SelectStatement.Order(item, descending));
+            } while (acceptSymbol(","));
+        }
+        long limit = -1;
+        if (acceptKeyword("LIMIT")) {
+            SqlLexer.Token count = next();
+            if (count.type != SqlLexer.TokenType.NUMBER || count.text.startsWith("-")) {
+                throw error("row count", count);
+            }
+            try {
+                limit = Long.parseLong(count.text);
+            } catch (NumberFormatException e) {
+                throw error("row count", count);
+            }
+        }
+        return new SelectStatement(items, tableName, join, where, groupBy, orderBy, limit);
+    }
+
+    private SelectItem parseSelectItem() {
+        String name = expectColumn();
+        AggregateFunction function = AggregateFunction.fromName(name);
+        if (function == null || !acceptSymbol("(")) {
+            return new SelectItem(name, null);
+        }
+        String column = null;
+        if (!(function == AggregateFunction.COUNT && acceptSymbol("*"))) {
+            column = expectColumn();
+        }
+        expectSymbol(")");
+        return new SelectItem(column, function);
+    }
+
+    /**
+     * Parses a condition: OR has the lowest precedence, then AND, then NOT.
+     * @return The parsed condition
+     */
+    Condition parseCondition() {
+        List<Condition> operands = new ArrayList<>();
+        operands.add(parseConjunction());
+        while (acceptKeyword("OR")) {
+            operands.add(parseConjunction());
+        }
+        return operands.size() == 1 ? operands.get(0) : new Condition.Or(operands);
+    }
+
+    private Condition parseConjunction() {
+        List<Condition> operands = new ArrayList<>();
+        operands.add(parseFactor());
+        while (acceptKeyword("AND")) {
+            operands.add(parseFactor());
+        }
+        return operands.size() == 1 ? operands.get(0) : new Condition.And(operands);
+    }
+
+    private Condition parseFactor() {
+        if (acceptKeyword("NOT")) {
+            return new Condition.Not(parseFactor());
+        }
+        if (acceptSymbol("(")) {
+            Condition condition = parseCondition();
+            expectSymbol(")");
+            return condition;
+        }
+        String column = expectColumn();
+        if (acceptKeyword("NOT")) {
+            expectKeyword("IN");
+            return new Condition.In(column, parseLiteralList(), true);
+        }
+        if (acceptKeyword("IN")) {
+            return new Condition.In(column, parseLiteralList(), false);
+        }
+        SqlLexer.Token token = next();
+        Condition.Operator operator = token.type == SqlLexer.TokenType.SYMBOL
+                ? Condition.Operator.fromSymbol(token.text) : null;
+        if (operator == null) {
+            throw error("comparison operator", token);
+        }
+        return new Condition.Comparison(column, operator, parseLiteral());
+    }
+
+    /**
+     * Parses {@code HASH(col) n} or {@code RANGE(col) (bound, ...)} after {@code PARTITION BY}.
+     */
+    private PartitionSpec parsePartitioning() {
+        boolean hash = acceptKeyword("HASH");
+        if (!hash) {
+            expectKeyword("RANGE");
+        }
+        expectSymbol("(");
+        String column = expectIdentifier();
+        expectSymbol(")");
+        if (!hash) {
+            List<String> bounds = new ArrayList<>();
+            for (Condition.Literal literal : parseLiteralList()) {
+                if (literal.isParameter()) {
+                    throw new IllegalArgumentException("Partition bounds cannot be parameters.");
+                }
+                bounds.add(literal.text);
+            }
+            return PartitionSpec.range(column, bounds);
+        }
+        SqlLexer.Token count = next();
+        try {
+            if (count.type == SqlLexer.TokenType.NUMBER && !count.text.startsWith("-")) {
+                return PartitionSpec.hash(column, Integer.parseInt(count.text));
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw error("partition count", count);
+    }
+
+    private List<Condition.Literal> parseLiteralList() {
+        expectSymbol("(");
+        List<Condition.Literal> literals = new ArrayList<>();
+        do {
+            literals.add(parseLiteral());
+        } while (acceptSymbol(","));
+        expectSymbol(")");
+        return literals;
+    }
+
+    Condition.Literal parseLiteral() {
+        if (acceptSymbol("?")) {
+            return Condition.Literal.parameter(parameterCount++);
+        }
+        SqlLexer.Token token = next();
+        if (token.type == SqlLexer.TokenType.NUMBER) {
+            return new Condition.Literal(token.text, true);
+        }
+        if (token.type == SqlLexer.TokenType.STRING) {
+            return new Condition.Literal(token.text, false);
+        }
+        throw error("literal value", token);
+    }
+
+    /**
+     * Requires that only an optional semicolon remains.
+     */
+    void expectEnd() {
+        acceptSymbol(";");
+        if (peek().type != SqlLexer.TokenType.END) {
+            throw error("end of query", peek());
+        }
+    }
+
+    SqlLexer.Token peek() {
+        return tokens.get(position);
+    }
+
+    SqlLexer.Token next() {
+        SqlLexer.Token token = tokens.get(position);
+        if (token.type != SqlLexer.TokenType.END) {
+            position++;
+        }
+        return token;
+    }
+
+    boolean acceptKeyword(String keyword) {
+        if (peek().isKeyword(keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    boolean acceptSymbol(String symbol) {
+        if (peek().isSymbol(symbol)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw error(keyword, peek());
+        }
+    }
+
+    void expectSymbol(String symbol) {
+        if (!acceptSymbol(symbol)) {
+            throw error("\"" + symbol + "\"", peek());
+        }
+    }
+
+    String expectIdentifier() {
+        SqlLexer.Token token = next();
+        if (token.type != SqlLexer.TokenType.IDENTIFIER) {
+            throw error("column name", token);
+        }
+        return token.text;
+    }
+
+    /**
+     * Reads a column name, which may be qualified with a table name as in {@code t.id}.
+     * @return The name as written, with the table name and a dot in front if qualified
+     */
+    String expectColumn() {
+        String name = expectIdentifier();
+        if (acceptSymbol(".")) {
+            name += "." + expectIdentifier();
+        }
+        return name;
+    }
+
+    IllegalArgumentException error(String expected, SqlLexer.Token found) {
+        return new IllegalArgumentException("Syntax error: expected " + expected + " but found " + found
+                + (found.type == SqlLexer.TokenType.END ? "" : " at position " + found.position));
+    }
+}
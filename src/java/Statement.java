@@ -0,0 +1,361 @@
+package src.java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed form of a query, produced by {@link SqlParser#parseStatement()}. Statements are immutable, so a
+ * parsed statement can be cached and executed any number of times.
+ */
+public abstract class Statement {
+
+    /**
+     * @return True if the statement changes table definitions rather than rows; such statements take
+     *         effect immediately, even inside a transaction, and are not undone by ROLLBACK
+     */
+    public boolean isDefinition() {
+        return false;
+    }
+
+    /**
+     * @return The table the statement reads or changes, or null if it does not refer to a table
+     */
+    public String getTableName() {
+        return null;
+    }
+
+    /**
+     * @return The kind of statement as reported by {@code SHOW STATS}, e.g. {@code INSERT}
+     */
+    public abstract String getStatementType();
+
+    /**
+     * Substitutes the parameters of a prepared statement for its {@code ?} placeholders.
+     * @param parameters The parameter values in order
+     * @return The statement with every placeholder replaced
+     */
+    public Statement bind(List<Condition.Literal> parameters) {
+        return this;
+    }
+
+    /**
+     * {@code CREATE TABLE t (col type, ...) [STORAGE TEXT|BINARY|COLUMNAR]
+     * [PARTITION BY HASH(col) n | PARTITION BY RANGE(col) (bound, ...)]}.
+     */
+    public static final class CreateTable extends Statement {
+        final String tableName;
+        final List<ColumnDefinition> columns;
+        final StorageFormat storageFormat;
+        final PartitionSpec partitioning;
+
+        CreateTable(String tableName, List<ColumnDefinition> columns, StorageFormat storageFormat,
+                    PartitionSpec partitioning) {
+            this.tableName = tableName;
+            this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+            this.storageFormat = storageFormat;
+            this.partitioning = partitioning;
+        }
+
+        @Override
+        public String getStatementType() {
+            return "CREATE TABLE";
+        }
+
+        @Override
+        public String getTableName() {
+            return tableName;
+        }
+
+        @Override
+        public boolean isDefinition() {
+            return true;
+        }
+    }
+
+    /**
+     * {@code CREATE INDEX idx ON t(col) [USING BTREE|HASH]}.
+     */
+    public static final class CreateIndex extends Statement {
+        final String indexName;
+        final String tableName;
+        final String column;
+        final IndexType type;
+
+        CreateIndex(String indexName, String tableName, String column, IndexType type) {
+            this.indexName = indexName;
+            this.tableName = tableName;
+            this.column = column;
+            this.type = type;
+        }
+
+        @Override
+        public String getStatementType() {
+            return "CREATE INDEX";
+        }
+
+        @Override
+        public String getTableName() {
+            return tableName;
+        }
+
+        @Override
+        public boolean isDefinition() {
+            return true;
+        }
+    }
+
+    /**
+     * {@code CONVERT TABLE t TO TEXT|BINARY|COLUMNAR}.
+     */
+    public static final class ConvertTable extends Statement {
+        final String tableName;
+        final StorageFormat storageFormat;
+
+        ConvertTable(String tableName, StorageFormat storageFormat) {
+            this.tableName = tableName;
+            this.storageFormat = storageFormat;
+        }
+
+        @Override
+        public String getStatementType() {
+            return "CONVERT";
+        }
+
+        @Override
+        public String getTableName() {
+            return tableName;
+        }
+
+        @Override
+        public boolean isDefinition() {
+            return true;
+        }
+    }
+
+    /**
+     * {@code INSERT INTO t VALUES (value, ...), ...}.
+     */
+    public static final class Insert extends Statement {
+        final String tableName;
+        final List<List<Condition.Literal>> rows;
+
+        Insert(String tableName, List<List<Condition.Literal>> rows) {
+            this.tableName = tableName;
+            this.rows = Collections.unmodifiableList(new ArrayList<>(rows));
+        }
+
+        @Override
+        public String getStatementType() {
+            return "INSERT";
+        }
+
+        @Override
+        public String getTableName() {
+            return tableName;
+        }
+
+        @Override
+        public Statement bind(List<Condition.Literal> parameters) {
+            List<List<Condition.Literal>> bound = new ArrayList<>(rows.size());
+            for (List<Condition.Literal> row : rows) {
+                List<Condition.Literal> values = new ArrayList<>(row.size());
+                for (Condition.Literal value : row) {
+                    values.add(value.bind(parameters));
+                }
+                bound.add(values);
+            }
+            return new Insert(tableName, bound);
+        }
+    }
+
+    /**
+     * {@code UPDATE t SET col = value, ... [WHERE condition]}.
+     */
+    public static final class Update extends Statement {
+        final String tableName;
+        final List<Assignment> assignments;
+        final Condition where;
+
+        Update(String tableName, List<Assignment> assignments, Condition where) {
+            this.tableName = tableName;
+            this.assignments = Collections.unmodifiableList(new ArrayList<>(assignments));
+            this.where = where;
+        }
+
+        @Override
+        public String getStatementType() {
+            return "UPDATE";
+        }
+
+        @Override
+        public String getTableName() {
+            return tableName;
+        }
+
+        @Override
+        public Statement bind(List<Condition.Literal> parameters) {
+            List<Assignment> bound = new ArrayList<>(assignments.size());
+            for (Assignment assignment : assignments) {
+                bound.add(new Assignment(assignment.column, assignment.value.bind(parameters)));
+            }
+            return new Update(tableName, bound, where == null ? null : where.bind(parameters));
+        }
+    }
+
+    /**
+     * One {@code col = value} of an UPDATE.
+     */
+    public static final class Assignment {
+        final String column;
+        final Condition.Literal value;
+
+        Assignment(String column, Condition.Literal value) {
+            this.column = column;
+            this.value = value;
+        }
+    }
+
+    /**
+     * {@code DELETE FROM t [WHERE condition]}.
+     */
+    public static final class Delete extends Statement {
+        final String tableName;
+        final Condition where;
+
+        Delete(String tableName, Condition where) {
+            this.tableName = tableName;
+            this.where = where;
+        }
+
+        @Override
+        public String getStatementType() {
+            return "DELETE";
+        }
+
+        @Override
+        public String getTableName() {
+            return tableName;
+        }
+
+        @Override
+        public Statement bind(List<Condition.Literal> parameters) {
+            return where == null ? this : new Delete(tableName, where.bind(parameters));
+        }
+    }
+
+    /**
+     * {@code COPY t FROM 'file.csv' [WITH HEADER]}.
+     */
+    public static final class Copy extends Statement {
+        final String tableName;
+        final String path;
+        final boolean header;
+
+        Copy(String tableName, String path, boolean header) {
+            this.tableName = tableName;
+            this.path = path;
+            this.header = header;
+        }
+
+        @Override
+        public String getStatementType() {
+            return "COPY";
+        }
+
+        @Override
+        public String getTableName() {
+            return tableName;
+        }
+    }
+
+    /**
+     * {@code PREPARE name AS statement}, where the statement may contain {@code ?} placeholders.
+     */
+    public static final class Prepare extends Statement {
+        final String name;
+        final Statement body;
+        final int parameterCount;
+
+        Prepare(String name, Statement body, int parameterCount) {
+            this.name = name;
+            this.body = body;
+            this.parameterCount = parameterCount;
+        }
+
+        @Override
+        public String getStatementType() {
+            return "PREPARE";
+        }
+    }
+
+    /**
+     * {@code EXECUTE name [(value, ...)]}.
+     */
+    public static final class Execute extends Statement {
+        final String name;
+        final List<Condition.Literal> parameters;
+
+        Execute(String name, List<Condition.Literal> parameters) {
+            this.name = name;
+            this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+        }
+
+        @Override
+        public String getStatementType() {
+            return "EXECUTE";
+        }
+    }
+
+    /**
+     * {@code DEALLOCATE name}, discarding a prepared statement.
+     */
+    public static final class Deallocate extends Statement {
+        final String name;
+
+        Deallocate(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getStatementType() {
+            return "DEALLOCATE";
+        }
+    }
+
+    /**
+     * {@code EXPLAIN ANALYZE statement}, which executes the statement and reports where its time went.
+     */
+    public static final class ExplainAnalyze extends Statement {
+        final Statement body;
+
+        ExplainAnalyze(Statement body) {
+            this.body = body;
+        }
+
+        @Override
+        public String getStatementType() {
+            return "EXPLAIN";
+        }
+
+        @Override
+        public String getTableName() {
+            return body.getTableName();
+        }
+
+        @Override
+        public Statement bind(List<Condition.Literal> parameters) {
+            return new ExplainAnalyze(body.bind(parameters));
+        }
+    }
+
+    /**
+     * {@code SHOW STATS}, printing the cumulative statement statistics.
+     */
+    public static final class ShowStats extends Statement {
+        @Override
+        public String getStatementType() {
+            return "SHOW STATS";
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package src.java;
+
+/**
+ * The on-disk formats a table's rows can be stored in.
+ */
+public enum StorageFormat {
+    /** Text lines with values joined by the delimiter, stored in {@code <table>.txt}. */
+    TEXT(".txt"),
+    /** Fixed-size pages with a slot directory and type-native encoding, stored in {@code <table>.dat}. */
+    BINARY(".dat"),
+    /** Compressed segments of columns with per-segment zone maps, stored in {@code <table>.col}. */
+    COLUMNAR(".col");
+
+    private final String fileSuffix;
+
+    StorageFormat(String fileSuffix) {
+        this.fileSuffix = fileSuffix;
+    }
+
+    public String getFileSuffix() {
+        return fileSuffix;
+    }
+
+    /**
+     * Parses a storage format name case-insensitively.
+     * @param name The format name, e.g. "binary"
+     * @return The storage format
+     * @throws IllegalArgumentException If the name is not a known format
+     */
+    public static StorageFormat parse(String name) {
+        for (StorageFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name.trim())) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage format \"" + name.trim() + "\"");
+    }
+}
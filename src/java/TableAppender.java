@@ -0,0 +1,153 @@
+package src.java;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+/**
+ * Long-lived buffered appender for a table data file.
+ * Rows from many statements are collected in memory and written to the file in a single write call
+ * when the buffer fills up, when the table is read, or when a transaction commits.
+ */
+public class TableAppender implements Closeable {
+    static final int FLUSH_THRESHOLD = 64 * 1024;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final File tableFile;
+    private final LongConsumer changeListener;
+    private FileChannel channel;
+    private byte[] buffer = new byte[8 * 1024];
+    private int count;
+    private long fileLength = -1;
+
+    /**
+     * Constructs an appender for a table data file. The file is opened on the first flush.
+     * @param tableFile The table data file
+     */
+    public TableAppender(File tableFile) {
+        this(tableFile, offset -> { });
+    }
+
+    /**
+     * Constructs an appender that reports every change it makes to the file, so cached copies can be dropped.
+     * @param tableFile The table data file
+     * @param changeListener Called after each write or truncation with the offset of the first changed byte
+     */
+    public TableAppender(File tableFile, LongConsumer changeListener) {
+        this.tableFile = tableFile;
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Buffers one row line, flushing to disk once the buffer exceeds the flush threshold.
+     * @param line The encoded row without line separator
+     * @return The byte offset in the file at which the line starts
+     * @throws IOException If an input or output exception occurred
+     */
+    public long appendLine(String line) throws IOException {
+        if (fileLength < 0) {
+            fileLength = tableFile.length();
+        }
+        long offset = fileLength + count;
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(count + bytes.length + LINE_SEPARATOR.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+        System.arraycopy(LINE_SEPARATOR, 0, buffer, count, LINE_SEPARATOR.length);
+        count += LINE_SEPARATOR.length;
+        if (count >= FLUSH_THRESHOLD) {
+            flush(false);
+        }
+        return offset;
+    }
+
+    /**
+     * @return The offset at which the next appended line will start
+     */
+    public long nextOffset() {
+        if (fileLength < 0) {
+            fileLength = tableFile.length();
+        }
+        return fileLength + count;
+    }
+
+    /**
+     * Writes the buffered rows and cuts the file back to a given length.
+     * @param length The new file length
+     * @throws IOException If an input or output exception occurred
+     */
+    public void truncate(long length) throws IOException {
+        flush(false);
+        if (tableFile.length() > length) {
+            try (FileChannel truncating = FileChannel.open(tableFile.toPath(), StandardOpenOption.WRITE)) {
+                truncating.truncate(length);
+            }
+            changeListener.accept(length);
+        }
+        fileLength = -1;
+    }
+
+    /**
+     * @return True if there are rows buffered that have not been written yet
+     */
+    public boolean hasPendingRows() {
+        return count > 0;
+    }
+
+    /**
+     * Writes all buffered rows to the table file.
+     * @param sync Whether to force the written data to the storage device
+     * @throws IOException If an input or output exception occurred
+     */
+    public void flush(boolean sync) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (channel == null) {
+            channel = FileChannel.open(tableFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        long start = channel.size();
+        ByteBuffer pending = ByteBuffer.wrap(buffer, 0, count);
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        changeListener.accept(start);
+        QueryMetrics.count(QueryMetrics.Counter.BYTES_WRITTEN, count);
+        fileLength = channel.size();
+        count = 0;
+        if (sync) {
+            channel.force(false);
+            QueryMetrics.count(QueryMetrics.Counter.FSYNCS, 1);
+        }
+    }
+
+    /**
+     * Flushes the buffered rows and closes the underlying file.
+     * @throws IOException If an input or output exception occurred
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush(false);
+        } finally {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > buffer.length) {
+            byte[] grown = new byte[Math.max(required, buffer.length * 2)];
+            System.arraycopy(buffer, 0, grown, 0, count);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package src.java;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory cache of parsed table schemas for a database directory.
+ * Schemas are loaded lazily from the metadata files on first use and reloaded whenever the metadata
+ * file changes on disk, so edits made outside the process are still picked up.
+ */
+public class TableCatalog {
+    static final String METADATA_SUFFIX = ".metadata.txt";
+    static final String OPTION_PREFIX = "#"; // Marks table option lines, e.g. "#storage:|binary"
+    private static final String STORAGE_OPTION = "storage";
+    private static final String INDEX_OPTION = "index"; // "#index:|<name>:|<column>:|<btree|hash>"
+    // "#partition:|hash:|<column>:|<count>" or "#partition:|range:|<column>:|<bound>:|<bound>..."
+    private static final String PARTITION_OPTION = "partition";
+
+    private final String dbDirectory;
+    private final String delimiter;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * A cached schema together with the state of the metadata file it was parsed from.
+     */
+    private static final class Entry {
+        final TableSchema schema;
+        final long lastModified;
+        final long length;
+
+        Entry(TableSchema schema, long lastModified, long length) {
+            this.schema = schema;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Constructs a catalog for a database directory.
+     * @param dbDirectory The database directory holding the table files
+     * @param delimiter The delimiter separating the fields of a metadata line
+     */
+    public TableCatalog(String dbDirectory, String delimiter) {
+        this.dbDirectory = dbDirectory;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Returns the metadata file of a table.
+     * @param tableName The table name
+     * @return The metadata file, which may not exist
+     */
+    public File metadataFile(String tableName) {
+        return new File(dbDirectory, tableName + METADATA_SUFFIX);
+    }
+
+    /**
+     * Returns the schema of a table, parsing its metadata file only if it is not cached or has changed.
+     * The schema of a partition is derived from that of its partitioned table.
+     * @param tableName The table name, or the name of a partition such as {@code t.p0}
+     * @return The schema, or null if the table has no metadata file
+     * @throws IOException If the metadata file could not be read or is malformed
+     */
+    public TableSchema getSchema(String tableName) throws IOException {
+        String parentName = TableSchema.parentName(tableName);
+        if (!parentName.equals(tableName)) {
+            TableSchema parent = getSchema(parentName);
+            if (parent != null) {
+                for (TableSchema partition : parent.getPartitions()) {
+                    if (partition.getTableName().equals(tableName)) {
+                        return partition;
+                    }
+                }
+            }
+            return null;
+        }
+        File metaDataFile = metadataFile(tableName);
+        long lastModified = metaDataFile.lastModified();
+        if (lastModified == 0L && !metaDataFile.exists()) {
+            entries.remove(tableName);
+            return null;
+        }
+        long length = metaDataFile.length();
+        Entry entry = entries.get(tableName);
+        if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+            return entry.schema;
+        }
+        TableSchema schema = parseMetadata(tableName, metaDataFile);
+        entries.put(tableName, new Entry(schema, lastModified, length));
+        return schema;
+    }
+
+    /**
+     * Returns the data file holding the rows of a table in its storage format.
+     * @param schema The schema of the table
+     * @return The data file, which may not exist yet
+     */
+    public File dataFile(TableSchema schema) {
+        return new File(dbDirectory, schema.getTableName() + schema.getStorageFormat().getFileSuffix());
+    }
+
+    /**
+     * Writes the metadata file of a table and caches its schema.
+     * Text tables keep the original one-column-per-line format; other formats add an option line.
+     * @param schema The schema of the table
+     * @throws IOException If the metadata file could not be written
+     */
+    public void writeMetadata(TableSchema schema) throws IOException {
+        File metaDataFile = metadataFile(schema.getTableName());
+        try (PrintWriter out = new PrintWriter(new FileOutputStream(metaDataFile))) {
+            for (ColumnDefinition column : schema.getColumns()) {
+                out.println(column.getName() + delimiter + column.typeDeclaration());
+            }
+            if (schema.getStorageFormat() != StorageFormat.TEXT) {
+                out.println(OPTION_PREFIX + STORAGE_OPTION + delimiter + schema.getStorageFormat().name().toLowerCase());
+            }
+            for (IndexDefinition index : schema.getIndexes()) {
+                out.println(OPTION_PREFIX + INDEX_OPTION + delimiter + index.getName() + delimiter
+                        + index.getColumn() + delimiter + index.getType().name().toLowerCase());
+            }
+            PartitionSpec partitioning = schema.getPartitioning();
+            if (partitioning != null) {
+                StringBuilder line = new StringBuilder(OPTION_PREFIX + PARTITION_OPTION + delimiter
+                        + partitioning.getMethod().name().toLowerCase() + delimiter + partitioning.getColumn());
+                if (partitioning.getMethod() == PartitionSpec.Method.HASH) {
+                    line.append(delimiter).append(partitioning.getPartitionCount());
+                }
+                for (String bound : partitioning.getBounds()) {
+                    line.append(delimiter).append(bound);
+                }
+                out.println(line);
+            }
+        }
+        entries.put(schema.getTableName(), new Entry(schema, metaDataFile.lastModified(), metaDataFile.length()));
+    }
+
+    /**
+     * Drops the cached schema of a table so that it is parsed again on next use.
+     * @param tableName The table name
+     */
+    public void invalidate(String tableName) {
+        entries.remove(tableName);
+    }
+
+    private TableSchema parseMetadata(String tableName, File metaDataFile) throws IOException {
+        List<ColumnDefinition> columns = new ArrayList<>();
+        StorageFormat storageFormat = StorageFormat.TEXT;
+        List<IndexDefinition> indexes = new ArrayList<>();
+        PartitionSpec partitioning = null;
+        for (String line : Files.readAllLines(metaDataFile.toPath(), StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            int split = line.indexOf(delimiter);
+            if (split < 0) {
+                throw new IOException("Malformed metadata line for table " + tableName + ": " + line);
+            }
+            String key = line.substring(0, split).trim();
+            String value = line.substring(split + delimiter.length());
+            try {
+                if (!key.startsWith(OPTION_PREFIX)) {
+                    columns.add(ColumnDefinition.parse(key, value));
+                } else if (key.equals(OPTION_PREFIX + STORAGE_OPTION)) {
+                    storageFormat = StorageFormat.parse(value);
+                } else if (key.equals(OPTION_PREFIX + INDEX_OPTION)) {
+                    String[] parts = value.split(Pattern.quote(delimiter));
+                    if (parts.length != 3) {
+                        throw new IllegalArgumentException("Malformed index definition " + value);
+                    }
+                    indexes.add(new IndexDefinition(parts[0].trim(), parts[1].trim(), IndexType.parse(parts[2])));
+                } else if (key.equals(OPTION_PREFIX + PARTITION_OPTION)) {
+                    partitioning = parsePartitioning(value);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed metadata for table " + tableName + ": " + e.getMessage());
+            }
+        }
+        try {
+            return new TableSchema(tableName, columns, storageFormat, indexes, partitioning);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed metadata for table " + tableName + ": " + e.getMessage());
+        }
+    }
+
+    private PartitionSpec parsePartitioning(String value) {
+        String[] parts = value.split(Pattern.quote(delimiter), -1);
+        if (parts.length >= 3 && parts[0].trim().equalsIgnoreCase("hash")) {
+            try {
+                return PartitionSpec.hash(parts[1].trim(), Integer.parseInt(parts[2].trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed partition count " + parts[2]);
+            }
+        }
+        if (parts.length >= 3 && parts[0].trim().equalsIgnoreCase("range")) {
+            return PartitionSpec.range(parts[1].trim(), Arrays.asList(parts).subList(2, parts.length));
+        }
+        throw new IllegalArgumentException("Malformed partition definition " + value);
+    }
+}
@@ -0,0 +1,206 @@
+package src.java;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A persistent secondary index on one table column.
+ * <p>
+ * The index file holds a small header followed by one entry per row: the key (4 bytes for int columns,
+ * a 2-byte length and UTF-8 bytes for varchar columns) and the row location as 8 bytes. Entries are only
+ * ever appended, and the file is loaded into an in-memory {@link BPlusTree} or {@link HashKeyIndex} on open.
+ * Because every row has an entry, the largest location in the file tells which rows the index already covers.
+ */
+public class TableIndex implements Closeable {
+    static final String FILE_SUFFIX = ".idx";
+    private static final int MAGIC = 0x49445831; // "IDX1"
+    private static final int HEADER_SIZE = 5;
+
+    private final File file;
+    private final IndexDefinition definition;
+    private final ColumnDefinition column;
+    private final IndexStructure structure;
+    private final ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pending = new DataOutputStream(pendingBytes);
+    private long maxLocation = TableRows.BEFORE_FIRST;
+    private FileChannel channel;
+
+    private TableIndex(File file, IndexDefinition definition, ColumnDefinition column) {
+        this.file = file;
+        this.definition = definition;
+        this.column = column;
+        this.structure = definition.getType() == IndexType.BTREE ? new BPlusTree() : new HashKeyIndex();
+    }
+
+    /**
+     * Returns the file an index is stored in: {@code <table>.<index>.idx} next to the table metadata.
+     * @param dbDirectory The database directory
+     * @param tableName The table name
+     * @param indexName The index name
+     * @return The index file
+     */
+    public static File indexFile(String dbDirectory, String tableName, String indexName) {
+        return new File(dbDirectory, tableName + "." + indexName + FILE_SUFFIX);
+    }
+
+    /**
+     * Opens an index file, creating it if it does not exist, and loads its entries.
+     * A partially written entry at the end of the file is discarded.
+     * @param file The index file
+     * @param definition The index definition
+     * @param column The indexed column
+     * @return The loaded index
+     * @throws IOException If the file could not be read or has an unexpected header
+     */
+    public static TableIndex open(File file, IndexDefinition definition, ColumnDefinition column) throws IOException {
+        TableIndex index = new TableIndex(file, definition, column);
+        index.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (index.channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).put((byte) column.getType().ordinal()).flip();
+            index.channel.truncate(0);
+            index.channel.write(header, 0);
+        } else {
+            index.load();
+        }
+        index.channel.position(index.channel.size());
+        return index;
+    }
+
+    private void load() throws IOException {
+        long validLength = HEADER_SIZE;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readByte() != column.getType().ordinal()) {
+                throw new IOException("Index file " + file.getName() + " does not match column " + column.getName());
+            }
+            while (true) {
+                Object key;
+                int entryLength;
+                if (column.getType() == ColumnType.INT) {
+                    key = in.readInt();
+                    entryLength = 12;
+                } else {
+                    int length = in.readUnsignedShort();
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    key = new String(bytes, StandardCharsets.UTF_8);
+                    entryLength = 10 + length;
+                }
+                long location = in.readLong();
+                structure.insert(key, location);
+                maxLocation = Math.max(maxLocation, location);
+                validLength += entryLength;
+            }
+        } catch (EOFException endOfFile) {
+            if (channel.size() > validLength) {
+                channel.truncate(validLength); // Drop an entry torn by a crash
+            }
+        }
+    }
+
+    public IndexDefinition getDefinition() {
+        return definition;
+    }
+
+    public IndexStructure getStructure() {
+        return structure;
+    }
+
+    /**
+     * @return The largest row location in the index, or {@link TableRows#BEFORE_FIRST} if it is empty
+     */
+    public long getMaxLocation() {
+        return maxLocation;
+    }
+
+    /**
+     * Converts a stored column value to an index key.
+     * @param value The value as text
+     * @return An Integer for int columns or the String itself, or null if the value is not a valid int
+     */
+    public Object keyOf(String value) {
+        if (column.getType() == ColumnType.VARCHAR) {
+            return value;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds a row to the index. The entry is written to the file on the next {@link #flush(boolean)},
+     * which callers must only invoke after the row itself has been written to the table.
+     * @param value The value of the indexed column
+     * @param location The row location
+     */
+    public void add(String value, long location) {
+        Object key = keyOf(value);
+        if (key == null) {
+            return;
+        }
+        structure.insert(key, location);
+        maxLocation = Math.max(maxLocation, location);
+        try {
+            if (key instanceof Integer) {
+                pending.writeInt((Integer) key);
+            } else {
+                byte[] bytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+                pending.writeShort(bytes.length);
+                pending.write(bytes);
+            }
+            pending.writeLong(location);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Writing to memory cannot fail
+        }
+    }
+
+    /**
+     * @return The number of bytes of entries waiting to be written
+     */
+    public int pendingSize() {
+        return pendingBytes.size();
+    }
+
+    /**
+     * Writes the pending entries to the index file.
+     * @param sync Whether to force the written data to the storage device
+     * @throws IOException If an input or output exception occurred
+     */
+    public void flush(boolean sync) throws IOException {
+        if (pendingBytes.size() > 0) {
+            ByteBuffer bytes = ByteBuffer.wrap(pendingBytes.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            QueryMetrics.count(QueryMetrics.Counter.BYTES_WRITTEN, pendingBytes.size());
+            pendingBytes.reset();
+        }
+        if (sync) {
+            channel.force(false);
+            QueryMetrics.count(QueryMetrics.Counter.FSYNCS, 1);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package src.java;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The rows of a table as queries read them: a {@link TableStorage} engine, or a read-only view such as a
+ * snapshot or the partitions of a table read as one.
+ * <p>
+ * Every row has a location that stays valid while the data file is only appended to. Locations
+ * increase in file order, so sorting them gives a sequential access pattern.
+ */
+public interface TableRows extends Closeable {
+
+    /** Location passed to {@link #scanAfter(long)} to scan from the first row. */
+    long BEFORE_FIRST = -1L;
+
+    /**
+     * Opens a cursor over all rows written so far.
+     * @return The cursor, which must be closed by the caller
+     * @throws IOException If an input or output exception occurred
+     */
+    default RowCursor scan() throws IOException {
+        return scanAfter(BEFORE_FIRST);
+    }
+
+    /**
+     * Opens a cursor over the rows written after a given row.
+     * @param location The location of the last row to skip, or {@link #BEFORE_FIRST}
+     * @return The cursor, which must be closed by the caller
+     * @throws IOException If an input or output exception occurred
+     */
+    RowCursor scanAfter(long location) throws IOException;
+
+    /**
+     * Opens a cursor over all rows written so far that may satisfy a condition. Engines that keep statistics
+     * about ranges of rows skip the ranges the condition rules out; the cursor may still return rows that do
+     * not satisfy it.
+     * @param condition The WHERE condition, already validated against the schema, or null
+     * @return The cursor, which must be closed by the caller
+     * @throws IOException If an input or output exception occurred
+     */
+    default RowCursor scan(Condition condition) throws IOException {
+        return scan();
+    }
+
+    /**
+     * Divides the written rows into ranges of similar size for parallel scans.
+     * @param parts The desired number of ranges
+     * @return Ascending range boundaries; range i covers the locations from element i up to element i + 1
+     * @throws IOException If an input or output exception occurred
+     */
+    long[] split(int parts) throws IOException;
+
+    /**
+     * Opens a cursor over the rows whose locations fall in a range returned by {@link #split(int)}.
+     * @param start The inclusive start of the range
+     * @param end The exclusive end of the range
+     * @return The cursor, which must be closed by the caller
+     * @throws IOException If an input or output exception occurred
+     */
+    RowCursor scanRange(long start, long end) throws IOException;
+
+    /**
+     * Opens a cursor over the rows in a range that may satisfy a condition, as {@link #scan(Condition)} does.
+     * @param start The inclusive start of the range
+     * @param end The exclusive end of the range
+     * @param condition The WHERE condition, already validated against the schema, or null
+     * @return The cursor, which must be closed by the caller
+     * @throws IOException If an input or output exception occurred
+     */
+    default RowCursor scanRange(long start, long end, Condition condition) throws IOException {
+        return scanRange(start, end);
+    }
+
+    /**
+     * Opens a cursor over the rows at the given locations. Locations that do not hold a written row are skipped.
+     * @param locations The row locations in ascending order
+     * @return The cursor, which must be closed by the caller
+     * @throws IOException If an input or output exception occurred
+     */
+    RowCursor fetch(long[] locations) throws IOException;
+}
@@ -0,0 +1,235 @@
+package src.java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parsed schema of a table: its column definitions and a name-to-ordinal lookup.
+ * <p>
+ * The rows of a partitioned table are held by one table per partition, named after the table with
+ * {@code .p<number>} appended. Those tables have no metadata file of their own: their schemas are derived
+ * from this one and differ from it only in name and in having no partitioning.
+ */
+public class TableSchema {
+    private final String tableName;
+    private final List<ColumnDefinition> columns;
+    private final List<String> columnNames;
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final StorageFormat storageFormat;
+    private final List<IndexDefinition> indexes;
+    private final PartitionSpec partitioning;
+    private final List<TableSchema> partitions; // Null if the table is not partitioned
+
+    /**
+     * Constructs a schema for a table stored in the text format.
+     * @param tableName The table name
+     * @param columns The column definitions in table order
+     * @throws IllegalArgumentException If two columns have the same name
+     */
+    public TableSchema(String tableName, List<ColumnDefinition> columns) {
+        this(tableName, columns, StorageFormat.TEXT);
+    }
+
+    /**
+     * Constructs a schema for a table.
+     * @param tableName The table name
+     * @param columns The column definitions in table order
+     * @param storageFormat The format the table's rows are stored in
+     * @throws IllegalArgumentException If two columns have the same name
+     */
+    public TableSchema(String tableName, List<ColumnDefinition> columns, StorageFormat storageFormat) {
+        this(tableName, columns, storageFormat, Collections.emptyList());
+    }
+
+    /**
+     * Constructs a schema for a table with secondary indexes.
+     * @param tableName The table name
+     * @param columns The column definitions in table order
+     * @param storageFormat The format the table's rows are stored in
+     * @param indexes The secondary indexes declared on the table
+     * @throws IllegalArgumentException If two columns have the same name
+     */
+    public TableSchema(String tableName, List<ColumnDefinition> columns, StorageFormat storageFormat,
+                       List<IndexDefinition> indexes) {
+        this(tableName, columns, storageFormat, indexes, null);
+    }
+
+    /**
+     * Constructs a schema for a table that may be partitioned.
+     * @param tableName The table name
+     * @param columns The column definitions in table order
+     * @param storageFormat The format the table's rows are stored in
+     * @param indexes The secondary indexes declared on the table, kept by every partition for its own rows
+     * @param partitioning How the rows are divided among partitions, or null if the table is not partitioned
+     * @throws IllegalArgumentException If two columns have the same name
+     */
+    public TableSchema(String tableName, List<ColumnDefinition> columns, StorageFormat storageFormat,
+                       List<IndexDefinition> indexes, PartitionSpec partitioning) {
+        this.tableName = tableName;
+        this.storageFormat = storageFormat;
+        this.indexes = Collections.unmodifiableList(new ArrayList<>(indexes));
+        this.partitioning = partitioning;
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+        List<String> names = new ArrayList<>(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            String name = columns.get(i).getName();
+            names.add(name);
+            if (ordinals.putIfAbsent(name, i) != null) {
+                throw new IllegalArgumentException("Duplicate column name " + name + ".");
+            }
+        }
+        this.columnNames = Collections.unmodifiableList(names);
+        if (partitioning == null) {
+            this.partitions = null;
+        } else {
+            List<TableSchema> derived = new ArrayList<>(partitioning.getPartitionCount());
+            for (int i = 0; i < partitioning.getPartitionCount(); i++) {
+                derived.add(new TableSchema(partitionName(tableName, i), columns, storageFormat, indexes));
+            }
+            this.partitions = Collections.unmodifiableList(derived);
+        }
+    }
+
+    /**
+     * @param tableName The name of a partitioned table
+     * @param partition The partition number
+     * @return The name of the table holding the partition's rows
+     */
+    public static String partitionName(String tableName, int partition) {
+        return tableName + ".p" + partition;
+    }
+
+    /**
+     * @param tableName The name of a table or of a partition
+     * @return The name of the table, or of the partitioned table the partition belongs to
+     */
+    public static String parentName(String tableName) {
+        int dot = tableName.indexOf('.');
+        return dot < 0 ? tableName : tableName.substring(0, dot);
+    }
+
+    /**
+     * Returns the schema of the rows produced by joining two tables: the columns of the first table followed
+     * by those of the second, each named with its table name in front, as in {@code a.id}. A column may
+     * also be referred to by its bare name if only one of the tables has it.
+     * @param left The schema of the first table
+     * @param right The schema of the second table
+     * @return The schema of the joined rows
+     */
+    public static TableSchema joined(TableSchema left, TableSchema right) {
+        List<ColumnDefinition> columns = new ArrayList<>(left.columnCount() + right.columnCount());
+        for (TableSchema schema : List.of(left, right)) {
+            for (ColumnDefinition column : schema.columns) {
+                columns.add(new ColumnDefinition(schema.tableName + "." + column.getName(), column.getType(),
+                        column.getLength()));
+            }
+        }
+        TableSchema joined = new TableSchema(left.tableName + " JOIN " + right.tableName, columns);
+        for (String name : left.columnNames) {
+            if (right.ordinalOf(name) < 0) {
+                joined.ordinals.putIfAbsent(name, left.ordinalOf(name));
+            }
+        }
+        for (String name : right.columnNames) {
+            if (left.ordinalOf(name) < 0) {
+                joined.ordinals.putIfAbsent(name, left.columnCount() + right.ordinalOf(name));
+            }
+        }
+        return joined;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public StorageFormat getStorageFormat() {
+        return storageFormat;
+    }
+
+    /**
+     * Returns a copy of this schema stored in a different format.
+     * @param format The new storage format
+     * @return The schema with the same columns and the given format
+     */
+    public TableSchema withStorageFormat(StorageFormat format) {
+        return new TableSchema(tableName, columns, format, indexes, partitioning);
+    }
+
+    public List<IndexDefinition> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * Looks up a secondary index by name.
+     * @param indexName The index name
+     * @return The index definition, or null if the table has no such index
+     */
+    public IndexDefinition index(String indexName) {
+        for (IndexDefinition index : indexes) {
+            if (index.getName().equalsIgnoreCase(indexName)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a copy of this schema with an additional secondary index.
+     * @param index The new index definition
+     * @return The schema including the index
+     */
+    public TableSchema withIndex(IndexDefinition index) {
+        List<IndexDefinition> extended = new ArrayList<>(indexes);
+        extended.add(index);
+        return new TableSchema(tableName, columns, storageFormat, extended, partitioning);
+    }
+
+    /**
+     * @return How the rows are divided among partitions, or null if the table is not partitioned
+     */
+    public PartitionSpec getPartitioning() {
+        return partitioning;
+    }
+
+    /**
+     * Returns the schemas of the tables holding the rows: one per partition, or only this schema if the table
+     * is not partitioned. The same schema instances are returned on every call.
+     * @return The schemas in partition order
+     */
+    public List<TableSchema> getPartitions() {
+        return partitions == null ? Collections.singletonList(this) : partitions;
+    }
+
+    public List<ColumnDefinition> getColumns() {
+        return columns;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public int columnCount() {
+        return columns.size();
+    }
+
+    public ColumnDefinition column(int ordinal) {
+        return columns.get(ordinal);
+    }
+
+    /**
+     * Looks up the position of a column.
+     * @param columnName The column name, optionally qualified with the table name as in {@code t.id}
+     * @return The zero-based ordinal of the column, or -1 if the table has no such column
+     */
+    public int ordinalOf(String columnName) {
+        Integer ordinal = ordinals.get(columnName);
+        if (ordinal == null && columnName.length() > tableName.length() && columnName.startsWith(tableName)
+                && columnName.charAt(tableName.length()) == '.') {
+            ordinal = ordinals.get(columnName.substring(tableName.length() + 1));
+        }
+        return ordinal == null ? -1 : ordinal;
+    }
+}
@@ -0,0 +1,69 @@
+package src.java;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Storage engine for the rows of one table. Appends are buffered until {@link #flush(boolean)};
+ * cursors read only what has been written to the data file, so they never touch the write buffers and
+ * may be opened by readers while the table's single writer keeps appending.
+ */
+public interface TableStorage extends TableRows {
+
+    /**
+     * Opens the storage engine matching a table's storage format.
+     * @param dataFile The table data file
+     * @param schema The schema of the table
+     * @param delimiter The delimiter used by the text format
+     * @return The storage engine
+     * @throws IOException If the data file could not be opened
+     */
+    static TableStorage open(File dataFile, TableSchema schema, String delimiter) throws IOException {
+        if (schema.getStorageFormat() == StorageFormat.BINARY) {
+            return new PagedTableStorage(dataFile, schema);
+        }
+        if (schema.getStorageFormat() == StorageFormat.COLUMNAR) {
+            return new ColumnarTableStorage(dataFile, schema);
+        }
+        return new TextTableStorage(dataFile, delimiter);
+    }
+
+    /**
+     * @return The file holding the rows of the table
+     */
+    File getDataFile();
+
+    /**
+     * Buffers a validated row.
+     * @param values The row values in column order
+     * @return The location of the new row
+     * @throws IOException If an input or output exception occurred
+     */
+    long append(String[] values) throws IOException;
+
+    /**
+     * @return True if there are appended rows that have not been written yet
+     */
+    boolean hasPendingRows();
+
+    /**
+     * Returns a mark identifying the current end of the table, including buffered rows.
+     * @return A mark that can later be passed to {@link #truncateTo(long)}
+     * @throws IOException If an input or output exception occurred
+     */
+    long mark() throws IOException;
+
+    /**
+     * Removes every row appended after a mark was taken, used to undo a partially applied change.
+     * @param mark A mark returned by {@link #mark()}
+     * @throws IOException If an input or output exception occurred
+     */
+    void truncateTo(long mark) throws IOException;
+
+    /**
+     * Writes all buffered rows to the data file.
+     * @param sync Whether to force the written data to the storage device
+     * @throws IOException If an input or output exception occurred
+     */
+    void flush(boolean sync) throws IOException;
+}
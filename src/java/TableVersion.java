@@ -0,0 +1,25 @@
+package src.java;
+
+/**
+ * One committed state of a table. Rows are only ever appended and tombstones only ever added, each in
+ * order, so a state is fully described by how far both had got when it was committed: a snapshot reading
+ * this version sees the rows stored before {@link #rowLimit} minus the first {@link #tombstoneCount}
+ * tombstones.
+ */
+public final class TableVersion {
+    /**
+     * Commit timestamp from the {@link CommitClock}; for the state a table was opened in, that of the last
+     * commit that changed the table.
+     */
+    final long commitTimestamp;
+    /** Storage mark at the commit; every visible row has a smaller location. */
+    final long rowLimit;
+    /** Tombstone mark at the commit. */
+    final long tombstoneCount;
+
+    TableVersion(long commitTimestamp, long rowLimit, long tombstoneCount) {
+        this.commitTimestamp = commitTimestamp;
+        this.rowLimit = rowLimit;
+        this.tombstoneCount = tombstoneCount;
+    }
+}
@@ -0,0 +1,317 @@
+package src.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Stores rows as text lines with values joined by the delimiter, the original table file format.
+ */
+public class TextTableStorage implements TableStorage {
+    private final File dataFile;
+    private final String delimiter;
+    private final TableAppender appender;
+    private final BufferPool pool = BufferPool.shared();
+    private final long fileId = BufferPool.registerFile();
+
+    /**
+     * Constructs a text storage engine.
+     * @param dataFile The {@code <table>.txt} data file
+     * @param delimiter The delimiter separating values on a line
+     */
+    public TextTableStorage(File dataFile, String delimiter) {
+        this.dataFile = dataFile;
+        this.delimiter = delimiter;
+        this.appender = new TableAppender(dataFile, offset -> pool.invalidate(fileId, offset));
+    }
+
+    @Override
+    public File getDataFile() {
+        return dataFile;
+    }
+
+    @Override
+    public long append(String[] values) throws IOException {
+        return appender.appendLine(String.join(delimiter, values));
+    }
+
+    @Override
+    public boolean hasPendingRows() {
+        return appender.hasPendingRows();
+    }
+
+    @Override
+    public long mark() {
+        return appender.nextOffset();
+    }
+
+    @Override
+    public void truncateTo(long mark) throws IOException {
+        appender.truncate(mark);
+    }
+
+    @Override
+    public void flush(boolean sync) throws IOException {
+        appender.flush(sync);
+    }
+
+    @Override
+    public RowCursor scanAfter(long location) throws IOException {
+        return new TextCursor(FileChannel.open(dataFile.toPath(), StandardOpenOption.READ), location, null, Long.MAX_VALUE,
+                pool.shouldCacheScan(dataFile.length()));
+    }
+
+    /**
+     * Splits the file into byte ranges; a range holds the rows whose line starts inside it.
+     */
+    @Override
+    public long[] split(int parts) throws IOException {
+        long size = dataFile.length();
+        int count = (int) Math.max(1, Math.min(parts, size));
+        long[] boundaries = new long[count + 1];
+        for (int i = 0; i <= count; i++) {
+            boundaries[i] = size * i / count;
+        }
+        return boundaries;
+    }
+
+    @Override
+    public RowCursor scanRange(long start, long end) throws IOException {
+        // The line containing the byte before the range belongs to the previous range
+        return new TextCursor(FileChannel.open(dataFile.toPath(), StandardOpenOption.READ),
+                start == 0 ? BEFORE_FIRST : start - 1, null, end, pool.shouldCacheScan(dataFile.length()));
+    }
+
+    @Override
+    public RowCursor fetch(long[] locations) throws IOException {
+        return new TextCursor(FileChannel.open(dataFile.toPath(), StandardOpenOption.READ), BEFORE_FIRST, locations, Long.MAX_VALUE, true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            appender.close();
+        } finally {
+            pool.invalidate(fileId, 0);
+        }
+    }
+
+    /**
+     * Cursor reading one line per row; a row's location is the byte offset where its line starts.
+     * Lines are found by scanning a read buffer for line feeds, and field boundaries are located with plain
+     * index searches the first time a column is accessed. Values are trimmed since older rows were stored padded.
+     * The read buffer is filled from the blocks of the shared {@link BufferPool}.
+     */
+    private final class TextCursor implements RowCursor {
+        private final FileChannel channel;
+        private final long[] locations;
+        private final long limit;
+        private final boolean cacheBlocks;
+        private int nextLocation;
+        private byte[] buffer = new byte[64 * 1024];
+        private long bufferOffset;
+        private int bufferLength;
+        private long nextOffset;
+        private long lineOffset;
+        private String line;
+        private int[] fieldStarts = new int[8];
+        private int[] fieldEnds = new int[8];
+        private int fieldCount = -1;
+
+        /**
+         * @param channel The open data file
+         * @param after The location of the line to skip before the first row, or BEFORE_FIRST
+         * @param locations The locations to visit instead of reading sequentially, or null
+         * @param limit The offset at which a sequential scan stops
+         * @param cacheBlocks Whether blocks missing from the buffer pool should be added to it
+         */
+        TextCursor(FileChannel channel, long after, long[] locations, long limit, boolean cacheBlocks) throws IOException {
+            this.channel = channel;
+            this.locations = locations;
+            this.limit = limit;
+            this.cacheBlocks = cacheBlocks;
+            if (after != BEFORE_FIRST && !readLineAt(after)) {
+                nextOffset = after;
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            fieldCount = -1;
+            if (locations == null) {
+                if (nextOffset >= limit) {
+                    line = null;
+                    return false;
+                }
+                return readLineAt(nextOffset);
+            }
+            while (nextLocation < locations.length) {
+                if (readLineAt(locations[nextLocation++])) {
+                    return true;
+                }
+            }
+            line = null;
+            return false;
+        }
+
+        @Override
+        public long location() {
+            return lineOffset;
+        }
+
+        /**
+         * Reads the line starting at a byte offset, refilling the buffer from that offset when needed.
+         * @param offset The offset of the line
+         * @return True if a line was read, false at the end of the file
+         */
+        private boolean readLineAt(long offset) throws IOException {
+            int start = (int) (offset - bufferOffset);
+            if (offset < bufferOffset || start > bufferLength) {
+                fill(offset);
+                start = 0;
+            }
+            int end = indexOfLineFeed(start);
+            while (end < 0) {
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, bufferLength - start);
+                    bufferOffset += start;
+                    bufferLength -= start;
+                    start = 0;
+                } else if (bufferLength == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = readAt(bufferLength, buffer.length - bufferLength, bufferOffset + bufferLength);
+                if (read <= 0) {
+                    if (bufferLength == start) {
+                        line = null;
+                        return false;
+                    }
+                    end = bufferLength; // Last line without a line separator
+                    break;
+                }
+                int searchFrom = bufferLength;
+                bufferLength += read;
+                end = indexOfLineFeed(searchFrom);
+            }
+            int contentEnd = end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+            line = new String(buffer, start, contentEnd - start, StandardCharsets.UTF_8);
+            lineOffset = bufferOffset + start;
+            nextOffset = bufferOffset + end + 1;
+            return true;
+        }
+
+        private int indexOfLineFeed(int from) {
+            for (int i = from; i < bufferLength; i++) {
+                if (buffer[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void fill(long offset) throws IOException {
+            bufferOffset = offset;
+            bufferLength = 0;
+            bufferLength = readAt(0, buffer.length, offset);
+        }
+
+        /**
+         * Copies file contents into the read buffer block by block.
+         * @param bufferStart The buffer index to copy to
+         * @param length The most bytes to copy
+         * @param position The file offset to copy from
+         * @return The number of bytes copied, 0 at the end of the file
+         */
+        private int readAt(int bufferStart, int length, long position) throws IOException {
+            int copied = 0;
+            while (copied < length) {
+                BufferPool.Block block = pool.pin(fileId, channel, position + copied, cacheBlocks);
+                if (block == null) {
+                    break;
+                }
+                try {
+                    ByteBuffer data = block.data();
+                    int from = (int) (position + copied - block.offset());
+                    int count = Math.min(length - copied, data.limit() - from);
+                    if (count <= 0) {
+                        break;
+                    }
+                    data.get(from, buffer, bufferStart + copied, count);
+                    copied += count;
+                    if (data.limit() < BufferPool.BLOCK_SIZE) {
+                        break; // Last block of the file
+                    }
+                } finally {
+                    pool.unpin(block);
+                }
+            }
+            return copied;
+        }
+
+        @Override
+        public String getString(int ordinal) {
+            if (!locate(ordinal)) {
+                return null;
+            }
+            int start = fieldStarts[ordinal];
+            int end = fieldEnds[ordinal];
+            while (start < end && line.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && line.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            return line.substring(start, end);
+        }
+
+        /**
+         * Parses an int field directly from the line without creating a substring.
+         */
+        @Override
+        public int getInt(int ordinal) {
+            if (!locate(ordinal)) {
+                throw new NumberFormatException("Missing value for column " + ordinal);
+            }
+            int start = fieldStarts[ordinal];
+            int end = fieldEnds[ordinal];
+            while (start < end && line.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && line.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            return Integer.parseInt(line, start, end, 10);
+        }
+
+        private boolean locate(int ordinal) {
+            if (fieldCount < 0) {
+                fieldCount = 0;
+                int start = 0;
+                while (true) {
+                    if (fieldCount == fieldStarts.length) {
+                        fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+                        fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+                    }
+                    int end = line.indexOf(delimiter, start);
+                    fieldStarts[fieldCount] = start;
+                    fieldEnds[fieldCount] = end < 0 ? line.length() : end;
+                    fieldCount++;
+                    if (end < 0) {
+                        break;
+                    }
+                    start = end + delimiter.length();
+                }
+            }
+            return ordinal < fieldCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package src.java;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The deleted rows of a table, kept as tombstones in a file named after the data file, e.g.
+ * {@code <table>.txt.tombstones}. Rewriting the rows into another data file, as CONVERT and compaction do,
+ * therefore leaves the tombstones of the old file behind.
+ * <p>
+ * DELETE and UPDATE never rewrite the data file; they append the locations of the rows they remove to this
+ * file, 8 bytes per row, so a statement costs in proportion to the rows it changes. The whole file is loaded
+ * into a {@link LocationMap} when the table is opened and scans skip the rows in it. Like table rows,
+ * tombstones are buffered until {@link #flush(boolean)} and can be cut back to a {@link #mark()}.
+ * Compaction copies the remaining rows into a new data file, after which the tombstones are discarded.
+ * <p>
+ * The map keeps each tombstone's position in the file, so a snapshot that saw only the first n tombstones
+ * can ask {@link #deletedBefore(long, long)}. Lookups run concurrently with the single writer: they read
+ * optimistically and retry under the read lock if a tombstone was added meanwhile.
+ */
+public class Tombstones implements Closeable {
+    static final String FILE_SUFFIX = ".tombstones";
+    private static final int ENTRY_SIZE = 8;
+
+    private final File file;
+    private final StampedLock lock = new StampedLock();
+    private LocationMap deleted = new LocationMap(); // Location to position in the file
+    private final LocationList pending = new LocationList();
+    private long written; // Entries in the file
+    private FileChannel channel;
+
+    /**
+     * Loads the tombstones of a table. A partially written entry at the end of the file is discarded.
+     * @param file The tombstone file, which need not exist
+     * @throws IOException If the file could not be read
+     */
+    public Tombstones(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            load();
+        }
+    }
+
+    /**
+     * Returns the tombstone file belonging to a table data file.
+     * @param dataFile The data file
+     * @return The file, e.g. {@code <table>.txt.tombstones}
+     */
+    public static File file(File dataFile) {
+        return new File(dataFile.getPath() + FILE_SUFFIX);
+    }
+
+    private void load() throws IOException {
+        openChannel();
+        long size = channel.size();
+        long entries = size / ENTRY_SIZE;
+        if (size % ENTRY_SIZE != 0) {
+            channel.truncate(entries * ENTRY_SIZE);
+        }
+        LocationMap loaded = new LocationMap((int) Math.min(entries, Integer.MAX_VALUE / 4));
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = 0;
+        long end = entries * ENTRY_SIZE;
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + file.getName());
+                }
+            }
+            buffer.flip();
+            long entry = position / ENTRY_SIZE;
+            while (buffer.hasRemaining()) {
+                loaded.putIfAbsent(buffer.getLong(), entry++);
+            }
+            position += buffer.limit();
+        }
+        long stamp = lock.writeLock();
+        deleted = loaded;
+        written = entries;
+        lock.unlockWrite(stamp);
+    }
+
+    private void openChannel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * @param location A row location
+     * @return True if the row has been deleted
+     */
+    public boolean contains(long location) {
+        return deletedBefore(location, Long.MAX_VALUE);
+    }
+
+    /**
+     * Tells whether a row was deleted by one of the first tombstones, as seen by a snapshot.
+     * @param location A row location
+     * @param count The number of tombstones the snapshot sees, a {@link #mark()} taken when it was committed
+     * @return True if the row's tombstone is among the first {@code count}
+     */
+    public boolean deletedBefore(long location, long count) {
+        long stamp = lock.tryOptimisticRead();
+        long position = deleted.get(location);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                position = deleted.get(location);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return position >= 0 && position < count;
+    }
+
+    /**
+     * @return The number of deleted rows
+     */
+    public int size() {
+        return deleted.size();
+    }
+
+    public boolean isEmpty() {
+        return deleted.isEmpty();
+    }
+
+    /**
+     * Deletes a row. The tombstone is written on the next {@link #flush(boolean)}.
+     * @param location The location of the row
+     */
+    public void add(long location) {
+        long stamp = lock.writeLock();
+        try {
+            if (deleted.putIfAbsent(location, written + pending.size())) {
+                pending.add(location);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return A mark covering every tombstone added so far, for {@link #truncateTo(long)}
+     */
+    public long mark() {
+        return written + pending.size();
+    }
+
+    /**
+     * Removes the tombstones added after a mark was taken, used to undo a partially applied change.
+     * @param mark A mark returned by {@link #mark()}
+     * @throws IOException If an input or output exception occurred
+     */
+    public void truncateTo(long mark) throws IOException {
+        if (mark >= mark()) {
+            return;
+        }
+        flush(false);
+        channel.truncate(mark * ENTRY_SIZE);
+        load();
+    }
+
+    /**
+     * Writes the pending tombstones.
+     * @param sync Whether to force the written data to the storage device
+     * @throws IOException If an input or output exception occurred
+     */
+    public void flush(boolean sync) throws IOException {
+        if (pending.size() > 0) {
+            openChannel();
+            ByteBuffer bytes = ByteBuffer.allocate(pending.size() * ENTRY_SIZE);
+            for (int i = 0; i < pending.size(); i++) {
+                bytes.putLong(pending.get(i));
+            }
+            bytes.flip();
+            long position = written * ENTRY_SIZE;
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+            QueryMetrics.count(QueryMetrics.Counter.BYTES_WRITTEN, (long) pending.size() * ENTRY_SIZE);
+            written += pending.size();
+            pending.clear();
+        }
+        if (sync && channel != null) {
+            channel.force(false);
+            QueryMetrics.count(QueryMetrics.Counter.FSYNCS, 1);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush(false);
+        } finally {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+}
@@ -3,17 +3,17 @@ package src.java;
 import java.io.*;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Pattern;
 
 /**
  * Handles user authentication including registration and login.
  */
 public class UserAuthentication {
-    private final Map<String, String> users = new HashMap<String, String>();
+    private final CredentialStore credentials;
     private final Scanner scanner = new Scanner(System.in);
     private static final String USERS_FILE = "users_authentication_information.txt";
-    private static final String DELIMITER = ":|";
+    private static final String USERS_SNAPSHOT_FILE = "users_authentication_snapshot.txt";
 
     /**
      * Initializes the java.UserAuthentication class by loading user details from file.
@@ -21,51 +21,17 @@ public class UserAuthentication {
      * @throws NoSuchAlgorithmException If the algorithm for password hashing is not available
      */
     public UserAuthentication() throws IOException, NoSuchAlgorithmException {
-        loadUserAuthDetailsFromFile();
+        this(new File(USERS_FILE), new File(USERS_SNAPSHOT_FILE));
     }
 
     /**
-     * Loads user authentication details from a file.
+     * Initializes the class with credentials kept in the given files instead of the working directory.
+     * @param usersFile The append-only log of registrations
+     * @param snapshotFile The compacted snapshot of the registrations
      * @throws IOException If an input or output exception occurred
      */
-    private void loadUserAuthDetailsFromFile() throws IOException {
-        File file = new File(USERS_FILE);
-        if (file.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                String line;
-                boolean isFirstLine = true;
-                while ((line = reader.readLine()) != null) {
-                    if (isFirstLine) {
-                        isFirstLine = false;
-                        continue;
-                    }
-                    String[] parts = Arrays.asList(line.split(Pattern.quote(DELIMITER), -1)).toArray(new String[0]);
-                    if (parts.length == 3) {
-                        users.put(parts[1], Arrays.toString(new String[]{parts[1], parts[2]}));
-                    }
-                }
-            }
-        }
-    }
-
-    /**
-     * Saves user details to a file.
-     * @param userID The unique identifier for the user
-     * @param username The username of the user
-     * @param hashedPassword The hashed password of the user
-     * @throws IOException If an input or output exception occurred
-     */
-    private void saveUserToFile(String userID, String username, String hashedPassword) throws IOException {
-        File file = new File(USERS_FILE);
-        boolean addHeader = !file.exists() || file.length() == 0;
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
-            if (addHeader) {
-                writer.write("UUID" + DELIMITER + "Username" + DELIMITER + "Password" + System.lineSeparator());
-            }
-            String userRecord = userID + DELIMITER + username + DELIMITER + hashedPassword + System.lineSeparator();
-            writer.write(userRecord);
-        }
+    public UserAuthentication(File usersFile, File snapshotFile) throws IOException {
+        this.credentials = new CredentialStore(usersFile, snapshotFile);
     }
 
     /**
@@ -98,32 +64,60 @@ public class UserAuthentication {
         return (number1 + number2) == answer;
     }
 
-    public void register(String username, String password) throws NoSuchAlgorithmException, IOException {
-        String hashedPassword = hashPassword(password);
+    /**
+     * Registers a new user under a unique username.
+     * @param username The username, which also names the user's database directory
+     * @param password The password
+     * @return True if the user was registered, false if the username is taken
+     * @throws NoSuchAlgorithmException If the MD5 hashing algorithm is not available
+     * @throws IOException If the user could not be saved
+     */
+    public boolean register(String username, String password) throws NoSuchAlgorithmException, IOException {
+        if (username.isEmpty() || username.contains(":|")) {
+            System.out.println("Invalid username.");
+            return false;
+        }
         String userID = UUID.randomUUID().toString();
-        String uniqueId = Arrays.toString(new String[]{username, hashedPassword});
-        users.put(userID, uniqueId);
-        saveUserToFile(userID, username, hashedPassword);
+        if (!credentials.add(userID, username, hashPassword(password))) {
+            System.out.println("User " + username + " already exists.");
+            return false;
+        }
         System.out.println("User registered successfully with User ID: " + userID);
+        return true;
+    }
+
+    /**
+     * Checks a user's credentials with a single lookup by username and a single hash of the password.
+     * @param username The username
+     * @param password The password
+     * @return True if the user exists and the password matches
+     * @throws NoSuchAlgorithmException If the MD5 hashing algorithm is not available
+     */
+    public boolean checkCredentials(String username, String password) throws NoSuchAlgorithmException {
+        CredentialStore.Credential credential = credentials.get(username);
+        String hashedPassword = hashPassword(password);
+        return credential != null && MessageDigest.isEqual(credential.getPasswordHash().getBytes(StandardCharsets.UTF_8),
+                hashedPassword.getBytes(StandardCharsets.UTF_8));
     }
 
-    public void login(String username, String password) throws NoSuchAlgorithmException {
-        for (Map.Entry<String, String> entry : users.entrySet()) {
-            String[] userDetails = new String[]{Arrays.toString(new String[]{entry.getValue()})};
-            if (userDetails.length >= 1) {
-                String[] parts = userDetails[0].replaceAll("^\\[\\[|\\]\\]$", "").split(",\\s*");// userDetails[0] is username, userDetails[1] is hashedPassword
-                if (parts[0].equals(username) && parts[1].equals(hashPassword(password))) {
-                    if (verifyCaptcha()) {
-                        System.out.println("Login successful! :)");
-                        return;
-                    } else {
-                        System.out.println("Captcha verification failed!! :(");
-                        return;
-                    }
-            }
-            }
+    /**
+     * Checks a user's credentials and then asks for the captcha.
+     * @param username The username
+     * @param password The password
+     * @return True if the credentials and the captcha are correct
+     * @throws NoSuchAlgorithmException If the MD5 hashing algorithm is not available
+     */
+    public boolean login(String username, String password) throws NoSuchAlgorithmException {
+        if (!checkCredentials(username, password)) {
+            System.out.println("Invalid credentials!! :(");
+            return false;
+        }
+        if (verifyCaptcha()) {
+            System.out.println("Login successful! :)");
+            return true;
         }
-        System.out.println("Invalid credentials!! :(");
+        System.out.println("Captcha verification failed!! :(");
+        return false;
     }
 
     public static String authenticateUser() throws NoSuchAlgorithmException, IOException {
@@ -137,16 +131,14 @@ public class UserAuthentication {
                 String rID = auth.scanner.nextLine();
                 System.out.println("Enter password:");
                 String rPassword = auth.scanner.nextLine();
-                auth.register(rID, rPassword);
-                return rID;
+                return auth.register(rID, rPassword) ? rID : "";
             case "L":
                 System.out.println("Login with your credentials.");
                 System.out.println("Enter user ID:");
                 String lID = auth.scanner.nextLine();
                 System.out.println("Enter password:");
                 String lPassword = auth.scanner.nextLine();
-                auth.login(lID, lPassword);
-                return lID;
+                return auth.login(lID, lPassword) ? lID : "";
             case "X":
                 System.out.println("Exiting application. Goodbye!");
                 break;
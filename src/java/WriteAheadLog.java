@@ -0,0 +1,273 @@
+package src.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of the changes made to the tables of a database.
+ * <p>
+ * Every change is described by one record that is written before the change is applied to the table files.
+ * A record lists, per table, the storage and tombstone marks taken before the change, the rows it deleted and
+ * the rows it appended, so replaying it is idempotent: the table is cut back to the marks, and the rows are
+ * deleted and appended again.
+ * Records are framed by their length and a CRC32 checksum, which lets recovery ignore a record torn by a crash.
+ * <p>
+ * Committing sessions share fsyncs: the first session that needs its record durable forces the log, and every
+ * session whose record was written before that force started returns without forcing again.
+ */
+public class WriteAheadLog implements Closeable {
+    public static final String FILE_NAME = "wal.log";
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    private final File file;
+    private final FileChannel channel;
+    private final Object syncMonitor = new Object();
+    private long baseLsn; // Log sequence number of the first byte of the current file
+    private long writtenLsn;
+    private long syncedLsn;
+    private boolean syncing;
+
+    /**
+     * The rows deleted from and appended to one table by a logged change.
+     */
+    public static final class TableChange {
+        final String tableName;
+        final long mark;
+        final long tombstoneMark;
+        final long[] deleted;
+        final List<String[]> rows;
+
+        TableChange(String tableName, long mark, long tombstoneMark, long[] deleted, List<String[]> rows) {
+            this.tableName = tableName;
+            this.mark = mark;
+            this.tombstoneMark = tombstoneMark;
+            this.deleted = deleted;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Opens the log of a database directory, creating it if needed.
+     * @param dbDirectory The database directory
+     * @throws IOException If the log could not be opened
+     */
+    public WriteAheadLog(String dbDirectory) throws IOException {
+        this.file = new File(dbDirectory, FILE_NAME);
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.writtenLsn = channel.size();
+        this.syncedLsn = writtenLsn;
+    }
+
+    /**
+     * Reads every complete record in the log. Anything after the first torn or corrupt record is cut off.
+     * @return The logged changes, one list per record, in log order
+     * @throws IOException If an input or output exception occurred
+     */
+    public synchronized List<List<TableChange>> readAll() throws IOException {
+        List<List<TableChange>> records = new ArrayList<>();
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        while (position + FRAME_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            int length = header.getInt(0);
+            int checksum = header.getInt(4);
+            if (length < 0 || position + FRAME_HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + FRAME_HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            records.add(decode(payload));
+            position += FRAME_HEADER_SIZE + length;
+        }
+        if (position < size) {
+            channel.truncate(position);
+            writtenLsn = baseLsn + position;
+            syncedLsn = Math.min(syncedLsn, writtenLsn);
+        }
+        return records;
+    }
+
+    /**
+     * Writes one record describing a complete change with a single write call.
+     * @param changes The rows deleted and appended per table
+     * @return The log sequence number just past the record, to pass to {@link #sync(long)}
+     * @throws IOException If an input or output exception occurred
+     */
+    public long append(List<TableChange> changes) throws IOException {
+        byte[] payload = encode(changes);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        QueryMetrics.count(QueryMetrics.Counter.BYTES_WRITTEN, frame.remaining());
+        synchronized (this) {
+            long position = writtenLsn - baseLsn;
+            while (frame.hasRemaining()) {
+                position += channel.write(frame, position);
+            }
+            writtenLsn = baseLsn + position;
+            return writtenLsn;
+        }
+    }
+
+    /**
+     * Makes the log durable up to a log sequence number, sharing the fsync with concurrent committers.
+     * @param lsn The log sequence number returned by {@link #append(List)}
+     * @throws IOException If an input or output exception occurred
+     */
+    public void sync(long lsn) throws IOException {
+        long target;
+        synchronized (syncMonitor) {
+            while (true) {
+                if (syncedLsn >= lsn) {
+                    return;
+                }
+                if (!syncing) {
+                    syncing = true;
+                    synchronized (this) {
+                        target = writtenLsn;
+                    }
+                    break;
+                }
+                try {
+                    syncMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the log to be synced");
+                }
+            }
+        }
+        boolean forced = false;
+        try {
+            channel.force(false);
+            forced = true;
+            QueryMetrics.count(QueryMetrics.Counter.FSYNCS, 1);
+        } finally {
+            synchronized (syncMonitor) {
+                syncing = false;
+                if (forced) {
+                    syncedLsn = Math.max(syncedLsn, target);
+                }
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return The number of bytes currently in the log file
+     */
+    public synchronized long size() {
+        return writtenLsn - baseLsn;
+    }
+
+    /**
+     * Empties the log after a checkpoint has made every logged change durable in the table files.
+     * The caller must ensure no change is being logged concurrently.
+     * @throws IOException If an input or output exception occurred
+     */
+    public void reset() throws IOException {
+        synchronized (syncMonitor) {
+            synchronized (this) {
+                channel.truncate(0);
+                channel.force(false);
+                QueryMetrics.count(QueryMetrics.Counter.FSYNCS, 1);
+                baseLsn = writtenLsn;
+                syncedLsn = writtenLsn;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + file.getName());
+            }
+        }
+        buffer.flip();
+    }
+
+    private static byte[] encode(List<TableChange> changes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(changes.size());
+        for (TableChange change : changes) {
+            writeString(out, change.tableName);
+            out.writeLong(change.mark);
+            out.writeLong(change.tombstoneMark);
+            out.writeInt(change.deleted.length);
+            for (long location : change.deleted) {
+                out.writeLong(location);
+            }
+            out.writeInt(change.rows.size());
+            for (String[] row : change.rows) {
+                out.writeInt(row.length);
+                for (String value : row) {
+                    writeString(out, value);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<TableChange> decode(ByteBuffer payload) {
+        int changeCount = payload.getInt();
+        List<TableChange> changes = new ArrayList<>(changeCount);
+        for (int i = 0; i < changeCount; i++) {
+            String tableName = readString(payload);
+            long mark = payload.getLong();
+            long tombstoneMark = payload.getLong();
+            long[] deleted = new long[payload.getInt()];
+            for (int d = 0; d < deleted.length; d++) {
+                deleted[d] = payload.getLong();
+            }
+            int rowCount = payload.getInt();
+            List<String[]> rows = new ArrayList<>(rowCount);
+            for (int r = 0; r < rowCount; r++) {
+                String[] row = new String[payload.getInt()];
+                for (int v = 0; v < row.length; v++) {
+                    row[v] = readString(payload);
+                }
+                rows.add(row);
+            }
+            changes.add(new TableChange(tableName, mark, tombstoneMark, deleted, Collections.unmodifiableList(rows)));
+        }
+        return changes;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,101 @@
+package src.java;
+
+/**
+ * The smallest and largest value of every column within a segment of rows. A scan holding a WHERE condition
+ * can skip the whole segment when the condition cannot hold for any values between those bounds.
+ * Like {@link IndexPlanner}, it only needs to be sound: the compiled predicate is still applied to every row
+ * of the segments that are read.
+ */
+public final class ZoneMap {
+    private final TableSchema schema;
+    private final Object[] min;
+    private final Object[] max;
+
+    /**
+     * @param schema The schema of the table
+     * @param min The smallest value of each column, an Integer for int columns and a String for varchar columns
+     * @param max The largest value of each column, typed the same way
+     */
+    public ZoneMap(TableSchema schema, Object[] min, Object[] max) {
+        this.schema = schema;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @param condition A WHERE condition, already validated by compiling it against the schema, or null
+     * @return False if no row of the segment can satisfy the condition
+     */
+    public boolean mayMatch(Condition condition) {
+        if (condition instanceof Condition.And) {
+            for (Condition operand : ((Condition.And) condition).operands) {
+                if (!mayMatch(operand)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (condition instanceof Condition.Or) {
+            for (Condition operand : ((Condition.Or) condition).operands) {
+                if (mayMatch(operand)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (condition instanceof Condition.Comparison) {
+            Condition.Comparison comparison = (Condition.Comparison) condition;
+            int ordinal = ordinalOf(comparison.column);
+            return ordinal < 0 || comparison.literal.isParameter() || mayMatch(ordinal, comparison.operator, comparison.literal);
+        }
+        if (condition instanceof Condition.In && !((Condition.In) condition).negated) {
+            Condition.In in = (Condition.In) condition;
+            int ordinal = ordinalOf(in.column);
+            if (ordinal < 0) {
+                return true;
+            }
+            for (Condition.Literal literal : in.values) {
+                if (literal.isParameter() || mayMatch(ordinal, Condition.Operator.EQ, literal)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true; // No condition, NOT or NOT IN
+    }
+
+    private int ordinalOf(String column) {
+        int ordinal = schema.ordinalOf(column);
+        return ordinal < min.length ? ordinal : -1;
+    }
+
+    /**
+     * Checks whether some value between the column's bounds compares with a literal as the operator requires.
+     */
+    private boolean mayMatch(int ordinal, Condition.Operator operator, Condition.Literal literal) {
+        int low;
+        int high;
+        if (schema.column(ordinal).getType() == ColumnType.INT) {
+            long value = literal.asLong(schema.column(ordinal));
+            low = Long.compare((Integer) min[ordinal], value);
+            high = Long.compare((Integer) max[ordinal], value);
+        } else {
+            low = ((String) min[ordinal]).compareTo(literal.text);
+            high = ((String) max[ordinal]).compareTo(literal.text);
+        }
+        switch (operator) {
+            case EQ:
+                return low <= 0 && high >= 0;
+            case NE:
+                return low != 0 || high != 0;
+            case LT:
+                return low < 0;
+            case LE:
+                return low <= 0;
+            case GT:
+                return high > 0;
+            default:
+                return high >= 0;
+        }
+    }
+}